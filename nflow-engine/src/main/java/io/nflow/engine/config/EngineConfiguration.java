@@ -2,10 +2,16 @@ package io.nflow.engine.config;
 
 import static com.fasterxml.jackson.annotation.JsonInclude.Include.NON_EMPTY;
 import static java.lang.Runtime.getRuntime;
+import static org.joda.time.Period.minutes;
+import static org.slf4j.LoggerFactory.getLogger;
+import static org.springframework.util.StringUtils.hasText;
 
+import java.nio.file.Paths;
+import java.util.Optional;
 import java.util.concurrent.ThreadFactory;
 import java.util.function.Supplier;
 
+import org.slf4j.Logger;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
@@ -18,7 +24,15 @@ import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.joda.JodaModule;
 
+import io.nflow.engine.internal.executor.ActivationTimerWheel;
 import io.nflow.engine.internal.executor.WorkflowInstanceExecutor;
+import io.nflow.engine.internal.executor.WorkflowInstanceExecutor.ScheduledInstance;
+import io.nflow.engine.internal.storage.blob.FileSystemStateVariableBlobStore;
+import io.nflow.engine.internal.storage.blob.StateVariableBlobStore;
+import io.nflow.engine.internal.storage.db.BlobStoreStateVariableCodec;
+import io.nflow.engine.internal.storage.db.CompressingStateVariableCodec;
+import io.nflow.engine.internal.storage.db.StateVariableCodec;
+import io.nflow.engine.internal.util.VirtualThreads;
 
 /**
  * The main Spring configuration class for nFlow engine.
@@ -27,6 +41,8 @@ import io.nflow.engine.internal.executor.WorkflowInstanceExecutor;
 @ComponentScan("io.nflow.engine")
 public class EngineConfiguration {
 
+  private static final Logger logger = getLogger(EngineConfiguration.class);
+
   public interface EngineObjectMapperSupplier extends Supplier<ObjectMapper> {}
 
   /**
@@ -38,13 +54,37 @@ public class EngineConfiguration {
    */
   @Bean
   public WorkflowInstanceExecutor nflowExecutor(@NFlow ThreadFactory nflowThreadFactory, Environment env) {
+    ThreadFactory threadFactory = nflowThreadFactory;
     int threadCount = env.getProperty("nflow.executor.thread.count", Integer.class, 2 * getRuntime().availableProcessors());
+    boolean threadPerTask = false;
+    if (env.getRequiredProperty("nflow.executor.virtual.threads", Boolean.class)) {
+      Optional<ThreadFactory> virtualThreadFactory = VirtualThreads.newThreadFactory("nflow-executor-virtual-");
+      if (virtualThreadFactory.isPresent()) {
+        if (env.containsProperty("nflow.executor.thread.count")) {
+          logger.warn("Ignoring nflow.executor.thread.count with virtual threads, the number of concurrently processed "
+              + "workflow instances is limited by nflow.executor.virtual.max.inflight");
+        }
+        threadFactory = virtualThreadFactory.get();
+        threadCount = env.getRequiredProperty("nflow.executor.virtual.max.inflight", Integer.class);
+        threadPerTask = true;
+      } else {
+        logger.warn("Virtual threads are not supported by the Java runtime, using platform threads for workflow executors");
+      }
+    }
     int awaitTerminationSeconds = env.getRequiredProperty("nflow.dispatcher.await.termination.seconds", Integer.class);
     int queueSize = env.getProperty("nflow.dispatcher.executor.queue.size", Integer.class, 2 * threadCount);
     int notifyThreshold = env.getProperty("nflow.dispatcher.executor.queue.wait_until_threshold", Integer.class, queueSize / 2);
     int keepAliveSeconds = env.getRequiredProperty("nflow.dispatcher.executor.thread.keepalive.seconds", Integer.class);
+    boolean priorityOrdered = env.getRequiredProperty("nflow.dispatcher.executor.queue.priority", Boolean.class);
+    ActivationTimerWheel<ScheduledInstance> activationTimer = null;
+    if (env.getRequiredProperty("nflow.executor.activationTimer.enabled", Boolean.class)) {
+      activationTimer = new ActivationTimerWheel<>(env.getRequiredProperty("nflow.executor.activationTimer.tick.ms", Long.class),
+          env.getRequiredProperty("nflow.executor.activationTimer.horizon.ms", Long.class),
+          env.getRequiredProperty("nflow.executor.activationTimer.maxSize", Integer.class));
+    }
+    int maxSuspended = env.getRequiredProperty("nflow.executor.asyncStateMaxSuspended", Integer.class);
     return new WorkflowInstanceExecutor(queueSize, threadCount, notifyThreshold, awaitTerminationSeconds, keepAliveSeconds,
-        nflowThreadFactory);
+        threadFactory, priorityOrdered, activationTimer, threadPerTask, maxSuspended);
   }
 
   /**
@@ -72,6 +112,56 @@ public class EngineConfiguration {
     return () -> mapper;
   }
 
+  /**
+   * Creates a codec for converting workflow instance state variable values to and from the format stored in the database.
+   * @param env The Spring environment.
+   * @return State variable codec.
+   */
+  @Bean
+  @NFlow
+  public StateVariableCodec nflowStateVariableCodec(Environment env) {
+    StateVariableCodec codec = createStateVariableCodec(env);
+    StateVariableBlobStore blobStore = createStateVariableBlobStore(env);
+    if (blobStore == null) {
+      return codec;
+    }
+    return new BlobStoreStateVariableCodec(codec, blobStore,
+        env.getRequiredProperty("nflow.db.stateVariable.blobStore.threshold", Integer.class),
+        minutes(env.getRequiredProperty("nflow.db.stateVariable.blobStore.gracePeriod.minutes", Integer.class)));
+  }
+
+  private StateVariableCodec createStateVariableCodec(Environment env) {
+    String codecClass = env.getProperty("nflow.db.stateVariable.codec");
+    if (hasText(codecClass)) {
+      return newInstance(codecClass, StateVariableCodec.class, "state variable codec");
+    }
+    if (env.getRequiredProperty("nflow.db.stateVariable.compression.enabled", Boolean.class)) {
+      return new CompressingStateVariableCodec(
+          env.getRequiredProperty("nflow.db.stateVariable.compression.threshold", Integer.class));
+    }
+    return new CompressingStateVariableCodec(Integer.MAX_VALUE);
+  }
+
+  private StateVariableBlobStore createStateVariableBlobStore(Environment env) {
+    String blobStoreClass = env.getProperty("nflow.db.stateVariable.blobStore");
+    if (hasText(blobStoreClass)) {
+      return newInstance(blobStoreClass, StateVariableBlobStore.class, "state variable blob store");
+    }
+    String directory = env.getProperty("nflow.db.stateVariable.blobStore.directory");
+    if (hasText(directory)) {
+      return new FileSystemStateVariableBlobStore(Paths.get(directory));
+    }
+    return null;
+  }
+
+  private static <T> T newInstance(String className, Class<T> type, String description) {
+    try {
+      return Class.forName(className).asSubclass(type).getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException | ClassCastException e) {
+      throw new IllegalArgumentException("Failed to create " + description + " " + className, e);
+    }
+  }
+
   /**
    * Creates a resource for listing workflows that are not defined as Spring beans.
    * @param env The Spring environment.
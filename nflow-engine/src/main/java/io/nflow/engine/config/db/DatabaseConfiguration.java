@@ -3,6 +3,9 @@ package io.nflow.engine.config.db;
 import static org.slf4j.LoggerFactory.getLogger;
 import static org.springframework.beans.factory.config.BeanDefinition.SCOPE_PROTOTYPE;
 
+import java.sql.Connection;
+import java.sql.SQLException;
+
 import javax.sql.DataSource;
 
 import org.slf4j.Logger;
@@ -14,6 +17,7 @@ import org.springframework.context.annotation.Scope;
 import org.springframework.core.env.Environment;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.support.TransactionTemplate;
 
@@ -95,6 +99,24 @@ public abstract class DatabaseConfiguration {
     return new HikariDataSource(config);
   }
 
+  /**
+   * Creates the factory for the connections that listen to dispatcher notifications. The connections are kept open as long as
+   * the dispatchers run, so by default they are opened with the nFlow database properties outside the nFlow connection pool.
+   * Override this bean to open the connections from another data source.
+   * @param env The Spring environment for getting the configuration property values.
+   * @return The notification connection factory.
+   */
+  @Bean
+  @NFlow
+  public NotificationConnectionFactory nflowNotificationConnectionFactory(Environment env) {
+    return () -> {
+      DriverManagerDataSource dataSource = new DriverManagerDataSource(property(env, "url"), property(env, "user"),
+          property(env, "password"));
+      dataSource.setDriverClassName(property(env, "driver"));
+      return dataSource.getConnection();
+    };
+  }
+
   /**
    * Creates a JDBC template using nFlow datasource.
    * @param nflowDataSource The nFlow datasource.
@@ -192,4 +214,17 @@ public abstract class DatabaseConfiguration {
    * @return SQL variants optimized for the database.
    */
   public abstract SQLVariants sqlVariants(Environment env);
+
+  /**
+   * Opens database connections that are not taken from the nFlow connection pool.
+   */
+  @FunctionalInterface
+  public interface NotificationConnectionFactory {
+    /**
+     * Open a new database connection.
+     * @return The connection.
+     * @throws SQLException If opening the connection fails.
+     */
+    Connection getConnection() throws SQLException;
+  }
 }
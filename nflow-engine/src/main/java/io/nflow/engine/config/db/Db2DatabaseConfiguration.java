@@ -158,6 +158,14 @@ public class Db2DatabaseConfiguration extends DatabaseConfiguration {
       return Types.VARCHAR;
     }
 
+    /**
+     * Returns null as DB2 does not accept untyped parameter markers in the select list of a conditional insert.
+     */
+    @Override
+    public String insertWhereNotExists(String table, String columns, String values, String condition) {
+      return null;
+    }
+
     /**
      * Returns true as DB2 Express-C supports batch updates.
      */
@@ -81,6 +81,14 @@ public class H2DatabaseConfiguration extends DatabaseConfiguration {
       return "dateadd('second', " + seconds + ", current_timestamp)";
     }
 
+    /**
+     * Returns true as H2 returns the generated keys of all rows inserted with a batch update.
+     */
+    @Override
+    public boolean hasBatchGeneratedKeys() {
+      return true;
+    }
+
     /**
      * Returns false as H2 does not support updateable CTEs.
      */
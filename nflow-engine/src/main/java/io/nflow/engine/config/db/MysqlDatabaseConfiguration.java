@@ -66,7 +66,7 @@ public class MysqlDatabaseConfiguration extends DatabaseConfiguration {
   @Bean
   @Override
   public SQLVariants sqlVariants(Environment env) {
-    return new MySQLVariants();
+    return new MySQLVariants(true);
   }
 
 }
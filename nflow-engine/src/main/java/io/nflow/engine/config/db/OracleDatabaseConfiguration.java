@@ -163,6 +163,15 @@ public class OracleDatabaseConfiguration extends DatabaseConfiguration {
       return Types.CLOB;
     }
 
+    /**
+     * Returns a conditional insert selecting the values from dual.
+     */
+    @Override
+    public String insertWhereNotExists(String table, String columns, String values, String condition) {
+      return "insert into " + table + "(" + columns + ") select " + values + " from dual where not exists (select 1 from "
+          + table + " where " + condition + ")";
+    }
+
     /**
      * Returns true for database versions 12.1 or newer.
      */
@@ -1,8 +1,23 @@
 package io.nflow.engine.config.db;
 
 import static io.nflow.engine.config.Profiles.POSTGRESQL;
+import static java.lang.Math.max;
+import static java.util.Collections.emptyList;
+import static java.util.stream.Collectors.toList;
+import static org.joda.time.DateTimeZone.UTC;
 
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Types;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.joda.time.DateTime;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.postgresql.copy.PGCopyOutputStream;
 
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -56,6 +71,22 @@ public class PgDatabaseConfiguration extends DatabaseConfiguration {
       return true;
     }
 
+    /**
+     * Returns true as PostgreSQL returns the generated keys of all rows inserted with a batch update.
+     */
+    @Override
+    public boolean hasBatchGeneratedKeys() {
+      return true;
+    }
+
+    /**
+     * Returns the insert with an on conflict do nothing clause for given unique columns.
+     */
+    @Override
+    public String insertOnConflictDoNothing(String insertSql, String conflictColumns) {
+      return insertSql + " on conflict (" + conflictColumns + ") do nothing";
+    }
+
     /**
      * Returns true as PostgreSQL supports updateable CTEs.
      */
@@ -138,5 +169,100 @@ public class PgDatabaseConfiguration extends DatabaseConfiguration {
     public String forUpdateSkipLocked() {
       return " for update skip locked";
     }
+
+    /**
+     * Returns true as PostgreSQL supports LISTEN/NOTIFY.
+     */
+    @Override
+    public boolean hasNotifications() {
+      return true;
+    }
+
+    /**
+     * Returns SQL for sending a notification with a payload parameter to given channel.
+     */
+    @Override
+    public String notify(String channel) {
+      return "select pg_notify('" + channel + "', ?)";
+    }
+
+    /**
+     * Starts listening to notifications of given channel on the connection.
+     */
+    @Override
+    public void listen(Connection connection, String channel) throws SQLException {
+      try (Statement statement = connection.createStatement()) {
+        statement.execute("listen " + channel);
+      }
+    }
+
+    /**
+     * Returns the payloads of notifications received by the connection, waiting at most given time for them to arrive.
+     */
+    @Override
+    public List<String> getNotifications(Connection connection, int timeoutMillis) throws SQLException {
+      PGNotification[] notifications = connection.unwrap(PGConnection.class).getNotifications(max(1, timeoutMillis));
+      if (notifications == null) {
+        return emptyList();
+      }
+      return Stream.of(notifications).map(PGNotification::getParameter).collect(toList());
+    }
+
+    /**
+     * Returns true as PostgreSQL supports the COPY command.
+     */
+    @Override
+    public boolean hasCopyIn() {
+      return true;
+    }
+
+    /**
+     * Starts the given COPY FROM STDIN command on the connection. The command completes when the returned stream is closed.
+     */
+    @Override
+    public OutputStream copyIn(Connection connection, String sql) throws SQLException {
+      return new PGCopyOutputStream(connection.unwrap(PGConnection.class), sql);
+    }
+
+    /**
+     * Returns true as PostgreSQL supports declarative table partitioning.
+     */
+    @Override
+    public boolean hasTablePartitions() {
+      return true;
+    }
+
+    /**
+     * Returns true as the PostgreSQL JDBC driver reads the whole result set at once outside a transaction.
+     */
+    @Override
+    public boolean cursorRequiresTransaction() {
+      return true;
+    }
+
+    /**
+     * Returns SQL for counting partitioned tables with the name given as parameter.
+     */
+    @Override
+    public String isPartitionedTable() {
+      return "select count(*) from pg_partitioned_table where partrelid = to_regclass(?)";
+    }
+
+    /**
+     * Returns SQL for listing the names of the partitions of the table given as parameter.
+     */
+    @Override
+    public String tablePartitions() {
+      return "select c.relname from pg_inherits i join pg_class c on c.oid = i.inhrelid where i.inhparent = to_regclass(?)";
+    }
+
+    /**
+     * Returns SQL for creating a range partition for the given time range, unless the partition already exists.
+     */
+    @Override
+    public String createRangePartition(String table, String partition, DateTime from, DateTime to) {
+      return "create table if not exists " + partition + " partition of " + table + " for values from ('"
+          + from.toDateTime(UTC) + "') to ('" + to.toDateTime(UTC) + "') with (fillfactor=100)";
+    }
   }
 }
@@ -90,6 +90,15 @@ public class SqlServerDatabaseConfiguration extends DatabaseConfiguration {
       return false;
     }
 
+    /**
+     * Returns false as the SQL Server JDBC driver reads the rest of an open result set into memory when another query is
+     * executed on the same connection.
+     */
+    @Override
+    public boolean cursorAllowsOtherQueries() {
+      return false;
+    }
+
     /**
      * SQL Server supports withUpdateSkipLocked instead.
      */
@@ -106,6 +115,11 @@ public class SqlServerDatabaseConfiguration extends DatabaseConfiguration {
       return " with (updlock,readpast)";
     }
 
+    @Override
+    public String mod(String expression, int divisor) {
+      return "(" + expression + " % " + divisor + ")";
+    }
+
     @Override
     public String dateLtEqDiff(String date1, String date2) {
       return "datediff_big(ms, " + date1 + ", " + date2 + ") >= 0";
@@ -211,6 +225,15 @@ public class SqlServerDatabaseConfiguration extends DatabaseConfiguration {
       return Types.VARCHAR;
     }
 
+    /**
+     * Returns a conditional insert that locks the checked key range until the end of the transaction.
+     */
+    @Override
+    public String insertWhereNotExists(String table, String columns, String values, String condition) {
+      return "insert into " + table + "(" + columns + ") select " + values + " where not exists (select 1 from " + table
+          + " with (updlock, holdlock) where " + condition + ")";
+    }
+
     /**
      * Returns true as SQL Server suppports batch updates.
      */
@@ -40,6 +40,7 @@ import io.nflow.engine.internal.executor.WorkflowInstanceExecutor;
 import io.nflow.engine.internal.executor.WorkflowLifecycle;
 import io.nflow.engine.internal.storage.db.DatabaseInitializer;
 import io.nflow.engine.internal.storage.db.SQLVariants;
+import io.nflow.engine.internal.storage.db.StateVariableCodec;
 
 public class EngineModule extends AbstractModule {
 
@@ -99,6 +100,13 @@ public class EngineModule extends AbstractModule {
     return () -> engineConfiguration.nflowObjectMapper().get();
   }
 
+  @Provides
+  @NFlow
+  @Singleton
+  public StateVariableCodec nflowStateVariableCodec(Environment env) {
+    return engineConfiguration.nflowStateVariableCodec(env);
+  }
+
   @Provides
   @NFlow
   @Singleton
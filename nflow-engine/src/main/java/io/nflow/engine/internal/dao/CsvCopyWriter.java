@@ -0,0 +1,36 @@
+package io.nflow.engine.internal.dao;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes rows in the CSV format of the database COPY command. Null values are written as unquoted empty fields and all other
+ * values as quoted fields, so that empty strings and nulls can be told apart.
+ */
+class CsvCopyWriter implements Closeable {
+  private final Writer writer;
+
+  CsvCopyWriter(Writer writer) {
+    this.writer = writer;
+  }
+
+  void writeRow(Object... values) throws IOException {
+    for (int i = 0; i < values.length; ++i) {
+      if (i > 0) {
+        writer.write(',');
+      }
+      if (values[i] != null) {
+        writer.write('"');
+        writer.write(values[i].toString().replace("\"", "\"\""));
+        writer.write('"');
+      }
+    }
+    writer.write('\n');
+  }
+
+  @Override
+  public void close() throws IOException {
+    writer.close();
+  }
+}
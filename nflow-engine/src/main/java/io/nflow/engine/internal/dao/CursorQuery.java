@@ -0,0 +1,192 @@
+package io.nflow.engine.internal.dao;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Spliterators.AbstractSpliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.UncategorizedSQLException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.PreparedStatementCreatorFactory;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.SqlParameter;
+import org.springframework.jdbc.core.namedparam.NamedParameterUtils;
+import org.springframework.jdbc.core.namedparam.ParsedSql;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.jdbc.datasource.ConnectionHolder;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Reads the rows of a query with a forward-only cursor. The query is executed when the first row is read from the stream, and
+ * the rows are fetched from the database in batches of the fetch size, so that large results can be processed in constant
+ * memory. The result set, statement and connection are released when all rows have been read or the stream is closed.
+ * Databases that use a cursor only inside a transaction (PostgreSQL) get a read-only transaction on connections that are in
+ * auto-commit mode. Queries that read related data while the cursor is open can use the connection of the cursor with
+ * {@link #runOnOpenConnection}. Not thread safe.
+ */
+final class CursorQuery<T> extends AbstractSpliterator<T> {
+
+  private static final Logger logger = getLogger(CursorQuery.class);
+
+  private final JdbcTemplate jdbc;
+  private final int fetchSize;
+  private final boolean transactionRequired;
+  private final String sql;
+  private final PreparedStatementCreator statementCreator;
+  private final RowMapper<T> rowMapper;
+  private Connection connection;
+  private PreparedStatement statement;
+  private ResultSet resultSet;
+  private boolean restoreAutoCommit;
+  private boolean closed;
+  private int rowNum;
+
+  private CursorQuery(JdbcTemplate jdbc, int fetchSize, boolean transactionRequired, String sql, SqlParameterSource params,
+      RowMapper<T> rowMapper) {
+    super(Long.MAX_VALUE, ORDERED);
+    this.jdbc = jdbc;
+    this.fetchSize = fetchSize;
+    this.transactionRequired = transactionRequired;
+    this.sql = sql;
+    this.rowMapper = rowMapper;
+    ParsedSql parsedSql = NamedParameterUtils.parseSqlStatement(sql);
+    String sqlToUse = NamedParameterUtils.substituteNamedParameters(parsedSql, params);
+    List<SqlParameter> declaredParameters = NamedParameterUtils.buildSqlParameterList(parsedSql, params);
+    Object[] values = NamedParameterUtils.buildValueArray(parsedSql, params, null);
+    this.statementCreator = new PreparedStatementCreatorFactory(sqlToUse, declaredParameters).newPreparedStatementCreator(values);
+  }
+
+  /**
+   * Create a query with named parameters. The query is not executed before rows are read from its stream.
+   *
+   * @param <T> The row type.
+   * @param jdbc The JDBC template that provides the data source and exception translation.
+   * @param fetchSize The number of rows to fetch from the database at a time.
+   * @param transactionRequired True if the database uses a cursor only inside a transaction.
+   * @param sql The query.
+   * @param params The query parameters.
+   * @param rowMapper The mapper for the rows.
+   * @return The query.
+   */
+  static <T> CursorQuery<T> of(JdbcTemplate jdbc, int fetchSize, boolean transactionRequired, String sql,
+      SqlParameterSource params, RowMapper<T> rowMapper) {
+    return new CursorQuery<>(jdbc, fetchSize, transactionRequired, sql, params, rowMapper);
+  }
+
+  /**
+   * Return a lazy stream of the rows of the query.
+   *
+   * @return The rows. Closing the stream releases the database resources if not all rows were read.
+   */
+  Stream<T> stream() {
+    return StreamSupport.stream(this, false).onClose(this::close);
+  }
+
+  /**
+   * Run the action with the connection of the first open query bound to the current thread, so that JDBC templates used by
+   * the action read from the same connection instead of borrowing another connection from the pool while the cursor is open.
+   * The action is run as such when none of the queries is open, or when the thread already has a connection bound, for example
+   * by a surrounding transaction.
+   *
+   * @param queries The queries.
+   * @param action The action.
+   */
+  static void runOnOpenConnection(Collection<? extends CursorQuery<?>> queries, Runnable action) {
+    for (CursorQuery<?> query : queries) {
+      if (query.connection != null && !query.closed) {
+        query.runOnConnection(action);
+        return;
+      }
+    }
+    action.run();
+  }
+
+  private void runOnConnection(Runnable action) {
+    DataSource dataSource = jdbc.getDataSource();
+    if (TransactionSynchronizationManager.hasResource(dataSource)) {
+      action.run();
+      return;
+    }
+    TransactionSynchronizationManager.bindResource(dataSource, new ConnectionHolder(connection));
+    try {
+      action.run();
+    } finally {
+      TransactionSynchronizationManager.unbindResource(dataSource);
+    }
+  }
+
+  @Override
+  public boolean tryAdvance(Consumer<? super T> action) {
+    if (closed) {
+      return false;
+    }
+    T row;
+    try {
+      if (resultSet == null) {
+        open();
+      }
+      if (!resultSet.next()) {
+        close();
+        return false;
+      }
+      row = rowMapper.mapRow(resultSet, rowNum++);
+    } catch (SQLException e) {
+      close();
+      throw translate(e);
+    }
+    action.accept(row);
+    return true;
+  }
+
+  private void open() throws SQLException {
+    DataSource dataSource = jdbc.getDataSource();
+    connection = DataSourceUtils.getConnection(dataSource);
+    if (transactionRequired && connection.getAutoCommit()) {
+      connection.setAutoCommit(false);
+      restoreAutoCommit = true;
+    }
+    statement = statementCreator.createPreparedStatement(connection);
+    statement.setFetchSize(fetchSize);
+    resultSet = statement.executeQuery();
+  }
+
+  void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    JdbcUtils.closeResultSet(resultSet);
+    JdbcUtils.closeStatement(statement);
+    if (connection != null) {
+      if (restoreAutoCommit) {
+        try {
+          connection.rollback();
+          connection.setAutoCommit(true);
+        } catch (SQLException e) {
+          logger.warn("Failed to end read-only transaction of cursor query", e);
+        }
+      }
+      DataSourceUtils.releaseConnection(connection, jdbc.getDataSource());
+    }
+  }
+
+  private DataAccessException translate(SQLException e) {
+    DataAccessException translated = jdbc.getExceptionTranslator().translate("CursorQuery", sql, e);
+    return translated != null ? translated : new UncategorizedSQLException("CursorQuery", sql, e);
+  }
+}
@@ -0,0 +1,154 @@
+package io.nflow.engine.internal.dao;
+
+import static java.lang.Long.MAX_VALUE;
+import static java.lang.Math.min;
+import static org.joda.time.DateTimeUtils.currentTimeMillis;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.function.Supplier;
+
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.springframework.core.env.Environment;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import io.nflow.engine.config.NFlow;
+import io.nflow.engine.config.db.DatabaseConfiguration.NotificationConnectionFactory;
+import io.nflow.engine.internal.storage.db.SQLVariants;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+/**
+ * Wakes up the dispatchers of the executor group using database notifications (PostgreSQL LISTEN/NOTIFY). When notifications
+ * are disabled or not supported by the database, waiting for notifications falls back to sleeping.
+ */
+@Component
+@Singleton
+public class DispatcherNotificationDao {
+
+  static final String CHANNEL = "nflow_dispatcher";
+  private static final Logger logger = getLogger(DispatcherNotificationDao.class);
+  private static final long MAX_WAIT_CHUNK_MILLIS = 1000;
+
+  private final JdbcTemplate jdbc;
+  private final SQLVariants sqlVariants;
+  private final ExecutorDao executorInfo;
+  private final NotificationConnectionFactory connectionFactory;
+  private final boolean enabled;
+  private final long fallbackSleepMillis;
+  private Connection listenerConnection;
+  private long nextNotifiedActivation = MAX_VALUE;
+
+  @Inject
+  public DispatcherNotificationDao(SQLVariants sqlVariants, @NFlow JdbcTemplate nflowJdbcTemplate, ExecutorDao executorDao,
+      @NFlow NotificationConnectionFactory nflowNotificationConnectionFactory, Environment env) {
+    this.sqlVariants = sqlVariants;
+    this.jdbc = nflowJdbcTemplate;
+    this.executorInfo = executorDao;
+    this.connectionFactory = nflowNotificationConnectionFactory;
+    boolean notificationsRequested = env.getRequiredProperty("nflow.dispatcher.notify.enabled", Boolean.class);
+    if (notificationsRequested && !sqlVariants.hasNotifications()) {
+      logger.warn("Dispatcher notifications are not supported by the database, using polling only");
+    }
+    this.enabled = notificationsRequested && sqlVariants.hasNotifications();
+    this.fallbackSleepMillis = env.getRequiredProperty("nflow.dispatcher.notify.fallback.sleep.ms", Long.class);
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Notify the dispatchers of the executor group that a workflow instance becomes executable at given time. Activations that
+   * are further in the future than the fallback polling interval are not notified, as the dispatchers find them by polling.
+   *
+   * @param activation The next activation time of the workflow instance.
+   */
+  public void notifyDispatchers(DateTime activation) {
+    if (!enabled || activation == null) {
+      return;
+    }
+    long activationMillis = activation.getMillis();
+    if (activationMillis > currentTimeMillis() + fallbackSleepMillis) {
+      return;
+    }
+    try {
+      jdbc.query(sqlVariants.notify(CHANNEL), rs -> null, executorInfo.getExecutorGroup() + ":" + activationMillis);
+    } catch (DataAccessException e) {
+      logger.warn("Failed to notify dispatchers", e);
+    }
+  }
+
+  /**
+   * Block until a notified workflow instance becomes executable, the fallback polling interval expires or abort is
+   * requested. Must be called only from the dispatcher thread.
+   *
+   * @param abortRequested Supplier that returns true when waiting should be aborted.
+   * @throws InterruptedException If the thread is interrupted while waiting.
+   */
+  public void waitForWakeup(Supplier<Boolean> abortRequested) throws InterruptedException {
+    long deadline = currentTimeMillis() + fallbackSleepMillis;
+    while (!abortRequested.get()) {
+      long now = currentTimeMillis();
+      if (nextNotifiedActivation <= now) {
+        nextNotifiedActivation = MAX_VALUE;
+        return;
+      }
+      long timeout = min(deadline, nextNotifiedActivation) - now;
+      if (timeout <= 0) {
+        return;
+      }
+      if (!receiveNotifications(min(timeout, MAX_WAIT_CHUNK_MILLIS))) {
+        return;
+      }
+    }
+  }
+
+  @SuppressFBWarnings(value = "MDM_THREAD_YIELD", justification = "Sleeping is intentional when listening fails")
+  private boolean receiveNotifications(long timeoutMillis) throws InterruptedException {
+    try {
+      if (listenerConnection == null) {
+        listenerConnection = connectionFactory.getConnection();
+        sqlVariants.listen(listenerConnection, CHANNEL);
+        logger.info("Listening to dispatcher notifications");
+        // notifications may have been missed while not listening
+        return false;
+      }
+      String groupPrefix = executorInfo.getExecutorGroup() + ":";
+      for (String payload : sqlVariants.getNotifications(listenerConnection, (int) timeoutMillis)) {
+        if (payload != null && payload.startsWith(groupPrefix)) {
+          try {
+            nextNotifiedActivation = min(nextNotifiedActivation, Long.parseLong(payload.substring(groupPrefix.length())));
+          } catch (@SuppressWarnings("unused") NumberFormatException e) {
+            logger.debug("Ignoring invalid dispatcher notification {}", payload);
+          }
+        }
+      }
+      return true;
+    } catch (SQLException | RuntimeException e) {
+      logger.warn("Failed to receive dispatcher notifications, reconnecting", e);
+      close();
+      Thread.sleep(timeoutMillis);
+      return true;
+    }
+  }
+
+  /**
+   * Release the connection used for listening to notifications.
+   */
+  public void close() {
+    if (listenerConnection != null) {
+      try {
+        listenerConnection.close();
+      } catch (SQLException e) {
+        logger.warn("Failed to close dispatcher notification connection", e);
+      }
+      listenerConnection = null;
+    }
+  }
+}
@@ -16,6 +16,7 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.Collection;
 import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.atomic.AtomicReference;
 
 import jakarta.inject.Inject;
@@ -56,6 +57,13 @@ public class ExecutorDao {
   final int timeoutSeconds;
   private int executorId = -1;
   private final int hostMaxLength;
+  private final boolean shardedPolling;
+  /**
+   * The number of shard buckets. Each workflow instance gets a random bucket when it is inserted, and the buckets are divided
+   * to contiguous ranges between the live executors.
+   */
+  static final int SHARD_BUCKETS = 1024;
+  private volatile String pollingShardCondition;
 
   @Inject
   public ExecutorDao(SQLVariants sqlVariants, @NFlow JdbcTemplate nflowJdbcTemplate, Environment env) {
@@ -66,6 +74,7 @@ public class ExecutorDao {
     this.timeoutSeconds = env.getRequiredProperty("nflow.executor.timeout.seconds", Integer.class);
     this.keepaliveIntervalSeconds = env.getRequiredProperty("nflow.executor.keepalive.seconds", Integer.class);
     this.hostMaxLength = env.getProperty("nflow.executor.host.length", Integer.class, -1);
+    this.shardedPolling = env.getRequiredProperty("nflow.dispatcher.sharded.enabled", Boolean.class);
   }
 
   private static String createWhereCondition(String group) {
@@ -78,9 +87,38 @@ public class ExecutorDao {
     }
     nextUpdate.set(now().plusSeconds(keepaliveIntervalSeconds));
     updateActiveTimestamp();
+    if (shardedPolling) {
+      updatePollingShard();
+    }
     return true;
   }
 
+  /**
+   * Returns the SQL condition that limits polling to the workflow instances in the shard of this executor. The shard buckets
+   * of the workflow instances are divided to as many contiguous ranges as there are live executors in the executor group, and
+   * the ranges are assigned to the executors in executor id order. The shard bucket is included in the polling index. The
+   * assignment is updated on every keepalive update, so that the shards are rebalanced when executors join or expire.
+   *
+   * @return The shard condition, or null if sharded polling is disabled or this is the only live executor.
+   */
+  public String getPollingShardCondition() {
+    return pollingShardCondition;
+  }
+
+  void updatePollingShard() {
+    List<Integer> liveExecutorIds = jdbc.queryForList("select id from nflow_executor where " + getExecutorGroupCondition()
+        + " and stopped is null and " + sqlVariants.dateLtEqDiff("current_timestamp", "expires") + " order by id asc",
+        Integer.class);
+    int shard = liveExecutorIds.indexOf(getExecutorId());
+    int shards = liveExecutorIds.size();
+    String condition = shard < 0 || shards < 2 ? null
+        : "shard_bucket between " + shard * SHARD_BUCKETS / shards + " and " + ((shard + 1) * SHARD_BUCKETS / shards - 1);
+    if (!Objects.equals(condition, pollingShardCondition)) {
+      logger.info("Polling shard {} of {} live executors.", shard, liveExecutorIds.size());
+    }
+    pollingShardCondition = condition;
+  }
+
   public String getExecutorGroup() {
     return executorGroup;
   }
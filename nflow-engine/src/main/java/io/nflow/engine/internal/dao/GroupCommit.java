@@ -0,0 +1,138 @@
+package io.nflow.engine.internal.dao;
+
+import static java.lang.Thread.currentThread;
+import static org.joda.time.DateTimeUtils.currentTimeMillis;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Writes items from concurrent threads to the database in shared transactions. The first thread that submits an item to an
+ * empty group writes the items of all threads in the group in one transaction with the group writer, typically with JDBC
+ * batch updates. When no other group is being committed, the items are written immediately. Otherwise the thread waits until
+ * the other groups are committed, the group becomes full or the group commit window expires, so that items submitted
+ * meanwhile are committed in the same transaction. The other threads block until the group is committed. If the shared
+ * transaction fails, the items are retried in separate transactions with the item writer so that only the failing items
+ * fail.
+ *
+ * @param <T> The type of the items.
+ */
+class GroupCommit<T> {
+
+  private static final Logger logger = getLogger(GroupCommit.class);
+
+  private final TransactionTemplate transaction;
+  private final Consumer<List<T>> groupWriter;
+  private final Consumer<T> itemWriter;
+  private final long windowMillis;
+  private final int maxSize;
+  private final Object lock = new Object();
+  private List<Work<T>> group = new ArrayList<>();
+  private int committingGroups;
+
+  GroupCommit(TransactionTemplate transaction, Consumer<List<T>> groupWriter, Consumer<T> itemWriter, long windowMillis,
+      int maxSize) {
+    this.transaction = transaction;
+    this.groupWriter = groupWriter;
+    this.itemWriter = itemWriter;
+    this.windowMillis = windowMillis;
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Write the item in a transaction shared with items submitted by other threads. Blocks until the transaction is committed.
+   *
+   * @param item The item to write.
+   */
+  void execute(T item) {
+    Work<T> work = new Work<>(item);
+    boolean leader;
+    synchronized (lock) {
+      group.add(work);
+      leader = group.size() == 1;
+      if (group.size() >= maxSize) {
+        lock.notifyAll();
+      }
+    }
+    if (leader) {
+      commit(collectGroup());
+    }
+    try {
+      work.result.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  private List<Work<T>> collectGroup() {
+    synchronized (lock) {
+      long deadline = currentTimeMillis() + windowMillis;
+      long remaining;
+      while (committingGroups > 0 && group.size() < maxSize && (remaining = deadline - currentTimeMillis()) > 0) {
+        try {
+          lock.wait(remaining);
+        } catch (@SuppressWarnings("unused") InterruptedException e) {
+          // commit immediately, the interrupt is handled by the caller
+          currentThread().interrupt();
+          break;
+        }
+      }
+      List<Work<T>> collected = group;
+      group = new ArrayList<>();
+      committingGroups++;
+      return collected;
+    }
+  }
+
+  private void commit(List<Work<T>> works) {
+    try {
+      List<T> items = new ArrayList<>(works.size());
+      works.forEach(work -> items.add(work.item));
+      transaction.executeWithoutResult(status -> groupWriter.accept(items));
+      works.forEach(work -> work.result.complete(null));
+    } catch (RuntimeException e) {
+      if (works.size() == 1) {
+        works.get(0).result.completeExceptionally(e);
+        return;
+      }
+      logger.debug("Group commit of {} items failed, committing them separately", works.size(), e);
+      for (Work<T> work : works) {
+        try {
+          transaction.executeWithoutResult(status -> itemWriter.accept(work.item));
+          work.result.complete(null);
+        } catch (RuntimeException ex) {
+          work.result.completeExceptionally(ex);
+        }
+      }
+    } finally {
+      for (Work<T> work : works) {
+        if (!work.result.isDone()) {
+          work.result.completeExceptionally(new IllegalStateException("Group commit failed"));
+        }
+      }
+      synchronized (lock) {
+        committingGroups--;
+        lock.notifyAll();
+      }
+    }
+  }
+
+  private static class Work<T> {
+    final T item;
+    final CompletableFuture<Void> result = new CompletableFuture<>();
+
+    Work(T item) {
+      this.item = item;
+    }
+  }
+}
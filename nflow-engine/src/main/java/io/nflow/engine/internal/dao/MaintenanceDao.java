@@ -9,19 +9,26 @@ import static java.util.stream.Collectors.joining;
 import static java.util.stream.Stream.generate;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.apache.commons.lang3.StringUtils.join;
+import static org.joda.time.DateTime.now;
+import static org.joda.time.DateTimeZone.UTC;
 import static org.slf4j.LoggerFactory.getLogger;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import jakarta.inject.Inject;
 import jakarta.inject.Named;
 
 import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
 import org.slf4j.Logger;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.transaction.annotation.Transactional;
@@ -38,6 +45,10 @@ public class MaintenanceDao {
   private final ExecutorDao executorDao;
   private final NamedParameterJdbcTemplate namedJdbc;
 
+  private static final int BLOB_REFERENCE_SCAN_RANGE = 10000;
+  private static final DateTimeFormatter ARCHIVE_PARTITION_SUFFIX = DateTimeFormat.forPattern("'_p'yyyyMM").withZoneUTC();
+  private final Set<String> createdArchivePartitions = ConcurrentHashMap.newKeySet();
+  private Boolean archivePartitioned;
   private String workflowColumns;
   private String actionColumns;
   private String stateColumns;
@@ -73,11 +84,23 @@ public class MaintenanceDao {
   }
 
   public List<Long> getOldWorkflowIds(TableType type, DateTime before, int maxWorkflows, Set<String> workflowTypes) {
+    return getOldWorkflowIds(type, before, maxWorkflows, workflowTypes, 0, 0, 1);
+  }
+
+  public List<Long> getOldWorkflowIds(TableType type, DateTime before, int maxWorkflows, Set<String> workflowTypes, long afterId,
+      int shard, int shards) {
     StringBuilder sql = new StringBuilder("select id from ").append(WORKFLOW.tableFor(type)).append(" where ")
         .append(executorDao.getExecutorGroupCondition()).append(" and next_activation is null and ")
         .append(sqlVariants.dateLtEqDiff("modified", "?"));
+    if (shards > 1) {
+      sql.append(" and ").append(sqlVariants.mod("id", shards)).append(" = ").append(shard);
+    }
     List<Object> args = new ArrayList<>();
     args.add(sqlVariants.toTimestampObject(before));
+    if (afterId > 0) {
+      sql.append(" and id > ?");
+      args.add(afterId);
+    }
     if (!workflowTypes.isEmpty()) {
       sql.append(" and type in (").append(generate(() -> "?").limit(workflowTypes.size()).collect(joining(","))).append(')');
       args.addAll(workflowTypes);
@@ -118,6 +141,108 @@ public class MaintenanceDao {
     return deletedInstances;
   }
 
+  /**
+   * Return those of the given state variable blob references that are stored in the main or archive tables. The state tables
+   * are scanned in workflow id ranges using the primary key, so that each query reads a bounded number of rows and only the
+   * given references are kept in memory.
+   *
+   * @param referencePrefix The prefix of the stored values that refer to blobs.
+   * @param references The blob references to find.
+   * @return The references that were found.
+   */
+  public Set<String> getReferredStateVariableBlobs(String referencePrefix, Set<String> references) {
+    Set<String> referred = new HashSet<>();
+    for (TableType type : TableType.values()) {
+      String table = STATE.tableFor(type);
+      long[] idRange = jdbc.queryForObject("select min(workflow_id), max(workflow_id) from " + table,
+          (rs, rowNum) -> new long[] { rs.getLong(1), rs.getLong(2) });
+      String sql = "select state_value from " + table + " where workflow_id >= ? and workflow_id < ? and state_value "
+          + sqlVariants.caseSensitiveLike() + " ?";
+      for (long from = idRange[0]; from <= idRange[1] && referred.size() < references.size(); from += BLOB_REFERENCE_SCAN_RANGE) {
+        jdbc.query(sql, (RowCallbackHandler) rs -> {
+          String value = rs.getString(1);
+          if (references.contains(value)) {
+            referred.add(value);
+          }
+        }, from, from + BLOB_REFERENCE_SCAN_RANGE, referencePrefix + "%");
+      }
+    }
+    return referred;
+  }
+
+  /**
+   * Return true if the archive tables are partitioned by the archiving time.
+   */
+  public boolean isArchivePartitioned() {
+    if (archivePartitioned == null) {
+      archivePartitioned = sqlVariants.hasTablePartitions()
+          && jdbc.queryForObject(sqlVariants.isPartitionedTable(), Integer.class, WORKFLOW.archive) > 0;
+    }
+    return archivePartitioned;
+  }
+
+  /**
+   * Create the monthly archive partitions of the previous, current and next month, if the archive tables are partitioned and
+   * the partitions have not been created by this instance yet. Called once before archiving workflows, outside the archiving
+   * transactions, so that the parallel archiving workers do not run the DDL statements concurrently.
+   */
+  public void createArchivePartitions() {
+    if (!isArchivePartitioned()) {
+      return;
+    }
+    DateTime month = now().withZone(UTC).withDayOfMonth(1).withTimeAtStartOfDay();
+    // the archiving time comes from the database clock, which may be in the previous or next month
+    for (int i = -1; i <= 1; i++) {
+      DateTime from = month.plusMonths(i);
+      String suffix = ARCHIVE_PARTITION_SUFFIX.print(from);
+      if (!createdArchivePartitions.contains(suffix)) {
+        for (NflowTable table : NflowTable.values()) {
+          jdbc.execute(sqlVariants.createRangePartition(table.archive, table.archive + suffix, from, from.plusMonths(1)));
+        }
+        createdArchivePartitions.add(suffix);
+      }
+    }
+  }
+
+  /**
+   * Drop the monthly archive partitions that only contain workflow instances archived before the given time. All workflow
+   * instances in the partitions are deleted, regardless of their type and executor group.
+   *
+   * @param before The time before which the workflow instances have been archived.
+   * @return The number of deleted workflow instances.
+   */
+  public int dropArchivePartitions(DateTime before) {
+    int deletedWorkflows = 0;
+    List<String> partitions = new ArrayList<>(jdbc.queryForList(sqlVariants.tablePartitions(), String.class, WORKFLOW.archive));
+    partitions.sort(null);
+    for (String partition : partitions) {
+      String suffix = partition.substring(WORKFLOW.archive.length());
+      DateTime from = parseArchivePartitionStart(suffix);
+      if (from == null || from.plusMonths(1).isAfter(before)) {
+        continue;
+      }
+      long start = currentTimeMillis();
+      Integer workflows = jdbc.queryForObject("select count(*) from " + partition, Integer.class);
+      // workflow partition is dropped last so that an interrupted drop is completed on the next run
+      jdbc.execute("drop table if exists " + STATE.archive + suffix);
+      jdbc.execute("drop table if exists " + ACTION.archive + suffix);
+      jdbc.execute("drop table if exists " + partition);
+      createdArchivePartitions.remove(suffix);
+      logger.info("Dropped archive partitions {} with {} workflow instances. Took {} ms.", suffix, workflows,
+          currentTimeMillis() - start);
+      deletedWorkflows += workflows;
+    }
+    return deletedWorkflows;
+  }
+
+  private DateTime parseArchivePartitionStart(String suffix) {
+    try {
+      return ARCHIVE_PARTITION_SUFFIX.parseDateTime(suffix);
+    } catch (@SuppressWarnings("unused") IllegalArgumentException e) {
+      return null;
+    }
+  }
+
   private String columnsFromMetadata(String tableName) {
     List<String> columnNames = jdbc.query("select * from " + tableName + " where 1 = 0", columnNamesExtractor);
     return join(columnNames, ",");
@@ -140,7 +265,7 @@ public class MaintenanceDao {
     if (maxActionId != null) {
       params.addValue("maxActionId", maxActionId);
       List<Long> referredActionIds = namedJdbc.queryForList(
-          "select distinct(max(action_id)) from nflow_workflow_state where workflow_id = :workflowId group by state_key", params,
+          "select distinct action_id from nflow_workflow_state where workflow_id = :workflowId and latest = 1", params,
           Long.class);
       String deleteStates = "delete from nflow_workflow_state where workflow_id = :workflowId and action_id <= :maxActionId";
       if (referredActionIds.isEmpty()) {
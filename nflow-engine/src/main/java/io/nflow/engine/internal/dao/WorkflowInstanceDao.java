@@ -9,27 +9,37 @@ import static io.nflow.engine.internal.dao.NflowTable.STATE;
 import static io.nflow.engine.internal.dao.NflowTable.WORKFLOW;
 import static io.nflow.engine.internal.dao.TableType.convertMainToArchive;
 import static io.nflow.engine.internal.dao.WorkflowInstanceDao.WorkflowInstanceRowMapper.ALL_WORKFLOW_COLUMNS;
+import static io.nflow.engine.internal.util.BatchingSpliterator.batched;
 import static io.nflow.engine.workflow.instance.WorkflowInstance.WorkflowInstanceStatus.created;
 import static io.nflow.engine.workflow.instance.WorkflowInstance.WorkflowInstanceStatus.executing;
 import static io.nflow.engine.workflow.instance.WorkflowInstance.WorkflowInstanceStatus.inProgress;
 import static io.nflow.engine.workflow.instance.WorkflowInstanceAction.WorkflowActionType.recovery;
+import static java.lang.Boolean.FALSE;
+import static java.lang.Boolean.TRUE;
 import static java.lang.Math.min;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Collections.emptyList;
+import static java.util.Comparator.naturalOrder;
+import static java.util.Collections.singletonList;
 import static java.util.Collections.sort;
 import static java.util.Optional.ofNullable;
 import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toList;
-import static java.util.stream.Stream.concat;
 import static java.util.stream.Stream.empty;
+import static java.util.stream.Stream.generate;
 import static org.apache.commons.lang3.StringUtils.abbreviate;
 import static org.apache.commons.lang3.StringUtils.join;
 import static org.apache.commons.lang3.StringUtils.length;
 import static org.joda.time.DateTime.now;
 import static org.slf4j.LoggerFactory.getLogger;
+import static org.springframework.transaction.TransactionDefinition.PROPAGATION_REQUIRES_NEW;
 import static org.springframework.transaction.annotation.Propagation.MANDATORY;
 import static org.springframework.util.CollectionUtils.isEmpty;
 import static org.springframework.util.StringUtils.collectionToDelimitedString;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -39,24 +49,30 @@ import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.springframework.core.env.Environment;
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.PreparedStatementCreator;
 import org.springframework.jdbc.core.ResultSetExtractor;
@@ -70,14 +86,19 @@ import org.springframework.stereotype.Component;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.Assert;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.nflow.engine.config.NFlow;
 import io.nflow.engine.internal.executor.InstanceInfo;
 import io.nflow.engine.internal.executor.WorkflowInstanceExecutor;
 import io.nflow.engine.internal.storage.db.SQLVariants;
+import io.nflow.engine.internal.storage.db.StateVariableCodec;
 import io.nflow.engine.model.ModelObject;
 import io.nflow.engine.service.WorkflowInstanceInclude;
 import io.nflow.engine.workflow.executor.StateVariableValueTooLongException;
@@ -87,6 +108,7 @@ import io.nflow.engine.workflow.instance.WorkflowInstance.WorkflowInstanceStatus
 import io.nflow.engine.workflow.instance.WorkflowInstanceAction;
 import io.nflow.engine.workflow.instance.WorkflowInstanceAction.WorkflowActionType;
 import io.nflow.engine.workflow.instance.WorkflowInstanceFactory;
+import io.nflow.engine.workflow.instance.WorkflowInstancePage;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
 
@@ -105,15 +127,29 @@ public class WorkflowInstanceDao {
   final JdbcTemplate jdbc;
   private final NamedParameterJdbcTemplate namedJdbc;
   private final TransactionTemplate transaction;
+  private final TransactionTemplate newTransaction;
   final ExecutorDao executorInfo;
   final SQLVariants sqlVariants;
   private final WorkflowInstanceExecutor workflowInstanceExecutor;
+  private final DispatcherNotificationDao dispatcherNotifications;
+  private final StateVariableCodec stateVariableCodec;
   private final long workflowInstanceQueryMaxResults;
   private final long workflowInstanceQueryMaxResultsDefault;
   private final long workflowInstanceQueryMaxActions;
   private final long workflowInstanceQueryMaxActionsDefault;
+  private final int workflowInstanceQueryFetchSize;
   private final int workflowInstanceTypeCacheSize;
+  private final int recoveryBatchSize;
+  private static final int INSERT_BATCH_SIZE = 1000;
+  private static final int[] UPDATE_WORKFLOW_INSTANCE_TYPES = {
+      Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.TIMESTAMP, Types.TIMESTAMP, Types.TIMESTAMP,
+      Types.INTEGER, Types.INTEGER, Types.VARCHAR, Types.TIMESTAMP, Types.INTEGER
+  };
+  private static final ObjectMapper stateVariablesMapper = new ObjectMapper();
   private final AtomicBoolean disableBatchUpdates = new AtomicBoolean();
+  private volatile boolean allShardsEmpty;
+  final AtomicBoolean claimOnInsert = new AtomicBoolean();
+  private final GroupCommit<ExecutionResult> groupCommit;
   AtomicInteger instanceStateTextLength = new AtomicInteger();
   AtomicInteger actionStateTextLength = new AtomicInteger();
   AtomicInteger stateVariableValueMaxLength = new AtomicInteger();
@@ -124,14 +160,18 @@ public class WorkflowInstanceDao {
   public WorkflowInstanceDao(SQLVariants sqlVariants, @NFlow JdbcTemplate nflowJdbcTemplate,
       @NFlow TransactionTemplate transactionTemplate, @NFlow NamedParameterJdbcTemplate nflowNamedParameterJdbcTemplate,
       ExecutorDao executorDao, WorkflowInstanceExecutor workflowInstanceExecutor, WorkflowInstanceFactory workflowInstanceFactory,
-      Environment env) {
+      DispatcherNotificationDao dispatcherNotificationDao, @NFlow StateVariableCodec stateVariableCodec, Environment env) {
 
     this.sqlVariants = sqlVariants;
     this.jdbc = nflowJdbcTemplate;
     this.transaction = transactionTemplate;
+    this.newTransaction = new TransactionTemplate(transactionTemplate.getTransactionManager(), transactionTemplate);
+    this.newTransaction.setPropagationBehavior(PROPAGATION_REQUIRES_NEW);
     this.namedJdbc = nflowNamedParameterJdbcTemplate;
     this.executorInfo = executorDao;
     this.workflowInstanceExecutor = workflowInstanceExecutor;
+    this.dispatcherNotifications = dispatcherNotificationDao;
+    this.stateVariableCodec = stateVariableCodec;
 
     this.workflowInstanceRowMapper = new WorkflowInstanceRowMapper(sqlVariants, workflowInstanceFactory);
     this.workflowInstanceActionRowMapper = new WorkflowInstanceActionRowMapper(sqlVariants);
@@ -142,11 +182,23 @@ public class WorkflowInstanceDao {
     workflowInstanceQueryMaxActions = env.getRequiredProperty("nflow.workflow.instance.query.max.actions", Long.class);
     workflowInstanceQueryMaxActionsDefault = env.getRequiredProperty("nflow.workflow.instance.query.max.actions.default",
         Long.class);
+    workflowInstanceQueryFetchSize = env.getRequiredProperty("nflow.workflow.instance.query.fetch.size", Integer.class);
     disableBatchUpdates.set(env.getRequiredProperty("nflow.db.disable_batch_updates", Boolean.class));
     if (disableBatchUpdates.get()) {
       logger.info("nFlow DB batch updates are disabled (system property nflow.db.disable_batch_updates=true)");
     }
+    claimOnInsert.set(env.getRequiredProperty("nflow.dispatcher.claim.on.insert", Boolean.class));
+    if (env.getRequiredProperty("nflow.executor.groupCommit.enabled", Boolean.class)) {
+      long windowMillis = env.getRequiredProperty("nflow.executor.groupCommit.window.ms", Long.class);
+      int maxSize = env.getRequiredProperty("nflow.executor.groupCommit.maxSize", Integer.class);
+      logger.info("Group commit of state execution results enabled, window {} ms, max size {}", windowMillis, maxSize);
+      groupCommit = new GroupCommit<>(transactionTemplate, this::updateWorkflowInstancesAfterExecution,
+          this::updateWorkflowInstanceAfterExecution, windowMillis, maxSize);
+    } else {
+      groupCommit = null;
+    }
     workflowInstanceTypeCacheSize = env.getRequiredProperty("nflow.db.workflowInstanceType.cacheSize", Integer.class);
+    recoveryBatchSize = env.getRequiredProperty("nflow.executor.recovery.batchSize", Integer.class);
     instanceStateTextLength.set(env.getProperty("nflow.workflow.instance.state.text.length", Integer.class, -1));
     actionStateTextLength.set(env.getProperty("nflow.workflow.action.state.text.length", Integer.class, -1));
     stateVariableValueMaxLength.set(env.getProperty("nflow.workflow.state.variable.value.length", Integer.class, -1));
@@ -176,35 +228,165 @@ public class WorkflowInstanceDao {
   }
 
   public long insertWorkflowInstance(WorkflowInstance instance) {
+    return insertAndClaimWorkflowInstance(instance, false);
+  }
+
+  /**
+   * Insert the workflow instance unless a workflow instance with the same type and external id already exists. The conflict is
+   * resolved with the native conditional insert of the database instead of a failing insert, so retried inserts do not raise
+   * or log exceptions.
+   *
+   * @param instance The workflow instance to insert.
+   * @return The id of the inserted or existing workflow instance.
+   */
+  public long insertWorkflowInstanceOrGetExisting(WorkflowInstance instance) {
+    long id = insertAndClaimWorkflowInstance(instance, true);
+    if (id == -1) {
+      return getExistingWorkflowInstanceId(instance);
+    }
+    return id;
+  }
+
+  /**
+   * Insert the workflow instances that do not already exist in one transaction, resolving conflicts like
+   * insertWorkflowInstanceOrGetExisting. The instances are inserted one by one. The instances are not claimed on insert.
+   *
+   * @param instances The workflow instances to insert.
+   * @return The ids of the inserted or existing workflow instances, in the order of the instances.
+   */
+  public List<Long> insertWorkflowInstancesOrGetExisting(List<WorkflowInstance> instances) {
+    if (instances.isEmpty()) {
+      return emptyList();
+    }
+    List<Long> ids = transaction.execute(status -> {
+      List<Long> insertedIds = new ArrayList<>(instances.size());
+      for (WorkflowInstance instance : instances) {
+        long id = insertWorkflowInstance(instance, false, true);
+        insertedIds.add(id == -1 ? getExistingWorkflowInstanceId(instance) : id);
+      }
+      return insertedIds;
+    });
+    notifyInsertedInstances(instances);
+    return ids;
+  }
+
+  /**
+   * Insert the workflow instance, claiming it for the local executor when it is immediately executable and the executor has
+   * free capacity. The executor capacity is reserved before the insert and released if the instance is not inserted or the
+   * transaction is rolled back, so the claimed instances never exceed the capacity of the executor.
+   */
+  private long insertAndClaimWorkflowInstance(WorkflowInstance instance, boolean ifNotExists) {
+    boolean claim = reserveClaimOnInsert(instance);
     long id;
+    try {
+      id = insertWorkflowInstance(instance, claim, ifNotExists);
+    } catch (RuntimeException e) {
+      if (claim) {
+        workflowInstanceExecutor.releaseClaimReservation();
+      }
+      throw e;
+    }
+    if (id == -1) {
+      if (claim) {
+        workflowInstanceExecutor.releaseClaimReservation();
+      }
+      return id;
+    }
+    afterInsert(instance, id, claim);
+    return id;
+  }
+
+  private long insertWorkflowInstance(WorkflowInstance instance, boolean claim, boolean ifNotExists) {
     if (sqlVariants.hasUpdateableCTE()) {
-      id = insertWorkflowInstanceWithCte(instance);
+      return insertWorkflowInstanceWithCte(instance, claim, ifNotExists);
+    }
+    return insertWorkflowInstanceWithTransaction(instance, claim, ifNotExists);
+  }
+
+  private long getExistingWorkflowInstanceId(WorkflowInstance instance) {
+    return jdbc.queryForObject("select id from nflow_workflow where external_id = ? and type = ? and executor_group = ?",
+        Long.class, instance.externalId, instance.type, executorInfo.getExecutorGroup());
+  }
+
+  private void afterInsert(WorkflowInstance instance, long id, boolean claim) {
+    if (claim) {
+      executeClaimedInstanceAfterCommit(id, instance);
     } else {
-      id = insertWorkflowInstanceWithTransaction(instance);
+      if (instance.nextActivation != null && instance.nextActivation.isBeforeNow()) {
+        workflowInstanceExecutor.wakeUpDispatcherIfNeeded();
+      }
+      dispatcherNotifications.notifyDispatchers(instance.nextActivation);
     }
-    if (instance.nextActivation != null && instance.nextActivation.isBeforeNow()) {
-      workflowInstanceExecutor.wakeUpDispatcherIfNeeded();
+  }
+
+  private boolean reserveClaimOnInsert(WorkflowInstance instance) {
+    return claimOnInsert.get() && (instance.status == created || instance.status == inProgress) && instance.nextActivation != null
+        && !instance.nextActivation.isAfterNow() && workflowInstanceExecutor.reserveClaimedInstance();
+  }
+
+  private void executeClaimedInstanceAfterCommit(long id, WorkflowInstance instance) {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCompletion(int status) {
+          if (status == STATUS_COMMITTED) {
+            executeClaimedInstance(id, instance);
+          } else {
+            workflowInstanceExecutor.releaseClaimReservation();
+          }
+        }
+      });
+    } else {
+      executeClaimedInstance(id, instance);
     }
-    return id;
   }
 
-  private long insertWorkflowInstanceWithCte(WorkflowInstance instance) {
+  private void executeClaimedInstance(long id, WorkflowInstance instance) {
+    short priority = instance.priority == null ? 0 : instance.priority;
+    if (!workflowInstanceExecutor.executeReservedInstance(id, priority, instance.nextActivation)) {
+      logger.debug("Executor not available for workflow instance {} claimed on insert, releasing it for polling", id);
+      releaseClaimedInstance(id, instance.status);
+    }
+  }
+
+  /**
+   * Release a workflow instance that was claimed on insert but could not be executed. The instance gets back the status it
+   * was inserted with, so a released instance looks the same as one that was never claimed. The release runs in a new
+   * transaction, because it is called after the completion of the inserting transaction, whose connection must not be used
+   * anymore.
+   */
+  private void releaseClaimedInstance(long id, WorkflowInstanceStatus originalStatus) {
+    newTransaction.executeWithoutResult(status -> jdbc.update("update nflow_workflow set executor_id = null, status = "
+        + sqlVariants.workflowStatus(originalStatus) + " where id = ? and executor_id = " + executorInfo.getExecutorId(), id));
+    dispatcherNotifications.notifyDispatchers(now());
+  }
+
+  private long insertWorkflowInstanceWithCte(WorkflowInstance instance, boolean claim, boolean ifNotExists) {
     try {
+      String insertSql = insertWorkflowInstanceSql(claim);
+      if (ifNotExists) {
+        insertSql = ofNullable(sqlVariants.insertOnConflictDoNothing(insertSql, "external_id, type, executor_group"))
+            .orElse(insertSql);
+      }
       StringBuilder sqlb = new StringBuilder(256);
-      sqlb.append("with wf as (").append(insertWorkflowInstanceSql()).append(" returning id)");
+      sqlb.append("with wf as (").append(insertSql).append(" returning id)");
       Object[] instanceValues = new Object[] { instance.type, instance.priority, instance.parentWorkflowId,
           instance.parentActionId, instance.businessKey, instance.externalId, executorInfo.getExecutorGroup(),
-          instance.status.name(), instance.state, abbreviate(instance.stateText, getInstanceStateTextLength()),
-          toTimestamp(instance.nextActivation), instance.signal.orElse(null) };
+          claim ? executing.name() : instance.status.name(), instance.state, abbreviate(instance.stateText, getInstanceStateTextLength()),
+          toTimestamp(instance.nextActivation), instance.signal.orElse(null), shardBucket() };
       int pos = instanceValues.length;
       Object[] args = Arrays.copyOf(instanceValues, pos + instance.stateVariables.size() * 2);
       for (Entry<String, String> variable : instance.stateVariables.entrySet()) {
         sqlb.append(", ins").append(pos).append(" as (").append(insertWorkflowInstanceStateSql())
             .append(" select wf.id,0,?,? from wf)");
         args[pos++] = variable.getKey();
-        args[pos++] = variable.getValue();
+        args[pos++] = stateVariableCodec.encode(variable.getValue());
       }
       sqlb.append(" select wf.id from wf");
+      if (ifNotExists) {
+        List<Long> ids = jdbc.queryForList(sqlb.toString(), Long.class, args);
+        return ids.isEmpty() ? -1 : ids.get(0);
+      }
       return jdbc.queryForObject(sqlb.toString(), Long.class, args);
     } catch (DuplicateKeyException e) {
       logger.warn("Failed to insert workflow instance", e);
@@ -216,44 +398,50 @@ public class WorkflowInstanceDao {
     return sqlVariants.useBatchUpdate() && !disableBatchUpdates.get();
   }
 
-  String insertWorkflowInstanceSql() {
-    return "insert into nflow_workflow(type, priority, parent_workflow_id, parent_action_id, business_key, external_id, "
-        + "executor_group, status, state, state_text, next_activation, workflow_signal) values (?, ?, ?, ?, ?, ?, ?, "
-        + sqlVariants.workflowStatus() + ", ?, ?, ?, ?)";
+  String insertWorkflowInstanceSql(boolean claim) {
+    return "insert into nflow_workflow(" + insertWorkflowInstanceColumns(claim) + ") values ("
+        + insertWorkflowInstanceValues(claim) + ")";
+  }
+
+  private String insertWorkflowInstanceIfNotExistsSql(boolean claim) {
+    return sqlVariants.insertWhereNotExists("nflow_workflow", insertWorkflowInstanceColumns(claim),
+        insertWorkflowInstanceValues(claim), "external_id = ? and type = ? and executor_group = ?");
+  }
+
+  private String insertWorkflowInstanceColumns(boolean claim) {
+    return "type, priority, parent_workflow_id, parent_action_id, business_key, external_id, executor_group, status, state, "
+        + "state_text, next_activation, workflow_signal, shard_bucket" + (claim ? ", executor_id" : "");
+  }
+
+  private String insertWorkflowInstanceValues(boolean claim) {
+    return "?, ?, ?, ?, ?, ?, ?, " + sqlVariants.workflowStatus() + ", ?, ?, ?, ?, ?"
+        + (claim ? ", " + executorInfo.getExecutorId() : "");
   }
 
   String insertWorkflowInstanceStateSql() {
     return "insert into nflow_workflow_state(workflow_id, action_id, state_key, state_value)";
   }
 
-  private long insertWorkflowInstanceWithTransaction(final WorkflowInstance instance) {
+  private long insertWorkflowInstanceWithTransaction(final WorkflowInstance instance, final boolean claim,
+      final boolean ifNotExists) {
+    String conditionalSql = ifNotExists ? insertWorkflowInstanceIfNotExistsSql(claim) : null;
     return transaction.execute(status -> {
       KeyHolder keyHolder = new GeneratedKeyHolder();
       try {
-        jdbc.update(new PreparedStatementCreator() {
+        int inserted = jdbc.update(new PreparedStatementCreator() {
           @Override
           @SuppressFBWarnings(value = "SQL_PREPARED_STATEMENT_GENERATED_FROM_NONCONSTANT_STRING",
               justification = "SQL is practically constant")
           public PreparedStatement createPreparedStatement(Connection connection) throws SQLException {
-            int p = 1;
             @SuppressWarnings("resource")
-            PreparedStatement ps = connection.prepareStatement(insertWorkflowInstanceSql(), new String[] { "id" });
+            PreparedStatement ps = connection.prepareStatement(
+                conditionalSql == null ? insertWorkflowInstanceSql(claim) : conditionalSql, new String[] { "id" });
             try {
-              ps.setString(p++, instance.type);
-              ps.setShort(p++, instance.priority);
-              ps.setObject(p++, instance.parentWorkflowId);
-              ps.setObject(p++, instance.parentActionId);
-              ps.setString(p++, instance.businessKey);
-              ps.setString(p++, instance.externalId);
-              ps.setString(p++, executorInfo.getExecutorGroup());
-              ps.setString(p++, instance.status.name());
-              ps.setString(p++, instance.state);
-              ps.setString(p++, abbreviate(instance.stateText, getInstanceStateTextLength()));
-              sqlVariants.setDateTime(ps, p++, instance.nextActivation);
-              if (instance.signal.isPresent()) {
-                ps.setInt(p++, instance.signal.get());
-              } else {
-                ps.setNull(p++, Types.INTEGER);
+              int p = setInsertWorkflowInstanceValues(ps, instance, claim);
+              if (conditionalSql != null) {
+                ps.setString(p++, instance.externalId);
+                ps.setString(p++, instance.type);
+                ps.setString(p++, executorInfo.getExecutorGroup());
               }
             } catch (Exception e) {
               ps.close();
@@ -262,8 +450,15 @@ public class WorkflowInstanceDao {
             return ps;
           }
         }, keyHolder);
+        if (inserted == 0) {
+          return -1L;
+        }
       } catch (DuplicateKeyException e) {
-        logger.warn("Failed to insert workflow instance", e);
+        if (ifNotExists) {
+          logger.debug("Workflow instance already exists, returning the existing instance");
+        } else {
+          logger.warn("Failed to insert workflow instance", e);
+        }
         return -1L;
       }
       long id = keyHolder.getKey().longValue();
@@ -272,10 +467,209 @@ public class WorkflowInstanceDao {
     });
   }
 
+  private int setInsertWorkflowInstanceValues(PreparedStatement ps, WorkflowInstance instance, boolean claim)
+      throws SQLException {
+    int p = 1;
+    ps.setString(p++, instance.type);
+    ps.setShort(p++, instance.priority);
+    ps.setObject(p++, instance.parentWorkflowId);
+    ps.setObject(p++, instance.parentActionId);
+    ps.setString(p++, instance.businessKey);
+    ps.setString(p++, instance.externalId);
+    ps.setString(p++, executorInfo.getExecutorGroup());
+    ps.setString(p++, claim ? executing.name() : instance.status.name());
+    ps.setString(p++, instance.state);
+    ps.setString(p++, abbreviate(instance.stateText, getInstanceStateTextLength()));
+    sqlVariants.setDateTime(ps, p++, instance.nextActivation);
+    if (instance.signal.isPresent()) {
+      ps.setInt(p++, instance.signal.get());
+    } else {
+      ps.setNull(p++, Types.INTEGER);
+    }
+    ps.setInt(p++, shardBucket());
+    return p;
+  }
+
+  private static int shardBucket() {
+    return ThreadLocalRandom.current().nextInt(ExecutorDao.SHARD_BUCKETS);
+  }
+
+  /**
+   * Insert the workflow instances and their initial state variables in one transaction. The instances are inserted with JDBC
+   * batch updates of at most 1000 instances when the database returns the generated ids of a batch, and one by one otherwise.
+   * The state variables of all instances are inserted with one batch update. The instances are not claimed on insert.
+   *
+   * @param instances The workflow instances to insert.
+   * @return The ids of the inserted workflow instances, in the order of the instances.
+   * @throws DuplicateKeyException If a workflow instance with the same type and external id already exists. No instances are
+   * inserted in that case.
+   */
+  public List<Long> insertWorkflowInstances(List<WorkflowInstance> instances) {
+    if (instances.isEmpty()) {
+      return emptyList();
+    }
+    List<Long> ids = transaction.execute(status -> {
+      List<Long> insertedIds = sqlVariants.hasBatchGeneratedKeys() ? insertWorkflowInstancesWithBatchUpdate(instances)
+          : insertWorkflowInstancesWithMultipleUpdates(instances);
+      insertInitialVariables(insertedIds, instances);
+      return insertedIds;
+    });
+    notifyInsertedInstances(instances);
+    return ids;
+  }
+
+  private void notifyInsertedInstances(List<WorkflowInstance> instances) {
+    DateTime firstActivation = instances.stream().map(instance -> instance.nextActivation).filter(Objects::nonNull)
+        .min(naturalOrder()).orElse(null);
+    if (firstActivation != null) {
+      if (firstActivation.isBeforeNow()) {
+        workflowInstanceExecutor.wakeUpDispatcherIfNeeded();
+      }
+      dispatcherNotifications.notifyDispatchers(firstActivation);
+    }
+  }
+
+  private List<Long> insertWorkflowInstancesWithBatchUpdate(List<WorkflowInstance> instances) {
+    return jdbc.execute((ConnectionCallback<List<Long>>) connection -> {
+      List<Long> ids = new ArrayList<>(instances.size());
+      try (PreparedStatement ps = connection.prepareStatement(insertWorkflowInstanceSql(false), new String[] { "id" })) {
+        for (int start = 0; start < instances.size(); start += INSERT_BATCH_SIZE) {
+          for (WorkflowInstance instance : instances.subList(start, min(start + INSERT_BATCH_SIZE, instances.size()))) {
+            setInsertWorkflowInstanceValues(ps, instance, false);
+            ps.addBatch();
+          }
+          ps.executeBatch();
+          try (ResultSet keys = ps.getGeneratedKeys()) {
+            while (keys.next()) {
+              ids.add(keys.getLong(1));
+            }
+          }
+        }
+      }
+      if (ids.size() != instances.size()) {
+        throw new IllegalStateException(
+            "Failed to insert workflow instances, expected " + instances.size() + " generated ids, got " + ids.size());
+      }
+      return ids;
+    });
+  }
+
+  private List<Long> insertWorkflowInstancesWithMultipleUpdates(List<WorkflowInstance> instances) {
+    List<Long> ids = new ArrayList<>(instances.size());
+    for (WorkflowInstance instance : instances) {
+      KeyHolder keyHolder = new GeneratedKeyHolder();
+      jdbc.update(connection -> {
+        PreparedStatement ps = connection.prepareStatement(insertWorkflowInstanceSql(false), new String[] { "id" });
+        try {
+          setInsertWorkflowInstanceValues(ps, instance, false);
+        } catch (SQLException e) {
+          ps.close();
+          throw e;
+        }
+        return ps;
+      }, keyHolder);
+      ids.add(keyHolder.getKey().longValue());
+    }
+    return ids;
+  }
+
+  private void insertInitialVariables(List<Long> ids, List<WorkflowInstance> instances) {
+    List<Object[]> variables = new ArrayList<>();
+    for (int i = 0; i < instances.size(); ++i) {
+      for (Entry<String, String> variable : instances.get(i).stateVariables.entrySet()) {
+        variables.add(new Object[] { ids.get(i), 0L, variable.getKey(), stateVariableCodec.encode(variable.getValue()) });
+      }
+    }
+    if (variables.isEmpty()) {
+      return;
+    }
+    String sql = insertWorkflowInstanceStateSql() + " values (?,?,?,?)";
+    if (useBatchUpdate()) {
+      jdbc.batchUpdate(sql, variables);
+    } else {
+      for (Object[] variable : variables) {
+        jdbc.update(sql, variable);
+      }
+    }
+  }
+
+  /**
+   * Load the workflow instances and their initial state variables with the database COPY command. The instances are streamed to
+   * a temporary staging table and moved to the workflow instance tables with one statement. Instances with the same type and
+   * external id as an existing instance, or as an earlier instance in the stream, are skipped. The instances are not claimed on
+   * insert. Supported only on PostgreSQL.
+   *
+   * @param instances The workflow instances to load.
+   * @return The number of inserted workflow instances.
+   * @throws UnsupportedOperationException If the database does not support the COPY command.
+   */
+  public int copyWorkflowInstances(Stream<WorkflowInstance> instances) {
+    if (!sqlVariants.hasCopyIn()) {
+      throw new UnsupportedOperationException("Loading workflow instances with the COPY command is supported only on PostgreSQL");
+    }
+    Integer inserted = transaction.execute(status -> {
+      jdbc.execute("create temporary table nflow_workflow_copy (seq bigint not null, type varchar(64), priority smallint, "
+          + "parent_workflow_id bigint, parent_action_id bigint, business_key varchar(64), external_id varchar(64), "
+          + "executor_group varchar(64), status workflow_status, state varchar(64), state_text varchar(128), "
+          + "next_activation timestamptz, workflow_signal int, state_variables jsonb) on commit drop");
+      jdbc.execute((ConnectionCallback<Void>) connection -> {
+        copyWorkflowInstancesToStagingTable(connection, instances);
+        return null;
+      });
+      return jdbc.queryForObject("with new_workflows as ("
+          + "select distinct on (external_id, type, executor_group) * from nflow_workflow_copy "
+          + "order by external_id, type, executor_group, seq), "
+          + "inserted as (insert into nflow_workflow (type, priority, parent_workflow_id, parent_action_id, business_key, "
+          + "external_id, executor_group, status, state, state_text, next_activation, workflow_signal, shard_bucket) "
+          + "select type, priority, parent_workflow_id, parent_action_id, business_key, external_id, executor_group, status, "
+          + "state, state_text, next_activation, workflow_signal, floor(random() * " + ExecutorDao.SHARD_BUCKETS + ") "
+          + "from new_workflows order by seq "
+          + "on conflict (external_id, type, executor_group) do nothing returning id, external_id, type, executor_group), "
+          + "inserted_state as (insert into nflow_workflow_state (workflow_id, action_id, state_key, state_value) "
+          + "select i.id, 0, v.key, v.value from inserted i join new_workflows w using (external_id, type, executor_group) "
+          + "cross join lateral jsonb_each_text(w.state_variables) v) "
+          + "select count(1) from inserted", Integer.class);
+    });
+    if (inserted != null && inserted > 0) {
+      workflowInstanceExecutor.wakeUpDispatcherIfNeeded();
+      dispatcherNotifications.notifyDispatchers(now());
+    }
+    return inserted == null ? 0 : inserted;
+  }
+
+  private void copyWorkflowInstancesToStagingTable(Connection connection, Stream<WorkflowInstance> instances)
+      throws SQLException {
+    String sql = "copy nflow_workflow_copy (seq, type, priority, parent_workflow_id, parent_action_id, business_key, "
+        + "external_id, executor_group, status, state, state_text, next_activation, workflow_signal, state_variables) "
+        + "from stdin with (format csv)";
+    try (CsvCopyWriter writer = new CsvCopyWriter(
+        new BufferedWriter(new OutputStreamWriter(sqlVariants.copyIn(connection, sql), UTF_8), 65536))) {
+      long seq = 0;
+      for (Iterator<WorkflowInstance> it = instances.iterator(); it.hasNext();) {
+        WorkflowInstance instance = it.next();
+        writer.writeRow(seq++, instance.type, instance.priority, instance.parentWorkflowId, instance.parentActionId,
+            instance.businessKey, instance.externalId, executorInfo.getExecutorGroup(), instance.status.name(), instance.state,
+            abbreviate(instance.stateText, getInstanceStateTextLength()), instance.nextActivation, instance.signal.orElse(null),
+            stateVariablesMapper.writeValueAsString(encodeStateVariables(instance.stateVariables)));
+      }
+    } catch (IOException e) {
+      throw new SQLException("Failed to copy workflow instances to the database", e);
+    }
+  }
+
+  private Map<String, String> encodeStateVariables(Map<String, String> stateVariables) {
+    Map<String, String> encoded = new LinkedHashMap<>();
+    stateVariables.forEach((key, value) -> encoded.put(key, stateVariableCodec.encode(value)));
+    return encoded;
+  }
+
   void insertVariables(final long id, final long actionId, Map<String, String> changedStateVariables) {
     if (changedStateVariables.isEmpty()) {
       return;
     }
+    if (actionId != 0) {
+      clearLatestVariables(id, changedStateVariables.keySet());
+    }
     if (useBatchUpdate()) {
       insertVariablesWithBatchUpdate(id, actionId, changedStateVariables);
     } else {
@@ -283,10 +677,22 @@ public class WorkflowInstanceDao {
     }
   }
 
+  private void clearLatestVariables(long id, Collection<String> stateKeys) {
+    List<Object> args = new ArrayList<>(stateKeys.size() + 1);
+    args.add(id);
+    args.addAll(stateKeys);
+    jdbc.update(clearLatestVariablesSql("= ?", stateKeys.size()), args.toArray());
+  }
+
+  private String clearLatestVariablesSql(String workflowIdCondition, int stateKeys) {
+    return "update nflow_workflow_state set latest = 0 where workflow_id " + workflowIdCondition
+        + " and latest = 1 and state_key in (" + generate(() -> "?").limit(stateKeys).collect(joining(",")) + ")";
+  }
+
   private void insertVariablesWithMultipleUpdates(final long id, final long actionId, Map<String, String> changedStateVariables) {
     for (Entry<String, String> entry : changedStateVariables.entrySet()) {
       int updated = jdbc.update(insertWorkflowInstanceStateSql() + " values (?,?,?,?)", id, actionId, entry.getKey(),
-          entry.getValue());
+          stateVariableCodec.encode(entry.getValue()));
       if (updated != 1) {
         throw new IllegalStateException("Failed to insert state variable " + entry.getKey());
       }
@@ -306,7 +712,7 @@ public class WorkflowInstanceDao {
             ps.setLong(1, id);
             ps.setLong(2, actionId);
             ps.setString(3, variable.getKey());
-            ps.setString(4, variable.getValue());
+            ps.setString(4, stateVariableCodec.encode(variable.getValue()));
             return true;
           }
         });
@@ -329,9 +735,25 @@ public class WorkflowInstanceDao {
     }
   }
 
-  @SuppressWarnings("null")
   public void updateWorkflowInstanceAfterExecution(WorkflowInstance instance, WorkflowInstanceAction action,
       List<WorkflowInstance> childWorkflows, List<WorkflowInstance> workflows, boolean createAction) {
+    updateWorkflowInstanceAfterExecution(instance, action, childWorkflows, workflows, createAction, true);
+  }
+
+  /**
+   * Save the results of a state execution.
+   *
+   * @param instance The updated workflow instance.
+   * @param action The action of the state execution.
+   * @param childWorkflows The new child workflow instances.
+   * @param workflows The new workflow instances.
+   * @param createAction True to insert the action even if no workflow instances are created and no state variables are changed.
+   * @param notifyDispatchers False to skip notifying the dispatchers of other executors about the next activation, when this
+   * executor executes the workflow instance at its next activation time from the activation timer.
+   */
+  @SuppressWarnings("null")
+  public void updateWorkflowInstanceAfterExecution(WorkflowInstance instance, WorkflowInstanceAction action,
+      List<WorkflowInstance> childWorkflows, List<WorkflowInstance> workflows, boolean createAction, boolean notifyDispatchers) {
     Assert.isTrue(action != null, "action can not be null");
     Assert.isTrue(childWorkflows != null, "childWorkflows can not be null");
     Assert.isTrue(workflows != null, "workflows can not be null");
@@ -340,46 +762,135 @@ public class WorkflowInstanceDao {
       logger.info("Forcing action creation because new workflow instances are created or state variables are changed.");
       createAction = true;
     }
-    if (createAction) {
-      if (sqlVariants.hasUpdateableCTE() && childWorkflows.isEmpty() && workflows.isEmpty()) {
-        updateWorkflowInstanceWithCTE(instance, action, changedStateVariables);
+    ExecutionResult result = new ExecutionResult(instance, action, childWorkflows, workflows, changedStateVariables,
+        createAction, notifyDispatchers);
+    if (groupCommit != null) {
+      groupCommit.execute(result);
+    } else {
+      updateWorkflowInstanceAfterExecution(result);
+    }
+  }
+
+  private void updateWorkflowInstanceAfterExecution(ExecutionResult result) {
+    if (result.createAction) {
+      if (sqlVariants.hasUpdateableCTE() && !result.createsWorkflows()) {
+        updateWorkflowInstanceWithCTE(result.instance, result.action, result.changedStateVariables, result.notifyDispatchers);
       } else {
-        updateWorkflowInstanceWithTransaction(instance, action, childWorkflows, workflows, changedStateVariables);
+        updateWorkflowInstanceWithTransaction(result.instance, result.action, result.childWorkflows, result.workflows,
+            result.changedStateVariables, result.notifyDispatchers);
       }
     } else {
-      updateWorkflowInstance(instance);
+      updateWorkflowInstance(result.instance, result.notifyDispatchers);
+    }
+  }
+
+  /**
+   * Save the state execution results of a group commit in the current transaction. The workflow instance updates, the
+   * actions and the state variables of the group are written with one JDBC batch update per statement. Results that create new
+   * workflow instances are saved separately, because the new instances refer to the inserted action.
+   */
+  void updateWorkflowInstancesAfterExecution(List<ExecutionResult> results) {
+    if (!useBatchUpdate()) {
+      results.forEach(this::updateWorkflowInstanceAfterExecution);
+      return;
+    }
+    List<ExecutionResult> batched = new ArrayList<>(results.size());
+    for (ExecutionResult result : results) {
+      if (result.createsWorkflows()) {
+        updateWorkflowInstanceAfterExecution(result);
+      } else {
+        batched.add(result);
+      }
+    }
+    if (batched.isEmpty()) {
+      return;
+    }
+    int[] updateStatus = jdbc.batchUpdate(updateWorkflowInstanceSql(),
+        batched.stream().map(result -> updateWorkflowInstanceArgs(result.instance)).collect(toList()),
+        UPDATE_WORKFLOW_INSTANCE_TYPES);
+    List<ExecutionResult> withActions = new ArrayList<>(batched.size());
+    DateTime firstActivation = null;
+    for (int i = 0; i < batched.size(); ++i) {
+      WorkflowInstance instance = batched.get(i).instance;
+      if (updateStatus[i] == 0) {
+        logger.warn(
+            "Updating workflow instance {} did not update any rows in the database, instance may have been recovered by another executor.",
+            instance.id);
+        continue;
+      }
+      if (batched.get(i).createAction) {
+        withActions.add(batched.get(i));
+      }
+      if (batched.get(i).notifyDispatchers && instance.status != executing && instance.nextActivation != null
+          && (firstActivation == null || instance.nextActivation.isBefore(firstActivation))) {
+        firstActivation = instance.nextActivation;
+      }
+    }
+    insertActionsAndVariables(withActions);
+    dispatcherNotifications.notifyDispatchers(firstActivation);
+  }
+
+  private void insertActionsAndVariables(List<ExecutionResult> results) {
+    if (results.isEmpty()) {
+      return;
+    }
+    List<WorkflowInstanceAction> actions = results.stream().map(result -> result.action).collect(toList());
+    List<Long> actionIds = sqlVariants.hasBatchGeneratedKeys() ? insertWorkflowInstanceActionsWithBatchUpdate(actions)
+        : actions.stream().map(this::insertWorkflowInstanceAction).collect(toList());
+    List<Object[]> clearedVariables = new ArrayList<>();
+    List<Object[]> variables = new ArrayList<>();
+    for (int i = 0; i < results.size(); ++i) {
+      long workflowId = results.get(i).instance.id;
+      for (Entry<String, String> variable : results.get(i).changedStateVariables.entrySet()) {
+        clearedVariables.add(new Object[] { workflowId, variable.getKey() });
+        variables.add(new Object[] { workflowId, actionIds.get(i), variable.getKey(), stateVariableCodec.encode(variable.getValue()) });
+      }
+    }
+    if (!variables.isEmpty()) {
+      jdbc.batchUpdate(clearLatestVariablesSql("= ?", 1), clearedVariables);
+      int[] updateStatus = jdbc.batchUpdate(insertWorkflowInstanceStateSql() + " values (?,?,?,?)", variables);
+      for (int i = 0; i < updateStatus.length; ++i) {
+        if (updateStatus[i] != 1 && updateStatus[i] != Statement.SUCCESS_NO_INFO) {
+          throw new IllegalStateException("Failed to insert state variable " + variables.get(i)[2]);
+        }
+      }
     }
   }
 
   public int updateWorkflowInstance(WorkflowInstance instance) {
+    return updateWorkflowInstance(instance, true);
+  }
+
+  private int updateWorkflowInstance(WorkflowInstance instance, boolean notifyDispatchers) {
+    int updated = jdbc.update(updateWorkflowInstanceSql(), updateWorkflowInstanceArgs(instance), UPDATE_WORKFLOW_INSTANCE_TYPES);
+    if (updated == 0) {
+      logger.warn(
+          "Updating workflow instance {} did not update any rows in the database, instance may have been recovered by another executor.",
+          instance.id);
+    } else if (notifyDispatchers && instance.status != executing) {
+      dispatcherNotifications.notifyDispatchers(instance.nextActivation);
+    }
+    return updated;
+  }
+
+  private Object[] updateWorkflowInstanceArgs(WorkflowInstance instance) {
     // using sqlVariants.nextActivationUpdate() requires that nextActivation is used 3 times
     Object nextActivation = sqlVariants.toTimestampObject(instance.nextActivation);
-    Object[] params = {
+    return new Object[] {
       instance.status.name(), instance.state, abbreviate(instance.stateText, getInstanceStateTextLength()),
       nextActivation, nextActivation, nextActivation,
       instance.status == executing ? executorInfo.getExecutorId() : null, instance.retries, instance.businessKey,
       sqlVariants.toTimestampObject(instance.started), instance.id
     };
-    int[] sqlTypes = {
-          Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.TIMESTAMP, Types.TIMESTAMP, Types.TIMESTAMP,
-          Types.INTEGER, Types.INTEGER, Types.VARCHAR, Types.TIMESTAMP, Types.INTEGER
-    };
-    int updated = jdbc.update(updateWorkflowInstanceSql(), params, sqlTypes);
-    if (updated == 0) {
-      logger.warn(
-          "Updating workflow instance {} did not update any rows in the database, instance may have been recovered by another executor.",
-          instance.id);
-    }
-    return updated;
   }
 
   private void updateWorkflowInstanceWithTransaction(final WorkflowInstance instance, final WorkflowInstanceAction action,
       final List<WorkflowInstance> childWorkflows, final List<WorkflowInstance> workflows,
-      final Map<String, String> changedStateVariables) {
+      final Map<String, String> changedStateVariables, final boolean notifyDispatchers) {
     transaction.execute(new TransactionCallbackWithoutResult() {
       @Override
       protected void doInTransactionWithoutResult(TransactionStatus status) {
-        int updated = updateWorkflowInstance(instance);
+        int updated = updateWorkflowInstance(instance, notifyDispatchers);
         if (updated == 0) {
           return;
         }
@@ -397,48 +908,97 @@ public class WorkflowInstanceDao {
     });
   }
 
-  public void recoverWorkflowInstancesFromDeadNodes() {
+  /**
+   * Release the workflow instances claimed by expired executors for polling and add a recovery action to each of them. The
+   * instances of each expired executor are recovered in chunks of <code>nflow.executor.recovery.batchSize</code> instances with
+   * one action insert and one instance update per chunk.
+   *
+   * @return The number of recovered workflow instances.
+   */
+  public int recoverWorkflowInstancesFromDeadNodes() {
     var recoverableExecutorIds = executorInfo.getRecoverableExecutorIds();
     if (recoverableExecutorIds.isEmpty()) {
-      return;
+      return 0;
+    }
+    int recovered = 0;
+    for (int deadExecutorId : recoverableExecutorIds) {
+      List<Long> instanceIds;
+      while (!(instanceIds = getRecoverableWorkflowInstanceIds(deadExecutorId)).isEmpty()) {
+        recovered += recoverWorkflowInstances(deadExecutorId, instanceIds);
+      }
+      executorInfo.markRecovered(deadExecutorId);
     }
+    dispatcherNotifications.notifyDispatchers(now());
+    return recovered;
+  }
+
+  private List<Long> getRecoverableWorkflowInstanceIds(int deadExecutorId) {
+    return jdbc.queryForList(sqlVariants.limit("select id from nflow_workflow where executor_id = ?", recoveryBatchSize),
+        Long.class, deadExecutorId);
+  }
+
+  private int recoverWorkflowInstances(int deadExecutorId, List<Long> instanceIds) {
+    String instanceCondition = " where executor_id = ? and id in ("
+        + instanceIds.stream().map(String::valueOf).collect(joining(",")) + ")";
+    Object recoveryTime = sqlVariants.toTimestampObject(now());
+    Integer recovered = transaction.execute(status -> {
+      int actions = jdbc.update(insertWorkflowActionSql() + " select id, ?, " + sqlVariants.actionType()
+          + ", state, ?, 0, ?, ? from nflow_workflow" + instanceCondition, executorInfo.getExecutorId(), recovery.name(),
+          "Recovered", recoveryTime, recoveryTime, deadExecutorId);
+      int updated = jdbc.update("update nflow_workflow set executor_id = null, status = " + sqlVariants.workflowStatus(inProgress)
+          + instanceCondition, deadExecutorId);
+      if (updated != actions) {
+        // another executor recovered some of the instances concurrently
+        status.setRollbackOnly();
+        return null;
+      }
+      return updated;
+    });
+    if (recovered != null) {
+      return recovered;
+    }
+    logger.debug("Concurrent recovery detected, recovering {} workflow instances separately", instanceIds.size());
     WorkflowInstanceAction.Builder builder = new WorkflowInstanceAction.Builder().setExecutionStart(now()).setExecutionEnd(now())
         .setType(recovery).setStateText("Recovered");
-    for (InstanceInfo instance : getRecoverableWorkflowInstances(recoverableExecutorIds)) {
+    int recoveredSeparately = 0;
+    for (InstanceInfo instance : getRecoverableWorkflowInstances(deadExecutorId, instanceCondition)) {
       WorkflowInstanceAction action = builder.setState(instance.state()).setWorkflowInstanceId(instance.id()).build();
-      recoverWorkflowInstance(instance.id(), instance.executorId(), action);
+      if (recoverWorkflowInstance(instance.id(), instance.executorId(), action)) {
+        recoveredSeparately++;
+      }
     }
-    recoverableExecutorIds.forEach(executorInfo::markRecovered);
+    return recoveredSeparately;
   }
 
-  private List<InstanceInfo> getRecoverableWorkflowInstances(Collection<Integer> executorsIds) {
-    StringBuilder sql = new StringBuilder(128);
-    sql.append("select id, executor_id, state from nflow_workflow where executor_id in (");
-    executorsIds.forEach(id -> sql.append("?,"));
-    sql.setCharAt(sql.length() - 1, ')');
-    return jdbc.query(sql.toString(), (rs, rowNum) -> new InstanceInfo(rs.getLong(1), rs.getInt(2), rs.getString(3)),
-      (Object[]) executorsIds.toArray(new Integer[0]));
+  private List<InstanceInfo> getRecoverableWorkflowInstances(int deadExecutorId, String instanceCondition) {
+    return jdbc.query("select id, executor_id, state from nflow_workflow" + instanceCondition,
+        (rs, rowNum) -> new InstanceInfo(rs.getLong(1), rs.getInt(2), rs.getString(3)), deadExecutorId);
   }
 
-  private void recoverWorkflowInstance(final long instanceId, int expectedExecutorId, final WorkflowInstanceAction action) {
-    transaction.execute(status -> {
+  private boolean recoverWorkflowInstance(final long instanceId, int expectedExecutorId, final WorkflowInstanceAction action) {
+    return TRUE.equals(transaction.execute(status -> {
       int updated = jdbc.update("update nflow_workflow set executor_id = null, status = "
           + sqlVariants.workflowStatus(inProgress) + " where id = ? and executor_id = ?",
               instanceId, expectedExecutorId);
       if (updated > 0) {
         insertWorkflowInstanceAction(action);
+        return TRUE;
       }
-      return null;
-    });
+      return FALSE;
+    }));
   }
 
   private void updateWorkflowInstanceWithCTE(WorkflowInstance instance, final WorkflowInstanceAction action,
-      Map<String, String> changedStateVariables) {
+      Map<String, String> changedStateVariables, boolean notifyDispatchers) {
     int executorId = executorInfo.getExecutorId();
     StringBuilder sqlb = new StringBuilder(256);
     sqlb.append("with wf as (").append(updateWorkflowInstanceSql()).append(" returning id), ");
     sqlb.append("act as (").append(insertWorkflowActionSql()).append(" select wf.id, ?, ").append(sqlVariants.actionType())
         .append(", ?, ?, ?, ?, ? from wf returning id)");
+    if (!changedStateVariables.isEmpty()) {
+      sqlb.append(", prev as (").append(clearLatestVariablesSql("in (select id from wf)", changedStateVariables.size()))
+          .append(')');
+    }
 
     // using sqlVariants.nextActivationUpdate() requires that nextActivation is added 3 times
     Timestamp nextActivation = toTimestamp(instance.nextActivation);
@@ -449,23 +1009,28 @@ public class WorkflowInstanceDao {
         abbreviate(action.stateText, getActionStateTextLength()), action.retryNo, toTimestamp(action.executionStart),
         toTimestamp(action.executionEnd) };
     int pos = fixedValues.length;
-    Object[] args = Arrays.copyOf(fixedValues, pos + changedStateVariables.size() * 2);
+    Object[] args = Arrays.copyOf(fixedValues, pos + changedStateVariables.size() * 3);
+    for (String stateKey : changedStateVariables.keySet()) {
+      args[pos++] = stateKey;
+    }
     for (Entry<String, String> variable : changedStateVariables.entrySet()) {
       sqlb.append(", ins").append(pos).append(" as (").append(insertWorkflowInstanceStateSql())
           .append(" select wf.id,act.id,?,? from wf,act)");
       args[pos++] = variable.getKey();
-      args[pos++] = variable.getValue();
+      args[pos++] = stateVariableCodec.encode(variable.getValue());
     }
     sqlb.append(" select act.id from act");
     var result = jdbc.queryForObject(sqlb.toString(), Long.class, args);
     if (result == null) {
       logger.warn("Updating workflow instance {} returned null, instance may have been recovered by another executor.",
           instance.id);
+    } else if (notifyDispatchers && instance.status != executing) {
+      dispatcherNotifications.notifyDispatchers(instance.nextActivation);
     }
   }
 
   public void checkStateVariableValueLength(String name, String value) {
-    int maxLength = getStateVariableValueMaxLength();
+    int maxLength = stateVariableCodec.getMaxValueLength(getStateVariableValueMaxLength());
     if (length(value) > maxLength) {
       throw new StateVariableValueTooLongException("Too long value (length = " + length(value) + ") for state variable " + name
           + ": maximum allowed length is " + maxLength);
@@ -509,7 +1074,11 @@ public class WorkflowInstanceDao {
     }
     String sql = "update nflow_workflow set " + join(vars, ", ") + " where id = ? and executor_id is null";
     args.add(instance.id);
-    return jdbc.update(sql, args.toArray()) == 1;
+    boolean updated = jdbc.update(sql, args.toArray()) == 1;
+    if (updated) {
+      dispatcherNotifications.notifyDispatchers(instance.nextActivation);
+    }
+    return updated;
   }
 
   public boolean wakeUpWorkflowExternally(long workflowInstanceId, List<String> expectedStates) {
@@ -518,7 +1087,7 @@ public class WorkflowInstanceDao {
         .append(" then next_activation else current_timestamp end else next_activation end), ")
         .append("external_next_activation = current_timestamp where ").append(executorInfo.getExecutorGroupCondition())
         .append(" and id = ? and next_activation is not null");
-    return addExpectedStatesToQueryAndUpdate(sql, workflowInstanceId, expectedStates);
+    return notifyDispatchersIfUpdated(addExpectedStatesToQueryAndUpdate(sql, workflowInstanceId, expectedStates));
   }
 
   public boolean wakeupWorkflowInstanceIfNotExecuting(long workflowInstanceId, List<String> expectedStates) {
@@ -526,7 +1095,14 @@ public class WorkflowInstanceDao {
         .append(" where id = ? and executor_id is null and status in (").append(sqlVariants.workflowStatus(inProgress))
         .append(", ").append(sqlVariants.workflowStatus(created))
         .append(") and (next_activation is null or next_activation > current_timestamp)");
-    return addExpectedStatesToQueryAndUpdate(sql, workflowInstanceId, expectedStates);
+    return notifyDispatchersIfUpdated(addExpectedStatesToQueryAndUpdate(sql, workflowInstanceId, expectedStates));
+  }
+
+  private boolean notifyDispatchersIfUpdated(boolean updated) {
+    if (updated) {
+      dispatcherNotifications.notifyDispatchers(now());
+    }
+    return updated;
   }
 
   private boolean addExpectedStatesToQueryAndUpdate(StringBuilder sql, long workflowInstanceId, List<String> expectedStates) {
@@ -564,23 +1140,182 @@ public class WorkflowInstanceDao {
     return instance;
   }
 
+  /**
+   * Return the current values of the given state variables of a workflow instance. State variables that have no value are not
+   * included in the result.
+   *
+   * @param workflowInstanceId The workflow instance id.
+   * @param stateKeys The names of the state variables to load, or null to load all state variables.
+   * @return The current state variable values by name.
+   */
+  public Map<String, String> getStateVariables(long workflowInstanceId, Collection<String> stateKeys) {
+    Map<String, String> stateVariables = new LinkedHashMap<>();
+    if (stateKeys != null && stateKeys.isEmpty()) {
+      return stateVariables;
+    }
+    List<Object> args = new ArrayList<>();
+    args.add(workflowInstanceId);
+    String sql = "select state_key, state_value from nflow_workflow_state where workflow_id = ? and latest = 1";
+    if (stateKeys != null) {
+      sql += " and state_key in (" + generate(() -> "?").limit(stateKeys.size()).collect(joining(",")) + ")";
+      args.addAll(stateKeys);
+    }
+    jdbc.query(sql, rs -> {
+      stateVariables.put(rs.getString(1), stateVariableCodec.decode(rs.getString(2)));
+    }, args.toArray());
+    return stateVariables;
+  }
+
   private void fillState(final WorkflowInstance instance) {
     String tableName = STATE.tableFor(instance);
-    jdbc.query("select outside.state_key, outside.state_value from " + tableName + " outside inner join "
-        + "(select workflow_id, max(action_id) action_id, state_key from " + tableName
-        + " where workflow_id = ? group by workflow_id, state_key) inside "
-        + "on outside.workflow_id = inside.workflow_id and outside.action_id = inside.action_id and outside.state_key = inside.state_key",
-        rs -> {
-          instance.stateVariables.put(rs.getString(1), rs.getString(2));
-        }, instance.id);
+    jdbc.query("select state_key, state_value from " + tableName + " where workflow_id = ? and latest = 1", rs -> {
+      instance.stateVariables.put(rs.getString(1), stateVariableCodec.decode(rs.getString(2)));
+    }, instance.id);
     instance.originalStateVariables.putAll(instance.stateVariables);
   }
 
+  private void fillStates(List<WorkflowInstance> instances) {
+    byTable(STATE, instances).forEach((tableName, instancesById) -> namedJdbc.query(
+        "select workflow_id, state_key, state_value from " + tableName + " where workflow_id in (:ids) and latest = 1",
+        new MapSqlParameterSource("ids", instancesById.keySet()), rs -> {
+          WorkflowInstance instance = instancesById.get(rs.getLong(1));
+          instance.stateVariables.put(rs.getString(2), stateVariableCodec.decode(rs.getString(3)));
+        }));
+    instances.forEach(instance -> instance.originalStateVariables.putAll(instance.stateVariables));
+  }
+
+  private static Map<String, Map<Long, WorkflowInstance>> byTable(NflowTable table, List<WorkflowInstance> instances) {
+    Map<String, Map<Long, WorkflowInstance>> instancesByTable = new LinkedHashMap<>();
+    instances.forEach(instance -> instancesByTable.computeIfAbsent(table.tableFor(instance), k -> new LinkedHashMap<>())
+        .put(instance.id, instance));
+    return instancesByTable;
+  }
+
+  /**
+   * Reserve the next workflow instances for this executor. When sharded polling is enabled, the workflow instances are polled
+   * from the shard of this executor, and from all shards only if the own shard has no executable workflow instances. If the
+   * previous poll of all shards found nothing either, polling all shards is skipped once, so that an idle executor does not
+   * poll twice on every round.
+   *
+   * @param batchSize The maximum number of workflow instances to reserve.
+   * @return The ids of the reserved workflow instances.
+   */
   public List<Long> pollNextWorkflowInstanceIds(final int batchSize) {
+    String shardCondition = executorInfo.getPollingShardCondition();
+    if (shardCondition != null) {
+      List<Long> ids = pollNextWorkflowInstanceIds(batchSize, " and " + shardCondition);
+      if (!ids.isEmpty() || skipPollingAllShards()) {
+        return ids;
+      }
+      logger.debug("No workflow instances in own shard, polling all shards.");
+    }
+    List<Long> ids = pollNextWorkflowInstanceIds(batchSize, "");
+    allShardsEmpty = shardCondition != null && ids.isEmpty();
+    return ids;
+  }
+
+  private boolean skipPollingAllShards() {
+    if (allShardsEmpty) {
+      allShardsEmpty = false;
+      return true;
+    }
+    return false;
+  }
+
+  private List<Long> pollNextWorkflowInstanceIds(int batchSize, String shardCondition) {
     if (sqlVariants.hasUpdateReturning()) {
-      return pollNextWorkflowInstanceIdsWithUpdateReturning(batchSize);
+      return pollNextWorkflowInstanceIdsWithUpdateReturning(batchSize, shardCondition);
+    }
+    return pollNextWorkflowInstanceIdsWithTransaction(batchSize, shardCondition);
+  }
+
+  /**
+   * Reserve the next workflow instances for this executor and return them with their current state variables. On databases
+   * that support updateable common table expressions with update returning, the instances are reserved and loaded in one
+   * statement, otherwise they are loaded with one query for the instances and one for the state variables after polling.
+   *
+   * @param batchSize The maximum number of workflow instances to return.
+   * @return The reserved workflow instances.
+   */
+  public List<WorkflowInstance> pollNextWorkflowInstances(final int batchSize) {
+    if (sqlVariants.hasUpdateReturning() && sqlVariants.hasUpdateableCTE()) {
+      String shardCondition = executorInfo.getPollingShardCondition();
+      if (shardCondition != null) {
+        List<WorkflowInstance> instances = pollNextWorkflowInstancesWithUpdateReturning(batchSize, " and " + shardCondition);
+        if (!instances.isEmpty() || skipPollingAllShards()) {
+          return instances;
+        }
+        logger.debug("No workflow instances in own shard, polling all shards.");
+      }
+      List<WorkflowInstance> instances = pollNextWorkflowInstancesWithUpdateReturning(batchSize, "");
+      allShardsEmpty = shardCondition != null && instances.isEmpty();
+      return instances;
     }
-    return pollNextWorkflowInstanceIdsWithTransaction(batchSize);
+    return getPolledWorkflowInstances(pollNextWorkflowInstanceIds(batchSize));
+  }
+
+  private List<WorkflowInstance> pollNextWorkflowInstancesWithUpdateReturning(int batchSize, String shardCondition) {
+    String sql = "with polled as (" + updateInstanceForExecutionQuery() + " where id in ("
+        + sqlVariants.limit("select id from nflow_workflow " + sqlVariants.withUpdateSkipLocked()
+            + whereConditionForInstanceUpdate(shardCondition), batchSize)
+        + sqlVariants.forUpdateSkipLocked() + ") and executor_id is null returning " + ALL_WORKFLOW_COLUMNS + "), vars as ("
+        + currentStateVariablesQuery("select id from polled") + ") "
+        + "select polled.*, 0 as archived, vars.state_key, vars.state_value from polled "
+        + "left join vars on vars.workflow_id = polled.id order by polled.priority desc, polled.next_activation asc";
+    Map<Long, WorkflowInstance> instances = jdbc.query(sql, rs -> {
+      Map<Long, WorkflowInstance> polled = new LinkedHashMap<>();
+      while (rs.next()) {
+        WorkflowInstance instance = polled.get(rs.getLong("id"));
+        if (instance == null) {
+          instance = workflowInstanceRowMapper.mapRow(rs, polled.size()).build();
+          polled.put(instance.id, instance);
+        }
+        String stateKey = rs.getString("state_key");
+        if (stateKey != null) {
+          instance.stateVariables.put(stateKey, stateVariableCodec.decode(rs.getString("state_value")));
+        }
+      }
+      return polled;
+    });
+    List<WorkflowInstance> result = new ArrayList<>(instances.values());
+    result.forEach(instance -> instance.originalStateVariables.putAll(instance.stateVariables));
+    if (result.size() > batchSize) {
+      // see pollNextWorkflowInstanceIdsWithUpdateReturning
+      logger.warn("Got too many workflow instances {} > {}", result.size(), batchSize);
+      clearExecutorId(result.subList(batchSize, result.size()).stream().map(instance -> instance.id).collect(toList()));
+      result = result.subList(0, batchSize);
+    }
+    return result;
+  }
+
+  private List<WorkflowInstance> getPolledWorkflowInstances(List<Long> ids) {
+    if (ids.isEmpty()) {
+      return emptyList();
+    }
+    String idList = ids.stream().map(String::valueOf).collect(joining(","));
+    Map<Long, WorkflowInstance> instances = new LinkedHashMap<>();
+    jdbc.query("select " + ALL_WORKFLOW_COLUMNS + ", 0 as archived from nflow_workflow where id in (" + idList + ")", rs -> {
+      WorkflowInstance instance = workflowInstanceRowMapper.mapRow(rs, instances.size()).build();
+      instances.put(instance.id, instance);
+    });
+    jdbc.query(currentStateVariablesQuery(idList), rs -> {
+      instances.get(rs.getLong("workflow_id")).stateVariables.put(rs.getString("state_key"),
+          stateVariableCodec.decode(rs.getString("state_value")));
+    });
+    List<WorkflowInstance> result = new ArrayList<>(instances.size());
+    for (Long id : ids) {
+      WorkflowInstance instance = instances.get(id);
+      if (instance != null) {
+        instance.originalStateVariables.putAll(instance.stateVariables);
+        result.add(instance);
+      }
+    }
+    return result;
+  }
+
+  private String currentStateVariablesQuery(String workflowIds) {
+    return "select workflow_id, state_key, state_value from nflow_workflow_state where workflow_id in (" + workflowIds
+        + ") and latest = 1";
   }
 
   String updateInstanceForExecutionQuery() {
@@ -588,16 +1323,16 @@ public class WorkflowInstanceDao {
         + sqlVariants.workflowStatus(executing) + ", " + "external_next_activation = null";
   }
 
-  String whereConditionForInstanceUpdate() {
+  String whereConditionForInstanceUpdate(String shardCondition) {
     return "where executor_id is null and status in (" + sqlVariants.workflowStatus(created) + ", "
         + sqlVariants.workflowStatus(inProgress) + ") and " + sqlVariants.dateLtEqDiff("next_activation", "current_timestamp")
-        + " and " + executorInfo.getExecutorGroupCondition() + " order by priority desc, next_activation asc";
+        + " and " + executorInfo.getExecutorGroupCondition() + shardCondition + " order by priority desc, next_activation asc";
   }
 
-  private List<Long> pollNextWorkflowInstanceIdsWithUpdateReturning(int batchSize) {
+  private List<Long> pollNextWorkflowInstanceIdsWithUpdateReturning(int batchSize, String shardCondition) {
     String sql = updateInstanceForExecutionQuery() + " where id in ("
-        + sqlVariants.limit(
-            "select id from nflow_workflow " + sqlVariants.withUpdateSkipLocked() + whereConditionForInstanceUpdate(), batchSize)
+        + sqlVariants.limit("select id from nflow_workflow " + sqlVariants.withUpdateSkipLocked()
+            + whereConditionForInstanceUpdate(shardCondition), batchSize)
         + sqlVariants.forUpdateSkipLocked() + ") and executor_id is null returning id";
     List<Long> ids = jdbc.queryForList(sql, Long.class);
     if (ids.size() > batchSize) {
@@ -612,15 +1347,45 @@ public class WorkflowInstanceDao {
     return ids;
   }
 
+  /**
+   * Claim a workflow instance for this executor, if the workflow instance is executable and not claimed by any executor. Used
+   * for executing workflow instances at their next activation time without polling.
+   *
+   * @param workflowInstanceId The workflow instance id.
+   * @return True if the workflow instance was claimed, false if it was already claimed or is not executable.
+   */
+  public boolean claimWorkflowInstance(long workflowInstanceId) {
+    return jdbc.update(updateInstanceForExecutionQuery() + " where id = ? and executor_id is null and status in ("
+        + sqlVariants.workflowStatus(created) + ", " + sqlVariants.workflowStatus(inProgress) + ") and "
+        + sqlVariants.dateLtEqDiff("next_activation", "current_timestamp") + " and " + executorInfo.getExecutorGroupCondition(),
+        workflowInstanceId) == 1;
+  }
+
+  /**
+   * Returns true if the workflow instance is executable and not claimed by any executor, but its next activation time has not
+   * been reached according to the database clock.
+   *
+   * @param workflowInstanceId The workflow instance id.
+   * @return True if the workflow instance could be claimed after its next activation time.
+   */
+  public boolean isWorkflowInstanceActivationPending(long workflowInstanceId) {
+    return jdbc.queryForObject("select count(1) from nflow_workflow where id = ? and executor_id is null and status in ("
+        + sqlVariants.workflowStatus(created) + ", " + sqlVariants.workflowStatus(inProgress) + ") and not ("
+        + sqlVariants.dateLtEqDiff("next_activation", "current_timestamp") + ") and " + executorInfo.getExecutorGroupCondition(),
+        Integer.class, workflowInstanceId) > 0;
+  }
+
   public void clearExecutorId(List<Long> workflowInstances) {
     jdbc.update("update nflow_workflow set executor_id=null, status = "
             + sqlVariants.workflowStatus(inProgress) + " where executor_id = " + executorInfo.getExecutorId() +
             " and id in (" + workflowInstances.stream().map(String::valueOf).collect(joining(",")) + ")");
+    dispatcherNotifications.notifyDispatchers(now());
   }
 
   @SuppressFBWarnings(value = "WEM_WEAK_EXCEPTION_MESSAGING", justification = "PollingRaceConditionException message is ok")
-  private List<Long> pollNextWorkflowInstanceIdsWithTransaction(final int batchSize) {
-    String sql = sqlVariants.limit("select id, modified from nflow_workflow " + whereConditionForInstanceUpdate(), batchSize);
+  private List<Long> pollNextWorkflowInstanceIdsWithTransaction(final int batchSize, String shardCondition) {
+    String sql = sqlVariants.limit("select id, modified from nflow_workflow " + whereConditionForInstanceUpdate(shardCondition),
+        batchSize);
     List<OptimisticLockKey> instances = transaction.execute(
         tx -> jdbc.query(sql, (rs, rowNum) -> new OptimisticLockKey(rs.getLong("id"), sqlVariants.getTimestamp(rs, "modified"))));
     if (instances.isEmpty()) {
@@ -685,44 +1450,195 @@ public class WorkflowInstanceDao {
   }
 
   public List<WorkflowInstance> queryWorkflowInstances(QueryWorkflowInstances query) {
-    return queryWorkflowInstancesAsStream(query).collect(toList());
+    try (Stream<WorkflowInstance> instances = queryWorkflowInstancesAsStream(query)) {
+      return instances.collect(toList());
+    }
   }
 
+  /**
+   * Query workflow instances with a forward-only cursor. The workflow instances are read from the database in batches of
+   * {@code nflow.workflow.instance.query.fetch.size} while the stream is consumed, and the requested related data is loaded
+   * for each batch with one query per table. The archive is queried only after the matching workflow instances of the main
+   * tables have been read. Whether the rows are streamed or buffered by the JDBC driver depends on the database, see
+   * {@link SQLVariants#cursorFetchSize} and {@link SQLVariants#cursorAllowsOtherQueries}.
+   *
+   * @param query The query.
+   * @return The matching workflow instances. The stream must be closed if it is not consumed to the end.
+   */
   public Stream<WorkflowInstance> queryWorkflowInstancesAsStream(QueryWorkflowInstances query) {
-    List<String> conditions = new ArrayList<>();
+    ContinuationToken continuation = ContinuationToken.parse(query.continuationToken);
+    long maxResults = getMaxResults(query.maxResults);
+    List<CursorQuery<WorkflowInstance.Builder>> cursors = new ArrayList<>(2);
+    Stream<WorkflowInstance.Builder> builders = empty();
+    if (continuation == null || !continuation.archived) {
+      CursorQuery<WorkflowInstance.Builder> cursor = cursorQuery(query, continuation, false, maxResults);
+      cursors.add(cursor);
+      builders = cursor.stream();
+    }
+    if (query.queryArchive) {
+      CursorQuery<WorkflowInstance.Builder> cursor = cursorQuery(query, continuation, true, maxResults);
+      cursors.add(cursor);
+      builders = Stream.concat(builders, cursor.stream()).limit(maxResults);
+    }
+    // related data is read with the connection of the open cursor instead of a second connection from the pool, unless the
+    // driver would buffer the rest of the cursor to execute another query on its connection
+    if (!sqlVariants.cursorAllowsOtherQueries()) {
+      return withIncludes(builders.map(WorkflowInstance.Builder::build), query, Runnable::run);
+    }
+    return withIncludes(builders.map(WorkflowInstance.Builder::build), query,
+        fill -> CursorQuery.runOnOpenConnection(cursors, fill));
+  }
+
+  public WorkflowInstancePage queryWorkflowInstancePage(QueryWorkflowInstances query) {
+    ContinuationToken continuation = ContinuationToken.parse(query.continuationToken);
+    long maxResults = getMaxResults(query.maxResults);
     MapSqlParameterSource params = new MapSqlParameterSource();
+    List<WorkflowInstance.Builder> results = new ArrayList<>();
+    if (continuation == null || !continuation.archived) {
+      String sql = querySql(query, continuation, false, maxResults, params);
+      results.addAll(namedJdbc.query(sql, params, workflowInstanceRowMapper));
+    }
+    // calculate how many results to try to search from archive
+    long maxArchiveResults = maxResults - results.size();
+    if (query.queryArchive && maxArchiveResults > 0) {
+      String sql = querySql(query, continuation, true, maxArchiveResults, params);
+      results.addAll(namedJdbc.query(sql, params, workflowInstanceRowMapper));
+    }
+    List<WorkflowInstance> instances = results.stream().map(WorkflowInstance.Builder::build).collect(toList());
+    String nextToken = null;
+    if (!instances.isEmpty() && instances.size() >= maxResults) {
+      WorkflowInstance last = instances.get(instances.size() - 1);
+      nextToken = new ContinuationToken(last.isArchived, last.id).toString();
+    }
+    return new WorkflowInstancePage(withIncludes(instances.stream(), query, Runnable::run), nextToken);
+  }
+
+  private CursorQuery<WorkflowInstance.Builder> cursorQuery(QueryWorkflowInstances query, ContinuationToken continuation,
+      boolean archive, long maxResults) {
+    MapSqlParameterSource params = new MapSqlParameterSource();
+    String sql = querySql(query, continuation, archive, maxResults, params);
+    return CursorQuery.of(jdbc, cursorFetchSize(query), sqlVariants.cursorRequiresTransaction(), sql, params,
+        workflowInstanceRowMapper);
+  }
+
+  private int cursorFetchSize(QueryWorkflowInstances query) {
+    // a streamed cursor cannot share the connection of a surrounding transaction with the queries for related data
+    boolean includes = query.includeCurrentStateVariables || query.includeActions || query.includeChildWorkflows;
+    if (includes && !sqlVariants.cursorAllowsOtherQueries()
+        && TransactionSynchronizationManager.hasResource(jdbc.getDataSource())) {
+      return workflowInstanceQueryFetchSize;
+    }
+    return sqlVariants.cursorFetchSize(workflowInstanceQueryFetchSize);
+  }
+
+  private String querySql(QueryWorkflowInstances query, ContinuationToken continuation, boolean archive, long maxResults,
+      MapSqlParameterSource params) {
+    List<String> conditions = new ArrayList<>();
     queryOptionsToSqlAndParams(query, conditions, params);
     conditions.add(executorInfo.getExecutorGroupCondition());
-    String sqlSuffix = "from nflow_workflow wf ";
+    String sqlFrom = "from nflow_workflow wf ";
     if (query.stateVariableKey != null) {
-      sqlSuffix += "inner join nflow_workflow_state wfs on wf.id = wfs.workflow_id and wfs.state_key = :state_key and " + sqlVariants.clobToComparable("wfs.state_value") + " = :state_value ";
-      conditions.add(
-          "wfs.action_id = (select max(action_id) from nflow_workflow_state where workflow_id = wf.id and state_key = :state_key)");
+      sqlFrom += "inner join nflow_workflow_state wfs on wf.id = wfs.workflow_id and wfs.state_key = :state_key "
+          + "and wfs.latest = 1 and "
+          + sqlVariants.clobToComparable("wfs.state_value") + " = :state_value ";
       params.addValue("state_key", query.stateVariableKey);
-      params.addValue("state_value", query.stateVariableValue);
+      params.addValue("state_value", stateVariableCodec.encodeQueryValue(query.stateVariableValue));
     }
-    sqlSuffix += "where " + collectionToDelimitedString(conditions, " and ") + " order by id desc";
-    long maxResults = getMaxResults(query.maxResults);
-    String sql = sqlVariants.limit("select " + ALL_WORKFLOW_COLUMNS + ", 0 as archived " + sqlSuffix, maxResults);
-    List<WorkflowInstance.Builder> results = namedJdbc.query(sql, params, workflowInstanceRowMapper);
-    Stream<WorkflowInstance.Builder> resultStream = results.stream();
-    // calculate how many results to try to search from archive
-    maxResults -= results.size();
-    if (query.queryArchive && maxResults > 0) {
-      sql = sqlVariants.limit("select " + ALL_WORKFLOW_COLUMNS + ", 1 as archived " + convertMainToArchive(sqlSuffix), maxResults);
-      resultStream = concat(resultStream, namedJdbc.query(sql, params, workflowInstanceRowMapper).stream());
+    if (continuation != null && continuation.archived == archive) {
+      conditions.add("id < :continuation_id");
+      params.addValue("continuation_id", continuation.id);
     }
-    Stream<WorkflowInstance> ret = resultStream.map(WorkflowInstance.Builder::build);
-    if (query.includeCurrentStateVariables) {
-      ret = ret.peek(instance -> fillState(instance));
+    String sql = sqlFrom + "where " + collectionToDelimitedString(conditions, " and ") + " order by id desc";
+    if (archive) {
+      return sqlVariants.limit("select " + ALL_WORKFLOW_COLUMNS + ", 1 as archived " + convertMainToArchive(sql), maxResults);
     }
-    if (query.includeActions) {
-      ret = ret.peek(instance -> fillActions(instance, query.includeActionStateVariables, query.maxActions));
+    return sqlVariants.limit("select " + ALL_WORKFLOW_COLUMNS + ", 0 as archived " + sql, maxResults);
+  }
+
+  private Stream<WorkflowInstance> withIncludes(Stream<WorkflowInstance> instances, QueryWorkflowInstances query,
+      Consumer<Runnable> fillRunner) {
+    if (!query.includeCurrentStateVariables && !query.includeActions && !query.includeChildWorkflows) {
+      return instances;
     }
-    if (query.includeChildWorkflows) {
-      ret = ret.peek(instance -> fillChildWorkflowIds(instance, query.queryArchive));
+    return batched(instances, workflowInstanceQueryFetchSize, batch -> fillRunner.accept(() -> {
+      if (query.includeCurrentStateVariables) {
+        fillStates(batch);
+      }
+      if (query.includeActions) {
+        fillActions(batch, query.includeActionStateVariables, query.maxActions);
+      }
+      if (query.includeChildWorkflows) {
+        fillChildWorkflowIds(batch, query.queryArchive);
+      }
+    }));
+  }
+
+  /**
+   * Result of a state execution that is saved after the state method returns.
+   */
+  static final class ExecutionResult {
+    final WorkflowInstance instance;
+    final WorkflowInstanceAction action;
+    final List<WorkflowInstance> childWorkflows;
+    final List<WorkflowInstance> workflows;
+    final Map<String, String> changedStateVariables;
+    final boolean createAction;
+    final boolean notifyDispatchers;
+
+    ExecutionResult(WorkflowInstance instance, WorkflowInstanceAction action, List<WorkflowInstance> childWorkflows,
+        List<WorkflowInstance> workflows, Map<String, String> changedStateVariables, boolean createAction,
+        boolean notifyDispatchers) {
+      this.instance = instance;
+      this.action = action;
+      this.childWorkflows = childWorkflows;
+      this.workflows = workflows;
+      this.changedStateVariables = changedStateVariables;
+      this.createAction = createAction;
+      this.notifyDispatchers = notifyDispatchers;
+    }
+
+    boolean createsWorkflows() {
+      return !childWorkflows.isEmpty() || !workflows.isEmpty();
+    }
+  }
+
+  /**
+   * Position after the last workflow instance of a page. The token is Base64 encoded so that clients treat it as opaque.
+   */
+  static final class ContinuationToken {
+    private static final String MAIN_PREFIX = "main:";
+    private static final String ARCHIVE_PREFIX = "archive:";
+    final boolean archived;
+    final long id;
+
+    ContinuationToken(boolean archived, long id) {
+      this.archived = archived;
+      this.id = id;
+    }
+
+    static ContinuationToken parse(String token) {
+      if (token == null) {
+        return null;
+      }
+      try {
+        String value = new String(Base64.getUrlDecoder().decode(token), UTF_8);
+        if (value.startsWith(MAIN_PREFIX)) {
+          return new ContinuationToken(false, Long.parseLong(value.substring(MAIN_PREFIX.length())));
+        }
+        if (value.startsWith(ARCHIVE_PREFIX)) {
+          return new ContinuationToken(true, Long.parseLong(value.substring(ARCHIVE_PREFIX.length())));
+        }
+      } catch (@SuppressWarnings("unused") IllegalArgumentException e) {
+        // fall through to invalid token
+      }
+      throw new IllegalArgumentException("Invalid continuation token " + token);
+    }
+
+    @Override
+    public String toString() {
+      String value = (archived ? ARCHIVE_PREFIX : MAIN_PREFIX) + id;
+      return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(UTF_8));
     }
-    return ret;
   }
 
   @SuppressFBWarnings(value = "STT_STRING_PARSING_A_FIELD", justification = "businessKey and externalId are strings")
@@ -805,6 +1721,48 @@ public class WorkflowInstanceDao {
     return min(maxResults, workflowInstanceQueryMaxResults);
   }
 
+  private void fillChildWorkflowIds(List<WorkflowInstance> instances, boolean queryArchive) {
+    Map<Long, WorkflowInstance> instancesById = new LinkedHashMap<>();
+    instances.forEach(instance -> instancesById.put(instance.id, instance));
+    Stream<String> tables = queryArchive ? Stream.of(WORKFLOW.main, WORKFLOW.archive) : Stream.of(WORKFLOW.main);
+    String sql = tables.map(table -> "select parent_workflow_id, parent_action_id, id from " + table
+        + " where parent_workflow_id in (:ids)").collect(joining(" union all "));
+    namedJdbc.query(sql, new MapSqlParameterSource("ids", instancesById.keySet()), rs -> {
+      WorkflowInstance instance = instancesById.get(rs.getLong(1));
+      instance.childWorkflows.computeIfAbsent(rs.getLong(2), k -> new ArrayList<>()).add(rs.getLong(3));
+    });
+  }
+
+  private void fillActions(List<WorkflowInstance> instances, boolean includeStateVariables, Long requestedMaxActions) {
+    long maxActions = getMaxActions(requestedMaxActions);
+    byTable(ACTION, instances).forEach((tableName, instancesById) -> {
+      MapSqlParameterSource params = new MapSqlParameterSource("ids", instancesById.keySet()).addValue("max_actions",
+          maxActions);
+      String rankedActions = "select * from (select a.*, row_number() over (partition by workflow_id order by id desc) "
+          + "action_rank from " + tableName + " a where workflow_id in (:ids)) ranked_actions "
+          + "where action_rank <= :max_actions";
+      Map<Long, WorkflowInstanceAction.Builder> actionBuildersById = new LinkedHashMap<>();
+      namedJdbc.query(rankedActions + " order by workflow_id, id desc", params, rs -> {
+        WorkflowInstanceAction.Builder builder = workflowInstanceActionRowMapper.mapRow(rs, rs.getInt("action_rank") - 1);
+        actionBuildersById.put(builder.getId(), builder);
+      });
+      if (includeStateVariables && !actionBuildersById.isEmpty()) {
+        String stateTableName = STATE.tableFor(instancesById.values().iterator().next());
+        Map<Long, Map<String, String>> actionStates = new HashMap<>();
+        // state rows are read only for the selected actions
+        namedJdbc.query("select s.action_id, s.state_key, s.state_value from (" + rankedActions + ") r inner join "
+            + stateTableName + " s on s.workflow_id = r.workflow_id and s.action_id = r.id order by s.action_id, s.state_key",
+            params, rs -> {
+              actionStates.computeIfAbsent(rs.getLong(1), k -> new LinkedHashMap<>()).put(rs.getString(2),
+                  stateVariableCodec.decode(rs.getString(3)));
+            });
+        actionStates.forEach((actionId, actionState) -> actionBuildersById.get(actionId).setUpdatedStateVariables(actionState));
+      }
+      actionBuildersById.values().stream().map(WorkflowInstanceAction.Builder::build)
+          .forEach(action -> instancesById.get(action.workflowInstanceId).actions.add(action));
+    });
+  }
+
   private void fillActions(WorkflowInstance instance, boolean includeStateVariables, Long requestedMaxActions) {
     long maxActions = getMaxActions(requestedMaxActions);
     String tableName = ACTION.tableFor(instance);
@@ -836,14 +1794,14 @@ public class WorkflowInstanceDao {
     String actionTableName = ACTION.tableFor(instance);
     if (actions < maxActions) {
       return jdbc.query("select * from " + stateTableName + " where workflow_id = ? order by action_id, state_key asc",
-          new WorkflowActionStateRowMapper(), instance.id);
+          new WorkflowActionStateRowMapper(stateVariableCodec), instance.id);
     }
     return jdbc.query("select nflow_workflow_state.* from ("
         + sqlVariants.limit("select id from " + actionTableName + " nflow_workflow_action where workflow_id = ? order by id desc",
             maxActions)
         + ") action_id inner join " + stateTableName
         + " nflow_workflow_state on nflow_workflow_state.workflow_id = ? and action_id.id = nflow_workflow_state.action_id "
-        + "order by nflow_workflow_state.action_id, nflow_workflow_state.state_key asc", new WorkflowActionStateRowMapper(),
+        + "order by nflow_workflow_state.action_id, nflow_workflow_state.state_key asc", new WorkflowActionStateRowMapper(stateVariableCodec),
         instance.id, instance.id);
   }
 
@@ -862,23 +1820,55 @@ public class WorkflowInstanceDao {
           "SQL_PREPARED_STATEMENT_GENERATED_FROM_NONCONSTANT_STRING" },
           justification = "findbugs does not trust jdbctemplate, sql string is practically constant")
       public PreparedStatement createPreparedStatement(Connection con) throws SQLException {
-        PreparedStatement p = con.prepareStatement(
-            insertWorkflowActionSql() + " values (?, ?, " + sqlVariants.actionType() + ", ?, ?, ?, ?, ?)", new String[] { "id" });
-        int field = 1;
-        p.setLong(field++, action.workflowInstanceId);
-        p.setInt(field++, executorInfo.getExecutorId());
-        p.setString(field++, action.type.name());
-        p.setString(field++, action.state);
-        p.setString(field++, abbreviate(action.stateText, getActionStateTextLength()));
-        p.setInt(field++, action.retryNo);
-        sqlVariants.setDateTime(p, field++, action.executionStart);
-        sqlVariants.setDateTime(p, field++, action.executionEnd);
+        PreparedStatement p = con.prepareStatement(insertWorkflowInstanceActionValuesSql(), new String[] { "id" });
+        setInsertWorkflowInstanceActionValues(p, action);
         return p;
       }
     }, keyHolder);
     return keyHolder.getKey().longValue();
   }
 
+  private List<Long> insertWorkflowInstanceActionsWithBatchUpdate(List<WorkflowInstanceAction> actions) {
+    return jdbc.execute((ConnectionCallback<List<Long>>) connection -> {
+      List<Long> ids = new ArrayList<>(actions.size());
+      try (PreparedStatement ps = connection.prepareStatement(insertWorkflowInstanceActionValuesSql(), new String[] { "id" })) {
+        for (int start = 0; start < actions.size(); start += INSERT_BATCH_SIZE) {
+          for (WorkflowInstanceAction action : actions.subList(start, min(start + INSERT_BATCH_SIZE, actions.size()))) {
+            setInsertWorkflowInstanceActionValues(ps, action);
+            ps.addBatch();
+          }
+          ps.executeBatch();
+          try (ResultSet keys = ps.getGeneratedKeys()) {
+            while (keys.next()) {
+              ids.add(keys.getLong(1));
+            }
+          }
+        }
+      }
+      if (ids.size() != actions.size()) {
+        throw new IllegalStateException(
+            "Failed to insert workflow instance actions, expected " + actions.size() + " generated ids, got " + ids.size());
+      }
+      return ids;
+    });
+  }
+
+  private String insertWorkflowInstanceActionValuesSql() {
+    return insertWorkflowActionSql() + " values (?, ?, " + sqlVariants.actionType() + ", ?, ?, ?, ?, ?)";
+  }
+
+  private void setInsertWorkflowInstanceActionValues(PreparedStatement ps, WorkflowInstanceAction action) throws SQLException {
+    int field = 1;
+    ps.setLong(field++, action.workflowInstanceId);
+    ps.setInt(field++, executorInfo.getExecutorId());
+    ps.setString(field++, action.type.name());
+    ps.setString(field++, action.state);
+    ps.setString(field++, abbreviate(action.stateText, getActionStateTextLength()));
+    ps.setInt(field++, action.retryNo);
+    sqlVariants.setDateTime(ps, field++, action.executionStart);
+    sqlVariants.setDateTime(ps, field++, action.executionEnd);
+  }
+
   public String getWorkflowInstanceState(long workflowInstanceId) {
     return jdbc.queryForObject("select state from nflow_workflow where id = ?", String.class, workflowInstanceId);
   }
@@ -945,13 +1935,18 @@ public class WorkflowInstanceDao {
 
   static class WorkflowActionStateRowMapper implements ResultSetExtractor<Map<Long, Map<String, String>>> {
     private final Map<Long, Map<String, String>> actionStates = new LinkedHashMap<>();
+    private final StateVariableCodec stateVariableCodec;
+
+    WorkflowActionStateRowMapper(StateVariableCodec stateVariableCodec) {
+      this.stateVariableCodec = stateVariableCodec;
+    }
 
     @Override
     public Map<Long, Map<String, String>> extractData(ResultSet rs) throws SQLException {
       while (rs.next()) {
         long actionId = rs.getLong("action_id");
         String stateKey = rs.getString("state_key");
-        String stateValue = rs.getString("state_value");
+        String stateValue = stateVariableCodec.decode(rs.getString("state_value"));
         actionStates.computeIfAbsent(actionId, k -> new LinkedHashMap<>()).put(stateKey, stateValue);
       }
       return actionStates;
@@ -0,0 +1,192 @@
+package io.nflow.engine.internal.executor;
+
+import static java.lang.Math.max;
+import static java.util.Collections.emptyList;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timer wheel for workflow instances whose next activation is in the near future. Each level has 64 slots. A slot
+ * on the lowest level spans one tick and a slot on each higher level spans all slots of the level below it. Instances are added
+ * to the lowest level that covers their activation time and moved to lower levels as the time advances, so that adding an
+ * instance and advancing the time by one tick take constant time regardless of the number of instances in the wheel.
+ *
+ * @param <T> The type of the workflow instance entries in the wheel.
+ */
+public class ActivationTimerWheel<T> {
+  private static final int SLOT_BITS = 6;
+  private static final int SLOTS = 1 << SLOT_BITS;
+  private static final int SLOT_MASK = SLOTS - 1;
+
+  private final long tickMillis;
+  private final long horizonMillis;
+  private final int maxSize;
+  private final Entry<T>[][] slots;
+  private long currentTick;
+  private int size;
+
+  /**
+   * Create a timer wheel.
+   *
+   * @param tickMillis The precision of the timer in milliseconds.
+   * @param horizonMillis The maximum time from now to the activation time of the instances accepted to the wheel.
+   * @param maxSize The maximum number of instances in the wheel.
+   */
+  public ActivationTimerWheel(long tickMillis, long horizonMillis, int maxSize) {
+    if (tickMillis <= 0 || horizonMillis <= 0 || maxSize <= 0) {
+      throw new IllegalArgumentException("Tick, horizon and maximum size must be positive");
+    }
+    this.tickMillis = tickMillis;
+    this.horizonMillis = horizonMillis;
+    this.maxSize = maxSize;
+    long horizonTicks = horizonMillis / tickMillis + 1;
+    int levels = 1;
+    for (long span = SLOTS; span <= horizonTicks; span <<= SLOT_BITS) {
+      levels++;
+    }
+    @SuppressWarnings("unchecked")
+    Entry<T>[][] emptySlots = new Entry[levels][SLOTS];
+    slots = emptySlots;
+  }
+
+  public long getTickMillis() {
+    return tickMillis;
+  }
+
+  /**
+   * Returns true if an instance with the given activation time would be accepted to the wheel.
+   *
+   * @param activationMillis The activation time of the instance.
+   * @param nowMillis The current time.
+   * @return True if the activation time is within the horizon and the wheel is not full.
+   */
+  public synchronized boolean accepts(long activationMillis, long nowMillis) {
+    return size < maxSize && activationMillis - nowMillis <= horizonMillis;
+  }
+
+  /**
+   * Add an instance to the wheel, unless the activation time is beyond the horizon or the wheel is full.
+   *
+   * @param instance The workflow instance entry.
+   * @param activationMillis The activation time of the instance.
+   * @param nowMillis The current time.
+   * @return True if the instance was added, false if the wheel overflowed.
+   */
+  public synchronized boolean schedule(T instance, long activationMillis, long nowMillis) {
+    if (!accepts(activationMillis, nowMillis)) {
+      return false;
+    }
+    add(instance, activationMillis, nowMillis);
+    return true;
+  }
+
+  /**
+   * Add an instance to the wheel regardless of the horizon and the maximum size. Used for instances that were already in the
+   * wheel but could not be executed when they expired.
+   *
+   * @param instance The workflow instance entry.
+   * @param activationMillis The activation time of the instance.
+   * @param nowMillis The current time.
+   */
+  public synchronized void reschedule(T instance, long activationMillis, long nowMillis) {
+    add(instance, activationMillis, nowMillis);
+  }
+
+  /**
+   * Advance the time of the wheel and remove the instances that have expired.
+   *
+   * @param nowMillis The current time.
+   * @return The entries of the expired instances.
+   */
+  public synchronized List<T> advance(long nowMillis) {
+    long targetTick = nowMillis / tickMillis;
+    if (size == 0) {
+      currentTick = max(currentTick, targetTick);
+      return emptyList();
+    }
+    List<T> expired = new ArrayList<>();
+    while (currentTick < targetTick && size > 0) {
+      currentTick++;
+      for (int level = slots.length - 1; level > 0; --level) {
+        if ((currentTick & ((1L << (level * SLOT_BITS)) - 1)) == 0) {
+          cascade(level, expired);
+        }
+      }
+      cascade(0, expired);
+    }
+    currentTick = max(currentTick, targetTick);
+    return expired;
+  }
+
+  /**
+   * Remove all instances from the wheel.
+   *
+   * @return The entries of the removed instances.
+   */
+  public synchronized List<T> clear() {
+    List<T> removed = new ArrayList<>(size);
+    for (Entry<T>[] level : slots) {
+      for (int i = 0; i < SLOTS; ++i) {
+        for (Entry<T> entry = level[i]; entry != null; entry = entry.next) {
+          removed.add(entry.instance);
+        }
+        level[i] = null;
+      }
+    }
+    size = 0;
+    return removed;
+  }
+
+  public synchronized int size() {
+    return size;
+  }
+
+  private void add(T instance, long activationMillis, long nowMillis) {
+    if (size == 0) {
+      currentTick = max(currentTick, nowMillis / tickMillis);
+    }
+    // round up so that instances never expire before their activation time
+    long dueTick = max((activationMillis + tickMillis - 1) / tickMillis, currentTick + 1);
+    insert(new Entry<>(instance, dueTick));
+    size++;
+  }
+
+  private void insert(Entry<T> entry) {
+    int level = 0;
+    while (level < slots.length - 1
+        && (entry.dueTick >> (level * SLOT_BITS)) - (currentTick >> (level * SLOT_BITS)) >= SLOTS) {
+      level++;
+    }
+    int index = (int) (entry.dueTick >> (level * SLOT_BITS)) & SLOT_MASK;
+    entry.next = slots[level][index];
+    slots[level][index] = entry;
+  }
+
+  private void cascade(int level, List<T> expired) {
+    int index = (int) (currentTick >> (level * SLOT_BITS)) & SLOT_MASK;
+    Entry<T> entry = slots[level][index];
+    slots[level][index] = null;
+    while (entry != null) {
+      Entry<T> next = entry.next;
+      if (entry.dueTick <= currentTick) {
+        expired.add(entry.instance);
+        size--;
+      } else {
+        insert(entry);
+      }
+      entry = next;
+    }
+  }
+
+  private static class Entry<T> {
+    final T instance;
+    final long dueTick;
+    Entry<T> next;
+
+    Entry(T instance, long dueTick) {
+      this.instance = instance;
+      this.dueTick = dueTick;
+    }
+  }
+}
@@ -0,0 +1,137 @@
+package io.nflow.engine.internal.executor;
+
+import static java.lang.Math.ceil;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static org.joda.time.DateTimeUtils.currentTimeMillis;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import org.slf4j.Logger;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+/**
+ * Decides how many workflow instances the dispatcher polls at a time and how long it sleeps when a poll finds nothing. When
+ * adaptive polling is enabled, the sleep time backs off exponentially while there is nothing to execute and snaps back to
+ * the minimum when instances are found. The batch size follows the observed poll latency and execution throughput, so that
+ * the executor does not claim more instances than it can start before the next poll. When adaptive polling is disabled, the
+ * fixed sleep time and the remaining executor queue capacity are used. Updated only by the dispatcher thread.
+ */
+@Component
+@Singleton
+public class AdaptivePollingController {
+
+  private static final Logger logger = getLogger(AdaptivePollingController.class);
+  private static final double SMOOTHING_FACTOR = 0.2;
+
+  private final WorkflowInstanceExecutor executor;
+  private final boolean enabled;
+  private final long minSleepMillis;
+  private final long maxSleepMillis;
+  private volatile long sleepMillis;
+  private volatile int batchSize;
+  private volatile double pollLatencyMillis = -1;
+  private volatile double throughputPerSecond = -1;
+  private boolean lastPollFull = true;
+  private long previousCompletedCount;
+  private long previousPollTime;
+
+  @Inject
+  public AdaptivePollingController(WorkflowInstanceExecutor executor, Environment env) {
+    this.executor = executor;
+    this.enabled = env.getRequiredProperty("nflow.dispatcher.adaptive.enabled", Boolean.class);
+    this.minSleepMillis = env.getRequiredProperty("nflow.dispatcher.sleep.ms", Long.class);
+    this.maxSleepMillis = max(minSleepMillis, env.getRequiredProperty("nflow.dispatcher.adaptive.max.sleep.ms", Long.class));
+    this.sleepMillis = minSleepMillis;
+    if (enabled) {
+      logger.info("Adaptive polling enabled, sleeping {}-{} ms between polls when idle", minSleepMillis, maxSleepMillis);
+    }
+  }
+
+  /**
+   * Returns the number of workflow instances to poll next.
+   *
+   * @return The batch size.
+   */
+  public int nextBatchSize() {
+    int capacity = executor.getQueueRemainingCapacity();
+    if (!enabled || lastPollFull || throughputPerSecond < 0 || pollLatencyMillis < 0) {
+      batchSize = capacity;
+    } else {
+      // enough instances to keep the threads busy until the results of the next poll are available, with a safety margin
+      int target = (int) ceil(2 * throughputPerSecond * (pollLatencyMillis + minSleepMillis) / 1000);
+      batchSize = min(capacity, max(executor.getThreadCount(), target));
+    }
+    return batchSize;
+  }
+
+  /**
+   * Records the results of a poll.
+   *
+   * @param requested The number of workflow instances requested.
+   * @param found The number of workflow instances found.
+   * @param latencyMillis The duration of the poll.
+   */
+  public void pollCompleted(int requested, int found, long latencyMillis) {
+    if (!enabled) {
+      return;
+    }
+    pollLatencyMillis = smooth(pollLatencyMillis, latencyMillis);
+    long now = currentTimeMillis();
+    long completedCount = executor.getCompletedTaskCount();
+    if (previousPollTime > 0 && now > previousPollTime) {
+      throughputPerSecond = smooth(throughputPerSecond, (completedCount - previousCompletedCount) * 1000.0 / (now - previousPollTime));
+    }
+    previousPollTime = now;
+    previousCompletedCount = completedCount;
+    lastPollFull = requested > 0 && found >= requested;
+    if (found == 0) {
+      sleepMillis = min(maxSleepMillis, max(1, sleepMillis * 2));
+    } else {
+      sleepMillis = minSleepMillis;
+    }
+  }
+
+  private static double smooth(double previous, double sample) {
+    return previous < 0 ? sample : previous + SMOOTHING_FACTOR * (sample - previous);
+  }
+
+  /**
+   * Returns the time the dispatcher should sleep after a poll that did not find any workflow instances.
+   *
+   * @return The sleep time in milliseconds.
+   */
+  public long getSleepMillis() {
+    return sleepMillis;
+  }
+
+  /**
+   * Returns the latest batch size.
+   *
+   * @return The batch size.
+   */
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * Returns the smoothed poll latency, or -1 if not measured yet.
+   *
+   * @return The poll latency in milliseconds.
+   */
+  public double getPollLatencyMillis() {
+    return pollLatencyMillis;
+  }
+
+  /**
+   * Returns the smoothed number of workflow instance executions completed per second, or -1 if not measured yet.
+   *
+   * @return The execution throughput.
+   */
+  public double getThroughputPerSecond() {
+    return throughputPerSecond;
+  }
+}
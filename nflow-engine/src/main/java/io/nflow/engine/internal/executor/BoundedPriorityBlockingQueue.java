@@ -0,0 +1,285 @@
+package io.nflow.engine.internal.executor;
+
+import static java.util.Comparator.comparingLong;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded blocking queue that orders the elements by the given comparator. Elements that are equal according to the comparator
+ * are taken in insertion order.
+ */
+class BoundedPriorityBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+  private final int capacity;
+  private final PriorityQueue<Entry<E>> queue;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = lock.newCondition();
+  private final Condition notFull = lock.newCondition();
+  private long sequence;
+
+  BoundedPriorityBlockingQueue(int capacity, Comparator<? super E> comparator) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive");
+    }
+    this.capacity = capacity;
+    Comparator<Entry<E>> entryComparator = (a, b) -> comparator.compare(a.element, b.element);
+    queue = new PriorityQueue<>(Math.min(capacity, 64), entryComparator.thenComparing(comparingLong(entry -> entry.sequence)));
+  }
+
+  @Override
+  public boolean offer(E e) {
+    checkNotNull(e);
+    lock.lock();
+    try {
+      if (queue.size() >= capacity) {
+        return false;
+      }
+      enqueue(e);
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void put(E e) throws InterruptedException {
+    checkNotNull(e);
+    lock.lockInterruptibly();
+    try {
+      while (queue.size() >= capacity) {
+        notFull.await();
+      }
+      enqueue(e);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+    checkNotNull(e);
+    long nanos = unit.toNanos(timeout);
+    lock.lockInterruptibly();
+    try {
+      while (queue.size() >= capacity) {
+        if (nanos <= 0) {
+          return false;
+        }
+        nanos = notFull.awaitNanos(nanos);
+      }
+      enqueue(e);
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public E poll() {
+    lock.lock();
+    try {
+      return dequeue();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public E take() throws InterruptedException {
+    lock.lockInterruptibly();
+    try {
+      while (queue.isEmpty()) {
+        notEmpty.await();
+      }
+      return dequeue();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+    long nanos = unit.toNanos(timeout);
+    lock.lockInterruptibly();
+    try {
+      while (queue.isEmpty()) {
+        if (nanos <= 0) {
+          return null;
+        }
+        nanos = notEmpty.awaitNanos(nanos);
+      }
+      return dequeue();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public E peek() {
+    lock.lock();
+    try {
+      Entry<E> entry = queue.peek();
+      return entry == null ? null : entry.element;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public int size() {
+    lock.lock();
+    try {
+      return queue.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public int remainingCapacity() {
+    lock.lock();
+    try {
+      return capacity - queue.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    if (o == null) {
+      return false;
+    }
+    lock.lock();
+    try {
+      for (Iterator<Entry<E>> it = queue.iterator(); it.hasNext();) {
+        if (o.equals(it.next().element)) {
+          it.remove();
+          notFull.signal();
+          return true;
+        }
+      }
+      return false;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public int drainTo(Collection<? super E> c) {
+    return drainTo(c, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public int drainTo(Collection<? super E> c, int maxElements) {
+    checkNotNull(c);
+    if (c == this) {
+      throw new IllegalArgumentException("Cannot drain to self");
+    }
+    lock.lock();
+    try {
+      int count = 0;
+      while (count < maxElements && !queue.isEmpty()) {
+        c.add(queue.poll().element);
+        count++;
+      }
+      if (count > 0) {
+        notFull.signalAll();
+      }
+      return count;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns an iterator over a snapshot of the elements in no particular order.
+   */
+  @Override
+  public Iterator<E> iterator() {
+    List<E> snapshot;
+    lock.lock();
+    try {
+      snapshot = new ArrayList<>(queue.size());
+      for (Entry<E> entry : queue) {
+        snapshot.add(entry.element);
+      }
+    } finally {
+      lock.unlock();
+    }
+    return new SnapshotIterator(snapshot);
+  }
+
+  private void enqueue(E e) {
+    queue.add(new Entry<>(e, sequence++));
+    notEmpty.signal();
+  }
+
+  private E dequeue() {
+    Entry<E> entry = queue.poll();
+    if (entry == null) {
+      return null;
+    }
+    notFull.signal();
+    return entry.element;
+  }
+
+  private static void checkNotNull(Object o) {
+    if (o == null) {
+      throw new NullPointerException();
+    }
+  }
+
+  private static class Entry<E> {
+    final E element;
+    final long sequence;
+
+    Entry(E element, long sequence) {
+      this.element = element;
+      this.sequence = sequence;
+    }
+  }
+
+  private class SnapshotIterator implements Iterator<E> {
+    private final List<E> snapshot;
+    private int next;
+    private E lastReturned;
+
+    SnapshotIterator(List<E> snapshot) {
+      this.snapshot = snapshot;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next < snapshot.size();
+    }
+
+    @Override
+    public E next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      lastReturned = snapshot.get(next++);
+      return lastReturned;
+    }
+
+    @Override
+    public void remove() {
+      if (lastReturned == null) {
+        throw new IllegalStateException();
+      }
+      BoundedPriorityBlockingQueue.this.remove(lastReturned);
+      lastReturned = null;
+    }
+  }
+}
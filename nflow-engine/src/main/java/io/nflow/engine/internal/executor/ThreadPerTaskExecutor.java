@@ -0,0 +1,140 @@
+package io.nflow.engine.internal.executor;
+
+import static java.lang.Thread.currentThread;
+import static org.joda.time.DateTimeUtils.currentTimeMillis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executes each task in a new thread created by the thread factory, which is meant for virtual threads that should not be
+ * pooled. A semaphore limits the number of concurrently running tasks. Tasks that do not get a permit wait in the queue until
+ * a running task completes, so the queue fills up only when all permits are in use.
+ */
+class ThreadPerTaskExecutor extends AbstractExecutorService {
+  private final BlockingQueue<Runnable> queue;
+  private final ThreadFactory threadFactory;
+  private final int maxRunning;
+  private final Semaphore permits;
+  private final Set<Thread> running = ConcurrentHashMap.newKeySet();
+  private final AtomicLong completedTaskCount = new AtomicLong();
+  private final Object termination = new Object();
+  private volatile boolean shutdown;
+
+  ThreadPerTaskExecutor(int maxRunning, BlockingQueue<Runnable> queue, ThreadFactory threadFactory) {
+    this.maxRunning = maxRunning;
+    this.queue = queue;
+    this.threadFactory = threadFactory;
+    this.permits = new Semaphore(maxRunning);
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    if (shutdown) {
+      throw new RejectedExecutionException("Executor is shut down");
+    }
+    if (permits.tryAcquire()) {
+      start(task);
+      return;
+    }
+    if (!queue.offer(task)) {
+      throw new RejectedExecutionException("Executor queue is full");
+    }
+    // a running task may have completed after the permit was requested
+    startQueued();
+  }
+
+  private void startQueued() {
+    while (!queue.isEmpty() && permits.tryAcquire()) {
+      Runnable task = queue.poll();
+      if (task == null) {
+        permits.release();
+      } else {
+        start(task);
+      }
+    }
+  }
+
+  private void start(Runnable task) {
+    try {
+      threadFactory.newThread(() -> run(task)).start();
+    } catch (RuntimeException | Error e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  private void run(Runnable task) {
+    Thread thread = currentThread();
+    running.add(thread);
+    try {
+      task.run();
+    } finally {
+      running.remove(thread);
+      completedTaskCount.incrementAndGet();
+      permits.release();
+      startQueued();
+      if (shutdown) {
+        synchronized (termination) {
+          termination.notifyAll();
+        }
+      }
+    }
+  }
+
+  long getCompletedTaskCount() {
+    return completedTaskCount.get();
+  }
+
+  @Override
+  public void shutdown() {
+    shutdown = true;
+    synchronized (termination) {
+      termination.notifyAll();
+    }
+  }
+
+  @Override
+  public List<Runnable> shutdownNow() {
+    shutdown();
+    List<Runnable> notStarted = new ArrayList<>();
+    queue.drainTo(notStarted);
+    running.forEach(Thread::interrupt);
+    return notStarted;
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return shutdown;
+  }
+
+  @Override
+  public boolean isTerminated() {
+    return shutdown && queue.isEmpty() && permits.availablePermits() == maxRunning;
+  }
+
+  @Override
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = currentTimeMillis() + unit.toMillis(timeout);
+    synchronized (termination) {
+      long remaining;
+      while (!isTerminated()) {
+        remaining = deadline - currentTimeMillis();
+        if (remaining <= 0) {
+          return false;
+        }
+        termination.wait(remaining);
+      }
+      return true;
+    }
+  }
+}
@@ -1,38 +1,75 @@
 package io.nflow.engine.internal.executor;
 
+import static java.lang.Thread.currentThread;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.locks.LockSupport.parkNanos;
 import static org.joda.time.DateTimeUtils.currentTimeMillis;
 
 import java.util.AbstractQueue;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.Queue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 import org.joda.time.DateTime;
 
+/**
+ * Blocking queue that lets a thread wait until the queue size drops to the notify threshold. Taking elements from the queue
+ * does not acquire any lock besides the internal locks of the underlying queue: the waiting threads are unparked only when
+ * some thread is actually waiting and the queue size is at or below the threshold.
+ */
 public class ThresholdBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
-  private final LinkedBlockingQueue<E> queue;
+  private final BlockingQueue<E> queue;
   private final int notifyThreshHold;
+  private final Queue<Thread> waiters = new ConcurrentLinkedQueue<>();
 
   public ThresholdBlockingQueue(int capacity, int notifyThreshHold) {
+    this(capacity, notifyThreshHold, null);
+  }
+
+  /**
+   * Create a queue that orders the elements by the given comparator, or in FIFO order if the comparator is null.
+   *
+   * @param capacity The maximum number of elements in the queue.
+   * @param notifyThreshHold The queue size at or below which waiting threads are woken up.
+   * @param comparator The comparator that defines the order of the elements, or null for FIFO order.
+   */
+  public ThresholdBlockingQueue(int capacity, int notifyThreshHold, Comparator<? super E> comparator) {
     this.notifyThreshHold = notifyThreshHold;
-    queue = new LinkedBlockingQueue<>(capacity);
+    queue = comparator == null ? new LinkedBlockingQueue<>(capacity) : new BoundedPriorityBlockingQueue<>(capacity, comparator);
   }
 
-  public synchronized void notifyIfNotFull() {
-    if (queue.size() <= notifyThreshHold) {
-      notifyAll();
+  public void notifyIfNotFull() {
+    if (!waiters.isEmpty() && queue.size() <= notifyThreshHold) {
+      waiters.forEach(LockSupport::unpark);
     }
   }
 
-  public synchronized void waitUntilQueueSizeLowerThanThreshold(DateTime waitUntil) throws InterruptedException {
-    while (queue.size() > notifyThreshHold) {
-      long sleep = waitUntil.getMillis() - currentTimeMillis();
-      if (sleep <= 0) {
-        break;
+  public void waitUntilQueueSizeLowerThanThreshold(DateTime waitUntil) throws InterruptedException {
+    if (queue.size() <= notifyThreshHold) {
+      return;
+    }
+    Thread waiter = currentThread();
+    // register before checking the size again so that a concurrent notifyIfNotFull cannot be missed
+    waiters.add(waiter);
+    try {
+      while (queue.size() > notifyThreshHold) {
+        long sleep = waitUntil.getMillis() - currentTimeMillis();
+        if (sleep <= 0) {
+          break;
+        }
+        parkNanos(this, MILLISECONDS.toNanos(sleep));
+        if (Thread.interrupted()) {
+          throw new InterruptedException();
+        }
       }
-      wait(sleep);
+    } finally {
+      waiters.remove(waiter);
     }
   }
 
@@ -53,6 +90,13 @@ public class ThresholdBlockingQueue<E> extends AbstractQueue<E> implements Block
     return queue.peek();
   }
 
+  @Override
+  public boolean remove(Object o) {
+    boolean removed = queue.remove(o);
+    notifyIfNotFull();
+    return removed;
+  }
+
   @Override
   public Iterator<E> iterator() {
     return queue.iterator();
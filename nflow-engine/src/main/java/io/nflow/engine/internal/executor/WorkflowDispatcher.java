@@ -1,6 +1,9 @@
 package io.nflow.engine.internal.executor;
 
 import static java.lang.Boolean.TRUE;
+import static java.util.Collections.emptyList;
+import static java.util.stream.Collectors.toList;
+import static org.joda.time.DateTimeUtils.currentTimeMillis;
 import static org.slf4j.LoggerFactory.getLogger;
 
 import java.util.List;
@@ -18,11 +21,13 @@ import org.springframework.stereotype.Component;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.nflow.engine.exception.DispatcherExceptionAnalyzer;
 import io.nflow.engine.exception.DispatcherExceptionHandling;
+import io.nflow.engine.internal.dao.DispatcherNotificationDao;
 import io.nflow.engine.internal.dao.ExecutorDao;
 import io.nflow.engine.internal.dao.WorkflowInstanceDao;
 import io.nflow.engine.internal.util.NflowLogger;
 import io.nflow.engine.internal.util.PeriodicLogger;
 import io.nflow.engine.service.WorkflowDefinitionService;
+import io.nflow.engine.workflow.instance.WorkflowInstance;
 
 @Component
 @SuppressFBWarnings(value = "MDM_RANDOM_SEED", justification = "rand does not need to be secure")
@@ -41,6 +46,9 @@ public class WorkflowDispatcher implements Runnable {
   private final WorkflowStateProcessorFactory stateProcessorFactory;
   private final WorkflowDefinitionService workflowDefinitions;
   private final ExecutorDao executorDao;
+  private final DispatcherNotificationDao dispatcherNotifications;
+  private final AdaptivePollingController pollingController;
+  private final WorkflowInstanceRecovery recovery;
   private final DispatcherExceptionAnalyzer exceptionAnalyzer;
   private final NflowLogger nflowLogger;
   private final long sleepTimeMillis;
@@ -48,22 +56,31 @@ public class WorkflowDispatcher implements Runnable {
   private final Random rand = new Random();
   private final boolean allowInterrupt;
   private final boolean autoStart;
+  private final boolean preloadInstances;
 
   @Inject
   public WorkflowDispatcher(WorkflowInstanceExecutor executor, WorkflowInstanceDao workflowInstances,
       WorkflowStateProcessorFactory stateProcessorFactory, WorkflowDefinitionService workflowDefinitions, ExecutorDao executorDao,
-      DispatcherExceptionAnalyzer exceptionAnalyzer, NflowLogger nflowLogger, Environment env) {
+      DispatcherNotificationDao dispatcherNotifications, AdaptivePollingController pollingController,
+      WorkflowInstanceRecovery recovery, DispatcherExceptionAnalyzer exceptionAnalyzer, NflowLogger nflowLogger,
+      Environment env) {
     this.executor = executor;
     this.workflowInstances = workflowInstances;
     this.stateProcessorFactory = stateProcessorFactory;
     this.workflowDefinitions = workflowDefinitions;
     this.executorDao = executorDao;
+    this.dispatcherNotifications = dispatcherNotifications;
+    this.pollingController = pollingController;
+    this.recovery = recovery;
     this.exceptionAnalyzer = exceptionAnalyzer;
     this.nflowLogger = nflowLogger;
     this.sleepTimeMillis = env.getRequiredProperty("nflow.dispatcher.sleep.ms", Long.class);
     this.stuckThreadThresholdSeconds = env.getRequiredProperty("nflow.executor.stuckThreadThreshold.seconds", Integer.class);
     this.allowInterrupt = env.getProperty("nflow.executor.interrupt", Boolean.class, TRUE);
     this.autoStart = env.getRequiredProperty("nflow.autostart", Boolean.class);
+    // the priority ordered executor queue needs the polled priorities and next activation times
+    this.preloadInstances = env.getRequiredProperty("nflow.dispatcher.preload.instances", Boolean.class)
+        || env.getRequiredProperty("nflow.dispatcher.executor.queue.priority", Boolean.class);
     if (autoStart) {
       verifyDatabaseSetup();
     }
@@ -89,6 +106,7 @@ public class WorkflowDispatcher implements Runnable {
 
       logger.info("Dispatcher started.");
       running.set(true);
+      acceptClaimedInstances(!paused.get());
       while (!shutdownRequested.get()) {
         if (paused.get()) {
           sleep(false);
@@ -97,14 +115,14 @@ public class WorkflowDispatcher implements Runnable {
             executor.waitUntilQueueSizeLowerThanThreshold(executorDao.getMaxWaitUntil());
             if (!shutdownRequested.get()) {
               if (executorDao.tick()) {
-                workflowInstances.recoverWorkflowInstancesFromDeadNodes();
+                recovery.recoverInBackground();
               }
               int potentiallyStuckProcessors = stateProcessorFactory.getPotentiallyStuckProcessors();
               if (potentiallyStuckProcessors > 0) {
                 periodicLogger.warn("{} of {} state processor threads are potentially stuck (processing longer than {} seconds)",
                     potentiallyStuckProcessors, executor.getThreadCount(), stuckThreadThresholdSeconds);
               }
-              dispatch(getNextInstanceIds());
+              dispatch(getNextProcessors());
             }
           } catch (Exception e) {
             DispatcherExceptionHandling handling = exceptionAnalyzer.analyzeSafely(e);
@@ -126,6 +144,9 @@ public class WorkflowDispatcher implements Runnable {
         }
       }
     } finally {
+      acceptClaimedInstances(false);
+      dispatcherNotifications.close();
+      recovery.shutdown();
       var graceful = shutdownPool();
       executorDao.markShutdown(graceful);
       running.set(false);
@@ -151,11 +172,14 @@ public class WorkflowDispatcher implements Runnable {
 
   public void pause() {
     paused.set(true);
+    acceptClaimedInstances(false);
+    executor.clearScheduledInstances();
     logger.info("Dispatcher paused.");
   }
 
   public void resume() {
     paused.set(false);
+    acceptClaimedInstances(running.get() && !shutdownRequested.get());
     logger.info("Dispatcher resumed.");
   }
 
@@ -167,6 +191,12 @@ public class WorkflowDispatcher implements Runnable {
     return running.get();
   }
 
+  private void acceptClaimedInstances(boolean accept) {
+    executor.setClaimedInstanceProcessorFactory(
+        accept ? (instanceId, priority, nextActivation) -> stateProcessorFactory.createProcessor(instanceId, priority,
+            nextActivation, shutdownRequested::get) : null);
+  }
+
   private boolean shutdownPool() {
     try {
       return executor.shutdown(workflowInstances::clearExecutorId, allowInterrupt);
@@ -176,32 +206,64 @@ public class WorkflowDispatcher implements Runnable {
     }
   }
 
-  private void dispatch(List<Long> nextInstanceIds) {
-    if (nextInstanceIds.isEmpty()) {
+  private void dispatch(List<WorkflowStateProcessor> nextProcessors) {
+    if (nextProcessors.isEmpty()) {
       logger.debug("Found no workflow instances, sleeping.");
-      sleep(false);
+      waitForWakeup();
       return;
     }
-    logger.debug("Found {} workflow instances, dispatching executors.", nextInstanceIds.size());
-    for (Long instanceId : nextInstanceIds) {
-      executor.execute(stateProcessorFactory.createProcessor(instanceId, shutdownRequested::get));
+    logger.debug("Found {} workflow instances, dispatching executors.", nextProcessors.size());
+    for (WorkflowStateProcessor processor : nextProcessors) {
+      executor.execute(processor);
     }
   }
 
-  private List<Long> getNextInstanceIds() {
-    int nextBatchSize = executor.getQueueRemainingCapacity();
+  private List<WorkflowStateProcessor> getNextProcessors() {
+    int nextBatchSize = pollingController.nextBatchSize();
+    if (nextBatchSize <= 0) {
+      // the queue is full or the maximum number of workflow instances is waiting for asynchronous state method results
+      logger.debug("No capacity for more workflow instances, skipping polling.");
+      return emptyList();
+    }
     logger.debug("Polling next {} workflow instances.", nextBatchSize);
-    return workflowInstances.pollNextWorkflowInstanceIds(nextBatchSize);
+    long pollStart = currentTimeMillis();
+    List<WorkflowStateProcessor> processors;
+    if (preloadInstances) {
+      List<WorkflowInstance> instances = workflowInstances.pollNextWorkflowInstances(nextBatchSize);
+      processors = instances.stream().map(instance -> stateProcessorFactory.createProcessor(instance, shutdownRequested::get))
+          .collect(toList());
+    } else {
+      List<Long> ids = workflowInstances.pollNextWorkflowInstanceIds(nextBatchSize);
+      processors = ids.stream().map(instanceId -> stateProcessorFactory.createProcessor(instanceId, shutdownRequested::get))
+          .collect(toList());
+    }
+    pollingController.pollCompleted(nextBatchSize, processors.size(), currentTimeMillis() - pollStart);
+    return processors;
+  }
+
+  private void waitForWakeup() {
+    if (!dispatcherNotifications.isEnabled()) {
+      sleep(pollingController.getSleepMillis());
+      return;
+    }
+    try {
+      dispatcherNotifications.waitForWakeup(shutdownRequested::get);
+    } catch (@SuppressWarnings("unused") InterruptedException ok) {
+    }
   }
 
-  @SuppressFBWarnings(value = "MDM_THREAD_YIELD", justification = "Intentionally masking race condition")
   private void sleep(boolean randomize) {
+    if (randomize) {
+      sleep((long) (sleepTimeMillis * rand.nextFloat()));
+    } else {
+      sleep(sleepTimeMillis);
+    }
+  }
+
+  @SuppressFBWarnings(value = "MDM_THREAD_YIELD", justification = "Intentionally masking race condition")
+  private void sleep(long millis) {
     try {
-      if (randomize) {
-        Thread.sleep((long) (sleepTimeMillis * rand.nextFloat()));
-      } else {
-        Thread.sleep(sleepTimeMillis);
-      }
+      Thread.sleep(millis);
     } catch (@SuppressWarnings("unused") InterruptedException ok) {
     }
   }
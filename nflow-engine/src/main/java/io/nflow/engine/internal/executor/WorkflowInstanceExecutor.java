@@ -1,16 +1,28 @@
 package io.nflow.engine.internal.executor;
 
+import static java.lang.Math.max;
 import static java.lang.Math.min;
 import static java.lang.Thread.currentThread;
+import static java.util.concurrent.CompletableFuture.delayedExecutor;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
-import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toCollection;
+import static org.joda.time.DateTimeUtils.currentTimeMillis;
 import static org.slf4j.LoggerFactory.getLogger;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
@@ -19,19 +31,100 @@ import org.slf4j.Logger;
 
 public class WorkflowInstanceExecutor {
   private static final Logger logger = getLogger(WorkflowInstanceExecutor.class);
+  private static final long RESUME_RETRY_DELAY_MILLIS = 10;
+
+  /**
+   * Orders the state processors like the workflow instances are ordered when polling: by priority, highest first, and then by
+   * next activation time, earliest first. Processors without a polled next activation time are ordered last within their
+   * priority.
+   */
+  static final Comparator<Runnable> PRIORITY_ORDER = Comparator
+      .comparingInt((Runnable processor) -> ((WorkflowStateProcessor) processor).priority).reversed()
+      .thenComparingLong(processor -> {
+        DateTime nextActivation = ((WorkflowStateProcessor) processor).nextActivation;
+        return nextActivation == null ? Long.MAX_VALUE : nextActivation.getMillis();
+      });
 
   private final int awaitTerminationSeconds;
   private final int threadCount;
-  final ThreadPoolExecutor executor;
+  final ExecutorService executor;
   final ThresholdBlockingQueue<Runnable> queue;
+  private final ActivationTimerWheel<ScheduledInstance> activationTimer;
+  private final ScheduledExecutorService activationTimerThread;
+  private final AtomicInteger reservedClaims = new AtomicInteger();
+  private final int maxSuspended;
+  private final AtomicInteger suspendedCount = new AtomicInteger();
+  private final Map<Long, CompletableFuture<?>> suspendedInstances = new ConcurrentHashMap<>();
+  private volatile ProcessorFactory claimedInstanceProcessorFactory;
 
   public WorkflowInstanceExecutor(int maxQueueSize, int threadCount, int notifyThreshold, int awaitTerminationSeconds,
       int keepAliveSeconds, ThreadFactory threadFactory) {
-    queue = new ThresholdBlockingQueue<>(maxQueueSize, notifyThreshold);
-    executor = new ThreadPoolExecutor(threadCount, threadCount, keepAliveSeconds, SECONDS, queue, threadFactory);
-    executor.allowCoreThreadTimeOut(keepAliveSeconds > 0);
+    this(maxQueueSize, threadCount, notifyThreshold, awaitTerminationSeconds, keepAliveSeconds, threadFactory, false);
+  }
+
+  public WorkflowInstanceExecutor(int maxQueueSize, int threadCount, int notifyThreshold, int awaitTerminationSeconds,
+      int keepAliveSeconds, ThreadFactory threadFactory, boolean priorityOrdered) {
+    this(maxQueueSize, threadCount, notifyThreshold, awaitTerminationSeconds, keepAliveSeconds, threadFactory, priorityOrdered,
+        null);
+  }
+
+  public WorkflowInstanceExecutor(int maxQueueSize, int threadCount, int notifyThreshold, int awaitTerminationSeconds,
+      int keepAliveSeconds, ThreadFactory threadFactory, boolean priorityOrdered,
+      ActivationTimerWheel<ScheduledInstance> activationTimer) {
+    this(maxQueueSize, threadCount, notifyThreshold, awaitTerminationSeconds, keepAliveSeconds, threadFactory, priorityOrdered,
+        activationTimer, false);
+  }
+
+  public WorkflowInstanceExecutor(int maxQueueSize, int threadCount, int notifyThreshold, int awaitTerminationSeconds,
+      int keepAliveSeconds, ThreadFactory threadFactory, boolean priorityOrdered,
+      ActivationTimerWheel<ScheduledInstance> activationTimer, boolean threadPerTask) {
+    this(maxQueueSize, threadCount, notifyThreshold, awaitTerminationSeconds, keepAliveSeconds, threadFactory, priorityOrdered,
+        activationTimer, threadPerTask, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Create a workflow instance executor.
+   *
+   * @param maxQueueSize The maximum number of workflow instances waiting for an executor thread.
+   * @param threadCount The number of executor threads, or the maximum number of concurrently executed workflow instances when
+   * a thread is started for each workflow instance.
+   * @param notifyThreshold The queue size at or below which the dispatcher polls for more workflow instances.
+   * @param awaitTerminationSeconds The maximum time to wait for executing workflow instances on shutdown.
+   * @param keepAliveSeconds The time after which idle executor threads are terminated, or zero to keep them alive.
+   * @param threadFactory The factory for creating executor threads and the activation timer thread.
+   * @param priorityOrdered True to execute the queued workflow instances in priority and next activation time order instead of
+   * the order in which they were queued.
+   * @param activationTimer The timer for executing workflow instances at their next activation time without waiting for
+   * polling, or null to execute workflow instances only when they are polled.
+   * @param threadPerTask True to start a new thread for each workflow instance, typically a virtual thread, and limit the
+   * number of concurrently executed workflow instances to the thread count with a semaphore, instead of pooling the threads.
+   * @param maxSuspended The maximum number of workflow instances waiting for the result of an asynchronous state method without
+   * an executor thread. When the limit is reached, further results are waited for in the executor threads, and the queue
+   * capacity available for new workflow instances is limited to the number of instances that can still be suspended.
+   */
+  public WorkflowInstanceExecutor(int maxQueueSize, int threadCount, int notifyThreshold, int awaitTerminationSeconds,
+      int keepAliveSeconds, ThreadFactory threadFactory, boolean priorityOrdered,
+      ActivationTimerWheel<ScheduledInstance> activationTimer, boolean threadPerTask, int maxSuspended) {
+    queue = new ThresholdBlockingQueue<>(maxQueueSize, notifyThreshold, priorityOrdered ? PRIORITY_ORDER : null);
+    if (threadPerTask) {
+      executor = new ThreadPerTaskExecutor(threadCount, queue, threadFactory);
+    } else {
+      ThreadPoolExecutor threadPool = new ThreadPoolExecutor(threadCount, threadCount, keepAliveSeconds, SECONDS, queue,
+          threadFactory);
+      threadPool.allowCoreThreadTimeOut(keepAliveSeconds > 0);
+      executor = threadPool;
+    }
     this.awaitTerminationSeconds = awaitTerminationSeconds;
     this.threadCount = threadCount;
+    this.maxSuspended = maxSuspended;
+    this.activationTimer = activationTimer;
+    if (activationTimer == null) {
+      activationTimerThread = null;
+    } else {
+      activationTimerThread = Executors.newSingleThreadScheduledExecutor(threadFactory);
+      long tickMillis = activationTimer.getTickMillis();
+      activationTimerThread.scheduleAtFixedRate(this::executeExpiredInstances, tickMillis, tickMillis, MILLISECONDS);
+    }
   }
 
   public int getThreadCount() {
@@ -50,8 +143,256 @@ public class WorkflowInstanceExecutor {
     executor.execute(runnable);
   }
 
+  /**
+   * Set the factory used to create processors for workflow instances that were claimed for this executor when they were
+   * inserted. Set to null when the dispatcher is not accepting workflow instances.
+   *
+   * @param processorFactory The factory, or null.
+   */
+  public void setClaimedInstanceProcessorFactory(ProcessorFactory processorFactory) {
+    this.claimedInstanceProcessorFactory = processorFactory;
+  }
+
+  /**
+   * Returns true if a workflow instance claimed on insert can be executed without polling.
+   *
+   * @return True if the dispatcher is accepting workflow instances and the queue has free capacity that is not reserved.
+   */
+  public boolean canExecuteClaimedInstance() {
+    return claimedInstanceProcessorFactory != null && !executor.isShutdown() && getQueueRemainingCapacity() > 0;
+  }
+
+  /**
+   * Reserve queue capacity for a workflow instance that is claimed on insert. The reservation must be consumed with
+   * executeReservedInstance or returned with releaseClaimReservation.
+   *
+   * @return True if the capacity was reserved, false if the workflow instance must not be claimed.
+   */
+  public boolean reserveClaimedInstance() {
+    while (canExecuteClaimedInstance()) {
+      int reserved = reservedClaims.get();
+      if (reserved >= getUnreservedCapacity()) {
+        return false;
+      }
+      if (reservedClaims.compareAndSet(reserved, reserved + 1)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Return the queue capacity reserved for a workflow instance that was not claimed after all.
+   */
+  public void releaseClaimReservation() {
+    reservedClaims.decrementAndGet();
+  }
+
+  /**
+   * Execute a workflow instance that was claimed on insert with reserved queue capacity, and return the reservation.
+   *
+   * @param instanceId The workflow instance id.
+   * @param priority The priority of the workflow instance.
+   * @param nextActivation The next activation time of the workflow instance.
+   * @return True if the workflow instance was accepted for execution, false if the caller must release the claim.
+   */
+  public boolean executeReservedInstance(long instanceId, short priority, DateTime nextActivation) {
+    try {
+      return executeClaimedInstance(instanceId, priority, nextActivation);
+    } finally {
+      releaseClaimReservation();
+    }
+  }
+
+  /**
+   * Execute a workflow instance that was claimed for this executor when it was inserted.
+   *
+   * @param instanceId The workflow instance id.
+   * @param priority The priority of the workflow instance.
+   * @param nextActivation The next activation time of the workflow instance.
+   * @return True if the workflow instance was accepted for execution, false if the caller must release the claim.
+   */
+  public boolean executeClaimedInstance(long instanceId, short priority, DateTime nextActivation) {
+    ProcessorFactory processorFactory = claimedInstanceProcessorFactory;
+    if (processorFactory == null) {
+      return false;
+    }
+    try {
+      executor.execute(processorFactory.createProcessor(instanceId, priority, nextActivation));
+      return true;
+    } catch (@SuppressWarnings("unused") RejectedExecutionException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Reserve a place for a workflow instance that waits for the result of its asynchronous state method without an executor
+   * thread. The reservation is returned when the processing is resumed or the workflow instance is released.
+   *
+   * @return True if the workflow instance can be suspended, false if the result must be waited for in the executor thread.
+   */
+  boolean reserveSuspension() {
+    while (true) {
+      int suspended = suspendedCount.get();
+      if (suspended >= maxSuspended) {
+        return false;
+      }
+      if (suspendedCount.compareAndSet(suspended, suspended + 1)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Execute the processor again when the result of its asynchronous state method completes. No executor thread is used while
+   * waiting for the result. The result is cancelled and the claim of the workflow instance is released on shutdown. The
+   * processor must have reserved the suspension with reserveSuspension.
+   *
+   * @param processor The processor of the workflow instance.
+   * @param result The result of the state method.
+   */
+  void resumeWhenComplete(WorkflowStateProcessor processor, CompletableFuture<?> result) {
+    suspendedInstances.put(processor.instanceId, result);
+    result.whenComplete((value, failure) -> {
+      if (removeSuspended(processor.instanceId, result)) {
+        resume(processor);
+      }
+    });
+    if (executor.isShutdown() && removeSuspended(processor.instanceId, result)) {
+      result.cancel(true);
+      processor.releaseSuspended();
+    }
+  }
+
+  private boolean removeSuspended(long instanceId, CompletableFuture<?> result) {
+    if (suspendedInstances.remove(instanceId, result)) {
+      suspendedCount.decrementAndGet();
+      return true;
+    }
+    return false;
+  }
+
+  private void resume(WorkflowStateProcessor processor) {
+    try {
+      executor.execute(processor);
+    } catch (@SuppressWarnings("unused") RejectedExecutionException e) {
+      if (executor.isShutdown()) {
+        logger.warn("Executor shut down before resuming workflow instance {}, releasing it for polling", processor.instanceId);
+        processor.releaseSuspended();
+      } else {
+        // the queue is full, the result of the state method is kept until there is capacity
+        delayedExecutor(RESUME_RETRY_DELAY_MILLIS, MILLISECONDS).execute(() -> resume(processor));
+      }
+    }
+  }
+
+  /**
+   * Returns true if a workflow instance with the given next activation time can be executed by the activation timer of this
+   * executor in addition to polling.
+   *
+   * @param nextActivation The next activation time.
+   * @return True if the activation timer is enabled, the dispatcher is accepting workflow instances and the next activation is
+   * within the horizon of the timer.
+   */
+  public boolean canScheduleInstance(DateTime nextActivation) {
+    return activationTimer != null && claimedInstanceProcessorFactory != null && !executor.isShutdown()
+        && activationTimer.accepts(nextActivation.getMillis(), currentTimeMillis());
+  }
+
+  /**
+   * Execute a workflow instance when its next activation time is reached, if this executor can still claim it then. The workflow
+   * instance is not claimed while it waits in the activation timer, so that it can be polled, updated and woken up normally.
+   *
+   * @param instanceId The workflow instance id.
+   * @param priority The priority of the workflow instance.
+   * @param nextActivation The next activation time.
+   * @return True if the workflow instance was added to the activation timer, false if it is left for polling only.
+   */
+  public boolean scheduleInstance(long instanceId, short priority, DateTime nextActivation) {
+    return canScheduleInstance(nextActivation) && activationTimer
+        .schedule(new ScheduledInstance(instanceId, priority, nextActivation), nextActivation.getMillis(), currentTimeMillis());
+  }
+
+  /**
+   * Execute a workflow instance from the activation timer again on the next tick. Used when the workflow instance could not be
+   * claimed because the database clock has not yet reached its next activation time.
+   *
+   * @param instanceId The workflow instance id.
+   * @param priority The priority of the workflow instance.
+   * @param nextActivation The next activation time.
+   */
+  public void rescheduleInstance(long instanceId, short priority, DateTime nextActivation) {
+    if (activationTimer != null && !executor.isShutdown()) {
+      long now = currentTimeMillis();
+      ScheduledInstance instance = new ScheduledInstance(instanceId, priority, nextActivation);
+      activationTimer.reschedule(instance, now + activationTimer.getTickMillis(), now);
+    }
+  }
+
+  /**
+   * Remove the workflow instances waiting for their next activation time from the activation timer. The workflow instances are
+   * executed when they are polled.
+   */
+  public void clearScheduledInstances() {
+    if (activationTimer != null) {
+      activationTimer.clear();
+    }
+  }
+
+  private void executeExpiredInstances() {
+    try {
+      long now = currentTimeMillis();
+      for (ScheduledInstance instance : activationTimer.advance(now)) {
+        ProcessorFactory processorFactory = claimedInstanceProcessorFactory;
+        if (processorFactory == null) {
+          // the dispatcher is not accepting instances, leave the instance for polling
+          continue;
+        }
+        if (getQueueRemainingCapacity() <= 0 || !executeUnclaimedInstance(processorFactory, instance)) {
+          // the queue is full, retry on next tick
+          activationTimer.reschedule(instance, now + activationTimer.getTickMillis(), now);
+        }
+      }
+    } catch (Exception e) {
+      logger.error("Failed to execute workflow instances from activation timer", e);
+    }
+  }
+
+  private boolean executeUnclaimedInstance(ProcessorFactory processorFactory, ScheduledInstance instance) {
+    WorkflowStateProcessor processor = processorFactory.createProcessor(instance.id(), instance.priority(),
+        instance.nextActivation());
+    processor.claimBeforeProcessing = true;
+    try {
+      executor.execute(processor);
+      return true;
+    } catch (@SuppressWarnings("unused") RejectedExecutionException e) {
+      return false;
+    }
+  }
+
   public int getQueueRemainingCapacity() {
-    return queue.remainingCapacity();
+    return max(0, getUnreservedCapacity() - reservedClaims.get());
+  }
+
+  private int getUnreservedCapacity() {
+    // each new workflow instance may suspend its processing while waiting for an asynchronous state method result
+    return min(queue.remainingCapacity(), maxSuspended - suspendedCount.get());
+  }
+
+  /**
+   * Returns the number of workflow instances waiting for the result of an asynchronous state method without an executor thread.
+   *
+   * @return The number of suspended workflow instances.
+   */
+  public int getSuspendedCount() {
+    return suspendedCount.get();
+  }
+
+  public long getCompletedTaskCount() {
+    if (executor instanceof ThreadPerTaskExecutor) {
+      return ((ThreadPerTaskExecutor) executor).getCompletedTaskCount();
+    }
+    return ((ThreadPoolExecutor) executor).getCompletedTaskCount();
   }
 
   public boolean shutdown(Consumer<List<Long>> clearExecutorIds, boolean allowInterrupt) {
@@ -61,11 +402,25 @@ public class WorkflowInstanceExecutor {
     var gracefulTimeoutMs = totalTimeoutMs - hardTimeoutMs;
     // step 1: stop accepting new jobs
     executor.shutdown();
+    stopActivationTimer();
     // step 2: drain the not started workflows from the queue and mark their executorId to null which makes them immediately
-    // runnable by other executors
+    // runnable by other executors, workflows waiting in the activation timer are not claimed
     List<Runnable> queuedWorkflows = new ArrayList<>();
     queue.drainTo(queuedWorkflows);
-    boolean executorIdsCleared = clearExecutorIds(queuedWorkflows, clearExecutorIds);
+    @SuppressWarnings("unchecked")
+    var wfs = (List<WorkflowStateProcessor>) (Object) queuedWorkflows;
+    List<Long> notStartedWorkflows = wfs.stream().map(w -> w.instanceId).collect(toCollection(ArrayList::new));
+    clearScheduledInstances();
+    // workflow instances waiting for the result of an asynchronous state method are retried by other executors
+    for (Long instanceId : suspendedInstances.keySet()) {
+      CompletableFuture<?> result = suspendedInstances.remove(instanceId);
+      if (result != null) {
+        suspendedCount.decrementAndGet();
+        notStartedWorkflows.add(instanceId);
+        result.cancel(true);
+      }
+    }
+    boolean executorIdsCleared = clearExecutorIds(notStartedWorkflows, clearExecutorIds);
     try {
       // step 3: wait for executing workflow processing to complete normally
       if (!executor.awaitTermination(gracefulTimeoutMs, MILLISECONDS)) {
@@ -93,19 +448,54 @@ public class WorkflowInstanceExecutor {
     return gracefulShutdownSucceeded;
   }
 
+  private void stopActivationTimer() {
+    if (activationTimerThread != null) {
+      activationTimerThread.shutdownNow();
+      try {
+        activationTimerThread.awaitTermination(1, SECONDS);
+      } catch (@SuppressWarnings("unused") InterruptedException e) {
+        currentThread().interrupt();
+      }
+    }
+  }
+
   @SuppressFBWarnings(value = "EXS_EXCEPTION_SOFTENING_RETURN_FALSE", justification = "Shutdown error handling only needs the boolean")
-  private boolean clearExecutorIds(List<Runnable> workflows, Consumer<List<Long>> clearExecutorIds) {
-    if (workflows.isEmpty()) {
+  private boolean clearExecutorIds(List<Long> instanceIds, Consumer<List<Long>> clearExecutorIds) {
+    if (instanceIds.isEmpty()) {
       return true;
     }
     try {
-      @SuppressWarnings("unchecked")
-      var wfs = (List<WorkflowStateProcessor>) (Object) workflows;
-      clearExecutorIds.accept(wfs.stream().map(w -> w.instanceId).collect(toList()));
+      clearExecutorIds.accept(instanceIds);
       return true;
     } catch (Exception e) {
       logger.error("Failed to clear executorIds of queued workflows", e);
       return false;
     }
   }
+
+  /**
+   * Creates state processors for workflow instances that are executed without polling.
+   */
+  @FunctionalInterface
+  public interface ProcessorFactory {
+    /**
+     * Create a state processor.
+     *
+     * @param instanceId The workflow instance id.
+     * @param priority The priority of the workflow instance.
+     * @param nextActivation The next activation time of the workflow instance.
+     * @return The state processor, ordered by the priority and the next activation time in a priority ordered queue.
+     */
+    WorkflowStateProcessor createProcessor(long instanceId, short priority, DateTime nextActivation);
+  }
+
+  /**
+   * Workflow instance waiting in the activation timer.
+   *
+   * @param id The workflow instance id.
+   * @param priority The priority of the workflow instance.
+   * @param nextActivation The next activation time of the workflow instance.
+   */
+  public record ScheduledInstance(long id, short priority, DateTime nextActivation) {
+  }
 }
@@ -0,0 +1,141 @@
+package io.nflow.engine.internal.executor;
+
+import static java.lang.Math.max;
+import static java.lang.Thread.currentThread;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.joda.time.DateTimeUtils.currentTimeMillis;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.springframework.stereotype.Component;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+import io.nflow.engine.internal.dao.WorkflowInstanceDao;
+
+/**
+ * Recovers workflow instances from dead executors in a background thread, so that recovering a large number of instances does
+ * not block the dispatcher from polling. Only one recovery runs at a time; recovery requests made while a recovery is running
+ * are ignored, since the running recovery or the next keepalive tick will handle the dead executors.
+ */
+@Component
+@Singleton
+public class WorkflowInstanceRecovery {
+
+  private static final Logger logger = getLogger(WorkflowInstanceRecovery.class);
+
+  private final WorkflowInstanceDao workflowInstances;
+  private final AtomicBoolean running = new AtomicBoolean();
+  private final AtomicLong recoveredInstances = new AtomicLong();
+  private volatile ExecutorService recoveryThread;
+  private volatile long lastDurationMillis = -1;
+  private volatile int lastRecoveredInstances;
+  private volatile double lastThroughputPerSecond = -1;
+
+  @Inject
+  public WorkflowInstanceRecovery(WorkflowInstanceDao workflowInstances) {
+    this.workflowInstances = workflowInstances;
+  }
+
+  /**
+   * Start recovering workflow instances from dead executors in the background, unless a recovery is already running.
+   */
+  public void recoverInBackground() {
+    if (!running.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      getRecoveryThread().execute(this::recover);
+    } catch (RuntimeException e) {
+      running.set(false);
+      throw e;
+    }
+  }
+
+  /**
+   * Stop the recovery thread. Waits a few seconds for a running recovery to complete.
+   */
+  public synchronized void shutdown() {
+    if (recoveryThread != null) {
+      recoveryThread.shutdown();
+      try {
+        recoveryThread.awaitTermination(5, SECONDS);
+      } catch (@SuppressWarnings("unused") InterruptedException e) {
+        currentThread().interrupt();
+      }
+      recoveryThread = null;
+    }
+  }
+
+  /**
+   * Returns the duration of the latest completed recovery.
+   *
+   * @return The duration in milliseconds, or -1 if no recovery has completed.
+   */
+  public long getLastDurationMillis() {
+    return lastDurationMillis;
+  }
+
+  /**
+   * Returns the number of workflow instances recovered by the latest completed recovery.
+   *
+   * @return The number of instances.
+   */
+  public int getLastRecoveredInstances() {
+    return lastRecoveredInstances;
+  }
+
+  /**
+   * Returns the throughput of the latest completed recovery that recovered workflow instances.
+   *
+   * @return The recovered instances per second, or -1 if no instances have been recovered.
+   */
+  public double getLastThroughputPerSecond() {
+    return lastThroughputPerSecond;
+  }
+
+  /**
+   * Returns the total number of workflow instances recovered by this executor.
+   *
+   * @return The number of instances.
+   */
+  public long getRecoveredInstances() {
+    return recoveredInstances.get();
+  }
+
+  private synchronized ExecutorService getRecoveryThread() {
+    if (recoveryThread == null) {
+      recoveryThread = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "nflow-recovery");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    return recoveryThread;
+  }
+
+  private void recover() {
+    long start = currentTimeMillis();
+    try {
+      int recovered = workflowInstances.recoverWorkflowInstancesFromDeadNodes();
+      long duration = currentTimeMillis() - start;
+      lastDurationMillis = duration;
+      lastRecoveredInstances = recovered;
+      if (recovered > 0) {
+        recoveredInstances.addAndGet(recovered);
+        lastThroughputPerSecond = recovered * 1000.0 / max(1, duration);
+        logger.info("Recovered {} workflow instances from dead executors in {} ms", recovered, duration);
+      }
+    } catch (Exception e) {
+      logger.error("Failed to recover workflow instances from dead executors", e);
+    } finally {
+      running.set(false);
+    }
+  }
+}
@@ -10,6 +10,8 @@ import static io.nflow.engine.workflow.instance.WorkflowInstanceAction.WorkflowA
 import static java.lang.Thread.currentThread;
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.CompletableFuture.delayedExecutor;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.apache.commons.lang3.exception.ExceptionUtils.getStackTrace;
 import static org.joda.time.DateTime.now;
@@ -24,6 +26,11 @@ import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Supplier;
 
 import org.joda.time.DateTime;
@@ -44,6 +51,7 @@ import io.nflow.engine.internal.util.NflowLogger;
 import io.nflow.engine.internal.util.PeriodicLogger;
 import io.nflow.engine.internal.workflow.ObjectStringMapper;
 import io.nflow.engine.internal.workflow.StateExecutionImpl;
+import io.nflow.engine.internal.workflow.StateVariableObjectCache;
 import io.nflow.engine.internal.workflow.StoredWorkflowDefinitionWrapper;
 import io.nflow.engine.internal.workflow.WorkflowInstancePreProcessor;
 import io.nflow.engine.internal.workflow.WorkflowStateMethod;
@@ -51,6 +59,7 @@ import io.nflow.engine.listener.ListenerChain;
 import io.nflow.engine.listener.WorkflowExecutorListener;
 import io.nflow.engine.listener.WorkflowExecutorListener.ListenerContext;
 import io.nflow.engine.service.WorkflowDefinitionService;
+import io.nflow.engine.service.WorkflowInstanceInclude;
 import io.nflow.engine.service.WorkflowInstanceService;
 import io.nflow.engine.workflow.definition.NextAction;
 import io.nflow.engine.workflow.definition.WorkflowDefinition;
@@ -71,6 +80,8 @@ class WorkflowStateProcessor implements Runnable {
   private static final String MDC_KEY = "workflowInstanceId";
 
   final long instanceId;
+  final short priority;
+  final DateTime nextActivation;
   private final WorkflowDefinitionService workflowDefinitions;
   private final WorkflowInstanceService workflowInstances;
   private final WorkflowInstancePreProcessor workflowInstancePreProcessor;
@@ -84,20 +95,60 @@ class WorkflowStateProcessor implements Runnable {
   private final int unknownWorkflowStateRetryDelay;
   private final int stateProcessingRetryDelay;
   private final int stateVariableValueTooLongRetryDelay;
+  private final int asyncStateTimeout;
+  private final boolean asyncStateSuspendable;
   private final Map<Long, WorkflowStateProcessor> processingInstances;
   private final NflowLogger nflowLogger;
   private final StateSaveExceptionAnalyzer stateSaveExceptionAnalyzer;
+  private final WorkflowInstanceExecutor instanceExecutor;
   private DateTime startTime;
   private Thread thread;
   private ListenerContext listenerContext;
-
-  WorkflowStateProcessor(long instanceId, Supplier<Boolean> shutdownRequested, ObjectStringMapper objectMapper,
+  private WorkflowInstance preloadedInstance;
+  /**
+   * True if the workflow instance is executed by the activation timer and must be claimed before processing.
+   */
+  boolean claimBeforeProcessing;
+  private StateVariableObjectCache stateVariableObjects;
+  private SuspendedState suspendedState;
+  private SuspendedState resumedState;
+
+  WorkflowStateProcessor(long instanceId, WorkflowInstance preloadedInstance, Supplier<Boolean> shutdownRequested, ObjectStringMapper objectMapper,
       WorkflowDefinitionService workflowDefinitions, WorkflowInstanceService workflowInstances,
       WorkflowInstanceDao workflowInstanceDao, MaintenanceDao maintenanceDao,
       WorkflowInstancePreProcessor workflowInstancePreProcessor, Environment env,
       Map<Long, WorkflowStateProcessor> processingInstances, NflowLogger nflowLogger,
       StateSaveExceptionAnalyzer stateSaveExceptionAnalyzer, WorkflowExecutorListener... executorListeners) {
+    this(instanceId, preloadedInstance, shutdownRequested, objectMapper, workflowDefinitions, workflowInstances, workflowInstanceDao,
+        maintenanceDao, workflowInstancePreProcessor, env, processingInstances, nflowLogger, stateSaveExceptionAnalyzer, null,
+        executorListeners);
+  }
+
+  WorkflowStateProcessor(long instanceId, WorkflowInstance preloadedInstance, Supplier<Boolean> shutdownRequested, ObjectStringMapper objectMapper,
+      WorkflowDefinitionService workflowDefinitions, WorkflowInstanceService workflowInstances,
+      WorkflowInstanceDao workflowInstanceDao, MaintenanceDao maintenanceDao,
+      WorkflowInstancePreProcessor workflowInstancePreProcessor, Environment env,
+      Map<Long, WorkflowStateProcessor> processingInstances, NflowLogger nflowLogger,
+      StateSaveExceptionAnalyzer stateSaveExceptionAnalyzer, WorkflowInstanceExecutor instanceExecutor,
+      WorkflowExecutorListener... executorListeners) {
+    this(instanceId, preloadedInstance == null || preloadedInstance.priority == null ? 0 : preloadedInstance.priority,
+        preloadedInstance == null ? null : preloadedInstance.nextActivation, preloadedInstance, shutdownRequested, objectMapper,
+        workflowDefinitions, workflowInstances, workflowInstanceDao, maintenanceDao, workflowInstancePreProcessor, env,
+        processingInstances, nflowLogger, stateSaveExceptionAnalyzer, instanceExecutor, executorListeners);
+  }
+
+  WorkflowStateProcessor(long instanceId, short priority, DateTime nextActivation, WorkflowInstance preloadedInstance,
+      Supplier<Boolean> shutdownRequested, ObjectStringMapper objectMapper, WorkflowDefinitionService workflowDefinitions,
+      WorkflowInstanceService workflowInstances, WorkflowInstanceDao workflowInstanceDao, MaintenanceDao maintenanceDao,
+      WorkflowInstancePreProcessor workflowInstancePreProcessor, Environment env,
+      Map<Long, WorkflowStateProcessor> processingInstances, NflowLogger nflowLogger,
+      StateSaveExceptionAnalyzer stateSaveExceptionAnalyzer, WorkflowInstanceExecutor instanceExecutor,
+      WorkflowExecutorListener... executorListeners) {
     this.instanceId = instanceId;
+    this.preloadedInstance = preloadedInstance;
+    // the priority and next activation time order the processors in a priority ordered executor queue
+    this.priority = priority;
+    this.nextActivation = nextActivation;
     this.shutdownRequested = shutdownRequested;
     this.objectMapper = objectMapper;
     this.workflowDefinitions = workflowDefinitions;
@@ -107,7 +158,11 @@ class WorkflowStateProcessor implements Runnable {
     this.processingInstances = processingInstances;
     this.nflowLogger = nflowLogger;
     this.stateSaveExceptionAnalyzer = stateSaveExceptionAnalyzer;
+    this.instanceExecutor = instanceExecutor;
     this.executorListeners = asList(executorListeners);
+    // the processing is suspended below the listener chain, which is safe only if no listener wraps the state processing
+    this.asyncStateSuspendable = instanceExecutor != null
+        && this.executorListeners.stream().allMatch(WorkflowStateProcessor::hasDefaultProcess);
     this.workflowInstancePreProcessor = workflowInstancePreProcessor;
     illegalStateChangeAction = env.getRequiredProperty("nflow.illegal.state.change.action");
     unknownWorkflowTypeRetryDelay = env.getRequiredProperty("nflow.unknown.workflow.type.retry.delay.minutes", Integer.class);
@@ -115,10 +170,34 @@ class WorkflowStateProcessor implements Runnable {
     stateProcessingRetryDelay = env.getRequiredProperty("nflow.executor.stateProcessingRetryDelay.seconds", Integer.class);
     stateVariableValueTooLongRetryDelay = env.getRequiredProperty("nflow.executor.stateVariableValueTooLongRetryDelay.minutes",
         Integer.class);
+    asyncStateTimeout = env.getRequiredProperty("nflow.executor.asyncStateTimeout.seconds", Integer.class);
+  }
+
+  /**
+   * Returns true if the listener does not override the process method, so it cannot observe a state processing that is
+   * suspended while the result of an asynchronous state method is pending.
+   */
+  static boolean hasDefaultProcess(WorkflowExecutorListener listener) {
+    try {
+      return listener.getClass().getMethod("process", ListenerContext.class, ListenerChain.class)
+          .getDeclaringClass() == WorkflowExecutorListener.class;
+    } catch (@SuppressWarnings("unused") NoSuchMethodException e) {
+      return false;
+    }
   }
 
   @Override
   public void run() {
+    if (claimBeforeProcessing) {
+      claimBeforeProcessing = false;
+      if (!claimScheduledInstance()) {
+        return;
+      }
+    }
+    Map<String, String> threadLogContext = MDC.getCopyOfContextMap();
+    if (suspendedState != null && suspendedState.logContext != null) {
+      suspendedState.logContext.forEach(MDC::put);
+    }
     MDC.put(MDC_KEY, String.valueOf(instanceId));
     startTime = now();
     thread = currentThread();
@@ -139,11 +218,56 @@ class WorkflowStateProcessor implements Runnable {
     }
     processingInstances.remove(instanceId);
     MDC.remove(MDC_KEY);
+    SuspendedState suspended = suspendedState;
+    if (suspended != null) {
+      // the log context set by the listeners before processing is restored in the thread that resumes the processing
+      suspended.logContext = MDC.getCopyOfContextMap();
+      if (threadLogContext == null) {
+        MDC.clear();
+      } else {
+        MDC.setContextMap(threadLogContext);
+      }
+      // registered only after this thread is done with the processor, the processing may be resumed immediately
+      instanceExecutor.resumeWhenComplete(this, suspended.result);
+    }
+  }
+
+  private boolean claimScheduledInstance() {
+    try {
+      if (workflowInstanceDao.claimWorkflowInstance(instanceId)) {
+        return true;
+      }
+      if (workflowInstanceDao.isWorkflowInstanceActivationPending(instanceId)) {
+        // the database clock is behind the clock of this executor
+        logger.debug("Next activation of workflow instance {} from activation timer not reached in database, retrying", instanceId);
+        instanceExecutor.rescheduleInstance(instanceId, priority, nextActivation);
+        return false;
+      }
+      logger.debug("Workflow instance {} from activation timer was polled, modified or is not executable anymore", instanceId);
+    } catch (DataAccessException e) {
+      logger.warn("Failed to claim workflow instance {} from activation timer, leaving it for polling", instanceId, e);
+    }
+    return false;
   }
 
   private void runImpl() {
+    if (suspendedState != null) {
+      resumeImpl();
+      return;
+    }
     logger.debug("Starting.");
-    WorkflowInstance instance = workflowInstances.getWorkflowInstance(instanceId, EnumSet.of(CURRENT_STATE_VARIABLES), null);
+    WorkflowInstance instance = preloadedInstance;
+    // the instance is reloaded if processing is retried
+    preloadedInstance = null;
+    // deserialized state variables are reused by the consecutive state executions of this run
+    stateVariableObjects = new StateVariableObjectCache();
+    boolean stateVariablesLoaded = true;
+    if (instance == null) {
+      // state variables are loaded after checking the workflow definition if some workflow types load them on demand
+      stateVariablesLoaded = !workflowDefinitions.hasLazyStateVariables();
+      instance = workflowInstances.getWorkflowInstance(instanceId,
+          stateVariablesLoaded ? EnumSet.of(CURRENT_STATE_VARIABLES) : EnumSet.noneOf(WorkflowInstanceInclude.class), null);
+    }
     logIfLagging(instance);
     WorkflowDefinition definition = workflowDefinitions.getWorkflowDefinition(instance.type);
     if (definition == null || definition instanceof StoredWorkflowDefinitionWrapper) {
@@ -151,24 +275,68 @@ class WorkflowStateProcessor implements Runnable {
       return;
     }
     WorkflowSettings settings = definition.getSettings();
-    int subsequentStateExecutions = 0;
-    while (instance.status == executing && !shutdownRequested.get()) {
+    boolean lazyStateVariables = !stateVariablesLoaded && settings.lazyStateVariables;
+    if (!stateVariablesLoaded && !lazyStateVariables) {
+      Map<String, String> stateVariables = workflowInstanceDao.getStateVariables(instance.id, null);
+      instance.stateVariables.putAll(stateVariables);
+      instance.originalStateVariables.putAll(stateVariables);
+    }
+    processStates(instance, definition, lazyStateVariables, 0, null);
+  }
+
+  /**
+   * Continue processing the workflow instance after the result of an asynchronous state method has completed. The state
+   * execution is completed with the result, and the following states are processed like in a normal run.
+   */
+  private void resumeImpl() {
+    logger.debug("Resuming.");
+    SuspendedState resumed = suspendedState;
+    suspendedState = null;
+    processStates(resumed.instance, resumed.definition, resumed.lazyStateVariables, resumed.subsequentStateExecutions, resumed);
+  }
+
+  private void processStates(WorkflowInstance instance, WorkflowDefinition definition, boolean lazyStateVariables,
+      int subsequentStateExecutions, SuspendedState resumed) {
+    WorkflowSettings settings = definition.getSettings();
+    while (resumed != null
+        || (instance.status == executing && !shutdownRequested.get())) {
       startTime = now();
-      StateExecutionImpl execution = new StateExecutionImpl(instance, objectMapper, workflowInstanceDao,
-          workflowInstancePreProcessor, workflowInstances);
-      listenerContext = new ListenerContext(definition, instance, execution);
-      WorkflowInstanceAction.Builder actionBuilder = new WorkflowInstanceAction.Builder(instance);
+      StateExecutionImpl execution;
+      WorkflowInstanceAction.Builder actionBuilder;
       WorkflowState state;
-      try {
-        state = definition.getState(instance.state);
-      } catch (@SuppressWarnings("unused") IllegalArgumentException e) {
-        rescheduleUnknownWorkflowState(instance);
-        return;
+      if (resumed != null) {
+        execution = resumed.execution;
+        listenerContext = resumed.listenerContext;
+        actionBuilder = resumed.actionBuilder;
+        state = resumed.state;
+      } else {
+        execution = new StateExecutionImpl(instance, objectMapper, workflowInstanceDao, workflowInstancePreProcessor,
+            workflowInstances, lazyStateVariables);
+        listenerContext = new ListenerContext(definition, instance, execution);
+        actionBuilder = new WorkflowInstanceAction.Builder(instance);
+        try {
+          state = definition.getState(instance.state);
+        } catch (@SuppressWarnings("unused") IllegalArgumentException e) {
+          rescheduleUnknownWorkflowState(instance);
+          return;
+        }
+        if (lazyStateVariables) {
+          preloadStateVariables(execution, definition, state, settings);
+        }
       }
       boolean saveInstanceState = true;
       try {
-        processBeforeListeners();
+        if (resumed == null) {
+          processBeforeListeners();
+        }
+        resumedState = resumed;
+        resumed = null;
         listenerContext.nextAction = processWithListeners(instance, definition, execution, state);
+      } catch (AsyncStatePending pending) {
+        saveInstanceState = false;
+        suspend(new SuspendedState(instance, definition, lazyStateVariables, subsequentStateExecutions, execution,
+            listenerContext, actionBuilder, state, pending.args), pending.result);
+        return;
       } catch (StateVariableValueTooLongException e) {
         instance = rescheduleStateVariableValueTooLong(e, instance);
         saveInstanceState = false;
@@ -208,11 +376,57 @@ class WorkflowStateProcessor implements Runnable {
           subsequentStateExecutions = busyLoopPrevention(state, settings, subsequentStateExecutions, execution);
           instance = saveWorkflowInstanceState(execution, instance, definition, actionBuilder);
         }
+        resumedState = null;
       }
     }
     logger.debug("Finished.");
   }
 
+  /**
+   * Release the executor thread until the result of the asynchronous state method completes. The result is waited for at most
+   * the asynchronous state timeout, after which the state method result is cancelled and the state is retried.
+   */
+  private void suspend(SuspendedState state, CompletableFuture<?> result) {
+    CompletableFuture<Object> waiting = new CompletableFuture<>();
+    state.result = waiting;
+    suspendedState = state;
+    result.whenComplete((value, failure) -> {
+      if (failure == null) {
+        waiting.complete(value);
+      } else {
+        waiting.completeExceptionally(failure);
+      }
+    });
+    delayedExecutor(asyncStateTimeout, SECONDS).execute(() -> waiting.completeExceptionally(
+        new TimeoutException("State method result was not completed in " + asyncStateTimeout + " seconds")));
+    waiting.whenComplete((value, failure) -> {
+      if (failure != null) {
+        // timed out or cancelled on shutdown
+        result.cancel(true);
+      }
+    });
+    logger.debug("Waiting for state method result.");
+  }
+
+  /**
+   * Release the claim of a workflow instance that could not be resumed after the result of its asynchronous state method
+   * completed, so that the state is retried by polling.
+   */
+  void releaseSuspended() {
+    suspendedState = null;
+    workflowInstanceDao.clearExecutorId(singletonList(instanceId));
+  }
+
+  private void preloadStateVariables(StateExecutionImpl execution, WorkflowDefinition definition, WorkflowState state,
+      WorkflowSettings settings) {
+    List<String> names = new ArrayList<>(settings.preloadedStateVariables);
+    WorkflowStateMethod method = definition.getMethod(state);
+    if (method != null) {
+      names.addAll(method.getStateVariableKeys());
+    }
+    execution.loadVariables(names);
+  }
+
   private void logRetryableException(StateProcessExceptionHandling exceptionHandling, String state, Throwable thrown) {
     if (exceptionHandling.logStackTrace) {
       nflowLogger.log(logger, exceptionHandling.logLevel, "Handling state '{}' threw a retryable exception, trying again later.",
@@ -292,6 +506,8 @@ class WorkflowStateProcessor implements Runnable {
         // parent has been archived or deleted, no need to wake it up anymore
       }
     }
+    // the activation timer executes the instance if this executor can still claim it at the next activation time
+    boolean scheduleOnActivationTimer = isNextActivationOnActivationTimer(execution, nextState);
     WorkflowInstance.Builder instanceBuilder = new WorkflowInstance.Builder(instance)
         .setNextActivation(execution.getNextActivation())
         .setStatus(getStatus(execution, nextState))
@@ -304,7 +520,13 @@ class WorkflowStateProcessor implements Runnable {
     }
     while (true) {
       try {
-        return persistWorkflowInstanceState(execution, instance.stateVariables, actionBuilder, instanceBuilder);
+        WorkflowInstance savedInstance = persistWorkflowInstanceState(execution, instance.stateVariables, actionBuilder,
+            instanceBuilder, scheduleOnActivationTimer);
+        if (scheduleOnActivationTimer && !instanceExecutor.scheduleInstance(savedInstance.id, priority(savedInstance),
+            savedInstance.nextActivation)) {
+          logger.debug("Activation timer is full, leaving the workflow instance for polling");
+        }
+        return savedInstance;
       } catch (Exception ex) {
         if (shutdownRequested.get()) {
           logger.error(
@@ -328,16 +550,16 @@ class WorkflowStateProcessor implements Runnable {
   }
 
   private WorkflowInstance persistWorkflowInstanceState(StateExecutionImpl execution, Map<String, String> originalStateVars,
-      WorkflowInstanceAction.Builder actionBuilder, WorkflowInstance.Builder instanceBuilder) {
+      WorkflowInstanceAction.Builder actionBuilder, WorkflowInstance.Builder instanceBuilder, boolean scheduleOnActivationTimer) {
     if (execution.isStateProcessInvoked()) {
       WorkflowInstanceAction action = actionBuilder.setExecutionEnd(now()).setType(getActionType(execution))
           .setStateText(execution.getNextStateReason()).build();
       WorkflowInstance instance = instanceBuilder.setStartedIfNotSet(action.executionStart).build();
       if (execution.isFailed()) {
-        workflowInstanceDao.updateWorkflowInstanceAfterExecution(instance, action, emptyList(), emptyList(), true);
+        updateWorkflowInstanceAfterExecution(instance, action, emptyList(), emptyList(), true, scheduleOnActivationTimer);
       } else {
-        workflowInstanceDao.updateWorkflowInstanceAfterExecution(instance, action, execution.getNewChildWorkflows(),
-            execution.getNewWorkflows(), execution.createAction());
+        updateWorkflowInstanceAfterExecution(instance, action, execution.getNewChildWorkflows(), execution.getNewWorkflows(),
+            execution.createAction(), scheduleOnActivationTimer);
         processSuccess(execution, instance);
       }
     } else {
@@ -346,6 +568,21 @@ class WorkflowStateProcessor implements Runnable {
     return instanceBuilder.setOriginalStateVariables(originalStateVars).build();
   }
 
+  private static short priority(WorkflowInstance instance) {
+    return instance.priority == null ? 0 : instance.priority;
+  }
+
+  private void updateWorkflowInstanceAfterExecution(WorkflowInstance instance, WorkflowInstanceAction action,
+      List<WorkflowInstance> childWorkflows, List<WorkflowInstance> workflows, boolean createAction,
+      boolean scheduleOnActivationTimer) {
+    if (scheduleOnActivationTimer) {
+      // other dispatchers are not notified so that they do not compete with the activation timer for the instance
+      workflowInstanceDao.updateWorkflowInstanceAfterExecution(instance, action, childWorkflows, workflows, createAction, false);
+    } else {
+      workflowInstanceDao.updateWorkflowInstanceAfterExecution(instance, action, childWorkflows, workflows, createAction);
+    }
+  }
+
   private void processSuccess(StateExecutionImpl execution, WorkflowInstance instance) {
     execution.getWakeUpParentWorkflowStates().ifPresent(expectedStates -> {
       logger.debug("Possibly waking up parent workflow instance {}", instance.parentWorkflowId);
@@ -379,6 +616,13 @@ class WorkflowStateProcessor implements Runnable {
     return nextState.getType().getStatus(execution.getNextActivation());
   }
 
+  private boolean isNextActivationOnActivationTimer(StateExecutionImpl execution, WorkflowState nextState) {
+    DateTime nextActivation = execution.getNextActivation();
+    return instanceExecutor != null && !shutdownRequested.get() && execution.isStateProcessInvoked() && nextActivation != null
+        && nextActivation.isAfterNow() && nextState.getType().getStatus(nextActivation) == inProgress
+        && instanceExecutor.canScheduleInstance(nextActivation);
+  }
+
   private WorkflowActionType getActionType(StateExecutionImpl execution) {
     return execution.isFailed() || execution.isRetryCountExceeded() ? stateExecutionFailed : stateExecution;
   }
@@ -421,6 +665,53 @@ class WorkflowStateProcessor implements Runnable {
     }
   }
 
+  /**
+   * Thrown by an asynchronous state method invocation when the result is not completed yet, to suspend the processing until
+   * the result completes.
+   */
+  private static final class AsyncStatePending extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+    final transient CompletableFuture<?> result;
+    final transient Object[] args;
+
+    AsyncStatePending(CompletableFuture<?> result, Object[] args) {
+      super(null, null, false, false);
+      this.result = result;
+      this.args = args;
+    }
+  }
+
+  /**
+   * The state of a workflow instance processing that is waiting for the result of an asynchronous state method.
+   */
+  private static final class SuspendedState {
+    final WorkflowInstance instance;
+    final WorkflowDefinition definition;
+    final boolean lazyStateVariables;
+    final int subsequentStateExecutions;
+    final StateExecutionImpl execution;
+    final ListenerContext listenerContext;
+    final WorkflowInstanceAction.Builder actionBuilder;
+    final WorkflowState state;
+    final Object[] args;
+    CompletableFuture<?> result;
+    Map<String, String> logContext;
+
+    SuspendedState(WorkflowInstance instance, WorkflowDefinition definition, boolean lazyStateVariables,
+        int subsequentStateExecutions, StateExecutionImpl execution, ListenerContext listenerContext,
+        WorkflowInstanceAction.Builder actionBuilder, WorkflowState state, Object[] args) {
+      this.instance = instance;
+      this.definition = definition;
+      this.lazyStateVariables = lazyStateVariables;
+      this.subsequentStateExecutions = subsequentStateExecutions;
+      this.execution = execution;
+      this.listenerContext = listenerContext;
+      this.actionBuilder = actionBuilder;
+      this.state = state;
+      this.args = args;
+    }
+  }
+
   static class ExecutorListenerChain implements ListenerChain {
     private final Iterator<WorkflowExecutorListener> chain;
 
@@ -465,8 +756,67 @@ class WorkflowStateProcessor implements Runnable {
 
     @Override
     protected NextAction processStepToGetNextAction(WorkflowStateMethod method, Object... args) {
+      if (resumedState != null) {
+        CompletableFuture<?> result = resumedState.result;
+        resumedState = null;
+        return getNextAction(result);
+      }
       execution.setStateProcessInvoked(true);
-      return (NextAction) invokeMethod(method.method, definition, args);
+      Object result = invokeMethod(method.method, definition, args);
+      if (method.async) {
+        return awaitNextAction((CompletionStage<?>) result, args);
+      }
+      return (NextAction) result;
+    }
+
+    private NextAction awaitNextAction(CompletionStage<?> stage, Object[] args) {
+      if (stage == null) {
+        return null;
+      }
+      CompletableFuture<?> future = stage.toCompletableFuture();
+      if (future.isDone()) {
+        return getNextAction(future);
+      }
+      if (asyncStateSuspendable && !shutdownRequested.get() && instanceExecutor.reserveSuspension()) {
+        throw new AsyncStatePending(future, args);
+      }
+      // without an executor for resuming the processing, when a listener wraps the processing or when the maximum number of
+      // workflow instances is already suspended, the result is waited for in this thread
+      try {
+        return (NextAction) future.get(asyncStateTimeout, SECONDS);
+      } catch (ExecutionException e) {
+        throw unwrapFailure(e);
+      } catch (InterruptedException e) {
+        // interrupted by shutdown or stuck workflow handling
+        currentThread().interrupt();
+        future.cancel(true);
+        throw new UndeclaredThrowableException(e);
+      } catch (TimeoutException e) {
+        future.cancel(true);
+        throw new UndeclaredThrowableException(e);
+      }
+    }
+
+    private NextAction getNextAction(CompletableFuture<?> result) {
+      try {
+        return (NextAction) result.join();
+      } catch (CompletionException e) {
+        throw unwrapFailure(e);
+      }
+    }
+
+    private RuntimeException unwrapFailure(Exception e) {
+      Throwable cause = e;
+      while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+        cause = cause.getCause();
+      }
+      if (cause instanceof RuntimeException) {
+        return (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      return new UndeclaredThrowableException(cause);
     }
   }
 
@@ -508,7 +858,8 @@ class WorkflowStateProcessor implements Runnable {
         return stopInState(currentState, "Execution finished.");
       }
       NextAction nextAction;
-      Object[] args = objectMapper.createArguments(execution, method);
+      Object[] args = resumedState != null ? resumedState.args
+          : objectMapper.createArguments(execution, method, stateVariableObjects);
       if (currentState.getType().isFinal()) {
         processStepToGetNextAction(method, args);
         nextAction = stopInState(currentState, "Stopped in final state");
@@ -556,7 +907,7 @@ class WorkflowStateProcessor implements Runnable {
       } else {
         execution.setNextState(nextAction.getNextState());
       }
-      objectMapper.storeArguments(execution, method, args);
+      objectMapper.storeArguments(execution, method, args, stateVariableObjects);
       return nextAction;
     }
 
@@ -23,6 +23,7 @@ import io.nflow.engine.internal.workflow.WorkflowInstancePreProcessor;
 import io.nflow.engine.listener.WorkflowExecutorListener;
 import io.nflow.engine.service.WorkflowDefinitionService;
 import io.nflow.engine.service.WorkflowInstanceService;
+import io.nflow.engine.workflow.instance.WorkflowInstance;
 
 @Component
 public class WorkflowStateProcessorFactory {
@@ -35,6 +36,7 @@ public class WorkflowStateProcessorFactory {
   private final NflowLogger nflowLogger;
   private final StateSaveExceptionAnalyzer stateSaveExceptionAnalyzer;
   private final Environment env;
+  private final WorkflowInstanceExecutor instanceExecutor;
   @Autowired(required = false)
   protected WorkflowExecutorListener[] listeners = new WorkflowExecutorListener[0];
   final Map<Long, WorkflowStateProcessor> processingInstances = new ConcurrentHashMap<>();
@@ -44,7 +46,7 @@ public class WorkflowStateProcessorFactory {
   public WorkflowStateProcessorFactory(WorkflowDefinitionService workflowDefinitions, WorkflowInstanceService workflowInstances,
       ObjectStringMapper objectMapper, WorkflowInstanceDao workflowInstanceDao, MaintenanceDao maintenanceDao,
       WorkflowInstancePreProcessor workflowInstancePreProcessor, NflowLogger nflowLogger,
-      StateSaveExceptionAnalyzer stateSaveExceptionAnalyzer, Environment env) {
+      StateSaveExceptionAnalyzer stateSaveExceptionAnalyzer, WorkflowInstanceExecutor instanceExecutor, Environment env) {
     this.workflowDefinitions = workflowDefinitions;
     this.workflowInstances = workflowInstances;
     this.objectMapper = objectMapper;
@@ -55,12 +57,29 @@ public class WorkflowStateProcessorFactory {
     this.stateSaveExceptionAnalyzer = stateSaveExceptionAnalyzer;
     this.stuckThreadThresholdSeconds = env.getRequiredProperty("nflow.executor.stuckThreadThreshold.seconds", Integer.class);
     this.env = env;
+    this.instanceExecutor = instanceExecutor;
   }
 
   public WorkflowStateProcessor createProcessor(long instanceId, Supplier<Boolean> shutdownRequested) {
-    return new WorkflowStateProcessor(instanceId, shutdownRequested, objectMapper, workflowDefinitions, workflowInstances,
+    return createProcessor(instanceId, null, shutdownRequested);
+  }
+
+  public WorkflowStateProcessor createProcessor(WorkflowInstance instance, Supplier<Boolean> shutdownRequested) {
+    return createProcessor(instance.id, instance, shutdownRequested);
+  }
+
+  private WorkflowStateProcessor createProcessor(long instanceId, WorkflowInstance preloadedInstance,
+      Supplier<Boolean> shutdownRequested) {
+    return new WorkflowStateProcessor(instanceId, preloadedInstance, shutdownRequested, objectMapper, workflowDefinitions, workflowInstances,
         workflowInstanceDao, maintenanceDao, workflowInstancePreProcessor, env, processingInstances, nflowLogger,
-        stateSaveExceptionAnalyzer, listeners);
+        stateSaveExceptionAnalyzer, instanceExecutor, listeners);
+  }
+
+  public WorkflowStateProcessor createProcessor(long instanceId, short priority, DateTime nextActivation,
+      Supplier<Boolean> shutdownRequested) {
+    return new WorkflowStateProcessor(instanceId, priority, nextActivation, null, shutdownRequested, objectMapper,
+        workflowDefinitions, workflowInstances, workflowInstanceDao, maintenanceDao, workflowInstancePreProcessor, env,
+        processingInstances, nflowLogger, stateSaveExceptionAnalyzer, instanceExecutor, listeners);
   }
 
   public int getPotentiallyStuckProcessors() {
@@ -0,0 +1,146 @@
+package io.nflow.engine.internal.storage.blob;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.util.UUID.randomUUID;
+import static org.joda.time.DateTimeUtils.currentTimeMillis;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.joda.time.DateTime;
+
+/**
+ * State variable blob store that stores each value in a separate file in a local or shared directory. The files are spread to
+ * subdirectories by the first two characters of the key. New files are first written to a temporary file and then moved in
+ * place, so that readers never see partially written values. The last modified time of the file is used as the stored time.
+ * Files are deleted by first moving them to a tombstone file, so that a value stored again concurrently is either written
+ * again or kept.
+ */
+public class FileSystemStateVariableBlobStore implements StateVariableBlobStore {
+  private static final Pattern VALID_KEY = Pattern.compile("[0-9a-z]{3,}");
+  private final Path directory;
+
+  /**
+   * Create a blob store.
+   *
+   * @param directory The directory where the values are stored. The directory is created if it does not exist.
+   */
+  public FileSystemStateVariableBlobStore(Path directory) {
+    this.directory = directory;
+    try {
+      Files.createDirectories(directory);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to create state variable blob directory " + directory, e);
+    }
+  }
+
+  @Override
+  public void put(String key, String value) {
+    Path file = file(key);
+    try {
+      if (Files.exists(file)) {
+        try {
+          Files.setLastModifiedTime(file, FileTime.fromMillis(currentTimeMillis()));
+          // a concurrent delete restores the file if it sees the new time, otherwise the file is gone and written again
+          if (Files.exists(file)) {
+            return;
+          }
+        } catch (@SuppressWarnings("unused") NoSuchFileException e) {
+          // deleted concurrently, write the value again
+        }
+      }
+      Files.createDirectories(file.getParent());
+      Path tmp = Files.createTempFile(file.getParent(), ".", ".tmp");
+      try {
+        Files.writeString(tmp, value, UTF_8);
+        Files.setLastModifiedTime(tmp, FileTime.fromMillis(currentTimeMillis()));
+        Files.move(tmp, file, ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(tmp);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to store state variable blob " + key, e);
+    }
+  }
+
+  @Override
+  public String get(String key) {
+    try {
+      return Files.readString(file(key), UTF_8);
+    } catch (@SuppressWarnings("unused") NoSuchFileException e) {
+      throw new IllegalStateException("State variable blob " + key + " not found from " + directory);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to read state variable blob " + key, e);
+    }
+  }
+
+  @Override
+  public List<String> getKeysStoredBefore(DateTime time) {
+    List<String> keys = new ArrayList<>();
+    try (DirectoryStream<Path> subdirectories = Files.newDirectoryStream(directory, Files::isDirectory)) {
+      for (Path subdirectory : subdirectories) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(subdirectory)) {
+          for (Path file : files) {
+            String key = file.getFileName().toString();
+            if (VALID_KEY.matcher(key).matches() && Files.getLastModifiedTime(file).toMillis() < time.getMillis()) {
+              keys.add(key);
+            }
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to list state variable blobs in " + directory, e);
+    }
+    return keys;
+  }
+
+  @Override
+  public boolean deleteIfStoredBefore(String key, DateTime time) {
+    Path file = file(key);
+    Path tombstone = file.resolveSibling("." + key + "." + randomUUID() + ".deleted");
+    try {
+      if (Files.getLastModifiedTime(file).toMillis() >= time.getMillis()) {
+        return false;
+      }
+      // after the move, concurrent puts no longer see the file and write it again
+      Files.move(file, tombstone, ATOMIC_MOVE);
+      if (Files.getLastModifiedTime(tombstone).toMillis() >= time.getMillis()) {
+        // stored again between the checks
+        restore(tombstone, file);
+        return false;
+      }
+      Files.delete(tombstone);
+      return true;
+    } catch (@SuppressWarnings("unused") NoSuchFileException e) {
+      return false;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to delete state variable blob " + key, e);
+    }
+  }
+
+  private static void restore(Path tombstone, Path file) throws IOException {
+    try {
+      Files.move(tombstone, file);
+    } catch (@SuppressWarnings("unused") FileAlreadyExistsException e) {
+      // written again by a concurrent put
+      Files.delete(tombstone);
+    }
+  }
+
+  private Path file(String key) {
+    if (!VALID_KEY.matcher(key).matches()) {
+      throw new IllegalArgumentException("Invalid state variable blob key " + key);
+    }
+    return directory.resolve(key.substring(0, 2)).resolve(key);
+  }
+}
@@ -0,0 +1,48 @@
+package io.nflow.engine.internal.storage.blob;
+
+import java.util.List;
+
+import org.joda.time.DateTime;
+
+/**
+ * Stores large state variable values outside of the database. The values are stored with content based keys, so storing the
+ * same value again must not fail, but must update the time when the value was stored. Unreferenced values are deleted by the
+ * maintenance only if they have not been stored again after the grace period.
+ */
+public interface StateVariableBlobStore {
+
+  /**
+   * Store the value with the given key, or update the stored time of an existing value.
+   *
+   * @param key The content based key of the value.
+   * @param value The value to be stored.
+   */
+  void put(String key, String value);
+
+  /**
+   * Return the stored value.
+   *
+   * @param key The key of the value.
+   * @return The stored value.
+   * @throws IllegalStateException If the value is not found.
+   */
+  String get(String key);
+
+  /**
+   * Return the keys of the values that were stored before the given time.
+   *
+   * @param time The time.
+   * @return The keys of the values.
+   */
+  List<String> getKeysStoredBefore(DateTime time);
+
+  /**
+   * Delete the value if it was stored before the given time. The check and the delete must be atomic with respect to
+   * concurrent puts of the same key, so that a value stored again after the given time is never deleted.
+   *
+   * @param key The key of the value.
+   * @param time The time.
+   * @return True if the value was deleted, false otherwise.
+   */
+  boolean deleteIfStoredBefore(String key, DateTime time);
+}
@@ -0,0 +1,126 @@
+package io.nflow.engine.internal.storage.db;
+
+import static java.lang.Integer.MAX_VALUE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.stream.Collectors.toSet;
+import static org.joda.time.DateTime.now;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.joda.time.DateTime;
+import org.joda.time.ReadablePeriod;
+
+import io.nflow.engine.internal.storage.blob.StateVariableBlobStore;
+
+/**
+ * State variable codec that stores values that are longer than a threshold after encoding them with another codec to a blob
+ * store. The database contains only a reference to the blob, which is based on the SHA-256 hash of the value, so that equal
+ * values are stored only once and references to them can be compared in queries. Values without the reference header are
+ * decoded with the other codec, so that existing rows stay readable.
+ */
+public class BlobStoreStateVariableCodec implements StateVariableCodec {
+  static final String BLOB_HEADER = "\u0001blob:";
+  private final StateVariableCodec codec;
+  private final StateVariableBlobStore blobStore;
+  private final int threshold;
+  private final ReadablePeriod gracePeriod;
+
+  /**
+   * Create a codec.
+   *
+   * @param codec The codec used for encoding the values before they are stored to the database or to the blob store.
+   * @param blobStore The blob store.
+   * @param threshold The minimum length of the encoded values to be stored to the blob store.
+   * @param gracePeriod The minimum time to keep unreferenced blobs, must be longer than the longest transaction that stores
+   * state variables.
+   */
+  public BlobStoreStateVariableCodec(StateVariableCodec codec, StateVariableBlobStore blobStore, int threshold,
+      ReadablePeriod gracePeriod) {
+    this.codec = codec;
+    this.blobStore = blobStore;
+    this.threshold = threshold;
+    this.gracePeriod = gracePeriod;
+  }
+
+  @Override
+  public String encode(String value) {
+    String encoded = codec.encode(value);
+    if (!isStoredToBlob(encoded)) {
+      return encoded;
+    }
+    String key = key(encoded);
+    blobStore.put(key, encoded);
+    return BLOB_HEADER + key;
+  }
+
+  @Override
+  public String encodeQueryValue(String value) {
+    String encoded = codec.encodeQueryValue(value);
+    return isStoredToBlob(encoded) ? BLOB_HEADER + key(encoded) : encoded;
+  }
+
+  @Override
+  public String decode(String storedValue) {
+    if (storedValue != null && storedValue.startsWith(BLOB_HEADER)) {
+      return codec.decode(blobStore.get(storedValue.substring(BLOB_HEADER.length())));
+    }
+    return codec.decode(storedValue);
+  }
+
+  @Override
+  public int getMaxValueLength(int maxStoredLength) {
+    return BLOB_HEADER.length() + 64 <= maxStoredLength && threshold <= maxStoredLength ? MAX_VALUE
+        : codec.getMaxValueLength(maxStoredLength);
+  }
+
+  /**
+   * Return the prefix of the stored values that refer to blobs.
+   *
+   * @return The prefix.
+   */
+  public String getBlobReferencePrefix() {
+    return BLOB_HEADER;
+  }
+
+  /**
+   * Delete blobs that are older than the grace period and that are not referred by any stored value.
+   *
+   * @param referredReferences Function that returns those of the given blob references that are referred by stored values.
+   * Called with the references to the blob candidates after finding them.
+   * @return The number of deleted blobs.
+   */
+  public int deleteUnreferencedBlobs(Function<Set<String>, Set<String>> referredReferences) {
+    DateTime storedBefore = now().minus(gracePeriod);
+    List<String> keys = blobStore.getKeysStoredBefore(storedBefore);
+    if (keys.isEmpty()) {
+      return 0;
+    }
+    Set<String> referred = referredReferences.apply(keys.stream().map(key -> BLOB_HEADER + key).collect(toSet()));
+    int deleted = 0;
+    for (String key : keys) {
+      // blobs stored again after finding the candidates may be referred by rows that are not committed yet
+      if (!referred.contains(BLOB_HEADER + key) && blobStore.deleteIfStoredBefore(key, storedBefore)) {
+        deleted++;
+      }
+    }
+    return deleted;
+  }
+
+  private boolean isStoredToBlob(String encoded) {
+    // values that look like blob references must always be stored to blobs to decode them correctly
+    return encoded != null && (encoded.length() >= threshold || encoded.startsWith(BLOB_HEADER));
+  }
+
+  private static String key(String encoded) {
+    try {
+      return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(encoded.getBytes(UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not supported", e);
+    }
+  }
+}
@@ -0,0 +1,90 @@
+package io.nflow.engine.internal.storage.db;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Base64;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * State variable codec that compresses values longer than a threshold with deflate and stores them as Base64 text after a format
+ * header. Shorter values, and values that would not get shorter, are stored as such, so that existing rows and the stored values
+ * of small variables stay readable. Values are compressed deterministically, so the encoded value of a query parameter can be
+ * compared to the stored values.
+ */
+public class CompressingStateVariableCodec implements StateVariableCodec {
+  static final String DEFLATE_HEADER = "\u0001deflate:";
+  private final int compressionThreshold;
+
+  /**
+   * Create a codec.
+   *
+   * @param compressionThreshold The minimum length of the values to be compressed. Use Integer.MAX_VALUE to only decode
+   * compressed values.
+   */
+  public CompressingStateVariableCodec(int compressionThreshold) {
+    this.compressionThreshold = compressionThreshold;
+  }
+
+  @Override
+  public String encode(String value) {
+    if (value == null) {
+      return null;
+    }
+    // values that look like compressed values must always be encoded to decode them correctly
+    boolean forced = value.startsWith(DEFLATE_HEADER);
+    if (value.length() < compressionThreshold && !forced) {
+      return value;
+    }
+    String compressed = DEFLATE_HEADER + Base64.getEncoder().encodeToString(deflate(value.getBytes(UTF_8)));
+    return compressed.length() < value.length() || forced ? compressed : value;
+  }
+
+  @Override
+  public String decode(String storedValue) {
+    if (storedValue == null || !storedValue.startsWith(DEFLATE_HEADER)) {
+      return storedValue;
+    }
+    byte[] compressed = Base64.getDecoder().decode(storedValue.substring(DEFLATE_HEADER.length()));
+    return new String(inflate(compressed), UTF_8);
+  }
+
+  private static byte[] deflate(byte[] bytes) {
+    Deflater deflater = new Deflater();
+    try {
+      deflater.setInput(bytes);
+      deflater.finish();
+      ByteArrayOutputStream output = new ByteArrayOutputStream(bytes.length / 4 + 16);
+      byte[] buffer = new byte[8192];
+      while (!deflater.finished()) {
+        output.write(buffer, 0, deflater.deflate(buffer));
+      }
+      return output.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static byte[] inflate(byte[] bytes) {
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(bytes);
+      ByteArrayOutputStream output = new ByteArrayOutputStream(bytes.length * 4);
+      byte[] buffer = new byte[8192];
+      while (!inflater.finished()) {
+        int length = inflater.inflate(buffer);
+        if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          throw new IllegalStateException("Truncated compressed state variable value");
+        }
+        output.write(buffer, 0, length);
+      }
+      return output.toByteArray();
+    } catch (DataFormatException e) {
+      throw new IllegalStateException("Invalid compressed state variable value", e);
+    } finally {
+      inflater.end();
+    }
+  }
+}
@@ -9,6 +9,25 @@ import io.nflow.engine.workflow.instance.WorkflowInstance.WorkflowInstanceStatus
  */
 public class MySQLVariants implements SQLVariants {
 
+  private final boolean rowStreaming;
+
+  /**
+   * Create SQL variants for the MariaDB JDBC driver, which streams result sets with a positive fetch size.
+   */
+  public MySQLVariants() {
+    this(false);
+  }
+
+  /**
+   * Create SQL variants.
+   *
+   * @param rowStreaming True if result sets are streamed row by row with fetch size {@code Integer.MIN_VALUE}, as required by
+   *          the MySQL JDBC driver unless {@code useCursorFetch=true} is set in the JDBC URL.
+   */
+  public MySQLVariants(boolean rowStreaming) {
+    this.rowStreaming = rowStreaming;
+  }
+
   /**
    * Returns SQL representing the current database time plus given amount of seconds.
    */
@@ -17,6 +36,14 @@ public class MySQLVariants implements SQLVariants {
     return "from_unixtime(unix_timestamp() + " + seconds + ")";
   }
 
+  /**
+   * Returns true as MySQL returns the generated keys of all rows inserted with a batch update.
+   */
+  @Override
+  public boolean hasBatchGeneratedKeys() {
+    return true;
+  }
+
   /**
    * Returns false as MySQL does not support updateable CTEs.
    */
@@ -81,6 +108,15 @@ public class MySQLVariants implements SQLVariants {
     return Types.VARCHAR;
   }
 
+  /**
+   * Returns a conditional insert selecting the values from dual.
+   */
+  @Override
+  public String insertWhereNotExists(String table, String columns, String values, String condition) {
+    return "insert into " + table + "(" + columns + ") select " + values + " from dual where not exists (select 1 from "
+        + table + " where " + condition + ")";
+  }
+
   /**
    * Returns true as MySQL supports batch updates.
    */
@@ -89,6 +125,23 @@ public class MySQLVariants implements SQLVariants {
     return true;
   }
 
+  /**
+   * Returns {@code Integer.MIN_VALUE} when result sets are streamed row by row, otherwise the given fetch size.
+   */
+  @Override
+  public int cursorFetchSize(int fetchSize) {
+    return rowStreaming ? Integer.MIN_VALUE : fetchSize;
+  }
+
+  /**
+   * Returns false as the MySQL JDBC driver fails and the MariaDB JDBC driver reads the rest of a streamed result set into
+   * memory when another query is executed on the same connection.
+   */
+  @Override
+  public boolean cursorAllowsOtherQueries() {
+    return false;
+  }
+
   /**
    * Returns "like binary" for case-sensitive comparison.
    */
@@ -2,10 +2,14 @@ package io.nflow.engine.internal.storage.db;
 
 import static io.nflow.engine.internal.dao.DaoUtil.toDateTime;
 import static io.nflow.engine.internal.dao.DaoUtil.toTimestamp;
+import static java.util.Collections.emptyList;
 
+import java.io.OutputStream;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.List;
 
 import org.joda.time.DateTime;
 
@@ -39,6 +43,19 @@ public interface SQLVariants {
 
   boolean useBatchUpdate();
 
+  default boolean hasBatchGeneratedKeys() {
+    return false;
+  }
+
+  default String insertOnConflictDoNothing(String insertSql, String conflictColumns) {
+    return null;
+  }
+
+  default String insertWhereNotExists(String table, String columns, String values, String condition) {
+    return "insert into " + table + "(" + columns + ") select " + values + " where not exists (select 1 from " + table
+        + " where " + condition + ")";
+  }
+
   default String forUpdateSkipLocked() {
     return " for update";
   }
@@ -76,4 +93,60 @@ public interface SQLVariants {
   default String clobToComparable(String column) {
     return column;
   }
+
+  default String mod(String expression, int divisor) {
+    return "mod(" + expression + ", " + divisor + ")";
+  }
+
+  default boolean hasNotifications() {
+    return false;
+  }
+
+  default String notify(String channel) {
+    return null;
+  }
+
+  default void listen(Connection connection, String channel) throws SQLException {
+    // notifications are not supported
+  }
+
+  default List<String> getNotifications(Connection connection, int timeoutMillis) throws SQLException {
+    return emptyList();
+  }
+
+  default boolean hasCopyIn() {
+    return false;
+  }
+
+  default OutputStream copyIn(Connection connection, String sql) throws SQLException {
+    return null;
+  }
+
+  default boolean cursorRequiresTransaction() {
+    return false;
+  }
+
+  default int cursorFetchSize(int fetchSize) {
+    return fetchSize;
+  }
+
+  default boolean cursorAllowsOtherQueries() {
+    return true;
+  }
+
+  default boolean hasTablePartitions() {
+    return false;
+  }
+
+  default String isPartitionedTable() {
+    return null;
+  }
+
+  default String tablePartitions() {
+    return null;
+  }
+
+  default String createRangePartition(String table, String partition, DateTime from, DateTime to) {
+    return null;
+  }
 }
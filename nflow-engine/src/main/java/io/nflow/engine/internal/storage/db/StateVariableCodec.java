@@ -0,0 +1,45 @@
+package io.nflow.engine.internal.storage.db;
+
+/**
+ * Converts workflow instance state variable values to and from the format stored in the database. Implementations must be able
+ * to decode values stored by earlier codecs, including plain values that were stored without any encoding.
+ */
+public interface StateVariableCodec {
+
+  /**
+   * Encode the state variable value for storing it in the database.
+   *
+   * @param value The state variable value.
+   * @return The value to be stored.
+   */
+  String encode(String value);
+
+  /**
+   * Decode the state variable value read from the database.
+   *
+   * @param storedValue The stored value.
+   * @return The state variable value.
+   */
+  String decode(String storedValue);
+
+  /**
+   * Encode the state variable value for comparing it to the stored values in a query. The default implementation uses the same
+   * encoding as when storing the value, which requires the encoding to be deterministic.
+   *
+   * @param value The state variable value.
+   * @return The value to be compared to the stored values.
+   */
+  default String encodeQueryValue(String value) {
+    return encode(value);
+  }
+
+  /**
+   * Return the maximum length of the state variable values that can be stored.
+   *
+   * @param maxStoredLength The maximum length of the encoded values that fit in the database column.
+   * @return The maximum length of the state variable values.
+   */
+  default int getMaxValueLength(int maxStoredLength) {
+    return maxStoredLength;
+  }
+}
@@ -0,0 +1,67 @@
+package io.nflow.engine.internal.util;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.round;
+
+/**
+ * AdaptiveBatchSize adjusts the size of the next batch so that a batch takes about the target duration. The batch size changes
+ * at most by factor of two per batch. When the processing time of a single item rises clearly above its recent average, for
+ * example because of lock waits or an overloaded database, the batch size is halved and the caller should pause before the next
+ * batch for the returned time. Not thread safe.
+ */
+public class AdaptiveBatchSize {
+  private static final double CONGESTION_FACTOR = 2.0;
+  private static final double SMOOTHING = 0.2;
+  private final int maxBatchSize;
+  private final long targetMillis;
+  private int batchSize;
+  private double averageMillisPerItem = -1;
+
+  /**
+   * Create an adaptive batch size.
+   *
+   * @param initialBatchSize The size of the first batch.
+   * @param maxBatchSize The maximum batch size.
+   * @param targetMillis The target duration of a batch in milliseconds.
+   */
+  public AdaptiveBatchSize(int initialBatchSize, int maxBatchSize, long targetMillis) {
+    this.maxBatchSize = maxBatchSize;
+    this.targetMillis = targetMillis;
+    this.batchSize = min(initialBatchSize, maxBatchSize);
+  }
+
+  /**
+   * Return the size of the next batch.
+   *
+   * @return The batch size.
+   */
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * Update the batch size based on the duration of the previous batch.
+   *
+   * @param items The number of items in the previous batch.
+   * @param durationMillis The duration of the previous batch in milliseconds.
+   * @return The time in milliseconds to pause before the next batch, zero if the database is not congested.
+   */
+  public long update(int items, long durationMillis) {
+    if (items <= 0) {
+      return 0;
+    }
+    double millisPerItem = max(durationMillis, 1) / (double) items;
+    boolean congested = averageMillisPerItem > 0 && millisPerItem > CONGESTION_FACTOR * averageMillisPerItem;
+    averageMillisPerItem = averageMillisPerItem < 0 ? millisPerItem
+        : (1 - SMOOTHING) * averageMillisPerItem + SMOOTHING * millisPerItem;
+    long next;
+    if (congested || durationMillis > CONGESTION_FACTOR * targetMillis) {
+      next = batchSize / 2;
+    } else {
+      next = min(2L * batchSize, max(batchSize / 2, round(targetMillis / millisPerItem)));
+    }
+    batchSize = (int) max(1, min(maxBatchSize, next));
+    return congested ? durationMillis : 0;
+  }
+}
@@ -0,0 +1,70 @@
+package io.nflow.engine.internal.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators.AbstractSpliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * BatchingSpliterator reads the elements of a source stream in batches and passes each batch to an action before the elements
+ * of the batch are returned. The action can for example load related data of the whole batch with one query instead of one
+ * query per element. Only one batch is held in memory at a time. Not thread safe.
+ *
+ * @param <T> The element type.
+ */
+public class BatchingSpliterator<T> extends AbstractSpliterator<T> {
+  private final Spliterator<T> source;
+  private final int batchSize;
+  private final Consumer<List<T>> batchAction;
+  private final Deque<T> batch = new ArrayDeque<>();
+
+  /**
+   * Create a batching spliterator.
+   *
+   * @param source The source elements.
+   * @param batchSize The maximum number of elements in a batch.
+   * @param batchAction The action to run for each batch.
+   */
+  public BatchingSpliterator(Spliterator<T> source, int batchSize, Consumer<List<T>> batchAction) {
+    super(source.estimateSize(), source.characteristics() & (ORDERED | SIZED | NONNULL));
+    this.source = source;
+    this.batchSize = batchSize;
+    this.batchAction = batchAction;
+  }
+
+  /**
+   * Return a stream that passes the elements of the given stream to the action in batches.
+   *
+   * @param <T> The element type.
+   * @param stream The source stream. Closed when the returned stream is closed.
+   * @param batchSize The maximum number of elements in a batch.
+   * @param batchAction The action to run for each batch.
+   * @return The elements of the source stream.
+   */
+  public static <T> Stream<T> batched(Stream<T> stream, int batchSize, Consumer<List<T>> batchAction) {
+    return StreamSupport.stream(new BatchingSpliterator<>(stream.spliterator(), batchSize, batchAction), false)
+        .onClose(stream::close);
+  }
+
+  @Override
+  public boolean tryAdvance(Consumer<? super T> action) {
+    if (batch.isEmpty()) {
+      List<T> next = new ArrayList<>(batchSize);
+      while (next.size() < batchSize && source.tryAdvance(next::add)) {
+        // read the next batch
+      }
+      if (next.isEmpty()) {
+        return false;
+      }
+      batchAction.accept(next);
+      batch.addAll(next);
+    }
+    action.accept(batch.poll());
+    return true;
+  }
+}
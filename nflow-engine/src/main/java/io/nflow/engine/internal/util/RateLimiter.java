@@ -0,0 +1,44 @@
+package io.nflow.engine.internal.util;
+
+import static java.lang.Math.max;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * RateLimiter limits the average rate of operations shared by multiple threads. Each call reserves the next free time slot for
+ * the given number of permits and sleeps until the reserved slot starts, so short bursts are not allowed after idle periods.
+ * Thread safe.
+ */
+public class RateLimiter {
+  private final long nanosPerPermit;
+  private long nextFree;
+
+  /**
+   * Create a rate limiter.
+   *
+   * @param permitsPerSecond The maximum average number of permits per second.
+   */
+  public RateLimiter(int permitsPerSecond) {
+    this.nanosPerPermit = SECONDS.toNanos(1) / permitsPerSecond;
+    this.nextFree = System.nanoTime();
+  }
+
+  /**
+   * Wait until the given number of permits is available.
+   *
+   * @param permits The number of permits.
+   * @throws InterruptedException If the thread is interrupted while waiting.
+   */
+  public void acquire(int permits) throws InterruptedException {
+    long waitNanos;
+    synchronized (this) {
+      long now = System.nanoTime();
+      long start = max(now, nextFree);
+      nextFree = start + permits * nanosPerPermit;
+      waitNanos = start - now;
+    }
+    if (waitNanos > 0) {
+      NANOSECONDS.sleep(waitNanos);
+    }
+  }
+}
@@ -0,0 +1,41 @@
+package io.nflow.engine.internal.util;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.lang.reflect.Method;
+import java.util.Optional;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+
+/**
+ * Access to virtual threads on Java runtimes that support them. nFlow is compiled for Java 17, so the virtual thread API is
+ * accessed using reflection.
+ */
+public final class VirtualThreads {
+
+  private static final Logger logger = getLogger(VirtualThreads.class);
+
+  private VirtualThreads() {
+    // utility class
+  }
+
+  /**
+   * Creates a thread factory that starts a new virtual thread for each task.
+   *
+   * @param namePrefix The prefix of the thread names. A running number is appended to the prefix.
+   * @return The thread factory, or empty if the Java runtime does not support virtual threads.
+   */
+  public static Optional<ThreadFactory> newThreadFactory(String namePrefix) {
+    try {
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      Method name = builderClass.getMethod("name", String.class, long.class);
+      Method factory = builderClass.getMethod("factory");
+      Object builder = name.invoke(Thread.class.getMethod("ofVirtual").invoke(null), namePrefix, 0L);
+      return Optional.of((ThreadFactory) factory.invoke(builder));
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      logger.debug("Virtual threads are not supported", e);
+      return Optional.empty();
+    }
+  }
+}
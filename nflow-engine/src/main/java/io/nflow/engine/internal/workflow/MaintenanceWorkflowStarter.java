@@ -46,6 +46,10 @@ public class MaintenanceWorkflowStarter {
     apply(env, "deleteArchived", builder::withDeleteArchivedWorkflows);
     builder.withDeleteExpiredExecutorsOlderThan(
         Period.parse(env.getRequiredProperty("nflow.maintenance.initial.deleteExpiredExecutors.olderThan")));
+    ofNullable(env.getProperty("nflow.maintenance.initial.checkpointInterval"))
+        .map(StringUtils::trimToNull)
+        .map(Period::parse)
+        .ifPresent(builder::withCheckpointInterval);
     this.initialConfiguration = builder.build();
   }
 
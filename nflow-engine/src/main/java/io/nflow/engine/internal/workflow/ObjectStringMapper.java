@@ -29,10 +29,16 @@ public class ObjectStringMapper {
     this.mapper = nflowObjectMapper.get();
   }
 
+  public Object[] createArguments(StateExecution execution,
+      WorkflowStateMethod method) {
+    return createArguments(execution, method, new StateVariableObjectCache());
+  }
+
   @SuppressWarnings("unchecked")
   @SuppressFBWarnings(value = "UCC_UNRELATED_COLLECTION_CONTENTS", justification = "args are unrelated")
   public Object[] createArguments(StateExecution execution,
-      WorkflowStateMethod method) {
+      WorkflowStateMethod method, StateVariableObjectCache cache) {
+    cache.clearTaken();
     Object[] args = new Object[method.params.length + 1];
     args[0] = execution;
     StateParameter[] params = method.params;
@@ -53,7 +59,17 @@ public class ObjectStringMapper {
       } else if (String.class.equals(param.type)) {
         args[i] = value;
       } else {
-        args[i] = convertToObject(param.type, param.key, value);
+        Object object = cache.get(param.key, param.type, value);
+        if (object == null) {
+          object = convertToObject(param.type, param.key, value);
+        }
+        if (param.readOnly && StateVariableObjectCache.isImmutable(object)) {
+          cache.put(param.key, param.type, value, object);
+        } else {
+          // read-only parameters are not serialized again, so modified mutable objects must not be reused
+          cache.take(param.key, param.type, value, object);
+        }
+        args[i] = object;
       }
       if (param.mutable) {
         args[i] = new Mutable<>(args[i]);
@@ -71,9 +87,14 @@ public class ObjectStringMapper {
     }
   }
 
-  @SuppressWarnings("unchecked")
   public void storeArguments(StateExecution execution,
       WorkflowStateMethod method, Object[] args) {
+    storeArguments(execution, method, args, new StateVariableObjectCache());
+  }
+
+  @SuppressWarnings("unchecked")
+  public void storeArguments(StateExecution execution,
+      WorkflowStateMethod method, Object[] args, StateVariableObjectCache cache) {
     StateParameter[] params = method.params;
     for (int i = 0; i < params.length; i++) {
       StateParameter param = params[i];
@@ -94,7 +115,11 @@ public class ObjectStringMapper {
       if (String.class.equals(param.type)) {
         sVal = (String) value;
       } else {
-        sVal = convertFromObject(param.key, value);
+        sVal = cache.getUnmodifiedValue(param.key, value);
+        if (sVal == null) {
+          sVal = convertFromObject(param.key, value);
+        }
+        cache.put(param.key, param.type, sVal, value);
       }
       execution.setVariable(param.key, sVal);
     }
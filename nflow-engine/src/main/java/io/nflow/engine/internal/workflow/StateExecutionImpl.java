@@ -1,14 +1,19 @@
 package io.nflow.engine.internal.workflow;
 
+import static java.util.Collections.singletonList;
 import static java.util.Collections.unmodifiableList;
 import static org.joda.time.DateTime.now;
 import static org.slf4j.LoggerFactory.getLogger;
 import static org.springframework.util.Assert.notNull;
 
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
@@ -32,6 +37,8 @@ public class StateExecutionImpl extends ModelObject implements StateExecution {
   private final WorkflowInstanceDao workflowDao;
   private final WorkflowInstancePreProcessor workflowInstancePreProcessor;
   private final WorkflowInstanceService workflowInstanceService;
+  private final boolean lazyStateVariables;
+  private final Set<String> missingStateVariables = new HashSet<>();
   private DateTime nextActivation;
   private WorkflowState nextState;
   private String nextStateReason;
@@ -49,11 +56,22 @@ public class StateExecutionImpl extends ModelObject implements StateExecution {
 
   public StateExecutionImpl(WorkflowInstance instance, ObjectStringMapper objectMapper, WorkflowInstanceDao workflowDao,
       WorkflowInstancePreProcessor workflowInstancePreProcessor, WorkflowInstanceService workflowInstanceService) {
+    this(instance, objectMapper, workflowDao, workflowInstancePreProcessor, workflowInstanceService, false);
+  }
+
+  /**
+   * Create a state execution that optionally loads the state variables of the workflow instance from the database on first
+   * access. Loaded state variables are added to the state variables of the workflow instance.
+   */
+  public StateExecutionImpl(WorkflowInstance instance, ObjectStringMapper objectMapper, WorkflowInstanceDao workflowDao,
+      WorkflowInstancePreProcessor workflowInstancePreProcessor, WorkflowInstanceService workflowInstanceService,
+      boolean lazyStateVariables) {
     this.instance = instance;
     this.objectMapper = objectMapper;
     this.workflowDao = workflowDao;
     this.workflowInstancePreProcessor = workflowInstancePreProcessor;
     this.workflowInstanceService = workflowInstanceService;
+    this.lazyStateVariables = lazyStateVariables;
   }
 
   public DateTime getNextActivation() {
@@ -114,6 +132,7 @@ public class StateExecutionImpl extends ModelObject implements StateExecution {
   @Override
   @SuppressWarnings("unchecked")
   public <T> T getVariable(String name, Class<T> type, T defaultValue) {
+    loadVariables(singletonList(name));
     String value = instance.stateVariables.get(name);
     if (value != null) {
       return (T) objectMapper.convertToObject(type, name, value);
@@ -123,9 +142,31 @@ public class StateExecutionImpl extends ModelObject implements StateExecution {
 
   @Override
   public String getVariable(String name, String defaultValue) {
+    loadVariables(singletonList(name));
     return instance.stateVariables.getOrDefault(name, defaultValue);
   }
 
+  /**
+   * Load the given state variables from the database with one query, if state variables are loaded on demand and the variables
+   * have not been loaded or set yet.
+   *
+   * @param names The names of the state variables.
+   */
+  public void loadVariables(Collection<String> names) {
+    if (!lazyStateVariables) {
+      return;
+    }
+    List<String> unloaded = names.stream()
+        .filter(name -> !instance.stateVariables.containsKey(name) && !missingStateVariables.contains(name)).distinct().toList();
+    if (unloaded.isEmpty()) {
+      return;
+    }
+    Map<String, String> loaded = workflowDao.getStateVariables(instance.id, unloaded);
+    instance.stateVariables.putAll(loaded);
+    instance.originalStateVariables.putAll(loaded);
+    unloaded.stream().filter(name -> !loaded.containsKey(name)).forEach(missingStateVariables::add);
+  }
+
   @Override
   public void setVariable(String name, String value) {
     workflowDao.checkStateVariableValueLength(name, value);
@@ -0,0 +1,71 @@
+package io.nflow.engine.internal.workflow;
+
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Deserialized state variable objects of one workflow instance. The objects are reused when consecutive state executions get
+ * the same state variable value as a state method parameter of the same type. Objects of parameters that are not read-only
+ * are taken out of the cache while the state method is executed, and put back with their serialized value after the execution,
+ * so that objects modified by a failed execution are never reused. Objects of read-only parameters stay in the cache only if
+ * they are immutable, because modifications to them would not be serialized.
+ */
+public class StateVariableObjectCache {
+  private static final Set<Class<?>> IMMUTABLE_TYPES = Set.of(Boolean.class, Character.class, Byte.class, Short.class,
+      Integer.class, Long.class, Float.class, Double.class, BigInteger.class, BigDecimal.class);
+  private final Map<String, CachedObject> objects = new HashMap<>();
+  private final Map<String, CachedObject> taken = new HashMap<>();
+
+  Object get(String key, Type type, String value) {
+    CachedObject cached = objects.get(key);
+    if (cached != null && cached.type.equals(type) && (cached.value == value || cached.value.equals(value))) {
+      return cached.object;
+    }
+    return null;
+  }
+
+  void put(String key, Type type, String value, Object object) {
+    objects.put(key, new CachedObject(type, value, object));
+  }
+
+  void take(String key, Type type, String value, Object object) {
+    objects.remove(key);
+    taken.put(key, new CachedObject(type, value, object));
+  }
+
+  /**
+   * Return the value the object was deserialized from, if the object was taken from the cache and it can not have been
+   * modified, so that it does not need to be serialized again.
+   */
+  String getUnmodifiedValue(String key, Object object) {
+    CachedObject cached = taken.remove(key);
+    if (cached != null && cached.object == object && isImmutable(object)) {
+      return cached.value;
+    }
+    return null;
+  }
+
+  static boolean isImmutable(Object object) {
+    return IMMUTABLE_TYPES.contains(object.getClass()) || object instanceof Enum;
+  }
+
+  void clearTaken() {
+    taken.clear();
+  }
+
+  private static class CachedObject {
+    final Type type;
+    final String value;
+    final Object object;
+
+    CachedObject(Type type, String value, Object object) {
+      this.type = type;
+      this.value = value;
+      this.object = object;
+    }
+  }
+}
@@ -29,6 +29,7 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletionStage;
 import java.util.stream.Stream;
 
 import org.slf4j.Logger;
@@ -163,11 +164,17 @@ public class WorkflowDefinitionScanner {
       int mod = method.getModifiers();
       Class<?>[] parameterTypes = method.getParameterTypes();
       return isPublic(mod) && !isStatic(mod) && hasStateExecutionParameter(parameterTypes)
-          && hasValidReturnType(method.getReturnType());
+          && hasValidReturnType(method.getReturnType(), method.getGenericReturnType());
     }
 
-    private boolean hasValidReturnType(Class<?> returnType) {
-      return NextAction.class.equals(returnType) || Void.TYPE.equals(returnType);
+    private boolean hasValidReturnType(Class<?> returnType, Type genericReturnType) {
+      return NextAction.class.equals(returnType) || Void.TYPE.equals(returnType)
+          || isCompletionStageOfNextAction(returnType, genericReturnType);
+    }
+
+    private boolean isCompletionStageOfNextAction(Class<?> returnType, Type genericReturnType) {
+      return CompletionStage.class.isAssignableFrom(returnType) && genericReturnType instanceof ParameterizedType
+          && NextAction.class.equals(((ParameterizedType) genericReturnType).getActualTypeArguments()[0]);
     }
 
     private boolean hasStateExecutionParameter(Class<?>... parameterTypes) {
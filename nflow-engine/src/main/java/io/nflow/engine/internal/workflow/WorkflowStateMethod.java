@@ -2,11 +2,18 @@ package io.nflow.engine.internal.workflow;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.Stream;
 
 import io.nflow.engine.model.ModelObject;
 
 public class WorkflowStateMethod extends ModelObject {
   public final Method method;
+  /**
+   * True if the method returns a <code>CompletionStage&lt;NextAction&gt;</code> instead of a <code>NextAction</code>.
+   */
+  public final boolean async;
   final StateParameter[] params;
 
   static class StateParameter extends ModelObject {
@@ -27,6 +34,16 @@ public class WorkflowStateMethod extends ModelObject {
 
   public WorkflowStateMethod(Method method, StateParameter... params) {
     this.method = method;
+    this.async = method != null && CompletionStage.class.isAssignableFrom(method.getReturnType());
     this.params = params;
   }
+
+  /**
+   * Return the names of the state variables that are passed to the method as <code>@StateVar</code> parameters.
+   *
+   * @return The state variable names.
+   */
+  public List<String> getStateVariableKeys() {
+    return Stream.of(params).map(param -> param.key).toList();
+  }
 }
@@ -22,6 +22,14 @@ import io.nflow.engine.workflow.instance.WorkflowInstance;
  * Same instance of WorkflowExecutorListener is used for all workflow
  * state executions: all state must be stored in <code>ListenerContext.data</code>.
  * </p>
+ * <p>
+ * When a state method returns a <code>CompletionStage</code> that is not completed yet, the executor thread is released
+ * until the result completes only if none of the registered listeners overrides <code>process</code>. The state
+ * execution is then resumed in another thread, so <code>afterProcessing</code> or <code>afterFailure</code> may be
+ * called in a different thread than <code>beforeProcessing</code>. The log context (MDC) set in
+ * <code>beforeProcessing</code> is copied to the resuming thread. If some listener overrides <code>process</code>,
+ * the result is waited for in the executor thread within the listener chain.
+ * </p>
  */
 public interface WorkflowExecutorListener {
 
@@ -94,6 +102,7 @@ public interface WorkflowExecutorListener {
    * Listener can either call chain.next(listenerContext) to proceed to next filter or not to call it causing
    * processing of state to be skipped. Changes to workflowInstance (not child workflows or state variables) by
    * the filter will be persisted to database.
+   * Overriding this method makes asynchronous state methods hold the executor thread while their result is pending.
    * <p>
    *   Typical implementation:
    * </p>
@@ -0,0 +1,77 @@
+package io.nflow.engine.service;
+
+import static java.util.Collections.emptyMap;
+import static java.util.Optional.ofNullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Progress of unfinished maintenance operations. Contains the id of the last processed workflow instance for each operation, or
+ * for each worker of an operation when the operation is run with parallel workers. The workflow instances are processed in the
+ * order of their ids, so an interrupted operation can be resumed after the last processed id. Thread safe.
+ */
+public class MaintenanceCheckpoint {
+
+  private final Map<String, Long> lastProcessedIds;
+
+  /**
+   * Create an empty checkpoint.
+   */
+  public MaintenanceCheckpoint() {
+    this(null);
+  }
+
+  @JsonCreator
+  MaintenanceCheckpoint(@JsonProperty("lastProcessedIds") Map<String, Long> lastProcessedIds) {
+    this.lastProcessedIds = new ConcurrentHashMap<>(ofNullable(lastProcessedIds).orElse(emptyMap()));
+  }
+
+  @JsonProperty("lastProcessedIds")
+  Map<String, Long> getLastProcessedIds() {
+    return lastProcessedIds;
+  }
+
+  /**
+   * Return the id of the last processed workflow instance of an operation.
+   *
+   * @param key
+   *          The operation key.
+   * @return The last processed id, or 0 if the operation has not been started.
+   */
+  public long getLastProcessedId(String key) {
+    return lastProcessedIds.getOrDefault(key, 0L);
+  }
+
+  /**
+   * Set the id of the last processed workflow instance of an operation.
+   *
+   * @param key
+   *          The operation key.
+   * @param id
+   *          The last processed id.
+   */
+  public void setLastProcessedId(String key, long id) {
+    lastProcessedIds.put(key, id);
+  }
+
+  /**
+   * Remove the progress of a finished operation.
+   *
+   * @param key
+   *          The operation key.
+   */
+  public void remove(String key) {
+    lastProcessedIds.remove(key);
+  }
+
+  /**
+   * Remove the progress of all operations.
+   */
+  public void clear() {
+    lastProcessedIds.clear();
+  }
+}
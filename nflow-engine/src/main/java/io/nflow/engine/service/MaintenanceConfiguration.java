@@ -36,14 +36,22 @@ public class MaintenanceConfiguration {
    */
   public final ReadablePeriod deleteExpiredExecutorsOlderThan;
 
+  /**
+   * Stop the maintenance operations after [given period] and store the progress to a checkpoint, so that the operations can be
+   * resumed from the checkpoint. If null, the operations are run until finished.
+   */
+  public final ReadablePeriod checkpointInterval;
+
   MaintenanceConfiguration(@JsonProperty("deleteArchivedWorkflows") ConfigurationItem deleteArchivedWorkflows,
       @JsonProperty("archiveWorkflows") ConfigurationItem archiveWorkflows,
       @JsonProperty("deleteWorkflows") ConfigurationItem deleteWorkflows,
-      @JsonProperty("deleteExpiredAfter") ReadablePeriod deleteExpiredExecutorsOlderThan) {
+      @JsonProperty("deleteExpiredAfter") ReadablePeriod deleteExpiredExecutorsOlderThan,
+      @JsonProperty("checkpointInterval") ReadablePeriod checkpointInterval) {
     this.deleteArchivedWorkflows = deleteArchivedWorkflows;
     this.archiveWorkflows = archiveWorkflows;
     this.deleteWorkflows = deleteWorkflows;
     this.deleteExpiredExecutorsOlderThan = deleteExpiredExecutorsOlderThan;
+    this.checkpointInterval = checkpointInterval;
   }
 
   /**
@@ -55,6 +63,7 @@ public class MaintenanceConfiguration {
     private ConfigurationItem.Builder archiveWorkflows;
     private ConfigurationItem.Builder deleteWorkflows;
     private ReadablePeriod deleteExpiredExecutorsOlderThan;
+    private ReadablePeriod checkpointInterval;
 
     /**
      * Configuration for deleting old workflow instances from archive tables.
@@ -99,6 +108,20 @@ public class MaintenanceConfiguration {
       return this;
     }
 
+    /**
+     * Set the maximum time to run the maintenance operations before storing the progress to a checkpoint. The maintenance
+     * workflow stores the checkpoint and continues from it in the next state execution, so that a restarted maintenance
+     * workflow does not start the operations from the beginning.
+     *
+     * @param checkpointInterval
+     *          Maximum time between checkpoints
+     * @return builder for configuration
+     */
+    public Builder withCheckpointInterval(ReadablePeriod checkpointInterval) {
+      this.checkpointInterval = checkpointInterval;
+      return this;
+    }
+
     /**
      * Build MaintenanceConfiguration object.
      *
@@ -106,7 +129,7 @@ public class MaintenanceConfiguration {
      */
     public MaintenanceConfiguration build() {
       return new MaintenanceConfiguration(build(deleteArchivedWorkflows), build(archiveWorkflows), build(deleteWorkflows),
-          deleteExpiredExecutorsOlderThan);
+          deleteExpiredExecutorsOlderThan, checkpointInterval);
     }
   }
 
@@ -130,11 +153,39 @@ public class MaintenanceConfiguration {
      */
     public final Set<String> workflowTypes;
 
+    /**
+     * The number of workers that process disjoint sets of workflows concurrently, each in their own transactions.
+     */
+    public final int parallelism;
+
+    /**
+     * The maximum number of workflows processed per second by all workers together. Zero means unlimited.
+     */
+    public final int maxWorkflowsPerSecond;
+
+    /**
+     * The target duration of a batch. If set, the batch size is adjusted after each batch, starting from the batch size. If
+     * null, all batches have the batch size.
+     */
+    public final ReadablePeriod targetBatchDuration;
+
+    /**
+     * The maximum batch size when the batch size is adjusted to the target batch duration.
+     */
+    public final int maxBatchSize;
+
     ConfigurationItem(@JsonProperty("olderThanPeriod") ReadablePeriod olderThanPeriod,
-        @JsonProperty("batchSize") Integer batchSize, @JsonProperty("workflowTypes") Set<String> workflowTypes) {
+        @JsonProperty("batchSize") Integer batchSize, @JsonProperty("workflowTypes") Set<String> workflowTypes,
+        @JsonProperty("parallelism") Integer parallelism, @JsonProperty("maxWorkflowsPerSecond") Integer maxWorkflowsPerSecond,
+        @JsonProperty("targetBatchDuration") ReadablePeriod targetBatchDuration,
+        @JsonProperty("maxBatchSize") Integer maxBatchSize) {
       this.olderThanPeriod = olderThanPeriod;
       this.batchSize = batchSize;
       this.workflowTypes = ofNullable(workflowTypes).orElseGet(Collections::emptySet);
+      this.parallelism = ofNullable(parallelism).orElse(1);
+      this.maxWorkflowsPerSecond = ofNullable(maxWorkflowsPerSecond).orElse(0);
+      this.targetBatchDuration = targetBatchDuration;
+      this.maxBatchSize = ofNullable(maxBatchSize).orElse(10 * batchSize);
     }
 
     /**
@@ -146,6 +197,10 @@ public class MaintenanceConfiguration {
       private ReadablePeriod olderThanPeriod;
       private Integer batchSize = 1000;
       private Set<String> workflowTypes = emptySet();
+      private int parallelism = 1;
+      private int maxWorkflowsPerSecond;
+      private ReadablePeriod targetBatchDuration;
+      private Integer maxBatchSize;
 
       Builder(MaintenanceConfiguration.Builder parentBuilder) {
         this.parentBuilder = parentBuilder;
@@ -188,6 +243,59 @@ public class MaintenanceConfiguration {
         return this;
       }
 
+      /**
+       * Set the number of workers for the maintenance operation. Default is 1. The workers process disjoint sets of workflows
+       * concurrently, each in their own transactions and database connections.
+       *
+       * @param parallelism
+       *          Number of concurrent workers.
+       * @return this
+       */
+      public Builder setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+        return this;
+      }
+
+      /**
+       * Set the maximum number of workflows processed per second by all workers together, to limit the load caused to the
+       * database. Default is 0, which means unlimited.
+       *
+       * @param maxWorkflowsPerSecond
+       *          Maximum number of workflows processed per second.
+       * @return this
+       */
+      public Builder setMaxWorkflowsPerSecond(int maxWorkflowsPerSecond) {
+        this.maxWorkflowsPerSecond = maxWorkflowsPerSecond;
+        return this;
+      }
+
+      /**
+       * Set the target duration of a batch. Default is null, which means that all batches have the batch size. If set, the
+       * batch size is adjusted after each batch so that a batch takes about the target duration, and it is decreased when the
+       * processing slows down, for example because of lock waits. Shorter batches hold locks for a shorter time.
+       *
+       * @param targetBatchDuration
+       *          Target duration of a batch, for example one second.
+       * @return this
+       */
+      public Builder setTargetBatchDuration(ReadablePeriod targetBatchDuration) {
+        this.targetBatchDuration = targetBatchDuration;
+        return this;
+      }
+
+      /**
+       * Set the maximum batch size when the batch size is adjusted to the target batch duration. Default is ten times the batch
+       * size.
+       *
+       * @param maxBatchSize
+       *          Maximum number of workflows to operate on in single transaction.
+       * @return this
+       */
+      public Builder setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+        return this;
+      }
+
       /**
        * Finish ConfigurationItem object and move back to MaintenanceConfiguration.
        *
@@ -201,7 +309,11 @@ public class MaintenanceConfiguration {
         Assert.isTrue(olderThanPeriod != null, "olderThanPeriod must not be null");
         Assert.isTrue(batchSize > 0, "batchSize must be greater than 0");
         Assert.isTrue(workflowTypes != null, "workflowTypes must not be null");
-        return new ConfigurationItem(olderThanPeriod, batchSize, workflowTypes);
+        Assert.isTrue(parallelism > 0, "parallelism must be greater than 0");
+        Assert.isTrue(maxWorkflowsPerSecond >= 0, "maxWorkflowsPerSecond must not be negative");
+        Assert.isTrue(maxBatchSize == null || maxBatchSize >= batchSize, "maxBatchSize must not be less than batchSize");
+        return new ConfigurationItem(olderThanPeriod, batchSize, workflowTypes, parallelism, maxWorkflowsPerSecond,
+            targetBatchDuration, maxBatchSize);
       }
     }
   }
@@ -20,10 +20,23 @@ public class MaintenanceResults {
    */
   public final int deletedWorkflows;
 
-  MaintenanceResults(int archivedWorkflows, int deletedArchivedWorkflows, int deletedWorkflows) {
+  /**
+   * Number of unreferenced state variable values deleted from the blob store.
+   */
+  public final int deletedStateVariableBlobs;
+
+  /**
+   * True if all operations were finished, false if the operations were stopped at the checkpoint interval.
+   */
+  public final boolean finished;
+
+  MaintenanceResults(int archivedWorkflows, int deletedArchivedWorkflows, int deletedWorkflows, int deletedStateVariableBlobs,
+      boolean finished) {
     this.archivedWorkflows = archivedWorkflows;
     this.deletedArchivedWorkflows = deletedArchivedWorkflows;
     this.deletedWorkflows = deletedWorkflows;
+    this.deletedStateVariableBlobs = deletedStateVariableBlobs;
+    this.finished = finished;
   }
 
   /**
@@ -34,6 +47,8 @@ public class MaintenanceResults {
     private int archivedWorkflows;
     private int deletedArchivedWorkflows;
     private int deletedWorkflows;
+    private int deletedStateVariableBlobs;
+    private boolean finished = true;
 
     /**
      * Set number of workflows archived.
@@ -71,13 +86,38 @@ public class MaintenanceResults {
       return this;
     }
 
+    /**
+     * Set number of state variable values deleted from the blob store.
+     *
+     * @param deletedStateVariableBlobs
+     *          Number of state variable values deleted from the blob store.
+     * @return this
+     */
+    public Builder setDeletedStateVariableBlobs(int deletedStateVariableBlobs) {
+      this.deletedStateVariableBlobs = deletedStateVariableBlobs;
+      return this;
+    }
+
+    /**
+     * Set whether all operations were finished. Default is true.
+     *
+     * @param finished
+     *          False if the operations were stopped at the checkpoint interval.
+     * @return this
+     */
+    public Builder setFinished(boolean finished) {
+      this.finished = finished;
+      return this;
+    }
+
     /**
      * Build MaintenanceResults object.
      *
      * @return MaintenanceResults object.
      */
     public MaintenanceResults build() {
-      return new MaintenanceResults(archivedWorkflows, deletedArchivedWorkflows, deletedWorkflows);
+      return new MaintenanceResults(archivedWorkflows, deletedArchivedWorkflows, deletedWorkflows, deletedStateVariableBlobs,
+          finished);
     }
   }
 }
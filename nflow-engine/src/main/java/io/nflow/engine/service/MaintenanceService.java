@@ -5,11 +5,18 @@ import static io.nflow.engine.internal.dao.TableType.MAIN;
 import static java.lang.Math.max;
 import static java.lang.String.format;
 import static java.util.Arrays.stream;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static org.joda.time.DateTime.now;
 import static org.slf4j.LoggerFactory.getLogger;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
@@ -20,13 +27,19 @@ import org.apache.commons.lang3.time.StopWatch;
 import org.joda.time.DateTime;
 import org.joda.time.ReadablePeriod;
 import org.slf4j.Logger;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
+import io.nflow.engine.config.NFlow;
 import io.nflow.engine.internal.dao.ExecutorDao;
 import io.nflow.engine.internal.dao.MaintenanceDao;
 import io.nflow.engine.internal.dao.NflowTable;
 import io.nflow.engine.internal.dao.TableMetadataChecker;
 import io.nflow.engine.internal.dao.TableType;
+import io.nflow.engine.internal.storage.db.BlobStoreStateVariableCodec;
+import io.nflow.engine.internal.storage.db.StateVariableCodec;
+import io.nflow.engine.internal.util.AdaptiveBatchSize;
 import io.nflow.engine.internal.util.PeriodicLogger;
+import io.nflow.engine.internal.util.RateLimiter;
 import io.nflow.engine.service.MaintenanceConfiguration.ConfigurationItem;
 import io.nflow.engine.service.MaintenanceResults.Builder;
 
@@ -46,45 +59,101 @@ public class MaintenanceService {
 
   private final ExecutorDao executorDao;
 
+  private final StateVariableCodec stateVariableCodec;
+
   @Inject
   public MaintenanceService(MaintenanceDao maintenanceDao, TableMetadataChecker tableMetadataChecker,
-      WorkflowDefinitionService workflowDefinitionService, ExecutorDao executorDao) {
+      WorkflowDefinitionService workflowDefinitionService, ExecutorDao executorDao, @NFlow StateVariableCodec stateVariableCodec) {
     this.maintenanceDao = maintenanceDao;
     this.tableMetadataChecker = tableMetadataChecker;
     this.workflowDefinitionService = workflowDefinitionService;
     this.executorDao = executorDao;
+    this.stateVariableCodec = stateVariableCodec;
   }
 
   /**
    * Cleans up old (whose modified time is earlier than <code>olderThanPeriod</code> parameter) and passive (that do not have
    * <code>nextActivation</code>) workflows. Copies workflow instances, actions and state variables to corresponding archive
-   * tables and removes them from production and archive tables as requested.
+   * tables and removes them from production and archive tables as requested. When the archive tables are partitioned, whole
+   * partitions of workflows that were archived before the deletion limit are dropped before deleting the remaining archived
+   * workflows one by one. When state variable values are stored to a blob store, blobs that are no longer referred by any
+   * state variable are deleted after workflows have been archived or deleted.
    *
    * @param configuration
    *          Cleanup actions to be executed and parameters for the actions.
    * @return Object describing the number of workflows acted on.
    */
   public MaintenanceResults cleanupWorkflows(MaintenanceConfiguration configuration) {
+    return cleanupWorkflows(configuration, new MaintenanceCheckpoint());
+  }
+
+  /**
+   * Cleans up old workflows like {@link #cleanupWorkflows(MaintenanceConfiguration)}, starting from the given checkpoint. The
+   * workflows are processed in the order of their ids, and the id of the last processed workflow of each unfinished operation
+   * is stored to the checkpoint. When the checkpoint interval of the configuration has elapsed, the operations are stopped and
+   * the returned results are not finished. Calling this method again with the same checkpoint resumes the operations.
+   *
+   * @param configuration
+   *          Cleanup actions to be executed and parameters for the actions.
+   * @param checkpoint
+   *          The progress of the operations, updated after each batch.
+   * @return Object describing the number of workflows acted on.
+   */
+  public MaintenanceResults cleanupWorkflows(MaintenanceConfiguration configuration, MaintenanceCheckpoint checkpoint) {
     validateConfiguration(configuration);
     if (configuration.archiveWorkflows != null || configuration.deleteArchivedWorkflows != null) {
       stream(NflowTable.values()).forEach(table -> tableMetadataChecker.ensureCopyingPossible(table.main, table.archive));
     }
+    Progress progress = new Progress(checkpoint,
+        configuration.checkpointInterval == null ? null : now().plus(configuration.checkpointInterval));
     Builder builder = new MaintenanceResults.Builder();
+    int workflows = 0;
     if (configuration.deleteArchivedWorkflows != null) {
-      builder.setDeletedArchivedWorkflows(doAction("Deleting archived workflows", configuration.deleteArchivedWorkflows, ARCHIVE,
-          idList -> maintenanceDao.deleteWorkflows(ARCHIVE, idList)));
+      int deleted = dropArchivePartitions(configuration.deleteArchivedWorkflows);
+      deleted += doAction(new Operation("Deleting archived workflows", "deleteArchivedWorkflows",
+          configuration.deleteArchivedWorkflows, ARCHIVE, idList -> maintenanceDao.deleteWorkflows(ARCHIVE, idList)), progress);
+      builder.setDeletedArchivedWorkflows(deleted);
+      workflows += deleted;
+    }
+    if (configuration.archiveWorkflows != null && !progress.stopped) {
+      maintenanceDao.createArchivePartitions();
+      int archived = doAction(new Operation("Archiving workflows", "archiveWorkflows", configuration.archiveWorkflows, MAIN,
+          maintenanceDao::archiveWorkflows), progress);
+      builder.setArchivedWorkflows(archived);
+      workflows += archived;
     }
-    if (configuration.archiveWorkflows != null) {
-      builder.setArchivedWorkflows(
-          doAction("Archiving workflows", configuration.archiveWorkflows, MAIN, maintenanceDao::archiveWorkflows));
+    if (configuration.deleteWorkflows != null && !progress.stopped) {
+      int deleted = doAction(new Operation("Deleting workflows", "deleteWorkflows", configuration.deleteWorkflows, MAIN,
+          idList -> maintenanceDao.deleteWorkflows(MAIN, idList)), progress);
+      builder.setDeletedWorkflows(deleted);
+      workflows += deleted;
     }
-    if (configuration.deleteWorkflows != null) {
-      builder.setDeletedWorkflows(doAction("Deleting workflows", configuration.deleteWorkflows, MAIN,
-          idList -> maintenanceDao.deleteWorkflows(MAIN, idList)));
+    builder.setFinished(!progress.stopped);
+    if (workflows > 0 && !progress.stopped && stateVariableCodec instanceof BlobStoreStateVariableCodec blobCodec) {
+      builder.setDeletedStateVariableBlobs(deleteUnreferencedStateVariableBlobs(blobCodec));
     }
     return builder.build();
   }
 
+  private int deleteUnreferencedStateVariableBlobs(BlobStoreStateVariableCodec blobCodec) {
+    StopWatch stopWatch = new StopWatch();
+    stopWatch.start();
+    int deleted = blobCodec.deleteUnreferencedBlobs(
+        references -> maintenanceDao.getReferredStateVariableBlobs(blobCodec.getBlobReferencePrefix(), references));
+    log.info("Deleted {} unreferenced state variable blobs in {} seconds.", deleted, stopWatch.getDuration().toSeconds());
+    return deleted;
+  }
+
+  private int dropArchivePartitions(ConfigurationItem configuration) {
+    // partitions contain all workflow types, and workflows are archived after they have been modified
+    if (!configuration.workflowTypes.isEmpty() || !maintenanceDao.isArchivePartitioned()) {
+      return 0;
+    }
+    DateTime archivedBefore = now().minus(configuration.olderThanPeriod);
+    log.info("Dropping archive partitions of workflows archived before {}.", archivedBefore);
+    return maintenanceDao.dropArchivePartitions(archivedBefore);
+  }
+
   private void validateConfiguration(MaintenanceConfiguration configuration) {
     Stream.of(configuration.archiveWorkflows, configuration.deleteArchivedWorkflows, configuration.deleteWorkflows)
         .filter(Objects::nonNull)
@@ -96,31 +165,153 @@ public class MaintenanceService {
         });
   }
 
-  private int doAction(String type, ConfigurationItem configuration, TableType tableType,
-      Function<List<Long>, Integer> doAction) {
-    DateTime olderThan = now().minus(configuration.olderThanPeriod);
-    log.info("{} older than {}, in batches of {}.", type, olderThan, configuration.batchSize);
+  private int doAction(Operation operation, Progress progress) {
+    ConfigurationItem configuration = operation.configuration;
+    log.info("{} older than {}, in batches of {}.", operation.type, operation.olderThan, configuration.batchSize);
+    StopWatch stopWatch = new StopWatch();
+    stopWatch.start();
+    int totalWorkflows;
+    if (configuration.parallelism == 1) {
+      totalWorkflows = doAction(operation, operation.type, operation.key, 0, 1, progress);
+    } else {
+      totalWorkflows = doActionInParallel(operation, progress);
+    }
+    if (progress.stopped) {
+      log.info("{} stopped at checkpoint. Operated on {} workflows in {} seconds.", operation.type, totalWorkflows,
+          stopWatch.getDuration().toSeconds());
+    } else {
+      log.info("{} finished. Operated on {} workflows in {} seconds.", operation.type, totalWorkflows,
+          stopWatch.getDuration().toSeconds());
+    }
+    return totalWorkflows;
+  }
+
+  private int doActionInParallel(Operation operation, Progress progress) {
+    int shards = operation.configuration.parallelism;
+    ExecutorService executor = newFixedThreadPool(shards, new CustomizableThreadFactory("nflow-maintenance-"));
+    try {
+      List<Future<Integer>> results = new ArrayList<>();
+      for (int i = 0; i < shards; i++) {
+        int shard = i;
+        String shardType = format("%s (worker %s/%s)", operation.type, shard + 1, shards);
+        String shardKey = format("%s.%s/%s", operation.key, shard, shards);
+        results.add(executor.submit(() -> doAction(operation, shardType, shardKey, shard, shards, progress)));
+      }
+      int totalWorkflows = 0;
+      for (Future<Integer> result : results) {
+        totalWorkflows += result.get();
+      }
+      return totalWorkflows;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(operation.type + " was interrupted", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(operation.type + " failed", e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private int doAction(Operation operation, String type, String key, int shard, int shards, Progress progress) {
+    ConfigurationItem configuration = operation.configuration;
     StopWatch stopWatch = new StopWatch();
     stopWatch.start();
     PeriodicLogger periodicLogger = new PeriodicLogger(log, 60);
+    AdaptiveBatchSize adaptiveBatchSize = configuration.targetBatchDuration == null ? null
+        : new AdaptiveBatchSize(configuration.batchSize, configuration.maxBatchSize,
+            configuration.targetBatchDuration.toPeriod().toStandardDuration().getMillis());
+    long lastProcessedId = progress.checkpoint.getLastProcessedId(key);
+    if (lastProcessedId > 0) {
+      log.info("{} resumed after workflow id {}.", type, lastProcessedId);
+    }
     int totalWorkflows = 0;
     do {
-      List<Long> workflowIds = maintenanceDao.getOldWorkflowIds(tableType, olderThan, configuration.batchSize,
-          configuration.workflowTypes);
+      int batchSize = adaptiveBatchSize == null ? configuration.batchSize : adaptiveBatchSize.getBatchSize();
+      List<Long> workflowIds = maintenanceDao.getOldWorkflowIds(operation.tableType, operation.olderThan, batchSize,
+          configuration.workflowTypes, lastProcessedId, shard, shards);
       if (workflowIds.isEmpty()) {
+        progress.checkpoint.remove(key);
         break;
       }
-      int workflows = doAction.apply(workflowIds);
+      if (operation.rateLimiter != null) {
+        sleep(type, () -> operation.rateLimiter.acquire(workflowIds.size()));
+      }
+      long batchStart = System.nanoTime();
+      int workflows = operation.action.apply(workflowIds);
+      long batchMillis = NANOSECONDS.toMillis(System.nanoTime() - batchStart);
+      lastProcessedId = workflowIds.get(workflowIds.size() - 1);
+      progress.checkpoint.setLastProcessedId(key, lastProcessedId);
       totalWorkflows += workflows;
       double timeDiff = max(stopWatch.getDuration().toMillis() / 1000.0, 0.000001);
       String status = format("%s. %s workflows, %.1f workflows / second.", type, workflows, totalWorkflows / timeDiff);
       log.debug("{} Workflow ids: {}.", status, workflowIds);
       periodicLogger.info(status);
-    } while (true);
-    log.info("{} finished. Operated on {} workflows in {} seconds.", type, totalWorkflows, stopWatch.getDuration().toSeconds());
+      if (adaptiveBatchSize != null) {
+        long pauseMillis = adaptiveBatchSize.update(workflowIds.size(), batchMillis);
+        if (pauseMillis > 0) {
+          log.debug("{} Batch took {} ms, pausing for {} ms.", type, batchMillis, pauseMillis);
+          sleep(type, () -> MILLISECONDS.sleep(pauseMillis));
+        }
+      }
+    } while (!progress.shouldStop());
     return totalWorkflows;
   }
 
+  private void sleep(String type, Sleeper sleeper) {
+    try {
+      sleeper.sleep();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(type + " was interrupted", e);
+    }
+  }
+
+  private interface Sleeper {
+    void sleep() throws InterruptedException;
+  }
+
+  private static final class Operation {
+    final String type;
+    final String key;
+    final ConfigurationItem configuration;
+    final TableType tableType;
+    final Function<List<Long>, Integer> action;
+    final DateTime olderThan;
+    final RateLimiter rateLimiter;
+
+    Operation(String type, String key, ConfigurationItem configuration, TableType tableType,
+        Function<List<Long>, Integer> action) {
+      this.type = type;
+      this.key = key;
+      this.configuration = configuration;
+      this.tableType = tableType;
+      this.action = action;
+      this.olderThan = now().minus(configuration.olderThanPeriod);
+      this.rateLimiter = configuration.maxWorkflowsPerSecond > 0 ? new RateLimiter(configuration.maxWorkflowsPerSecond) : null;
+    }
+  }
+
+  private static final class Progress {
+    final MaintenanceCheckpoint checkpoint;
+    final DateTime deadline;
+    volatile boolean stopped;
+
+    Progress(MaintenanceCheckpoint checkpoint, DateTime deadline) {
+      this.checkpoint = checkpoint;
+      this.deadline = deadline;
+    }
+
+    boolean shouldStop() {
+      if (deadline != null && !now().isBefore(deadline)) {
+        stopped = true;
+      }
+      return stopped;
+    }
+  }
+
   /**
    * Delete workflow executors that have expired [given period] ago.
    *
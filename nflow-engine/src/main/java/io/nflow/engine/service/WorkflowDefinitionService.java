@@ -38,6 +38,7 @@ public class WorkflowDefinitionService {
 
   private final Map<String, WorkflowDefinition> workflowDefinitions = synchronizedMap(new LinkedHashMap<>());
   private List<WorkflowDefinition> workflowDefinitionValues = emptyList();
+  private volatile boolean lazyStateVariables;
   private final WorkflowDefinitionDao workflowDefinitionDao;
   private final boolean persistWorkflowDefinitions;
   private final boolean autoInit;
@@ -85,6 +86,15 @@ public class WorkflowDefinitionService {
     return workflowDefinitionValues;
   }
 
+  /**
+   * Return true if any of the managed workflow definitions loads state variables on demand.
+   *
+   * @return True if state variables are loaded on demand for some workflow type.
+   */
+  public boolean hasLazyStateVariables() {
+    return lazyStateVariables;
+  }
+
   /**
    * Persist all loaded workflow definitions if nflow.autoinit is false and nflow.definition.persist is true. If nflow.autoinit is
    * true, definitions are persisted when they are added to managed definitions.
@@ -122,6 +132,8 @@ public class WorkflowDefinitionService {
   private void setWorkflowDefinitions(Collection<WorkflowDefinition> newDefinitions) {
     synchronized (workflowDefinitions) {
       workflowDefinitionValues = unmodifiableList(new ArrayList<>(newDefinitions));
+      lazyStateVariables = workflowDefinitionValues.stream()
+          .anyMatch(definition -> definition.getSettings() != null && definition.getSettings().lazyStateVariables);
     }
   }
 
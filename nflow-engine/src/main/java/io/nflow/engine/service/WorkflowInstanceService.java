@@ -2,8 +2,8 @@ package io.nflow.engine.service;
 
 import static java.util.Collections.emptySet;
 import static java.util.EnumSet.complementOf;
+import static java.util.stream.Collectors.toList;
 import static org.slf4j.LoggerFactory.getLogger;
-import static org.springframework.util.StringUtils.hasText;
 
 import java.util.Collection;
 import java.util.EnumSet;
@@ -15,6 +15,7 @@ import java.util.stream.Stream;
 import jakarta.inject.Inject;
 
 import org.slf4j.Logger;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
@@ -29,6 +30,7 @@ import io.nflow.engine.workflow.instance.WorkflowInstance;
 import io.nflow.engine.workflow.instance.WorkflowInstance.WorkflowInstanceStatus;
 import io.nflow.engine.workflow.instance.WorkflowInstanceAction;
 import io.nflow.engine.workflow.instance.WorkflowInstanceAction.WorkflowActionType;
+import io.nflow.engine.workflow.instance.WorkflowInstancePage;
 
 /**
  * Service for managing workflow instances.
@@ -85,19 +87,59 @@ public class WorkflowInstanceService {
   /**
    * Insert the workflow instance to the database and return the id of the
    * instance. If the instance already exists, return the id of the existing
-   * instance.
+   * instance. Existing instances are detected with the conditional insert of the
+   * database, so retrying an insert does not cause failing database statements.
    * @param instance The workflow instance to be inserted.
    * @return The id of the inserted or existing workflow instance.
    */
   public long insertWorkflowInstance(WorkflowInstance instance) {
     Assert.notNull(workflowInstancePreProcessor, "workflowInstancePreProcessor can not be null");
     WorkflowInstance processedInstance = workflowInstancePreProcessor.process(instance);
-    long id = workflowInstanceDao.insertWorkflowInstance(processedInstance);
-    if (id == -1 && hasText(instance.externalId)) {
-      QueryWorkflowInstances query = new QueryWorkflowInstances.Builder().addTypes(instance.type).setExternalId(instance.externalId).build();
-      id = workflowInstanceDao.queryWorkflowInstances(query).get(0).id;
+    return workflowInstanceDao.insertWorkflowInstanceOrGetExisting(processedInstance);
+  }
+
+  /**
+   * Insert the workflow instances to the database in one transaction and return the ids of the instances. Existing instances
+   * are not returned: if any of the instances already exists, none of the instances are inserted.
+   * @param instances The workflow instances to be inserted.
+   * @return The ids of the inserted workflow instances, in the iteration order of the given instances.
+   * @throws DuplicateKeyException If a workflow instance with the same type and external id already exists.
+   */
+  public List<Long> insertWorkflowInstances(Collection<WorkflowInstance> instances) {
+    return insertWorkflowInstances(instances, false);
+  }
+
+  /**
+   * Insert the workflow instances to the database in one transaction and return the ids of the instances.
+   * @param instances The workflow instances to be inserted.
+   * @param returnExisting If true, instances that already exist are not inserted and the ids of the existing instances are
+   * returned instead, like in insertWorkflowInstance. The instances are then inserted one by one instead of in batches. If
+   * false, none of the instances are inserted if any of them already exists.
+   * @return The ids of the inserted or existing workflow instances, in the iteration order of the given instances.
+   * @throws DuplicateKeyException If returnExisting is false and a workflow instance with the same type and external id already
+   * exists.
+   */
+  public List<Long> insertWorkflowInstances(Collection<WorkflowInstance> instances, boolean returnExisting) {
+    Assert.notNull(workflowInstancePreProcessor, "workflowInstancePreProcessor can not be null");
+    List<WorkflowInstance> processedInstances = instances.stream().map(workflowInstancePreProcessor::process).collect(toList());
+    if (returnExisting) {
+      return workflowInstanceDao.insertWorkflowInstancesOrGetExisting(processedInstances);
     }
-    return id;
+    return workflowInstanceDao.insertWorkflowInstances(processedInstances);
+  }
+
+  /**
+   * Load the workflow instances to the database with the PostgreSQL COPY command in one transaction. This is intended for
+   * creating or migrating very large numbers of workflow instances. Instances with the same type and external id as an existing
+   * instance are skipped. The instances are pre-processed while they are streamed to the database, so the collection may be
+   * large, but the caller should split very large loads into several calls to keep the transactions reasonably sized.
+   * @param instances The workflow instances to be loaded.
+   * @return The number of inserted workflow instances.
+   * @throws UnsupportedOperationException If the database is not PostgreSQL.
+   */
+  public int loadWorkflowInstances(Collection<WorkflowInstance> instances) {
+    Assert.notNull(workflowInstancePreProcessor, "workflowInstancePreProcessor can not be null");
+    return workflowInstanceDao.copyWorkflowInstances(instances.stream().map(workflowInstancePreProcessor::process));
   }
 
   /**
@@ -160,14 +202,32 @@ public class WorkflowInstanceService {
   }
 
   /**
-   * Return workflow instances matching the given query.
+   * Return workflow instances matching the given query. The workflow instances are read from the database with a cursor while
+   * the stream is consumed, so large results can be processed without loading them all into memory.
+   * <p>
+   * Since 10.0.2 the returned stream holds a database connection from the nFlow connection pool until it has been consumed to
+   * the end or closed. Earlier versions loaded the whole result before returning the stream. Consume or close the stream
+   * promptly, preferably in a try-with-resources statement, and use {@link #listWorkflowInstances} or
+   * {@link #listWorkflowInstancePage} when the result is kept or processed slowly.
+   * </p>
    * @param query The query parameters.
-   * @return Matching workflow instances as Stream. The stream does not need to be closed.
+   * @return Matching workflow instances as Stream. The database resources are released when the stream has been consumed to
+   * the end. The stream must be closed if it is not consumed to the end.
    */
   public Stream<WorkflowInstance> listWorkflowInstancesAsStream(QueryWorkflowInstances query) {
     return workflowInstanceDao.queryWorkflowInstancesAsStream(query);
   }
 
+  /**
+   * Return one page of workflow instances matching the given query. Use the continuation token of the returned page in the
+   * next query to fetch the next page.
+   * @param query The query parameters.
+   * @return Matching workflow instances and the token for fetching the next page.
+   */
+  public WorkflowInstancePage listWorkflowInstancePage(QueryWorkflowInstances query) {
+    return workflowInstanceDao.queryWorkflowInstancePage(query);
+  }
+
   /**
    * Return current signal value for given workflow instance.
    * @param workflowInstanceId Workflow instance id.
@@ -6,6 +6,7 @@ import jakarta.inject.Inject;
 
 import org.springframework.stereotype.Component;
 
+import io.nflow.engine.service.MaintenanceCheckpoint;
 import io.nflow.engine.service.MaintenanceConfiguration;
 import io.nflow.engine.service.MaintenanceResults;
 import io.nflow.engine.service.MaintenanceService;
@@ -21,6 +22,7 @@ import io.nflow.engine.workflow.definition.WorkflowSettings;
 public class MaintenanceWorkflow extends CronWorkflow {
   public static final String MAINTENANCE_WORKFLOW_TYPE = "nFlowMaintenance";
   public static final String VAR_MAINTENANCE_CONFIGURATION = "config";
+  public static final String VAR_MAINTENANCE_CHECKPOINT = "checkpoint";
 
   @Inject
   private MaintenanceService maintenanceService;
@@ -32,6 +34,7 @@ public class MaintenanceWorkflow extends CronWorkflow {
   public MaintenanceWorkflow() {
     super(MAINTENANCE_WORKFLOW_TYPE);
     setDescription("Clean up workflow instances periodically.");
+    permit(DO_WORK, DO_WORK);
   }
 
   /**
@@ -46,6 +49,7 @@ public class MaintenanceWorkflow extends CronWorkflow {
   protected MaintenanceWorkflow(String type, WorkflowSettings settings) {
     super(type, settings);
     setDescription("Clean up workflow instances periodically.");
+    permit(DO_WORK, DO_WORK);
   }
 
   /**
@@ -55,15 +59,22 @@ public class MaintenanceWorkflow extends CronWorkflow {
    *          State execution context.
    * @param conf
    *          The maintenance configuration.
-   * @return The action to go schedule state.
+   * @param checkpoint
+   *          The progress of unfinished maintenance operations.
+   * @return The action to go schedule state, or to continue the work from the checkpoint.
    */
   public NextAction doWork(StateExecution execution,
-      @StateVar(value = VAR_MAINTENANCE_CONFIGURATION, readOnly = true) MaintenanceConfiguration conf) {
-    MaintenanceResults results = maintenanceService.cleanupWorkflows(conf);
+      @StateVar(value = VAR_MAINTENANCE_CONFIGURATION, readOnly = true) MaintenanceConfiguration conf,
+      @StateVar(value = VAR_MAINTENANCE_CHECKPOINT, instantiateIfNotExists = true) MaintenanceCheckpoint checkpoint) {
+    MaintenanceResults results = maintenanceService.cleanupWorkflows(conf, checkpoint);
     StringBuilder sb = new StringBuilder(64);
     add(sb, "Archived", results.archivedWorkflows);
     add(sb, "Deleted", results.deletedWorkflows);
     add(sb, "Deleted archived", results.deletedArchivedWorkflows);
+    if (!results.finished) {
+      return moveToState(DO_WORK, sb.insert(0, "Checkpoint. ").toString().trim());
+    }
+    checkpoint.clear();
     if (conf.deleteExpiredExecutorsOlderThan != null) {
       int deletedExecutors = maintenanceService.cleanupExecutors(conf.deleteExpiredExecutorsOlderThan);
       add(sb, "Deleted executors", deletedExecutors);
@@ -22,7 +22,9 @@ public @interface StateVar {
   public String value();
 
   /**
-   * Makes the variable readonly in the state handler method.
+   * Makes the variable readonly in the state handler method. Changes to the variable are not stored. Deserialized values of
+   * immutable types (boxed primitives, BigInteger, BigDecimal and enums) may be shared between state executions of the same
+   * workflow instance, other values are deserialized again for each state execution.
    *
    * @return True when variable should not be modified, false otherwise.
    */
@@ -347,8 +347,9 @@ public abstract class WorkflowDefinition extends ModelObject {
     if (stateMethod != null) {
       WorkflowStateType stateType = state.getType();
       Class<?> returnType = stateMethod.method.getReturnType();
-      if (!stateType.isFinal() && !NextAction.class.equals(returnType)) {
-        String msg = format("Class '%s' has a non-final state method '%s' that does not return NextAction",
+      if (!stateType.isFinal() && !NextAction.class.equals(returnType) && !stateMethod.async) {
+        String msg = format(
+            "Class '%s' has a non-final state method '%s' that does not return NextAction or CompletionStage<NextAction>",
             this.getClass().getName(), state.name());
         throw new IllegalArgumentException(msg);
       }
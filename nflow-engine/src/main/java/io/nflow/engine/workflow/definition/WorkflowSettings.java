@@ -2,6 +2,7 @@ package io.nflow.engine.workflow.definition;
 
 import static java.lang.Math.max;
 import static java.lang.Math.min;
+import static java.util.Arrays.asList;
 import static org.joda.time.DateTime.now;
 import static org.joda.time.DateTimeUtils.currentTimeMillis;
 import static org.joda.time.Duration.millis;
@@ -12,7 +13,9 @@ import static org.slf4j.LoggerFactory.getLogger;
 
 import java.math.BigInteger;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiFunction;
@@ -78,6 +81,16 @@ public class WorkflowSettings extends ModelObject {
    * Default priority for new workflow instances.
    */
   public final short defaultPriority;
+  /**
+   * True if state variables are loaded from the database on first access instead of loading all current state variables before
+   * executing a state.
+   */
+  public final boolean lazyStateVariables;
+  /**
+   * State variables that are loaded before executing a state when state variables are loaded on demand, in addition to the
+   * <code>@StateVar</code> parameters of the state method.
+   */
+  public final Set<String> preloadedStateVariables;
 
   private final BiFunction<WorkflowState, Throwable, StateProcessExceptionHandling> exceptionAnalyzer;
 
@@ -91,6 +104,8 @@ public class WorkflowSettings extends ModelObject {
     this.historyDeletableAfter = builder.historyDeletableAfter;
     this.deleteHistoryCondition = builder.deleteHistoryCondition;
     this.defaultPriority = builder.defaultPriority;
+    this.lazyStateVariables = builder.lazyStateVariables;
+    this.preloadedStateVariables = Set.copyOf(builder.preloadedStateVariables);
     this.exceptionAnalyzer = builder.exceptionAnalyzer;
   }
 
@@ -108,6 +123,8 @@ public class WorkflowSettings extends ModelObject {
     ReadablePeriod historyDeletableAfter = Period.days(45);
     short defaultPriority = 0;
     BooleanSupplier deleteHistoryCondition = onAverageEveryNthExecution(100);
+    boolean lazyStateVariables = false;
+    Set<String> preloadedStateVariables = new LinkedHashSet<>();
     BiFunction<WorkflowState, Throwable, StateProcessExceptionHandling> exceptionAnalyzer;
 
     /**
@@ -252,6 +269,35 @@ public class WorkflowSettings extends ModelObject {
       return this;
     }
 
+    /**
+     * Set whether state variables are loaded from the database on first access. When enabled, only the
+     * <code>@StateVar</code> parameters of the state method and the preloaded state variables are loaded before executing a
+     * state, and other state variables are loaded when they are read through <code>StateExecution.getVariable</code>. State
+     * variables that are not read are not loaded at all, which reduces memory use and database traffic for workflows that
+     * store large state variables. Note that listeners see only the loaded state variables in the workflow instance.
+     *
+     * @param lazyStateVariables
+     *          True to load state variables on first access.
+     * @return this.
+     */
+    public Builder setLazyStateVariables(boolean lazyStateVariables) {
+      this.lazyStateVariables = lazyStateVariables;
+      return this;
+    }
+
+    /**
+     * Set the state variables that are loaded before executing a state when state variables are loaded on demand.
+     *
+     * @param stateVariables
+     *          The names of the state variables.
+     * @return this.
+     */
+    public Builder setPreloadedStateVariables(String... stateVariables) {
+      this.preloadedStateVariables.clear();
+      this.preloadedStateVariables.addAll(asList(stateVariables));
+      return this;
+    }
+
     /**
      * Set the exception analyzer function.
      *
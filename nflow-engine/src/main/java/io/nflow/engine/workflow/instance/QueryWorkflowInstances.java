@@ -102,6 +102,11 @@ public class QueryWorkflowInstances extends ModelObject {
    */
   public final boolean queryArchive;
 
+  /**
+   * Token returned with the previous page of results. If set, the query returns the instances that follow the previous page.
+   */
+  public final String continuationToken;
+
   QueryWorkflowInstances(Builder builder) {
     this.ids = new ArrayList<>(builder.ids);
     this.types = new ArrayList<>(builder.types);
@@ -120,6 +125,7 @@ public class QueryWorkflowInstances extends ModelObject {
     this.maxResults = builder.maxResults;
     this.maxActions = builder.maxActions;
     this.queryArchive = builder.queryArchive;
+    this.continuationToken = builder.continuationToken;
   }
 
   /**
@@ -143,6 +149,7 @@ public class QueryWorkflowInstances extends ModelObject {
     Long maxResults;
     Long maxActions;
     boolean queryArchive;
+    String continuationToken;
 
     /**
      * Create a workflow instance query builder.
@@ -168,6 +175,7 @@ public class QueryWorkflowInstances extends ModelObject {
       this.maxResults = copy.maxResults;
       this.maxActions = copy.maxActions;
       this.queryArchive = copy.queryArchive;
+      this.continuationToken = copy.continuationToken;
     }
     /**
      * Add identifiers to query parameters.
@@ -338,6 +346,18 @@ public class QueryWorkflowInstances extends ModelObject {
       return this;
     }
 
+    /**
+     * Continue the query after the previous page of results. The instances are returned in descending order of their ids, so
+     * fetching the next page costs the same as fetching the first page.
+     *
+     * @param continuationToken The token returned with the previous page, or null to query the first page.
+     * @return this.
+     */
+    public Builder setContinuationToken(String continuationToken) {
+      this.continuationToken = continuationToken;
+      return this;
+    }
+
     /**
      * Create the workflow instance query object.
      *
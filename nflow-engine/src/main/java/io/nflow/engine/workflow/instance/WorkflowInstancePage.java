@@ -0,0 +1,31 @@
+package io.nflow.engine.workflow.instance;
+
+import java.util.stream.Stream;
+
+/**
+ * One page of workflow instances returned by a workflow instance query.
+ */
+public class WorkflowInstancePage {
+
+  /**
+   * The workflow instances of the page, in descending order of their ids. The stream does not need to be closed.
+   */
+  public final Stream<WorkflowInstance> instances;
+
+  /**
+   * Opaque token for querying the next page with {@link QueryWorkflowInstances.Builder#setContinuationToken(String)}, or null
+   * if there are no more instances.
+   */
+  public final String continuationToken;
+
+  /**
+   * Create a workflow instance page.
+   *
+   * @param instances The workflow instances.
+   * @param continuationToken The token for querying the next page, or null.
+   */
+  public WorkflowInstancePage(Stream<WorkflowInstance> instances, String continuationToken) {
+    this.instances = instances;
+    this.continuationToken = continuationToken;
+  }
+}
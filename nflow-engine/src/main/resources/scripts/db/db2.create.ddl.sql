@@ -19,6 +19,7 @@ create table nflow_workflow (
   modified timestamp(3) not null default current_timestamp,
   started timestamp(3),
   executor_group varchar(64) not null,
+  shard_bucket smallint not null default 0,
   workflow_signal int,
   constraint nflow_workflow_uniq unique (type, external_id, executor_group)
 );
@@ -29,7 +30,7 @@ create or replace trigger nflow_workflow_update_modified
   for each row
   set modified = current timestamp;
 
-create index nflow_workflow_polling on nflow_workflow(next_activation, status, executor_id, executor_group);
+create index nflow_workflow_polling on nflow_workflow(next_activation, status, executor_id, executor_group, shard_bucket);
 
 create index idx_workflow_parent on nflow_workflow(parent_workflow_id);
 
@@ -53,10 +54,13 @@ create table nflow_workflow_state (
   action_id int not null,
   state_key varchar(64) not null,
   state_value varchar(10240) not null,
+  latest smallint not null default 1,
   constraint pk_workflow_state primary key (workflow_id, action_id, state_key),
   constraint fk_state_workflow_id foreign key (workflow_id) references nflow_workflow(id)
 );
 
+create index nflow_workflow_state_latest on nflow_workflow_state(workflow_id, latest, state_key);
+
 create table nflow_executor (
   id int primary key generated always as identity,
   host varchar(253) not null,
@@ -110,6 +114,7 @@ create table nflow_archive_workflow (
   modified timestamp(3) not null,
   started timestamp(3),
   executor_group varchar(64) not null,
+  shard_bucket smallint not null,
   workflow_signal int
 );
 
@@ -136,6 +141,7 @@ create table nflow_archive_workflow_state (
   action_id int not null,
   state_key varchar(64) not null,
   state_value varchar(10240) not null,
+  latest smallint not null,
   constraint pk_arch_workflow_state primary key (workflow_id, action_id, state_key),
   constraint fk_arch_state_wf_id foreign key (workflow_id) references nflow_archive_workflow(id)
 );
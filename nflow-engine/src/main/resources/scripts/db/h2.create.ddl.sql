@@ -19,13 +19,14 @@ create table if not exists nflow_workflow (
   modified timestamp with time zone not null default current_timestamp,
   started timestamp with time zone,
   executor_group varchar(64) not null,
+  shard_bucket smallint not null default 0,
   workflow_signal int
 );
 create trigger if not exists nflow_workflow_modified before update on nflow_workflow for each row call "io.nflow.engine.internal.storage.db.H2ModifiedColumnTrigger";
 
 create unique index if not exists nflow_workflow_uniq on nflow_workflow (type, external_id, executor_group);
 
-create index if not exists nflow_workflow_polling on nflow_workflow(next_activation, status, executor_id, executor_group);
+create index if not exists nflow_workflow_polling on nflow_workflow(next_activation, status, executor_id, executor_group, shard_bucket);
 
 create index if not exists idx_workflow_parent on nflow_workflow(parent_workflow_id);
 
@@ -49,10 +50,13 @@ create table if not exists nflow_workflow_state (
   action_id int not null,
   state_key varchar(64) not null,
   state_value varchar(10240) not null,
+  latest smallint not null default 1,
   constraint pk_workflow_state primary key (workflow_id, action_id, state_key),
   constraint fk_state_workflow_id foreign key (workflow_id) references nflow_workflow(id)
 );
 
+create index if not exists nflow_workflow_state_latest on nflow_workflow_state(workflow_id, latest, state_key);
+
 create table if not exists nflow_executor (
   id int not null auto_increment primary key,
   host varchar(253) not null,
@@ -100,6 +104,7 @@ create table if not exists nflow_archive_workflow (
   modified timestamp with time zone not null,
   started timestamp with time zone,
   executor_group varchar(64) not null,
+  shard_bucket smallint not null,
   workflow_signal int
 );
 
@@ -126,6 +131,7 @@ create table if not exists nflow_archive_workflow_state (
   action_id int not null,
   state_key varchar(64) not null,
   state_value varchar(10240) not null,
+  latest smallint not null,
   constraint pk_arch_workflow_state primary key (workflow_id, action_id, state_key),
   constraint fk_arch_state_wf_id foreign key (workflow_id) references nflow_archive_workflow(id)
 );
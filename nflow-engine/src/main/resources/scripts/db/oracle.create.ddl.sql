@@ -19,13 +19,14 @@ create table nflow_workflow (
   modified timestamp default current_timestamp not null,
   started timestamp,
   executor_group varchar(64) not null,
+  shard_bucket smallint default 0 not null,
   workflow_signal int,
   constraint nflow_workflow_uniq unique (type, external_id, executor_group),
   constraint status_enum check (status in ('created', 'executing', 'inProgress', 'finished', 'manual'))
 )
 /
 
-create index nflow_workflow_polling on nflow_workflow(next_activation, status, executor_id, executor_group)
+create index nflow_workflow_polling on nflow_workflow(next_activation, status, executor_id, executor_group, shard_bucket)
 /
 
 create index idx_workflow_parent on nflow_workflow(parent_workflow_id)
@@ -87,11 +88,15 @@ create table nflow_workflow_state (
   action_id int not null,
   state_key varchar(64) not null,
   state_value clob not null,
+  latest smallint default 1 not null,
   constraint pk_workflow_state primary key (workflow_id, action_id, state_key),
   constraint fk_state_workflow_id foreign key (workflow_id) references nflow_workflow(id)
 )
 /
 
+create index nflow_workflow_state_latest on nflow_workflow_state(workflow_id, latest, state_key)
+/
+
 create table nflow_executor (
   id int not null primary key,
   host varchar(253) not null,
@@ -162,6 +167,7 @@ create table nflow_archive_workflow (
   modified timestamp not null,
   started timestamp,
   executor_group varchar(64) not null,
+  shard_bucket smallint not null,
   workflow_signal int
 )
 /
@@ -193,6 +199,7 @@ create table nflow_archive_workflow_state (
   action_id int not null,
   state_key varchar(64) not null,
   state_value clob not null,
+  latest smallint not null,
   constraint pk_arch_workflow_state primary key (workflow_id, action_id, state_key),
   constraint fk_arch_state_wf_id foreign key (workflow_id) references nflow_archive_workflow(id)
 )
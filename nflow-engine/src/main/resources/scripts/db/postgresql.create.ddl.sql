@@ -14,6 +14,7 @@ create table if not exists nflow_workflow (
   external_next_activation timestamptz,
   started timestamptz,
   executor_id int,
+  shard_bucket smallint not null default 0,
   workflow_signal int,
   type varchar(64) not null,
   external_id varchar(64) not null,
@@ -37,7 +38,7 @@ drop trigger if exists update_nflow_modified on nflow_workflow;
 create trigger update_nflow_modified before update on nflow_workflow for each row execute procedure update_modified();
 
 drop index if exists nflow_workflow_polling;
-create index nflow_workflow_polling on nflow_workflow(next_activation, status, executor_id, executor_group) where next_activation is not null;
+create index nflow_workflow_polling on nflow_workflow(next_activation, status, executor_id, executor_group, shard_bucket) where next_activation is not null;
 
 drop index if exists idx_workflow_parent;
 create index idx_workflow_parent on nflow_workflow(parent_workflow_id) where parent_workflow_id is not null;
@@ -65,10 +66,14 @@ create table if not exists nflow_workflow_state (
   action_id bigint not null,
   state_key varchar(64) not null,
   state_value text not null,
+  latest smallint not null default 1,
   constraint pk_workflow_state primary key (workflow_id, action_id, state_key) WITH (fillfactor=100),
   constraint fk_state_workflow_id foreign key (workflow_id) references nflow_workflow(id)
 );
 
+drop index if exists nflow_workflow_state_latest;
+create index nflow_workflow_state_latest on nflow_workflow_state(workflow_id, state_key) where latest = 1;
+
 create table if not exists nflow_executor (
   id serial primary key,
   host varchar(253) not null,
@@ -114,6 +119,7 @@ create table if not exists nflow_archive_workflow (
   external_next_activation timestamptz,
   started timestamptz,
   executor_id int,
+  shard_bucket smallint not null,
   workflow_signal int,
   type varchar(64) not null,
   external_id varchar(64) not null,
@@ -152,6 +158,7 @@ create table if not exists nflow_archive_workflow_state (
   action_id bigint not null,
   state_key varchar(64) not null,
   state_value text not null,
+  latest smallint not null,
   constraint pk_arch_workflow_state primary key (workflow_id, action_id, state_key) with (fillfactor=100),
   constraint fk_arch_state_wf_id foreign key (workflow_id) references nflow_archive_workflow(id)
 );
@@ -0,0 +1,114 @@
+-- Optional partitioned archive tables for PostgreSQL 12 or newer
+--
+-- Converts the archive tables to tables that are partitioned by month on the time when the workflow instances were
+-- archived. The time is stored in the archived column, which gets the start time of the archiving transaction, so all rows
+-- of a workflow instance are always in the partitions of the same month. nFlow creates the partitions of the previous,
+-- current and next month before archiving, and MaintenanceService drops whole partitions of workflow instances that were
+-- archived before the time limit for deleting archived workflows, if the deletion is not limited to some workflow types.
+-- Note that the partitions are dropped regardless of the executor group of the workflow instances.
+--
+-- The existing archive tables are renamed and their rows are copied to the partitioned tables, using the modified time of
+-- the workflow instance as the archiving time. Drop the renamed tables after verifying the result.
+
+alter table nflow_archive_workflow_state rename to nflow_archive_workflow_state_old;
+alter table nflow_archive_workflow_action rename to nflow_archive_workflow_action_old;
+alter table nflow_archive_workflow rename to nflow_archive_workflow_old;
+alter table nflow_archive_workflow_state_old rename constraint pk_arch_workflow_state to pk_arch_workflow_state_old;
+alter table nflow_archive_workflow_action_old rename constraint nflow_archive_workflow_action_pkey to nflow_archive_workflow_action_pkey_old;
+alter table nflow_archive_workflow_old rename constraint nflow_archive_workflow_pkey to nflow_archive_workflow_pkey_old;
+alter index idx_workflow_archive_parent rename to idx_workflow_archive_parent_old;
+alter index idx_workflow_archive_type rename to idx_workflow_archive_type_old;
+alter index nflow_archive_workflow_action_workflow rename to nflow_archive_workflow_action_workflow_old;
+
+create table nflow_archive_workflow (
+  id bigint not null,
+  status workflow_status not null,
+  parent_workflow_id bigint,
+  parent_action_id bigint,
+  retries int not null,
+  priority smallint not null,
+  created timestamptz not null,
+  modified timestamptz not null,
+  next_activation timestamptz,
+  external_next_activation timestamptz,
+  started timestamptz,
+  executor_id int,
+  shard_bucket smallint not null,
+  workflow_signal int,
+  type varchar(64) not null,
+  external_id varchar(64) not null,
+  state varchar(64) not null,
+  executor_group varchar(64) not null,
+  business_key varchar(64),
+  state_text varchar(128),
+  archived timestamptz not null default current_timestamp,
+  constraint nflow_archive_workflow_pkey primary key (id, archived)
+) partition by range (archived);
+
+create index idx_workflow_archive_parent on nflow_archive_workflow(parent_workflow_id) where parent_workflow_id is not null;
+create index idx_workflow_archive_type on nflow_archive_workflow(type);
+
+create table nflow_archive_workflow_action (
+  id bigint not null,
+  workflow_id bigint not null,
+  executor_id int not null,
+  type action_type not null,
+  execution_start timestamptz not null,
+  execution_end timestamptz not null,
+  retry_no int not null,
+  state varchar(64) not null,
+  state_text varchar(128),
+  archived timestamptz not null default current_timestamp,
+  constraint nflow_archive_workflow_action_pkey primary key (id, archived)
+) partition by range (archived);
+
+create index nflow_archive_workflow_action_workflow on nflow_archive_workflow_action(workflow_id);
+
+create table nflow_archive_workflow_state (
+  workflow_id bigint not null,
+  action_id bigint not null,
+  state_key varchar(64) not null,
+  state_value text not null,
+  latest smallint not null,
+  archived timestamptz not null default current_timestamp,
+  constraint pk_arch_workflow_state primary key (workflow_id, action_id, state_key, archived)
+) partition by range (archived);
+
+do $$
+declare
+  month timestamptz;
+  suffix text;
+  tbl text;
+begin
+  for month in select generate_series(date_trunc('month', coalesce(min(modified), now()) at time zone 'UTC'),
+      date_trunc('month', now() at time zone 'UTC') + interval '1 month', interval '1 month') at time zone 'UTC'
+      from nflow_archive_workflow_old loop
+    suffix := '_p' || to_char(month at time zone 'UTC', 'YYYYMM');
+    foreach tbl in array array['nflow_archive_workflow', 'nflow_archive_workflow_action', 'nflow_archive_workflow_state'] loop
+      execute format('create table %I partition of %I for values from (%L) to (%L) with (fillfactor=100)',
+        tbl || suffix, tbl, month, month + interval '1 month');
+    end loop;
+  end loop;
+end $$;
+
+insert into nflow_archive_workflow(id, status, parent_workflow_id, parent_action_id, retries, priority, created, modified,
+    next_activation, external_next_activation, started, executor_id, shard_bucket, workflow_signal, type, external_id,
+    state, executor_group, business_key, state_text, archived)
+  select id, status, parent_workflow_id, parent_action_id, retries, priority, created, modified, next_activation,
+    external_next_activation, started, executor_id, shard_bucket, workflow_signal, type, external_id, state, executor_group,
+    business_key, state_text, modified
+  from nflow_archive_workflow_old;
+
+insert into nflow_archive_workflow_action(id, workflow_id, executor_id, type, execution_start, execution_end, retry_no, state,
+    state_text, archived)
+  select a.id, a.workflow_id, a.executor_id, a.type, a.execution_start, a.execution_end, a.retry_no, a.state, a.state_text,
+    w.modified
+  from nflow_archive_workflow_action_old a join nflow_archive_workflow_old w on w.id = a.workflow_id;
+
+insert into nflow_archive_workflow_state(workflow_id, action_id, state_key, state_value, latest, archived)
+  select s.workflow_id, s.action_id, s.state_key, s.state_value, s.latest, w.modified
+  from nflow_archive_workflow_state_old s join nflow_archive_workflow_old w on w.id = s.workflow_id;
+
+-- drop table nflow_archive_workflow_state_old;
+-- drop table nflow_archive_workflow_action_old;
+-- drop table nflow_archive_workflow_old;
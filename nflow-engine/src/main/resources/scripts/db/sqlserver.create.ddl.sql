@@ -20,6 +20,7 @@ create table nflow_workflow (
   modified datetimeoffset(3) not null default SYSDATETIMEOFFSET(),
   started datetimeoffset(3),
   executor_group varchar(64) not null,
+  shard_bucket smallint not null default 0,
   workflow_signal int,
   constraint nflow_workflow_uniq unique (type, external_id, executor_group)
 );
@@ -33,7 +34,7 @@ begin
 end';
 
 if not exists (select 1 from sys.indexes where name='nflow_workflow_polling')
-create index nflow_workflow_polling on nflow_workflow(next_activation, status, executor_id, executor_group) where next_activation is not null;
+create index nflow_workflow_polling on nflow_workflow(next_activation, status, executor_id, executor_group, shard_bucket) where next_activation is not null;
 
 if not exists (select 1 from sys.indexes where name='idx_workflow_parent')
 create index idx_workflow_parent on nflow_workflow(parent_workflow_id) where parent_workflow_id is not null;
@@ -61,10 +62,14 @@ create table nflow_workflow_state (
   action_id int not null,
   state_key varchar(64) not null,
   state_value varchar(max) not null,
+  latest smallint not null default 1,
   constraint pk_workflow_state primary key (workflow_id, action_id, state_key),
   constraint fk_state_workflow_id foreign key (workflow_id) references nflow_workflow(id)
 );
 
+if not exists (select 1 from sys.indexes where name='nflow_workflow_state_latest')
+create index nflow_workflow_state_latest on nflow_workflow_state(workflow_id, latest, state_key);
+
 if not exists (select 1 from sys.indexes where name='nflow_workflow_state_workflow')
 create index nflow_workflow_state_workflow on nflow_workflow_state(workflow_id);
 
@@ -126,6 +131,7 @@ create table nflow_archive_workflow (
   modified datetimeoffset(3) not null,
   started datetimeoffset(3),
   executor_group varchar(64) not null,
+  shard_bucket smallint not null,
   workflow_signal int
 );
 
@@ -157,6 +163,7 @@ create table nflow_archive_workflow_state (
   action_id int not null,
   state_key varchar(64) not null,
   state_value varchar(max) not null,
+  latest smallint not null,
   constraint pk_arch_workflow_state primary key (workflow_id, action_id, state_key),
   constraint fk_arch_state_wf_id foreign key (workflow_id) references nflow_archive_workflow(id)
 );
@@ -0,0 +1,19 @@
+alter table nflow_workflow_state add column latest smallint not null default 1;
+update nflow_workflow_state s join (select workflow_id, state_key, max(action_id) action_id from nflow_workflow_state
+  group by workflow_id, state_key) m on s.workflow_id = m.workflow_id and s.state_key = m.state_key
+  set s.latest = 0 where s.action_id < m.action_id;
+create index nflow_workflow_state_latest on nflow_workflow_state(workflow_id, latest, state_key);
+
+alter table nflow_archive_workflow_state add column latest smallint not null default 1;
+update nflow_archive_workflow_state s join (select workflow_id, state_key, max(action_id) action_id
+  from nflow_archive_workflow_state group by workflow_id, state_key) m on s.workflow_id = m.workflow_id
+  and s.state_key = m.state_key set s.latest = 0 where s.action_id < m.action_id;
+alter table nflow_archive_workflow_state alter column latest drop default;
+
+alter table nflow_workflow add column shard_bucket smallint not null default 0;
+update nflow_workflow set shard_bucket = mod(id, 1024);
+drop index nflow_workflow_polling on nflow_workflow;
+create index nflow_workflow_polling on nflow_workflow(next_activation, status, executor_id, executor_group, shard_bucket);
+
+alter table nflow_archive_workflow add column shard_bucket smallint not null default 0;
+alter table nflow_archive_workflow alter column shard_bucket drop default;
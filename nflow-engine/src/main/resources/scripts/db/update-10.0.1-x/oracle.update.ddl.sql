@@ -0,0 +1,37 @@
+alter table nflow_workflow_state add latest smallint default 1 not null
+/
+
+update nflow_workflow_state s set latest = 0 where exists (select 1 from nflow_workflow_state n
+  where n.workflow_id = s.workflow_id and n.state_key = s.state_key and n.action_id > s.action_id)
+/
+
+create index nflow_workflow_state_latest on nflow_workflow_state(workflow_id, latest, state_key)
+/
+
+alter table nflow_archive_workflow_state add latest smallint default 1 not null
+/
+
+update nflow_archive_workflow_state s set latest = 0 where exists (select 1 from nflow_archive_workflow_state n
+  where n.workflow_id = s.workflow_id and n.state_key = s.state_key and n.action_id > s.action_id)
+/
+
+alter table nflow_archive_workflow_state modify latest default null
+/
+
+alter table nflow_workflow add shard_bucket smallint default 0 not null
+/
+
+update nflow_workflow set shard_bucket = mod(id, 1024)
+/
+
+drop index nflow_workflow_polling
+/
+
+create index nflow_workflow_polling on nflow_workflow(next_activation, status, executor_id, executor_group, shard_bucket)
+/
+
+alter table nflow_archive_workflow add shard_bucket smallint default 0 not null
+/
+
+alter table nflow_archive_workflow modify shard_bucket default null
+/
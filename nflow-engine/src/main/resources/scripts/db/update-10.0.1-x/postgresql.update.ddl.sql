@@ -0,0 +1,17 @@
+alter table nflow_workflow_state add column latest smallint not null default 1;
+update nflow_workflow_state s set latest = 0 where exists (select 1 from nflow_workflow_state n
+  where n.workflow_id = s.workflow_id and n.state_key = s.state_key and n.action_id > s.action_id);
+create index nflow_workflow_state_latest on nflow_workflow_state(workflow_id, state_key) where latest = 1;
+
+alter table nflow_archive_workflow_state add column latest smallint not null default 1;
+update nflow_archive_workflow_state s set latest = 0 where exists (select 1 from nflow_archive_workflow_state n
+  where n.workflow_id = s.workflow_id and n.state_key = s.state_key and n.action_id > s.action_id);
+alter table nflow_archive_workflow_state alter column latest drop default;
+
+alter table nflow_workflow add column shard_bucket smallint not null default 0;
+update nflow_workflow set shard_bucket = mod(id, 1024);
+drop index nflow_workflow_polling;
+create index nflow_workflow_polling on nflow_workflow(next_activation, status, executor_id, executor_group, shard_bucket) where next_activation is not null;
+
+alter table nflow_archive_workflow add column shard_bucket smallint not null default 0;
+alter table nflow_archive_workflow alter column shard_bucket drop default;
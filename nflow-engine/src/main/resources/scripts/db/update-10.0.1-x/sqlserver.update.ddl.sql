@@ -0,0 +1,15 @@
+alter table nflow_workflow_state add latest smallint not null default 1;
+update s set latest = 0 from nflow_workflow_state s where exists (select 1 from nflow_workflow_state n
+  where n.workflow_id = s.workflow_id and n.state_key = s.state_key and n.action_id > s.action_id);
+create index nflow_workflow_state_latest on nflow_workflow_state(workflow_id, latest, state_key);
+
+alter table nflow_archive_workflow_state add latest smallint not null default 1;
+update s set latest = 0 from nflow_archive_workflow_state s where exists (select 1 from nflow_archive_workflow_state n
+  where n.workflow_id = s.workflow_id and n.state_key = s.state_key and n.action_id > s.action_id);
+
+alter table nflow_workflow add shard_bucket smallint not null default 0;
+update nflow_workflow set shard_bucket = id % 1024;
+drop index nflow_workflow_polling on nflow_workflow;
+create index nflow_workflow_polling on nflow_workflow(next_activation, status, executor_id, executor_group, shard_bucket) where next_activation is not null;
+
+alter table nflow_archive_workflow add shard_bucket smallint not null default 0;
@@ -4,14 +4,18 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.isA;
+import static org.hamcrest.Matchers.lessThan;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.concurrent.ThreadFactory;
 
 import org.joda.time.DateTime;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Spy;
@@ -23,6 +27,8 @@ import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import io.nflow.engine.internal.executor.WorkflowInstanceExecutor;
+import io.nflow.engine.internal.storage.db.BlobStoreStateVariableCodec;
+import io.nflow.engine.internal.storage.db.StateVariableCodec;
 
 @ExtendWith(MockitoExtension.class)
 public class EngineConfigurationTest {
@@ -30,7 +36,11 @@ public class EngineConfigurationTest {
   @Spy
   private final MockEnvironment environment = new MockEnvironment().withProperty("nflow.executor.thread.count", "100")
       .withProperty("nflow.dispatcher.await.termination.seconds", "60")
-      .withProperty("nflow.dispatcher.executor.thread.keepalive.seconds", "0");
+      .withProperty("nflow.dispatcher.executor.thread.keepalive.seconds", "0")
+      .withProperty("nflow.executor.virtual.threads", "false").withProperty("nflow.executor.virtual.max.inflight", "1000")
+      .withProperty("nflow.executor.activationTimer.enabled", "false")
+      .withProperty("nflow.executor.asyncStateMaxSuspended", "1000")
+      .withProperty("nflow.dispatcher.executor.queue.priority", "false");
   @Mock
   private ThreadFactory threadFactory;
 
@@ -50,6 +60,24 @@ public class EngineConfigurationTest {
     assertThat(executor.getQueueRemainingCapacity(), is(10));
   }
 
+  @Test
+  public void dispatcherPoolExecutorInstantiationWithVirtualThreads() {
+    assumeTrue(Runtime.version().feature() >= 21);
+    environment.setProperty("nflow.executor.virtual.threads", "true");
+    WorkflowInstanceExecutor executor = configuration.nflowExecutor(threadFactory, environment);
+    assertThat(executor.getThreadCount(), is(1000));
+    assertThat(executor.getQueueRemainingCapacity(), is(2000));
+  }
+
+  @Test
+  public void dispatcherPoolExecutorFallsBackToPlatformThreadsWithoutVirtualThreadSupport() {
+    assumeTrue(Runtime.version().feature() < 21);
+    environment.setProperty("nflow.executor.virtual.threads", "true");
+    WorkflowInstanceExecutor executor = configuration.nflowExecutor(threadFactory, environment);
+    assertThat(executor.getThreadCount(), is(100));
+    assertThat(executor.getQueueRemainingCapacity(), is(200));
+  }
+
   @Test
   public void nonSpringWorkflowsListingNotInstantiated() throws IOException {
     assertEquals(configuration.nflowNonSpringWorkflowsListing(environment).contentLength(), 0L);
@@ -69,6 +97,55 @@ public class EngineConfigurationTest {
     assertThat(((CustomizableThreadFactory) factory).getThreadGroup().getName(), is("nflow"));
   }
 
+  @Test
+  public void stateVariableCodecDoesNotCompressByDefault() {
+    environment.setProperty("nflow.db.stateVariable.compression.enabled", "false");
+    StateVariableCodec codec = configuration.nflowStateVariableCodec(environment);
+    String value = "x".repeat(10_000);
+    assertThat(codec.encode(value), is(value));
+  }
+
+  @Test
+  public void stateVariableCodecCompressesValuesOverThreshold() {
+    environment.setProperty("nflow.db.stateVariable.compression.enabled", "true");
+    environment.setProperty("nflow.db.stateVariable.compression.threshold", "100");
+    StateVariableCodec codec = configuration.nflowStateVariableCodec(environment);
+    String value = "x".repeat(100);
+    assertThat(codec.encode(value).length(), is(lessThan(value.length())));
+    assertThat(codec.decode(codec.encode(value)), is(value));
+  }
+
+  @Test
+  public void customStateVariableCodecInstantiated() {
+    environment.setProperty("nflow.db.stateVariable.codec", TestStateVariableCodec.class.getName());
+    assertThat(configuration.nflowStateVariableCodec(environment), instanceOf(TestStateVariableCodec.class));
+  }
+
+  @Test
+  public void stateVariableCodecStoresValuesOverThresholdToBlobStoreDirectory(@TempDir Path directory) {
+    environment.setProperty("nflow.db.stateVariable.compression.enabled", "false");
+    environment.setProperty("nflow.db.stateVariable.blobStore.directory", directory.toString());
+    environment.setProperty("nflow.db.stateVariable.blobStore.threshold", "100");
+    environment.setProperty("nflow.db.stateVariable.blobStore.gracePeriod.minutes", "60");
+    StateVariableCodec codec = configuration.nflowStateVariableCodec(environment);
+    String value = "x".repeat(100);
+    assertThat(codec, instanceOf(BlobStoreStateVariableCodec.class));
+    assertThat(codec.encode(value).length(), is(lessThan(value.length())));
+    assertThat(codec.decode(codec.encode(value)), is(value));
+  }
+
+  public static class TestStateVariableCodec implements StateVariableCodec {
+    @Override
+    public String encode(String value) {
+      return value;
+    }
+
+    @Override
+    public String decode(String storedValue) {
+      return storedValue;
+    }
+  }
+
   @Test
   public void nflowObjectMapperInstantiated() throws Exception {
     ObjectMapper mapper = configuration.nflowObjectMapper().get();
@@ -54,4 +54,12 @@ public abstract class BaseDaoTest extends BaseNflowTest {
         crashedNodeStartTime.plusSeconds(1).toDate(), crashedNodeStartTime.plusHours(1).toDate());
   }
 
+  protected void insertLiveExecutor(int executorId, String executorGroup) {
+    jdbc.update("delete from nflow_executor where id = ?", executorId);
+    jdbc.update(
+        "insert into nflow_executor (id, host, pid, executor_group, started, active, expires) values (?, ?, ?, ?, ?, ?, ?)",
+        executorId, "localhost", 667, executorGroup, now().minusMinutes(1).toDate(), now().toDate(),
+        now().plusHours(1).toDate());
+  }
+
 }
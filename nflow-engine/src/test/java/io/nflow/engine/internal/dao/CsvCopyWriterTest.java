@@ -0,0 +1,23 @@
+package io.nflow.engine.internal.dao;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.jupiter.api.Test;
+
+public class CsvCopyWriterTest {
+  StringWriter output = new StringWriter();
+
+  @Test
+  public void nullsAreWrittenAsEmptyFieldsAndOtherValuesQuoted() throws IOException {
+    try (CsvCopyWriter writer = new CsvCopyWriter(output)) {
+      writer.writeRow(1L, null, "", "a\"b,c");
+      writer.writeRow("multi\nline");
+    }
+
+    assertThat(output.toString(), is("\"1\",,\"\",\"a\"\"b,c\"\n\"multi\nline\"\n"));
+  }
+}
@@ -0,0 +1,169 @@
+package io.nflow.engine.internal.dao;
+
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+@ExtendWith(MockitoExtension.class)
+public class CursorQueryTest {
+
+  private static final String SQL = "select id from nflow_workflow where type = ?";
+
+  @Mock
+  private DataSource dataSource;
+  @Mock
+  private Connection connection;
+  @Mock
+  private PreparedStatement statement;
+  @Mock
+  private ResultSet resultSet;
+
+  private final RowMapper<Long> rowMapper = (rs, rowNum) -> rs.getLong(1);
+  private JdbcTemplate jdbc;
+
+  @BeforeEach
+  public void setup() {
+    jdbc = new JdbcTemplate(dataSource, true);
+  }
+
+  private Stream<Long> query(boolean transactionRequired) {
+    return cursorQuery(transactionRequired).stream();
+  }
+
+  private CursorQuery<Long> cursorQuery(boolean transactionRequired) {
+    return CursorQuery.of(jdbc, 10, transactionRequired, "select id from nflow_workflow where type = :type",
+        new MapSqlParameterSource("type", "test"), rowMapper);
+  }
+
+  private void stubQuery() throws SQLException {
+    when(dataSource.getConnection()).thenReturn(connection);
+    when(connection.prepareStatement(SQL)).thenReturn(statement);
+    when(statement.executeQuery()).thenReturn(resultSet);
+  }
+
+  @Test
+  public void queryIsExecutedWhenFirstRowIsRead() throws SQLException {
+    stubQuery();
+    when(resultSet.next()).thenReturn(true, true, false);
+    when(resultSet.getLong(1)).thenReturn(1L, 2L);
+
+    Iterator<Long> rows = query(false).iterator();
+
+    verifyNoInteractions(dataSource);
+    assertThat(rows.next(), is(1L));
+    verify(statement).setString(1, "test");
+    verify(statement).setFetchSize(10);
+    assertThat(rows.next(), is(2L));
+    assertThat(rows.hasNext(), is(false));
+  }
+
+  @Test
+  public void resourcesAreReleasedAfterLastRow() throws SQLException {
+    stubQuery();
+    when(resultSet.next()).thenReturn(true, false);
+    when(resultSet.getLong(1)).thenReturn(1L);
+
+    assertThat(query(false).collect(toList()), contains(1L));
+
+    InOrder inOrder = inOrder(resultSet, statement, connection);
+    inOrder.verify(resultSet).close();
+    inOrder.verify(statement).close();
+    inOrder.verify(connection).close();
+  }
+
+  @Test
+  public void closingStreamReleasesResources() throws SQLException {
+    stubQuery();
+    when(resultSet.next()).thenReturn(true);
+    when(resultSet.getLong(1)).thenReturn(1L);
+
+    try (Stream<Long> rows = query(false)) {
+      assertThat(rows.iterator().next(), is(1L));
+      verify(connection, never()).close();
+    }
+
+    verify(resultSet).close();
+    verify(statement).close();
+    verify(connection).close();
+  }
+
+  @Test
+  public void readOnlyTransactionIsUsedWhenRequired() throws SQLException {
+    stubQuery();
+    when(connection.getAutoCommit()).thenReturn(true);
+    when(resultSet.next()).thenReturn(false);
+
+    assertThat(query(true).count(), is(0L));
+
+    InOrder inOrder = inOrder(connection, statement);
+    inOrder.verify(connection).setAutoCommit(false);
+    inOrder.verify(statement).executeQuery();
+    inOrder.verify(connection).rollback();
+    inOrder.verify(connection).setAutoCommit(true);
+    inOrder.verify(connection).close();
+  }
+
+  @Test
+  public void sqlExceptionIsTranslatedAndResourcesAreReleased() throws SQLException {
+    stubQuery();
+    when(resultSet.next()).thenThrow(new SQLException("failure"));
+
+    try (Stream<Long> rows = query(false)) {
+      assertThrows(DataAccessException.class, rows::count);
+    }
+
+    verify(connection).close();
+  }
+
+  @Test
+  public void actionUsesConnectionOfOpenCursor() throws SQLException {
+    stubQuery();
+    when(resultSet.next()).thenReturn(true, false);
+    when(resultSet.getLong(1)).thenReturn(1L);
+    CursorQuery<Long> cursor = cursorQuery(false);
+    List<Connection> usedConnections = new ArrayList<>();
+    Runnable action = () -> usedConnections.add(DataSourceUtils.getConnection(dataSource));
+
+    try (Stream<Long> rows = cursor.stream()) {
+      Iterator<Long> iterator = rows.iterator();
+      assertThat(iterator.next(), is(1L));
+      CursorQuery.runOnOpenConnection(List.of(cursor), action);
+      assertThat(TransactionSynchronizationManager.hasResource(dataSource), is(false));
+    }
+
+    assertThat(usedConnections, contains(connection));
+    verify(dataSource).getConnection();
+    verify(connection).close();
+  }
+}
@@ -4,6 +4,7 @@ import static com.fasterxml.jackson.annotation.JsonInclude.Include.NON_EMPTY;
 
 import javax.sql.DataSource;
 
+import io.nflow.engine.config.EngineConfiguration;
 import io.nflow.engine.config.EngineConfiguration.EngineObjectMapperSupplier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Import;
@@ -21,9 +22,11 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.joda.JodaModule;
 
 import io.nflow.engine.config.NFlow;
+import io.nflow.engine.config.db.DatabaseConfiguration.NotificationConnectionFactory;
 import io.nflow.engine.config.db.H2DatabaseConfiguration;
 import io.nflow.engine.internal.executor.WorkflowInstanceExecutor;
 import io.nflow.engine.internal.storage.db.SQLVariants;
+import io.nflow.engine.internal.storage.db.StateVariableCodec;
 import io.nflow.engine.internal.workflow.ObjectStringMapper;
 import io.nflow.engine.workflow.instance.WorkflowInstanceFactory;
 
@@ -40,6 +43,8 @@ public class DaoTestConfiguration {
                                                  ExecutorDao executorDao,
                                                  WorkflowInstanceExecutor workflowInstanceExecutor,
                                                  WorkflowInstanceFactory workflowInstanceFactory,
+                                                 DispatcherNotificationDao dispatcherNotificationDao,
+                                                 @NFlow StateVariableCodec stateVariableCodec,
                                                  Environment env) {
     return new WorkflowInstanceDao(sqlVariants,
             nflowJdbcTemplate,
@@ -48,6 +53,8 @@ public class DaoTestConfiguration {
             executorDao,
             workflowInstanceExecutor,
             workflowInstanceFactory,
+            dispatcherNotificationDao,
+            stateVariableCodec,
             env);
   }
 
@@ -67,6 +74,12 @@ public class DaoTestConfiguration {
     return new ExecutorDao(sqlVariants, jdbcTemplate, env);
   }
 
+  @Bean
+  public DispatcherNotificationDao dispatcherNotificationDao(SQLVariants sqlVariants, @NFlow JdbcTemplate jdbcTemplate,
+      ExecutorDao executorDao, @NFlow NotificationConnectionFactory notificationConnectionFactory, Environment env) {
+    return new DispatcherNotificationDao(sqlVariants, jdbcTemplate, executorDao, notificationConnectionFactory, env);
+  }
+
   @Bean
   public StatisticsDao statisticsDao(@NFlow JdbcTemplate jdbcTemplate, ExecutorDao executorDao) {
     return new StatisticsDao(jdbcTemplate, executorDao);
@@ -102,6 +115,12 @@ public class DaoTestConfiguration {
     return () -> mapper;
   }
 
+  @Bean
+  @NFlow
+  public StateVariableCodec stateVariableCodec(Environment env) {
+    return new EngineConfiguration().nflowStateVariableCodec(env);
+  }
+
   @Bean
   public WorkflowInstanceExecutor workflowInstanceExecutor() {
     return new WorkflowInstanceExecutor(10, 1, 5, 10, 10, new CustomizableThreadFactory("junit-"));
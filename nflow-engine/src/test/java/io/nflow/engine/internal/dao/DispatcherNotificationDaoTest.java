@@ -0,0 +1,117 @@
+package io.nflow.engine.internal.dao;
+
+import static java.util.Collections.singletonList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.joda.time.DateTime.now;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.joda.time.DateTime;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.mock.env.MockEnvironment;
+
+import io.nflow.engine.config.db.DatabaseConfiguration.NotificationConnectionFactory;
+import io.nflow.engine.internal.storage.db.SQLVariants;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class DispatcherNotificationDaoTest {
+
+  @Mock
+  SQLVariants sqlVariants;
+  @Mock
+  JdbcTemplate jdbc;
+  @Mock
+  ExecutorDao executorDao;
+  @Mock
+  NotificationConnectionFactory connectionFactory;
+  @Mock
+  Connection connection;
+  final MockEnvironment env = new MockEnvironment().withProperty("nflow.dispatcher.notify.enabled", "true")
+      .withProperty("nflow.dispatcher.notify.fallback.sleep.ms", "10000");
+
+  @BeforeEach
+  public void setup() throws SQLException {
+    when(sqlVariants.hasNotifications()).thenReturn(true);
+    when(sqlVariants.notify(DispatcherNotificationDao.CHANNEL)).thenReturn("notify sql");
+    when(executorDao.getExecutorGroup()).thenReturn("junit");
+    when(connectionFactory.getConnection()).thenReturn(connection);
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void notificationsAreDisabledWhenDatabaseDoesNotSupportThem() {
+    when(sqlVariants.hasNotifications()).thenReturn(false);
+    DispatcherNotificationDao dao = new DispatcherNotificationDao(sqlVariants, jdbc, executorDao, connectionFactory, env);
+
+    dao.notifyDispatchers(now());
+
+    assertThat(dao.isEnabled(), is(false));
+    verify(jdbc, never()).query(anyString(), any(ResultSetExtractor.class), any(Object[].class));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void nearActivationIsNotified() {
+    DispatcherNotificationDao dao = new DispatcherNotificationDao(sqlVariants, jdbc, executorDao, connectionFactory, env);
+    DateTime activation = now().plusSeconds(1);
+
+    dao.notifyDispatchers(activation);
+
+    verify(jdbc).query(eq("notify sql"), any(ResultSetExtractor.class), eq("junit:" + activation.getMillis()));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void farActivationIsNotNotified() {
+    DispatcherNotificationDao dao = new DispatcherNotificationDao(sqlVariants, jdbc, executorDao, connectionFactory, env);
+
+    dao.notifyDispatchers(now().plusMinutes(1));
+    dao.notifyDispatchers(null);
+
+    verify(jdbc, never()).query(anyString(), any(ResultSetExtractor.class), any(Object[].class));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void waitForWakeupReturnsWhenNotifiedActivationIsReached() throws Exception {
+    DispatcherNotificationDao dao = new DispatcherNotificationDao(sqlVariants, jdbc, executorDao, connectionFactory, env);
+    when(sqlVariants.getNotifications(eq(connection), anyInt()))
+        .thenReturn(singletonList("other:0"), singletonList("junit:" + now().getMillis()));
+
+    // first wait starts listening and returns immediately to poll for possibly missed instances
+    dao.waitForWakeup(() -> false);
+    verify(sqlVariants).listen(connection, DispatcherNotificationDao.CHANNEL);
+
+    dao.waitForWakeup(() -> false);
+
+    dao.close();
+    verify(connection).close();
+  }
+
+  @Test
+  public void waitForWakeupReturnsWhenAbortIsRequested() throws Exception {
+    DispatcherNotificationDao dao = new DispatcherNotificationDao(sqlVariants, jdbc, executorDao, connectionFactory, env);
+
+    dao.waitForWakeup(() -> true);
+
+    verify(connectionFactory, never()).getConnection();
+  }
+}
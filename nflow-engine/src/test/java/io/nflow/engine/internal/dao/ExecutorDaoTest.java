@@ -35,6 +35,24 @@ public class ExecutorDaoTest extends BaseDaoTest {
     assertEquals(secondNextUpdate, dao.getMaxWaitUntil());
   }
 
+  @Test
+  public void pollingShardsAreAssignedToLiveExecutorsInIdOrder() {
+    int executorId = dao.getExecutorId();
+    insertLiveExecutor(executorId, dao.getExecutorGroup());
+    dao.updatePollingShard();
+    assertThat(dao.getPollingShardCondition(), nullValue());
+
+    insertLiveExecutor(executorId + 1, dao.getExecutorGroup());
+    insertLiveExecutor(executorId + 2, "other");
+    insertCrashedExecutor(executorId + 3, dao.getExecutorGroup());
+    dao.updatePollingShard();
+    assertThat(dao.getPollingShardCondition(), is("shard_bucket between 0 and 511"));
+
+    jdbc.update("update nflow_executor set stopped = current_timestamp where id = ?", executorId + 1);
+    dao.updatePollingShard();
+    assertThat(dao.getPollingShardCondition(), nullValue());
+  }
+
   @Test
   public void getExecutorsWorks() {
     insertCrashedExecutor(1, dao.getExecutorGroup());
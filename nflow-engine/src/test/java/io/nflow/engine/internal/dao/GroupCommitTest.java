@@ -0,0 +1,160 @@
+package io.nflow.engine.internal.dao;
+
+import static java.util.Collections.synchronizedList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.joda.time.DateTimeUtils.currentTimeMillis;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@ExtendWith(MockitoExtension.class)
+public class GroupCommitTest {
+
+  @Mock
+  PlatformTransactionManager transactionManager;
+  final ExecutorService threads = Executors.newFixedThreadPool(8);
+
+  @AfterEach
+  public void teardown() {
+    threads.shutdownNow();
+  }
+
+  @Test
+  public void singleWorkIsCommittedWithoutWaitingForWindow() {
+    GroupCommit<Runnable> groupCommit = runnableGroupCommit(60_000, 10);
+    AtomicInteger executed = new AtomicInteger();
+    long start = currentTimeMillis();
+
+    groupCommit.execute(executed::incrementAndGet);
+
+    assertThat(currentTimeMillis() - start, lessThan(10_000L));
+    assertThat(executed.get(), is(1));
+    verify(transactionManager).commit(any());
+  }
+
+  @Test
+  public void concurrentWorkIsCommittedInSharedTransactions() throws Exception {
+    GroupCommit<Runnable> groupCommit = runnableGroupCommit(200, 8);
+    AtomicInteger executed = new AtomicInteger();
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<?>> results = new ArrayList<>();
+    for (int i = 0; i < 8; ++i) {
+      results.add(threads.submit(() -> {
+        start.await();
+        groupCommit.execute(() -> {
+          // slow commits make the work submitted meanwhile wait for the next group
+          await(new CountDownLatch(1), 50);
+          executed.incrementAndGet();
+        });
+        return null;
+      }));
+    }
+
+    start.countDown();
+    for (Future<?> result : results) {
+      result.get();
+    }
+
+    assertThat(executed.get(), is(8));
+    long commits = mockingDetails(transactionManager).getInvocations().stream()
+        .filter(invocation -> invocation.getMethod().getName().equals("commit")).count();
+    assertThat(commits, lessThan(8L));
+  }
+
+  @Test
+  public void failingWorkIsRetriedSeparately() throws Exception {
+    // the window is longer than the test timeout, so while the blocking group is being committed the next group is committed
+    // only when both works have joined it
+    GroupCommit<Runnable> groupCommit = runnableGroupCommit(60_000, 2);
+    CountDownLatch blocking = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    Future<?> blocker = threads.submit(() -> groupCommit.execute(() -> {
+      blocking.countDown();
+      await(release, 10_000);
+    }));
+    blocking.await(10, SECONDS);
+    List<String> executions = synchronizedList(new ArrayList<>());
+    Future<?> success = threads.submit(() -> groupCommit.execute(() -> executions.add("success")));
+    Future<?> failure = threads.submit(() -> assertThrows(IllegalStateException.class, () -> groupCommit.execute(() -> {
+      executions.add("failure");
+      throw new IllegalStateException("expected");
+    })));
+
+    success.get(10, SECONDS);
+    failure.get(10, SECONDS);
+    release.countDown();
+    blocker.get(10, SECONDS);
+
+    // the shared transaction runs the works until the failure, and then each work is retried exactly once
+    List<String> retries = executions.subList(executions.indexOf("failure") + 1, executions.size());
+    assertThat(retries, containsInAnyOrder("success", "failure"));
+    verify(transactionManager, times(2)).commit(any());
+    verify(transactionManager, times(2)).rollback(any());
+  }
+
+  @Test
+  public void groupWriterWritesAllItemsOfGroup() throws Exception {
+    List<List<String>> groups = synchronizedList(new ArrayList<>());
+    CountDownLatch blocking = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    GroupCommit<String> groupCommit = new GroupCommit<>(new TransactionTemplate(transactionManager), items -> {
+      groups.add(new ArrayList<>(items));
+      if (items.contains("blocker")) {
+        blocking.countDown();
+        await(release, 10_000);
+      }
+    }, item -> {
+      throw new AssertionError("items are not written separately when the group succeeds");
+    }, 60_000, 2);
+    Future<?> blocker = threads.submit(() -> groupCommit.execute("blocker"));
+    blocking.await(10, SECONDS);
+    Future<?> first = threads.submit(() -> groupCommit.execute("first"));
+    Future<?> second = threads.submit(() -> groupCommit.execute("second"));
+
+    first.get(10, SECONDS);
+    second.get(10, SECONDS);
+    release.countDown();
+    blocker.get(10, SECONDS);
+
+    assertThat(groups, hasSize(2));
+    assertThat(groups.get(1), containsInAnyOrder("first", "second"));
+    verify(transactionManager, times(2)).commit(any());
+  }
+
+  private GroupCommit<Runnable> runnableGroupCommit(long windowMillis, int maxSize) {
+    return new GroupCommit<>(new TransactionTemplate(transactionManager), items -> items.forEach(Runnable::run), Runnable::run,
+        windowMillis, maxSize);
+  }
+
+  private static void await(CountDownLatch latch, long timeoutMillis) {
+    try {
+      latch.await(timeoutMillis, MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
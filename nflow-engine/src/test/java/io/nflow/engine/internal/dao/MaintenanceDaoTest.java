@@ -7,26 +7,45 @@ import static io.nflow.engine.workflow.instance.WorkflowInstanceAction.WorkflowA
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptySet;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
 import static org.joda.time.DateTime.now;
+import static org.joda.time.DateTimeUtils.setCurrentMillisFixed;
+import static org.joda.time.DateTimeUtils.setCurrentMillisSystem;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import jakarta.inject.Inject;
 
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.transaction.support.TransactionCallback;
 import org.springframework.transaction.support.TransactionTemplate;
 
+import io.nflow.engine.config.db.PgDatabaseConfiguration.PostgreSQLVariants;
 import io.nflow.engine.model.ModelObject;
 import io.nflow.engine.service.WorkflowInstanceInclude;
 import io.nflow.engine.workflow.instance.QueryWorkflowInstances;
@@ -89,6 +108,34 @@ public class MaintenanceDaoTest extends BaseDaoTest {
     assertArrayEquals(oldWorkflowIds.toArray(), expectedIds.toArray());
   }
 
+  @Test
+  public void getOldWorkflowIdsReturnsOnlyWorkflowsAfterGivenId() {
+    List<Long> ids = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      ids.add(storePassiveWorkflow(archiveTime2));
+    }
+
+    List<Long> oldWorkflowIds = maintenanceDao.getOldWorkflowIds(MAIN, archiveTimeLimit, 10, emptySet(), ids.get(1), 0, 1);
+
+    assertArrayEquals(ids.subList(2, 4).toArray(), oldWorkflowIds.toArray());
+  }
+
+  @Test
+  public void getOldWorkflowIdsReturnsOnlyWorkflowsOfGivenShard() {
+    List<Long> ids = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      ids.add(storePassiveWorkflow(archiveTime2));
+    }
+
+    List<Long> shard0 = maintenanceDao.getOldWorkflowIds(MAIN, archiveTimeLimit, 10, emptySet(), 0, 0, 3);
+    List<Long> shard1 = maintenanceDao.getOldWorkflowIds(MAIN, archiveTimeLimit, 10, emptySet(), 0, 1, 3);
+    List<Long> shard2 = maintenanceDao.getOldWorkflowIds(MAIN, archiveTimeLimit, 10, emptySet(), 0, 2, 3);
+
+    assertArrayEquals(ids.stream().filter(id -> id % 3 == 0).toArray(), shard0.toArray());
+    assertArrayEquals(ids.stream().filter(id -> id % 3 == 1).toArray(), shard1.toArray());
+    assertArrayEquals(ids.stream().filter(id -> id % 3 == 2).toArray(), shard2.toArray());
+  }
+
   @Test
   public void archiveWorkflowsWorks() {
     List<Long> workflowIds = new ArrayList<>();
@@ -403,6 +450,74 @@ public class MaintenanceDaoTest extends BaseDaoTest {
     assertEquals(activeWorkflowCountAfter, activeWorkflowCountBefore - archivableWorkflows.size());
   }
 
+  @Test
+  public void getReferredStateVariableBlobsReturnsGivenReferencesFromMainAndArchiveTables() {
+    long archived = storePassiveWorkflow(archiveTime1);
+    long active = storeActiveWorkflow(archiveTime1);
+    long archivedAction = storeAction(archived);
+    long activeAction = storeAction(active);
+    jdbc.update("insert into nflow_workflow_state (workflow_id, action_id, state_key, state_value) values (?, ?, ?, ?)",
+        archived, archivedAction, "blob", "\u0001blob:archived");
+    jdbc.update("insert into nflow_workflow_state (workflow_id, action_id, state_key, state_value) values (?, ?, ?, ?)", active,
+        activeAction, "blob", "\u0001blob:active");
+    maintenanceDao.archiveWorkflows(asList(archived));
+
+    assertThat(maintenanceDao.getReferredStateVariableBlobs("\u0001blob:",
+        Set.of("\u0001blob:archived", "\u0001blob:active", "\u0001blob:orphan")),
+        containsInAnyOrder("\u0001blob:archived", "\u0001blob:active"));
+  }
+
+  @Test
+  public void archiveIsNotPartitionedWhenDatabaseDoesNotSupportPartitions() {
+    assertThat(maintenanceDao.isArchivePartitioned(), is(false));
+  }
+
+  @Test
+  public void dropArchivePartitionsDropsPartitionsArchivedBeforeGivenTime() {
+    JdbcTemplate jdbcMock = mock(JdbcTemplate.class);
+    MaintenanceDao dao = new MaintenanceDao(new PostgreSQLVariants(), jdbcMock, mock(ExecutorDao.class),
+        mock(NamedParameterJdbcTemplate.class));
+    when(jdbcMock.queryForList(anyString(), eq(String.class), eq("nflow_archive_workflow"))).thenReturn(
+        asList("nflow_archive_workflow_p202603", "nflow_archive_workflow_p202601", "nflow_archive_workflow_p202602",
+            "nflow_archive_workflow_default"));
+    when(jdbcMock.queryForObject("select count(*) from nflow_archive_workflow_p202601", Integer.class)).thenReturn(10);
+    when(jdbcMock.queryForObject("select count(*) from nflow_archive_workflow_p202602", Integer.class)).thenReturn(20);
+
+    assertThat(dao.dropArchivePartitions(new DateTime(2026, 3, 1, 0, 0, DateTimeZone.UTC)), is(30));
+
+    InOrder inOrder = inOrder(jdbcMock);
+    for (String month : asList("202601", "202602")) {
+      inOrder.verify(jdbcMock).execute("drop table if exists nflow_archive_workflow_state_p" + month);
+      inOrder.verify(jdbcMock).execute("drop table if exists nflow_archive_workflow_action_p" + month);
+      inOrder.verify(jdbcMock).execute("drop table if exists nflow_archive_workflow_p" + month);
+    }
+    verify(jdbcMock, never()).execute("drop table if exists nflow_archive_workflow_p202603");
+    verify(jdbcMock, never()).execute("drop table if exists nflow_archive_workflow_default");
+  }
+
+  @Test
+  public void createArchivePartitionsCreatesPartitionsOfAdjacentMonthsOnce() {
+    JdbcTemplate jdbcMock = mock(JdbcTemplate.class);
+    PostgreSQLVariants sqlVariants = new PostgreSQLVariants();
+    MaintenanceDao dao = new MaintenanceDao(sqlVariants, jdbcMock, mock(ExecutorDao.class),
+        mock(NamedParameterJdbcTemplate.class));
+    when(jdbcMock.queryForObject(sqlVariants.isPartitionedTable(), Integer.class, "nflow_archive_workflow")).thenReturn(1);
+    setCurrentMillisFixed(new DateTime(2026, 3, 15, 0, 0, DateTimeZone.UTC).getMillis());
+    try {
+      dao.createArchivePartitions();
+      dao.createArchivePartitions();
+    } finally {
+      setCurrentMillisSystem();
+    }
+
+    for (String month : asList("202602", "202603", "202604")) {
+      verify(jdbcMock).execute(startsWith("create table if not exists nflow_archive_workflow_p" + month + " "));
+      verify(jdbcMock).execute(startsWith("create table if not exists nflow_archive_workflow_action_p" + month + " "));
+      verify(jdbcMock).execute(startsWith("create table if not exists nflow_archive_workflow_state_p" + month + " "));
+    }
+    verify(jdbcMock, times(9)).execute(anyString());
+  }
+
   @Test
   public void deleteExpiredWorkflowHistory() {
     WorkflowInstance parentWorkflow = constructWorkflowInstanceBuilder().build();
@@ -584,6 +699,7 @@ public class MaintenanceDaoTest extends BaseDaoTest {
 
   private StateKey storeStateVariable(long workflowId, long actionId, String key) {
     String value = key + "_value";
+    jdbc.update("update nflow_workflow_state set latest = 0 where workflow_id = ? and state_key = ?", workflowId, key);
     int updated = jdbc.update(
         "insert into nflow_workflow_state (workflow_id, action_id, state_key, state_value) values (?, ?, ?, ?)", workflowId,
         actionId, key, value);
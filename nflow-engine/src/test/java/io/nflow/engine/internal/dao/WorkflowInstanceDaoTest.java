@@ -1,5 +1,6 @@
 package io.nflow.engine.internal.dao;
 
+import static io.nflow.engine.service.WorkflowInstanceInclude.ACTIONS;
 import static io.nflow.engine.service.WorkflowInstanceInclude.CHILD_WORKFLOW_IDS;
 import static io.nflow.engine.service.WorkflowInstanceInclude.CURRENT_STATE_VARIABLES;
 import static io.nflow.engine.workflow.instance.WorkflowInstance.WorkflowInstanceStatus.created;
@@ -16,14 +17,20 @@ import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.emptyMap;
 import static java.util.Collections.emptySet;
+import static java.util.stream.Collectors.toList;
 import static org.apache.commons.lang3.StringUtils.countMatches;
 import static org.apache.commons.lang3.StringUtils.repeat;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
@@ -33,9 +40,14 @@ import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyShort;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.sql.ResultSet;
@@ -49,23 +61,30 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
 
 import org.joda.time.DateTime;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 import org.springframework.core.env.Environment;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
 import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.support.TransactionCallback;
 import org.springframework.transaction.support.TransactionTemplate;
 
+import io.nflow.engine.config.NFlow;
 import io.nflow.engine.config.db.PgDatabaseConfiguration.PostgreSQLVariants;
+import io.nflow.engine.internal.dao.WorkflowInstanceDao.ExecutionResult;
 import io.nflow.engine.internal.dao.WorkflowInstanceDao.WorkflowInstanceActionRowMapper;
 import io.nflow.engine.internal.executor.WorkflowInstanceExecutor;
+import io.nflow.engine.internal.storage.db.CompressingStateVariableCodec;
 import io.nflow.engine.internal.storage.db.SQLVariants;
+import io.nflow.engine.internal.storage.db.StateVariableCodec;
 import io.nflow.engine.service.WorkflowInstanceInclude;
 import io.nflow.engine.workflow.definition.TestState;
 import io.nflow.engine.workflow.executor.StateVariableValueTooLongException;
@@ -74,6 +93,7 @@ import io.nflow.engine.workflow.instance.WorkflowInstance;
 import io.nflow.engine.workflow.instance.WorkflowInstanceAction;
 import io.nflow.engine.workflow.instance.WorkflowInstanceAction.WorkflowActionType;
 import io.nflow.engine.workflow.instance.WorkflowInstanceFactory;
+import io.nflow.engine.workflow.instance.WorkflowInstancePage;
 import jakarta.inject.Inject;
 
 public class WorkflowInstanceDaoTest extends BaseDaoTest {
@@ -81,6 +101,8 @@ public class WorkflowInstanceDaoTest extends BaseDaoTest {
   @Inject
   WorkflowInstanceDao dao;
   @Inject
+  MaintenanceDao maintenanceDao;
+  @Inject
   ExecutorDao executorDao;
   @Inject
   TransactionTemplate transaction;
@@ -89,8 +111,13 @@ public class WorkflowInstanceDaoTest extends BaseDaoTest {
   @Inject
   WorkflowInstanceFactory workflowInstanceFactory;
   @Inject
+  DispatcherNotificationDao dispatcherNotificationDao;
+  @Inject
   SQLVariants sqlVariant;
   @Inject
+  @NFlow
+  StateVariableCodec stateVariableCodec;
+  @Inject
   Environment env;
   List<WorkflowInstance> noChildWorkflows = emptyList();
   List<WorkflowInstance> emptyWorkflows = emptyList();
@@ -166,6 +193,131 @@ public class WorkflowInstanceDaoTest extends BaseDaoTest {
     assertNull(instance.started);
   }
 
+  @Test
+  public void queryWorkflowInstancesAsStreamLoadsIncludedDataOfEachInstance() {
+    long parentId = dao.insertWorkflowInstance(constructWorkflowInstanceBuilder().putStateVariable("key", "parent").build());
+    long parentActionId = dao.insertWorkflowInstanceAction(constructActionBuilder(parentId).build());
+    long latestParentActionId = dao.insertWorkflowInstanceAction(constructActionBuilder(parentId).build());
+    long childId = dao.insertWorkflowInstance(constructWorkflowInstanceBuilder().putStateVariable("key", "child")
+        .setParentWorkflowId(parentId).setParentActionId(parentActionId).build());
+    long childActionId = dao.insertWorkflowInstanceAction(constructActionBuilder(childId).build());
+    QueryWorkflowInstances query = new QueryWorkflowInstances.Builder().setIncludeCurrentStateVariables(true)
+        .setIncludeActions(true).setIncludeChildWorkflows(true).setMaxActions(1L).build();
+
+    List<WorkflowInstance> instances;
+    try (Stream<WorkflowInstance> stream = dao.queryWorkflowInstancesAsStream(query)) {
+      instances = stream.collect(toList());
+    }
+
+    assertThat(instances.stream().map(instance -> instance.id).collect(toList()), contains(childId, parentId));
+    WorkflowInstance child = instances.get(0);
+    assertThat(child.stateVariables, hasEntry("key", "child"));
+    assertThat(child.actions.stream().map(action -> action.id).collect(toList()), contains(childActionId));
+    assertThat(child.childWorkflows.isEmpty(), is(true));
+    WorkflowInstance parent = instances.get(1);
+    assertThat(parent.stateVariables, hasEntry("key", "parent"));
+    assertThat(parent.actions.stream().map(action -> action.id).collect(toList()), contains(latestParentActionId));
+    assertThat(parent.childWorkflows, is(Map.of(parentActionId, List.of(childId))));
+  }
+
+  @Test
+  public void queryWorkflowInstancesAsStreamLoadsStateVariablesOfLatestActionsOfEachInstance() {
+    List<Long> ids = new ArrayList<>();
+    for (int i = 0; i < 2; i++) {
+      long id = dao.insertWorkflowInstance(constructWorkflowInstanceBuilder().build());
+      for (int j = 0; j < 3; j++) {
+        long actionId = dao.insertWorkflowInstanceAction(constructActionBuilder(id).build());
+        dao.insertVariables(id, actionId, Map.of("action", String.valueOf(j)));
+      }
+      ids.add(0, id);
+    }
+    QueryWorkflowInstances query = new QueryWorkflowInstances.Builder().setIncludeActions(true)
+        .setIncludeActionStateVariables(true).setMaxActions(2L).build();
+
+    List<WorkflowInstance> instances;
+    try (Stream<WorkflowInstance> stream = dao.queryWorkflowInstancesAsStream(query)) {
+      instances = stream.collect(toList());
+    }
+
+    assertThat(instances.stream().map(instance -> instance.id).collect(toList()), is(ids));
+    for (WorkflowInstance instance : instances) {
+      assertThat(instance.actions.stream().map(action -> action.updatedStateVariables.get("action")).collect(toList()),
+          contains("2", "1"));
+    }
+  }
+
+  @Test
+  public void queryWorkflowInstancesAsStreamContinuesFromMainTablesToArchiveTables() {
+    List<Long> archivedIds = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      archivedIds.add(0, dao.insertWorkflowInstance(constructWorkflowInstanceBuilder().setNextActivation(null).build()));
+    }
+    maintenanceDao.archiveWorkflows(archivedIds);
+    long mainId = dao.insertWorkflowInstance(constructWorkflowInstanceBuilder().build());
+    QueryWorkflowInstances query = new QueryWorkflowInstances.Builder().setMaxResults(3L).setQueryArchive(true).build();
+
+    try (Stream<WorkflowInstance> stream = dao.queryWorkflowInstancesAsStream(query)) {
+      assertThat(stream.map(instance -> instance.id).collect(toList()),
+          contains(mainId, archivedIds.get(0), archivedIds.get(1)));
+    }
+  }
+
+  @Test
+  public void queryWorkflowInstancePagesWithContinuationToken() {
+    List<Long> ids = new ArrayList<>();
+    for (int i = 0; i < 5; i++) {
+      ids.add(0, dao.insertWorkflowInstance(constructWorkflowInstanceBuilder().build()));
+    }
+
+    List<Long> pagedIds = new ArrayList<>();
+    String token = null;
+    int pages = 0;
+    do {
+      WorkflowInstancePage page = dao.queryWorkflowInstancePage(
+          new QueryWorkflowInstances.Builder().setMaxResults(2L).setContinuationToken(token).build());
+      page.instances.forEach(instance -> pagedIds.add(instance.id));
+      token = page.continuationToken;
+      pages++;
+    } while (token != null);
+
+    assertThat(pagedIds, is(ids));
+    assertThat(pages, is(3));
+  }
+
+  @Test
+  public void queryWorkflowInstancePagesContinuesFromMainTablesToArchiveTables() {
+    List<Long> archivedIds = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      archivedIds.add(0, dao.insertWorkflowInstance(constructWorkflowInstanceBuilder().setNextActivation(null).build()));
+    }
+    maintenanceDao.archiveWorkflows(archivedIds);
+    long mainId = dao.insertWorkflowInstance(constructWorkflowInstanceBuilder().build());
+    QueryWorkflowInstances.Builder query = new QueryWorkflowInstances.Builder().setMaxResults(2L).setQueryArchive(true);
+
+    WorkflowInstancePage page = dao.queryWorkflowInstancePage(query.build());
+    List<WorkflowInstance> instances = page.instances.collect(toList());
+
+    assertThat(instances.stream().map(instance -> instance.id).collect(toList()), contains(mainId, archivedIds.get(0)));
+    assertThat(instances.get(1).isArchived, is(true));
+
+    page = dao.queryWorkflowInstancePage(query.setContinuationToken(page.continuationToken).build());
+
+    assertThat(page.instances.map(instance -> instance.id).collect(toList()),
+        contains(archivedIds.get(1), archivedIds.get(2)));
+
+    page = dao.queryWorkflowInstancePage(query.setContinuationToken(page.continuationToken).build());
+
+    assertThat(page.instances.count(), is(0L));
+    assertThat(page.continuationToken, is(nullValue()));
+  }
+
+  @Test
+  public void queryWorkflowInstancePageWithInvalidContinuationTokenThrowsException() {
+    QueryWorkflowInstances query = new QueryWorkflowInstances.Builder().setContinuationToken("invalid").build();
+
+    assertThrows(IllegalArgumentException.class, () -> dao.queryWorkflowInstancePage(query));
+  }
+
   @Test
   public void updateWorkflowInstance() throws InterruptedException {
     WorkflowInstance i1 = constructWorkflowInstanceBuilder().setStatus(created).build();
@@ -280,6 +432,50 @@ public class WorkflowInstanceDaoTest extends BaseDaoTest {
     assertThat(updatedInstance().actions.size(), is(1));
   }
 
+  @Test
+  public void workflowInstanceIsClaimedOnlyAfterNextActivation() {
+    long future = dao.insertWorkflowInstance(constructWorkflowInstanceBuilder().setNextActivation(now().plusMinutes(1)).build());
+    long due = dao.insertWorkflowInstance(constructWorkflowInstanceBuilder().setNextActivation(now().minusMinutes(1)).build());
+
+    assertThat(dao.claimWorkflowInstance(future), is(false));
+    assertThat(dao.isWorkflowInstanceActivationPending(future), is(true));
+    assertThat(dao.claimWorkflowInstance(due), is(true));
+    assertThat(dao.isWorkflowInstanceActivationPending(due), is(false));
+    assertThat(dao.claimWorkflowInstance(due), is(false));
+  }
+
+  @Test
+  public void groupOfExecutionResultsIsWrittenWithBatchUpdates() {
+    List<WorkflowInstance> instances = new ArrayList<>();
+    for (int i = 0; i < 3; ++i) {
+      long id = dao.insertWorkflowInstance(constructWorkflowInstanceBuilder().setStatus(created).build());
+      setInstanceExecutorId(id);
+      instances.add(new WorkflowInstance.Builder(dao.getWorkflowInstance(id, EnumSet.of(CURRENT_STATE_VARIABLES), null, false))
+          .setStatus(inProgress).setState("updateState").putStateVariable("foo", "bar" + i).build());
+    }
+    WorkflowInstance withoutAction = instances.get(2);
+    List<WorkflowInstance> children = asList(constructWorkflowInstanceBuilder().build());
+
+    transaction.executeWithoutResult(status -> dao.updateWorkflowInstancesAfterExecution(asList(
+        new ExecutionResult(instances.get(0), constructActionBuilder(instances.get(0).id).build(), noChildWorkflows,
+            emptyWorkflows, instances.get(0).getChangedStateVariables(), true, true),
+        new ExecutionResult(instances.get(1), constructActionBuilder(instances.get(1).id).build(), children, emptyWorkflows,
+            instances.get(1).getChangedStateVariables(), true, true),
+        new ExecutionResult(withoutAction, constructActionBuilder(withoutAction.id).build(), noChildWorkflows, emptyWorkflows,
+            emptyMap(), false, true))));
+
+    for (int i = 0; i < 3; ++i) {
+      WorkflowInstance updated = dao.getWorkflowInstance(instances.get(i).id,
+          EnumSet.of(CURRENT_STATE_VARIABLES, ACTIONS, CHILD_WORKFLOW_IDS), null, false);
+      assertThat(updated.status, is(inProgress));
+      assertThat(updated.state, is("updateState"));
+      assertThat(updated.actions.size(), is(i < 2 ? 1 : 0));
+      assertThat(updated.stateVariables.get("foo"), is(i < 2 ? "bar" + i : null));
+    }
+    assertThat(dao.getWorkflowInstance(instances.get(1).id, EnumSet.of(CHILD_WORKFLOW_IDS), null, false).childWorkflows.size(),
+        is(1));
+  }
+
   private void setInstanceExecutorId(Long id) {
     jdbc.update("update nflow_workflow set executor_id = ? where id = ?", executorDao.getExecutorId(), id);
   }
@@ -295,6 +491,31 @@ public class WorkflowInstanceDaoTest extends BaseDaoTest {
     assertThat(updatedInstance().actions.size(), is(1));
   }
 
+  @Test
+  public void updateWorkflowInstanceMarksOnlyLatestStateVariableValuesAsCurrent() {
+    WorkflowInstance instance = updateInstanceBuilder().putStateVariable("foo", "bar").putStateVariable("baz", "1").build();
+    setInstanceExecutorId(instance.id);
+    dao.updateWorkflowInstanceAfterExecution(instance, constructActionBuilder(instance.id).build(), noChildWorkflows,
+        emptyWorkflows, false);
+    WorkflowInstance updated = new WorkflowInstance.Builder(
+        dao.getWorkflowInstance(instance.id, EnumSet.of(WorkflowInstanceInclude.CURRENT_STATE_VARIABLES), null, false))
+            .putStateVariable("foo", "qux").build();
+    setInstanceExecutorId(instance.id);
+    dao.updateWorkflowInstanceAfterExecution(updated, constructActionBuilder(instance.id).build(), noChildWorkflows,
+        emptyWorkflows, false);
+
+    WorkflowInstance loaded = dao.getWorkflowInstance(instance.id, EnumSet.of(WorkflowInstanceInclude.CURRENT_STATE_VARIABLES),
+        null, false);
+    assertThat(loaded.stateVariables, hasEntry("foo", "qux"));
+    assertThat(loaded.stateVariables, hasEntry("baz", "1"));
+    assertThat(jdbc.queryForObject("select count(*) from nflow_workflow_state where workflow_id = ? and latest = 1",
+        Integer.class, instance.id), is(loaded.stateVariables.size()));
+    assertThat(dao.queryWorkflowInstances(new QueryWorkflowInstances.Builder().setStateVariable("foo", "bar").build()),
+        is(emptyList()));
+    assertThat(dao.queryWorkflowInstances(new QueryWorkflowInstances.Builder().setStateVariable("foo", "qux").build()).size(),
+        is(1));
+  }
+
   private WorkflowInstance.Builder updateInstanceBuilder() {
     WorkflowInstance instance = constructWorkflowInstanceBuilder().setStatus(created).setBusinessKey("updatedKey").build();
     long id = dao.insertWorkflowInstance(instance);
@@ -594,7 +815,9 @@ public class WorkflowInstanceDaoTest extends BaseDaoTest {
         + "where id = ? and executor_id = 42 returning id), "
         + "act as (insert into nflow_workflow_action(workflow_id, executor_id, type, state, state_text, retry_no, "
         + "execution_start, execution_end) select wf.id, ?, ?::action_type, ?, ?, ?, ?, ? from wf returning id), "
-        + "ins18 as (insert into nflow_workflow_state(workflow_id, action_id, state_key, state_value) "
+        + "prev as (update nflow_workflow_state set latest = 0 where workflow_id in (select id from wf) and latest = 1 "
+        + "and state_key in (?)), "
+        + "ins19 as (insert into nflow_workflow_state(workflow_id, action_id, state_key, state_value) "
         + "select wf.id,act.id,?,? from wf,act) select act.id from act", sql.getValue());
     Object[] arguments = args.getValue();
     assertThat(arguments.length, is(countMatches(sql.getValue(), "?")));
@@ -619,6 +842,7 @@ public class WorkflowInstanceDaoTest extends BaseDaoTest {
     assertThat(arguments[i++], is((Object) new Timestamp(a1.executionStart.getMillis())));
     assertThat(arguments[i++], is((Object) new Timestamp(a1.executionEnd.getMillis())));
     assertThat(arguments[i++], is((Object) "A"));
+    assertThat(arguments[i++], is((Object) "A"));
     assertThat(arguments[i++], is((Object) "B"));
   }
 
@@ -638,10 +862,10 @@ public class WorkflowInstanceDaoTest extends BaseDaoTest {
 
     d.insertWorkflowInstance(wf);
     assertEquals("with wf as (insert into nflow_workflow(type, priority, parent_workflow_id, parent_action_id, business_key, "
-        + "external_id, executor_group, status, state, state_text, next_activation, workflow_signal) values "
-        + "(?, ?, ?, ?, ?, ?, ?, ?::workflow_status, ?, ?, ?, ?) returning id), ins12 as "
+        + "external_id, executor_group, status, state, state_text, next_activation, workflow_signal, shard_bucket) values "
+        + "(?, ?, ?, ?, ?, ?, ?, ?::workflow_status, ?, ?, ?, ?, ?) returning id), ins13 as "
         + "(insert into nflow_workflow_state(workflow_id, action_id, state_key, state_value) select wf.id,0,?,? from wf), "
-        + "ins14 as (insert into nflow_workflow_state(workflow_id, action_id, state_key, state_value) "
+        + "ins15 as (insert into nflow_workflow_state(workflow_id, action_id, state_key, state_value) "
         + "select wf.id,0,?,? from wf) select wf.id from wf", sql.getValue());
     Object[] arguments = args.getValue();
     assertThat(arguments.length, is(countMatches(sql.getValue(), "?")));
@@ -659,12 +883,30 @@ public class WorkflowInstanceDaoTest extends BaseDaoTest {
     assertThat(arguments[i++], is((Object) wf.stateText));
     assertThat(arguments[i++], is((Object) new Timestamp(wf.nextActivation.getMillis())));
     assertThat(arguments[i++], is((Object) wf.signal.get()));
+    assertThat(arguments[i++], is(instanceOf(Integer.class)));
     assertThat(arguments[i++], is((Object) "A"));
     assertThat(arguments[i++], is((Object) "B"));
     assertThat(arguments[i++], is((Object) "C"));
     assertThat(arguments[i++], is((Object) "D"));
   }
 
+  @Test
+  public void fakePostgreSQLinsertWorkflowInstanceOrGetExistingReturnsExistingIdOnConflict() {
+    JdbcTemplate j = mock(JdbcTemplate.class);
+    WorkflowInstanceDao d = preparePostgreSQLDao(j);
+    ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+    when(j.queryForList(sql.capture(), eq(Long.class), any(Object[].class))).thenReturn(emptyList());
+    when(j.queryForObject(eq("select id from nflow_workflow where external_id = ? and type = ? and executor_group = ?"),
+        eq(Long.class), any(), any(), any())).thenReturn(42L);
+
+    WorkflowInstance wf = new WorkflowInstance.Builder().setStatus(inProgress).setState("updateState").setExternalId("ext")
+        .setType("type").putStateVariable("A", "B").build();
+
+    assertThat(d.insertWorkflowInstanceOrGetExisting(wf), is(42L));
+    assertThat(sql.getValue(), containsString(
+        "?::workflow_status, ?, ?, ?, ?) on conflict (external_id, type, executor_group) do nothing returning id)"));
+  }
+
   @Test
   public void insertWorkflowInstanceActionWorks() {
     DateTime started = now();
@@ -717,6 +959,73 @@ public class WorkflowInstanceDaoTest extends BaseDaoTest {
     assertThat(ids, is(asList(newerLowPrio)));
   }
 
+  @Test
+  public void shardedPollingPollsOwnShardFirstAndStealsFromOtherShardsWhenIdle() {
+    int executorId = executorDao.getExecutorId();
+    insertLiveExecutor(executorId, executorDao.getExecutorGroup());
+    insertLiveExecutor(executorId + 1, executorDao.getExecutorGroup());
+    executorDao.updatePollingShard();
+    try {
+      long otherShard = createInstance(2, (short) 1);
+      long ownShard = createInstance(2, (short) 1);
+      jdbc.update("update nflow_workflow set shard_bucket = ? where id = ?", ExecutorDao.SHARD_BUCKETS - 1, otherShard);
+      jdbc.update("update nflow_workflow set shard_bucket = ? where id = ?", 0, ownShard);
+
+      assertThat(dao.pollNextWorkflowInstanceIds(10), is(asList(ownShard)));
+      assertThat(dao.pollNextWorkflowInstanceIds(10), is(asList(otherShard)));
+      assertThat(dao.pollNextWorkflowInstanceIds(10), is(empty()));
+
+      long laterOtherShard = createInstance(2, (short) 1);
+      jdbc.update("update nflow_workflow set shard_bucket = ? where id = ?", ExecutorDao.SHARD_BUCKETS - 1, laterOtherShard);
+      // the previous poll of all shards found nothing
+      assertThat(dao.pollNextWorkflowInstanceIds(10), is(empty()));
+      assertThat(dao.pollNextWorkflowInstanceIds(10), is(asList(laterOtherShard)));
+    } finally {
+      jdbc.update("delete from nflow_executor where id = ?", executorId + 1);
+      executorDao.updatePollingShard();
+    }
+  }
+
+  @Test
+  public void pollNextWorkflowInstancesReturnsInstancesWithCurrentStateVariables() {
+    WorkflowInstance i1 = constructWorkflowInstanceBuilder().setNextActivation(now().minusMinutes(1)).setExecutorGroup("junit")
+        .putStateVariable("a", "1").putStateVariable("b", "2").build();
+    long id = dao.insertWorkflowInstance(i1);
+    WorkflowInstance i2 = new WorkflowInstance.Builder(dao.getWorkflowInstance(id, EnumSet.of(CURRENT_STATE_VARIABLES), null, false))
+        .putStateVariable("b", "3").build();
+    WorkflowInstanceAction a1 = new WorkflowInstanceAction.Builder().setExecutionStart(now()).setExecutorId(42)
+        .setExecutionEnd(now()).setType(stateExecution).setState("test").setWorkflowInstanceId(id).build();
+    transaction.executeWithoutResult(status -> dao.insertWorkflowInstanceAction(i2, a1));
+
+    List<WorkflowInstance> firstBatch = dao.pollNextWorkflowInstances(100);
+    List<WorkflowInstance> secondBatch = dao.pollNextWorkflowInstances(100);
+
+    assertThat(firstBatch.size(), equalTo(1));
+    WorkflowInstance polled = firstBatch.get(0);
+    assertThat(polled.id, equalTo(id));
+    assertThat(polled.status, equalTo(executing));
+    assertThat(polled.stateVariables, hasEntry("a", "1"));
+    assertThat(polled.stateVariables, hasEntry("b", "3"));
+    assertThat(polled.getChangedStateVariables().isEmpty(), is(true));
+    assertThat(secondBatch.size(), equalTo(0));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void fakePostgreSQLpollNextWorkflowInstancesWithStateVariables() {
+    JdbcTemplate j = mock(JdbcTemplate.class);
+    WorkflowInstanceDao d = preparePostgreSQLDao(j);
+    ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+    when(j.query(sql.capture(), any(ResultSetExtractor.class))).thenReturn(new LinkedHashMap<>());
+    assertThat(d.pollNextWorkflowInstances(5), is(emptyList()));
+    assertEquals(
+        "with polled as (update nflow_workflow set executor_id = 42, status = 'executing'::workflow_status, external_next_activation = null where id in (select id from nflow_workflow where executor_id is null and status in ('created'::workflow_status, 'inProgress'::workflow_status) and next_activation <= current_timestamp and group matches order by priority desc, next_activation asc limit 5 for update skip locked) and executor_id is null returning "
+            + "id, executor_id, parent_workflow_id, parent_action_id, status, type, priority, business_key, external_id, state, state_text, next_activation, retries, created, modified, started, executor_group, workflow_signal), "
+            + "vars as (select workflow_id, state_key, state_value from nflow_workflow_state where workflow_id in (select id from polled) and latest = 1) "
+            + "select polled.*, 0 as archived, vars.state_key, vars.state_value from polled left join vars on vars.workflow_id = polled.id order by polled.priority desc, polled.next_activation asc",
+        sql.getValue());
+  }
+
   private long createInstance(int minutesInPast, short priority) {
     return dao.insertWorkflowInstance(constructWorkflowInstanceBuilder().setNextActivation(now().minusMinutes(minutesInPast))
         .setPriority(priority).setExecutorGroup("junit").build());
@@ -741,7 +1050,7 @@ public class WorkflowInstanceDaoTest extends BaseDaoTest {
     NamedParameterJdbcTemplate namedJdbc = mock(NamedParameterJdbcTemplate.class);
     TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
     WorkflowInstanceDao d = new WorkflowInstanceDao(new PostgreSQLVariants(), jdbcTemplate, transactionTemplate, namedJdbc, eDao,
-        workflowInstanceExecutor, workflowInstanceFactory, env);
+        workflowInstanceExecutor, workflowInstanceFactory, dispatcherNotificationDao, stateVariableCodec, env);
 
     d.instanceStateTextLength.set(128);
     d.actionStateTextLength.set(128);
@@ -932,6 +1241,194 @@ public class WorkflowInstanceDaoTest extends BaseDaoTest {
     assertThat(wakenWorkflow.nextActivation, is(scheduled));
   }
 
+  @Test
+  public void insertWorkflowInstanceClaimsExecutableInstanceWhenClaimOnInsertIsEnabled() {
+    WorkflowInstanceExecutor executor = mock(WorkflowInstanceExecutor.class);
+    when(executor.reserveClaimedInstance()).thenReturn(true);
+    when(executor.executeReservedInstance(anyLong(), anyShort(), any())).thenReturn(true);
+    WorkflowInstanceDao claimingDao = prepareClaimingDao(executor);
+
+    DateTime nextActivation = now().minusSeconds(1);
+    long id = claimingDao.insertWorkflowInstance(
+        constructWorkflowInstanceBuilder().setNextActivation(nextActivation).setPriority((short) 3).build());
+    long futureId = claimingDao
+        .insertWorkflowInstance(constructWorkflowInstanceBuilder().setNextActivation(now().plusHours(1)).build());
+
+    verify(executor).executeReservedInstance(id, (short) 3, nextActivation);
+    verify(executor, never()).executeReservedInstance(eq(futureId), anyShort(), any());
+    verify(executor, never()).releaseClaimReservation();
+    Integer executorId = jdbc.queryForObject("select executor_id from nflow_workflow where id = ?", Integer.class, id);
+    assertThat(executorId, is(executorDao.getExecutorId()));
+    String status = jdbc.queryForObject("select status from nflow_workflow where id = ?", String.class, id);
+    assertThat(status, is(executing.name()));
+    executorId = jdbc.queryForObject("select executor_id from nflow_workflow where id = ?", Integer.class, futureId);
+    assertThat(executorId, is(nullValue()));
+  }
+
+  @Test
+  public void insertWorkflowInstanceReleasesClaimWhenExecutorRejectsInstance() {
+    WorkflowInstanceExecutor executor = mock(WorkflowInstanceExecutor.class);
+    when(executor.reserveClaimedInstance()).thenReturn(true);
+    when(executor.executeReservedInstance(anyLong(), anyShort(), any())).thenReturn(false);
+    WorkflowInstanceDao claimingDao = prepareClaimingDao(executor);
+
+    long id = claimingDao
+        .insertWorkflowInstance(constructWorkflowInstanceBuilder().setStatus(created).setNextActivation(now().minusSeconds(1)).build());
+
+    Integer executorId = jdbc.queryForObject("select executor_id from nflow_workflow where id = ?", Integer.class, id);
+    assertThat(executorId, is(nullValue()));
+    String status = jdbc.queryForObject("select status from nflow_workflow where id = ?", String.class, id);
+    assertThat(status, is(created.name()));
+  }
+
+  @Test
+  public void insertWorkflowInstanceReleasesClaimInNewTransactionAfterCommit() {
+    WorkflowInstanceExecutor executor = mock(WorkflowInstanceExecutor.class);
+    when(executor.reserveClaimedInstance()).thenReturn(true);
+    when(executor.executeReservedInstance(anyLong(), anyShort(), any())).thenReturn(false);
+    WorkflowInstanceDao claimingDao = prepareClaimingDao(executor);
+
+    long id = transaction.execute(status -> claimingDao
+        .insertWorkflowInstance(constructWorkflowInstanceBuilder().setStatus(created).setNextActivation(now().minusSeconds(1)).build()));
+
+    verify(executor).executeReservedInstance(eq(id), anyShort(), any());
+    Integer executorId = jdbc.queryForObject("select executor_id from nflow_workflow where id = ?", Integer.class, id);
+    assertThat(executorId, is(nullValue()));
+    String status = jdbc.queryForObject("select status from nflow_workflow where id = ?", String.class, id);
+    assertThat(status, is(created.name()));
+  }
+
+  @Test
+  public void insertWorkflowInstanceReleasesClaimReservationWhenTransactionIsRolledBack() {
+    WorkflowInstanceExecutor executor = mock(WorkflowInstanceExecutor.class);
+    when(executor.reserveClaimedInstance()).thenReturn(true);
+    WorkflowInstanceDao claimingDao = prepareClaimingDao(executor);
+
+    transaction.executeWithoutResult(status -> {
+      claimingDao.insertWorkflowInstance(constructWorkflowInstanceBuilder().setNextActivation(now().minusSeconds(1)).build());
+      status.setRollbackOnly();
+    });
+
+    verify(executor).releaseClaimReservation();
+    verify(executor, never()).executeReservedInstance(anyLong(), anyShort(), any());
+  }
+
+  @Test
+  public void insertWorkflowInstanceDoesNotClaimInstanceWhenExecutorIsNotAccepting() {
+    WorkflowInstanceExecutor executor = mock(WorkflowInstanceExecutor.class);
+    WorkflowInstanceDao claimingDao = prepareClaimingDao(executor);
+
+    long id = claimingDao.insertWorkflowInstance(constructWorkflowInstanceBuilder().setNextActivation(now().minusSeconds(1)).build());
+
+    verify(executor, never()).executeReservedInstance(anyLong(), anyShort(), any());
+    Integer executorId = jdbc.queryForObject("select executor_id from nflow_workflow where id = ?", Integer.class, id);
+    assertThat(executorId, is(nullValue()));
+  }
+
+  @Test
+  public void insertWorkflowInstancesReturnsIdsInOrderAndStoresStateVariables() {
+    WorkflowInstance i1 = constructWorkflowInstanceBuilder().putStateVariable("a", "1").build();
+    WorkflowInstance i2 = constructWorkflowInstanceBuilder().setStateVariables(emptyMap()).build();
+    WorkflowInstance i3 = constructWorkflowInstanceBuilder().putStateVariable("b", "2").build();
+
+    List<Long> ids = dao.insertWorkflowInstances(asList(i1, i2, i3));
+
+    assertThat(ids.size(), is(3));
+    List<WorkflowInstance> expected = asList(i1, i2, i3);
+    for (int i = 0; i < ids.size(); ++i) {
+      WorkflowInstance stored = dao.getWorkflowInstance(ids.get(i), EnumSet.of(CURRENT_STATE_VARIABLES), null, false);
+      assertThat(stored.externalId, is(expected.get(i).externalId));
+      assertThat(stored.stateVariables, is(expected.get(i).stateVariables));
+    }
+  }
+
+  @Test
+  public void insertWorkflowInstancesInsertsNothingWhenInstanceAlreadyExists() {
+    WorkflowInstance existing = constructWorkflowInstanceBuilder().build();
+    dao.insertWorkflowInstance(existing);
+
+    assertThrows(DuplicateKeyException.class,
+        () -> dao.insertWorkflowInstances(asList(constructWorkflowInstanceBuilder().build(), existing)));
+
+    assertThat(jdbc.queryForObject("select count(1) from nflow_workflow", Integer.class), is(1));
+  }
+
+  @Test
+  public void insertWorkflowInstanceOrGetExistingReturnsIdOfExistingInstance() {
+    WorkflowInstance instance = constructWorkflowInstanceBuilder().build();
+    long id = dao.insertWorkflowInstanceOrGetExisting(instance);
+
+    assertThat(dao.insertWorkflowInstanceOrGetExisting(
+        new WorkflowInstance.Builder(instance).putStateVariable("other", "value").build()), is(id));
+
+    assertThat(jdbc.queryForObject("select count(1) from nflow_workflow", Integer.class), is(1));
+    WorkflowInstance stored = dao.getWorkflowInstance(id, EnumSet.of(CURRENT_STATE_VARIABLES), null, false);
+    assertThat(stored.stateVariables, is(instance.stateVariables));
+  }
+
+  @Test
+  public void insertWorkflowInstancesOrGetExistingReturnsIdsOfInsertedAndExistingInstances() {
+    WorkflowInstance existing = constructWorkflowInstanceBuilder().build();
+    long existingId = dao.insertWorkflowInstance(existing);
+    WorkflowInstance i1 = constructWorkflowInstanceBuilder().build();
+
+    List<Long> ids = dao.insertWorkflowInstancesOrGetExisting(asList(i1, existing, i1));
+
+    assertThat(ids.get(1), is(existingId));
+    assertThat(ids.get(2), is(ids.get(0)));
+    assertThat(jdbc.queryForObject("select count(1) from nflow_workflow", Integer.class), is(2));
+    WorkflowInstance stored = dao.getWorkflowInstance(ids.get(0), EnumSet.of(CURRENT_STATE_VARIABLES), null, false);
+    assertThat(stored.externalId, is(i1.externalId));
+    assertThat(stored.stateVariables, is(i1.stateVariables));
+  }
+
+  @Test
+  public void getStateVariablesReturnsCurrentValuesOfRequestedVariables() {
+    long id = dao.insertWorkflowInstance(constructWorkflowInstanceBuilder()
+        .setStateVariables(Map.of("foo", "1", "bar", "2", "baz", "3")).build());
+
+    assertThat(dao.getStateVariables(id, asList("foo", "baz", "missing")), is(Map.of("foo", "1", "baz", "3")));
+    assertThat(dao.getStateVariables(id, emptyList()), is(Map.of()));
+    assertThat(dao.getStateVariables(id, null), is(Map.of("foo", "1", "bar", "2", "baz", "3")));
+  }
+
+  @Test
+  public void compressedStateVariablesAreDecodedWhenRead() {
+    WorkflowInstanceDao compressingDao = new WorkflowInstanceDao(sqlVariant, jdbc, transaction,
+        new NamedParameterJdbcTemplate(jdbc), executorDao, workflowInstanceExecutor, workflowInstanceFactory,
+        dispatcherNotificationDao, new CompressingStateVariableCodec(100), env);
+    String largeValue = "{\"data\":\"" + repeat("abc", 200) + "\"}";
+    WorkflowInstance instance = constructWorkflowInstanceBuilder().putStateVariable("large", largeValue)
+        .putStateVariable("small", "1").build();
+
+    long id = compressingDao.insertWorkflowInstance(instance);
+
+    String stored = jdbc.queryForObject("select state_value from nflow_workflow_state where workflow_id = ? and state_key = ?",
+        String.class, id, "large");
+    assertThat(stored.length(), is(lessThan(largeValue.length())));
+    WorkflowInstance read = compressingDao.getWorkflowInstance(id, EnumSet.of(CURRENT_STATE_VARIABLES), null, false);
+    assertThat(read.stateVariables.get("large"), is(largeValue));
+    assertThat(read.stateVariables.get("small"), is("1"));
+    // compressed values stay readable when compression is disabled
+    assertThat(dao.getWorkflowInstance(id, EnumSet.of(CURRENT_STATE_VARIABLES), null, false).stateVariables.get("large"),
+        is(largeValue));
+    QueryWorkflowInstances query = new QueryWorkflowInstances.Builder().setStateVariable("large", largeValue).build();
+    assertThat(compressingDao.queryWorkflowInstances(query).size(), is(1));
+  }
+
+  @Test
+  public void copyWorkflowInstancesIsNotSupportedOnH2() {
+    assertThrows(UnsupportedOperationException.class,
+        () -> dao.copyWorkflowInstances(Stream.of(constructWorkflowInstanceBuilder().build())));
+  }
+
+  private WorkflowInstanceDao prepareClaimingDao(WorkflowInstanceExecutor executor) {
+    WorkflowInstanceDao d = new WorkflowInstanceDao(sqlVariant, jdbc, transaction, new NamedParameterJdbcTemplate(jdbc),
+        executorDao, executor, workflowInstanceFactory, dispatcherNotificationDao, stateVariableCodec, env);
+    d.claimOnInsert.set(true);
+    return d;
+  }
+
   @Test
   public void recoverWorkflowInstancesFromDeadNodesSetsExecutorIdToNullAndStatusToInProgressAndInsertsAction() {
     int crashedExecutorId = 999;
@@ -970,6 +1467,34 @@ public class WorkflowInstanceDaoTest extends BaseDaoTest {
     assertThat(workflowInstanceAction.stateText, is("Recovered"));
   }
 
+  @Test
+  public void recoverWorkflowInstancesFromDeadNodesRecoversAllInstancesInChunks() {
+    insertCrashedExecutor(998, executorDao.getExecutorGroup());
+    insertCrashedExecutor(999, executorDao.getExecutorGroup());
+    List<Long> ids = new ArrayList<>();
+    for (int i = 0; i < 4; ++i) {
+      long id = dao.insertWorkflowInstance(constructWorkflowInstanceBuilder().setStatus(executing).build());
+      jdbc.update("update nflow_workflow set executor_id = ? where id = ?", i == 0 ? 998 : 999, id);
+      ids.add(id);
+    }
+
+    assertThat(dao.recoverWorkflowInstancesFromDeadNodes(), is(4));
+
+    for (long id : ids) {
+      assertThat(jdbc.queryForObject("select executor_id from nflow_workflow where id = ?", Integer.class, id), is(nullValue()));
+      assertThat(jdbc.queryForObject("select status from nflow_workflow where id = ?", String.class, id), is(inProgress.name()));
+      List<WorkflowInstanceAction.Builder> actions = jdbc.query("select * from nflow_workflow_action where workflow_id = ?",
+          new WorkflowInstanceActionRowMapper(sqlVariant), id);
+      assertThat(actions.size(), is(1));
+      WorkflowInstanceAction action = actions.get(0).build();
+      assertThat(action.type, is(recovery));
+      assertThat(action.state, is(constructWorkflowInstanceBuilder().build().state));
+      assertThat(action.executorId, is(executorDao.getExecutorId()));
+    }
+    assertThat(executorDao.getRecoverableExecutorIds(), is(empty()));
+    assertThat(dao.recoverWorkflowInstancesFromDeadNodes(), is(0));
+  }
+
   @Test
   public void settingSignalInsertsAction() {
     WorkflowInstance i = constructWorkflowInstanceBuilder().setBusinessKey("setSignalTest").build();
@@ -0,0 +1,78 @@
+package io.nflow.engine.internal.executor;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+public class ActivationTimerWheelTest {
+  ActivationTimerWheel<Integer> wheel = new ActivationTimerWheel<>(10, 100_000, 3);
+
+  @Test
+  public void instancesExpireAtTheirActivationTimeOnAllLevels() {
+    assertThat(wheel.schedule(1, 1_055, 1_000), is(true));
+    assertThat(wheel.schedule(2, 2_000, 1_000), is(true));
+    assertThat(wheel.schedule(3, 51_000, 1_000), is(true));
+    assertThat(wheel.size(), is(3));
+
+    assertThat(wheel.advance(1_050), is(empty()));
+    assertThat(wheel.advance(1_060), is(asList(1)));
+    assertThat(wheel.advance(1_999), is(empty()));
+    assertThat(wheel.advance(2_000), is(asList(2)));
+    assertThat(wheel.advance(50_999), is(empty()));
+    assertThat(wheel.advance(51_000), is(asList(3)));
+    assertThat(wheel.size(), is(0));
+  }
+
+  @Test
+  public void instancesWithPastActivationTimeExpireOnNextTick() {
+    wheel.advance(1_000);
+    assertThat(wheel.schedule(1, 900, 1_000), is(true));
+
+    assertThat(wheel.advance(1_000), is(empty()));
+    assertThat(wheel.advance(1_010), is(asList(1)));
+  }
+
+  @Test
+  public void instancesExpiringOnTheSameTickAreReturnedTogether() {
+    wheel.schedule(1, 1_700, 1_000);
+    wheel.schedule(2, 1_695, 1_000);
+
+    assertThat(wheel.advance(5_000), containsInAnyOrder(1, 2));
+  }
+
+  @Test
+  public void rejectsInstancesBeyondHorizonOrWhenFull() {
+    assertThat(wheel.accepts(101_001, 1_000), is(false));
+    assertThat(wheel.schedule(1, 101_001, 1_000), is(false));
+
+    wheel.schedule(1, 2_000, 1_000);
+    wheel.schedule(2, 2_000, 1_000);
+    wheel.schedule(3, 2_000, 1_000);
+    assertThat(wheel.accepts(2_000, 1_000), is(false));
+    assertThat(wheel.schedule(4, 2_000, 1_000), is(false));
+
+    wheel.reschedule(4, 2_000, 1_000);
+    assertThat(wheel.size(), is(4));
+  }
+
+  @Test
+  public void clearRemovesAllInstances() {
+    wheel.schedule(1, 1_100, 1_000);
+    wheel.schedule(2, 60_000, 1_000);
+
+    assertThat(wheel.clear(), containsInAnyOrder(1, 2));
+    assertThat(wheel.size(), is(0));
+    assertThat(wheel.advance(100_000), is(empty()));
+  }
+
+  @Test
+  public void invalidParametersAreRejected() {
+    assertThrows(IllegalArgumentException.class, () -> new ActivationTimerWheel<>(0, 1_000, 1));
+    assertThrows(IllegalArgumentException.class, () -> new ActivationTimerWheel<>(10, 1_000, 0));
+  }
+}
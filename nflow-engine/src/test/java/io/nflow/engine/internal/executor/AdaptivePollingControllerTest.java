@@ -0,0 +1,106 @@
+package io.nflow.engine.internal.executor;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.joda.time.DateTimeUtils.setCurrentMillisFixed;
+import static org.joda.time.DateTimeUtils.setCurrentMillisSystem;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.mock.env.MockEnvironment;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+public class AdaptivePollingControllerTest {
+
+  @Mock
+  WorkflowInstanceExecutor executor;
+  final MockEnvironment env = new MockEnvironment().withProperty("nflow.dispatcher.adaptive.enabled", "true")
+      .withProperty("nflow.dispatcher.sleep.ms", "100").withProperty("nflow.dispatcher.adaptive.max.sleep.ms", "500");
+
+  @BeforeEach
+  public void setup() {
+    when(executor.getQueueRemainingCapacity()).thenReturn(100);
+    when(executor.getThreadCount()).thenReturn(4);
+    setCurrentMillisFixed(1000);
+  }
+
+  @AfterEach
+  public void teardown() {
+    setCurrentMillisSystem();
+  }
+
+  @Test
+  public void disabledControllerUsesFixedSleepAndQueueCapacity() {
+    env.setProperty("nflow.dispatcher.adaptive.enabled", "false");
+    AdaptivePollingController controller = new AdaptivePollingController(executor, env);
+
+    assertThat(controller.nextBatchSize(), is(100));
+    controller.pollCompleted(100, 0, 10);
+
+    assertThat(controller.getSleepMillis(), is(100L));
+    assertThat(controller.nextBatchSize(), is(100));
+    assertThat(controller.getPollLatencyMillis(), is(-1.0));
+  }
+
+  @Test
+  public void sleepBacksOffWhenIdleAndResetsWhenInstancesAreFound() {
+    AdaptivePollingController controller = new AdaptivePollingController(executor, env);
+
+    controller.pollCompleted(100, 0, 10);
+    assertThat(controller.getSleepMillis(), is(200L));
+    controller.pollCompleted(100, 0, 10);
+    assertThat(controller.getSleepMillis(), is(400L));
+    controller.pollCompleted(100, 0, 10);
+    assertThat(controller.getSleepMillis(), is(500L));
+
+    controller.pollCompleted(100, 1, 10);
+    assertThat(controller.getSleepMillis(), is(100L));
+  }
+
+  @Test
+  public void batchSizeFollowsThroughputAndPollLatency() {
+    AdaptivePollingController controller = new AdaptivePollingController(executor, env);
+    assertThat(controller.nextBatchSize(), is(100));
+
+    when(executor.getCompletedTaskCount()).thenReturn(0L);
+    controller.pollCompleted(100, 5, 100);
+    setCurrentMillisFixed(2000);
+    when(executor.getCompletedTaskCount()).thenReturn(20L);
+    controller.pollCompleted(100, 5, 100);
+
+    // 20 executions per second, 100 ms poll latency and 100 ms sleep: 2 * 20 * 0.2 = 8
+    assertThat(controller.getThroughputPerSecond(), is(20.0));
+    assertThat(controller.nextBatchSize(), is(8));
+    assertThat(controller.getBatchSize(), is(8));
+  }
+
+  @Test
+  public void batchSizeIsAtLeastThreadCount() {
+    AdaptivePollingController controller = new AdaptivePollingController(executor, env);
+
+    controller.pollCompleted(100, 1, 10);
+    setCurrentMillisFixed(2000);
+    controller.pollCompleted(100, 1, 10);
+
+    assertThat(controller.nextBatchSize(), is(4));
+  }
+
+  @Test
+  public void fullPollUsesQueueCapacity() {
+    AdaptivePollingController controller = new AdaptivePollingController(executor, env);
+
+    controller.pollCompleted(100, 1, 10);
+    setCurrentMillisFixed(2000);
+    controller.pollCompleted(4, 4, 10);
+
+    assertThat(controller.nextBatchSize(), is(100));
+  }
+}
@@ -3,6 +3,7 @@ package io.nflow.engine.internal.executor;
 import static java.lang.Thread.sleep;
 import static java.time.Duration.ofMillis;
 import static java.util.Arrays.asList;
+import static java.util.Comparator.comparing;
 import static java.util.concurrent.Executors.newSingleThreadExecutor;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -12,6 +13,7 @@ import static org.junit.jupiter.api.Assertions.assertTimeout;
 import java.util.ArrayList;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.joda.time.DateTime;
 import org.junit.jupiter.api.Test;
@@ -47,6 +49,27 @@ public class ThresholdBlockingQueueTest {
     assertThat(l, is(asList(2)));
   }
 
+  @Test
+  public void worksAsPriorityQueue() throws InterruptedException {
+    ThresholdBlockingQueue<String> pq = new ThresholdBlockingQueue<>(4, 1, comparing(String::length));
+    assertThat(pq.offer("ccc"), is(true));
+    pq.put("a");
+    assertThat(pq.offer("bb"), is(true));
+    assertThat(pq.offer("d"), is(true));
+    assertThat(pq.remainingCapacity(), is(0));
+    assertThat(pq.offer("e"), is(false));
+    assertThat(pq.offer("e", 5, MILLISECONDS), is(false));
+
+    assertThat(pq.peek(), is("a"));
+    assertThat(pq.take(), is("a"));
+    assertThat(pq.poll(), is("d"));
+    assertThat(pq.remove("ccc"), is(true));
+    ArrayList<String> l = new ArrayList<>();
+    pq.drainTo(l);
+    assertThat(l, is(asList("bb")));
+    assertThat(pq.poll(5, MILLISECONDS), is((String) null));
+  }
+
   @Test
   public void doesNotWaitIfQueueIsAlreadyBelowThreshold() {
     assertTimeout(ofMillis(5000), () -> q.waitUntilQueueSizeLowerThanThreshold(DateTime.now().plusMinutes(1)));
@@ -78,6 +101,50 @@ public class ThresholdBlockingQueueTest {
     });
   }
 
+  @Test
+  public void drainingBelowThresholdWakesUpWaitingThread() {
+    assertTimeout(ofMillis(10000), () -> {
+      q.put(100);
+      q.put(200);
+      q.put(300);
+      Future<Integer> result = newSingleThreadExecutor().submit(() -> {
+        q.waitUntilQueueSizeLowerThanThreshold(DateTime.now().plusMinutes(1));
+        return q.size();
+      });
+      sleep(1000);
+      assertThat(result.isDone(), is(false));
+
+      q.drainTo(new ArrayList<>(), 2);
+
+      assertThat(result.get(), is(1));
+    });
+  }
+
+  @Test
+  public void waitingThreadCanBeInterrupted() {
+    assertTimeout(ofMillis(10000), () -> {
+      q.put(100);
+      q.put(200);
+      q.put(300);
+      AtomicBoolean interrupted = new AtomicBoolean();
+      Thread waiter = new Thread(() -> {
+        try {
+          q.waitUntilQueueSizeLowerThanThreshold(DateTime.now().plusMinutes(1));
+        } catch (@SuppressWarnings("unused") InterruptedException e) {
+          interrupted.set(true);
+        }
+      });
+      waiter.start();
+      sleep(1000);
+
+      waiter.interrupt();
+      waiter.join();
+
+      assertThat(interrupted.get(), is(true));
+      assertThat(q.size(), is(3));
+    });
+  }
+
   @Test
   public void waitTimeoutWorks() {
     assertTimeout(ofMillis(10000), () -> {
@@ -62,11 +62,13 @@ import ch.qos.logback.classic.Logger;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.core.Appender;
 import io.nflow.engine.exception.DispatcherExceptionAnalyzer;
+import io.nflow.engine.internal.dao.DispatcherNotificationDao;
 import io.nflow.engine.internal.dao.ExecutorDao;
 import io.nflow.engine.internal.dao.WorkflowInstanceDao;
 import io.nflow.engine.internal.util.NflowLogger;
 import io.nflow.engine.listener.WorkflowExecutorListener;
 import io.nflow.engine.service.WorkflowDefinitionService;
+import io.nflow.engine.workflow.instance.WorkflowInstance;
 
 @ExtendWith(MockitoExtension.class)
 @MockitoSettings(strictness = LENIENT)
@@ -81,8 +83,12 @@ public class WorkflowDispatcherTest {
   @Mock
   ExecutorDao executorDao;
   @Mock
+  DispatcherNotificationDao dispatcherNotifications;
+  @Mock
   WorkflowStateProcessorFactory executorFactory;
   @Mock
+  WorkflowInstanceRecovery recovery;
+  @Mock
   Appender<ILoggingEvent> mockAppender;
   @Captor
   ArgumentCaptor<ILoggingEvent> loggingEventCaptor;
@@ -93,6 +99,10 @@ public class WorkflowDispatcherTest {
   public void setup() {
     env.setProperty("nflow.autoinit", "true");
     env.setProperty("nflow.dispatcher.sleep.ms", "0");
+    env.setProperty("nflow.dispatcher.adaptive.enabled", "false");
+    env.setProperty("nflow.dispatcher.adaptive.max.sleep.ms", "0");
+    env.setProperty("nflow.dispatcher.preload.instances", "false");
+    env.setProperty("nflow.dispatcher.executor.queue.priority", "false");
     env.setProperty("nflow.dispatcher.executor.queue.wait_until_threshold", "0");
     env.setProperty("nflow.illegal.state.change.action", "ignore");
     env.setProperty("nflow.unknown.workflow.type.retry.delay.minutes", "60");
@@ -101,6 +111,7 @@ public class WorkflowDispatcherTest {
     env.setProperty("nflow.executor.stateProcessingRetryDelay.seconds", "1");
     env.setProperty("nflow.executor.stateSaveRetryDelay.seconds", "60");
     env.setProperty("nflow.executor.stateVariableValueTooLongRetryDelay.minutes", "60");
+    env.setProperty("nflow.executor.asyncStateTimeout.seconds", "600");
     env.setProperty("nflow.db.workflowInstanceType.cacheSize", "10000");
     env.setProperty("nflow.autostart", "true");
     when(executorDao.isTransactionSupportEnabled()).thenReturn(true);
@@ -109,7 +120,7 @@ public class WorkflowDispatcherTest {
     when(executorDao.getMaxWaitUntil()).thenAnswer(mock -> now().plusSeconds(5));
     executor = new WorkflowInstanceExecutor(3, 2, 0, 10, 0, new CustomizableThreadFactory("nflow-executor-"));
     dispatcher = new WorkflowDispatcher(executor, workflowInstances, executorFactory, workflowDefinitions, executorDao,
-        exceptionAnalyzer, nflowLogger, env);
+        dispatcherNotifications, new AdaptivePollingController(executor, env), recovery, exceptionAnalyzer, nflowLogger, env);
     Logger logger = (Logger) getLogger(ROOT_LOGGER_NAME);
     logger.addAppender(mockAppender);
   }
@@ -124,14 +135,16 @@ public class WorkflowDispatcherTest {
   public void workflowDispatcherCreationFailsWithoutTransactionSupport() {
     when(executorDao.isTransactionSupportEnabled()).thenReturn(false);
     assertThrows(BeanCreationException.class, () -> new WorkflowDispatcher(executor, workflowInstances, executorFactory,
-        workflowDefinitions, executorDao, exceptionAnalyzer, nflowLogger, env));
+        workflowDefinitions, executorDao, dispatcherNotifications, new AdaptivePollingController(executor, env), recovery,
+        exceptionAnalyzer, nflowLogger, env));
   }
 
   @Test
   public void workflowDispatcherCreationFailsWithAutoCommitDisabled() {
     when(executorDao.isAutoCommitEnabled()).thenReturn(false);
     assertThrows(BeanCreationException.class, () -> new WorkflowDispatcher(executor, workflowInstances, executorFactory,
-        workflowDefinitions, executorDao, exceptionAnalyzer, nflowLogger, env));
+        workflowDefinitions, executorDao, dispatcherNotifications, new AdaptivePollingController(executor, env), recovery,
+        exceptionAnalyzer, nflowLogger, env));
   }
 
   @Test
@@ -165,6 +178,63 @@ public class WorkflowDispatcherTest {
     runOnce(new ExceptionDuringDispatcherExecutionCausesRetry());
   }
 
+  @Test
+  public void preloadedWorkflowInstancesAreDispatched() throws Throwable {
+    env.setProperty("nflow.dispatcher.preload.instances", "true");
+    dispatcher = new WorkflowDispatcher(executor, workflowInstances, executorFactory, workflowDefinitions, executorDao,
+        dispatcherNotifications, new AdaptivePollingController(executor, env), recovery, exceptionAnalyzer, nflowLogger, env);
+    WorkflowInstance instance = new WorkflowInstance.Builder().setId(1L).build();
+    @SuppressWarnings("unused")
+    class PreloadedWorkflowInstancesAreDispatched extends MultithreadedTestCase {
+      public void threadDispatcher() {
+        when(workflowInstances.pollNextWorkflowInstances(anyInt())).thenReturn(asList(instance))
+            .thenAnswer(waitForTickAndAnswer(2, List.<WorkflowInstance> of(), this));
+        WorkflowStateProcessor fakeWorkflowExecutor = fakeWorkflowExecutor(1, noOpRunnable());
+        when(executorFactory.createProcessor(eq(instance), any())).thenReturn(fakeWorkflowExecutor);
+        dispatcher.run();
+      }
+
+      public void threadShutdown() {
+        waitForTick(1);
+        dispatcher.shutdown();
+      }
+
+      @Override
+      public void finish() {
+        verify(workflowInstances, never()).pollNextWorkflowInstanceIds(anyInt());
+        verify(executorFactory).createProcessor(eq(instance), any());
+        verify(executorFactory, never()).createProcessor(anyLong(), any());
+      }
+    }
+    runOnce(new PreloadedWorkflowInstancesAreDispatched());
+  }
+
+  @Test
+  public void workflowInstancesAreRecoveredInBackgroundOnKeepaliveTick() throws Throwable {
+    @SuppressWarnings("unused")
+    class WorkflowInstancesAreRecoveredInBackgroundOnKeepaliveTick extends MultithreadedTestCase {
+      public void threadDispatcher() {
+        when(executorDao.tick()).thenReturn(true, false);
+        when(workflowInstances.pollNextWorkflowInstanceIds(anyInt())).thenReturn(ids())
+            .thenAnswer(waitForTickAndAnswer(2, ids(), this));
+        dispatcher.run();
+      }
+
+      public void threadShutdown() {
+        waitForTick(1);
+        dispatcher.shutdown();
+      }
+
+      @Override
+      public void finish() {
+        verify(recovery).recoverInBackground();
+        verify(recovery).shutdown();
+        verify(workflowInstances, never()).recoverWorkflowInstancesFromDeadNodes();
+      }
+    }
+    runOnce(new WorkflowInstancesAreRecoveredInBackgroundOnKeepaliveTick());
+  }
+
   @Test
   public void errorDuringDispatcherExecutionStopsDispatcher() throws Throwable {
     @SuppressWarnings("unused")
@@ -283,7 +353,7 @@ public class WorkflowDispatcherTest {
       public void initialize() {
         poolSpy = Mockito.spy(executor);
         dispatcher = new WorkflowDispatcher(poolSpy, workflowInstances, executorFactory, workflowDefinitions, executorDao,
-            exceptionAnalyzer, nflowLogger, env);
+            dispatcherNotifications, new AdaptivePollingController(poolSpy, env), recovery, exceptionAnalyzer, nflowLogger, env);
       }
 
       public void threadDispatcher() {
@@ -389,7 +459,7 @@ public class WorkflowDispatcherTest {
   }
 
   WorkflowStateProcessor fakeWorkflowExecutor(long instanceId, Runnable fakeCommand) {
-    return new WorkflowStateProcessor(instanceId, FALSE::booleanValue, null, null, null, null, null, null, env,
+    return new WorkflowStateProcessor(instanceId, null, FALSE::booleanValue, null, null, null, null, null, null, env,
         new ConcurrentHashMap<>(), null, null, (WorkflowExecutorListener) null) {
       @Override
       public void run() {
@@ -398,7 +468,7 @@ public class WorkflowDispatcherTest {
     };
   }
 
-  Answer<List<Long>> waitForTickAndAnswer(int tick, List<Long> answer, MultithreadedTestCase mtc) {
+  <T> Answer<List<T>> waitForTickAndAnswer(int tick, List<T> answer, MultithreadedTestCase mtc) {
     return invocation -> {
       mtc.waitForTick(tick);
       return answer;
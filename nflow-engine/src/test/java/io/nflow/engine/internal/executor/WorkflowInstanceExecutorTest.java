@@ -1,11 +1,16 @@
 package io.nflow.engine.internal.executor;
 
+import static java.lang.Boolean.FALSE;
 import static java.lang.Boolean.TRUE;
+import static java.util.Arrays.asList;
+import static java.util.Collections.synchronizedList;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.Matchers.sameInstance;
+import static org.joda.time.DateTime.now;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.timeout;
@@ -13,7 +18,13 @@ import static org.mockito.Mockito.verify;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.joda.time.DateTime;
@@ -21,8 +32,12 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.env.MockEnvironment;
 import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
+import io.nflow.engine.listener.WorkflowExecutorListener;
+import io.nflow.engine.workflow.instance.WorkflowInstance;
+
 @ExtendWith(MockitoExtension.class)
 public class WorkflowInstanceExecutorTest {
 
@@ -34,12 +49,40 @@ public class WorkflowInstanceExecutorTest {
   @Test
   public void testThreadPoolCreateWithCorrectParameters() {
     WorkflowInstanceExecutor t = new WorkflowInstanceExecutor(3, 2, 1, 3, 4, threadFactory);
-    assertThat(t.executor.getCorePoolSize(), is(2));
-    assertThat(t.executor.getMaximumPoolSize(), is(2));
-    assertThat(t.executor.getKeepAliveTime(SECONDS), is(4L));
-    assertThat(t.executor.allowsCoreThreadTimeOut(), is(true));
-    assertThat(t.executor.getThreadFactory(), sameInstance(threadFactory));
-    assertThat(t.executor.getQueue(), sameInstance(t.queue));
+    ThreadPoolExecutor threadPool = (ThreadPoolExecutor) t.executor;
+    assertThat(threadPool.getCorePoolSize(), is(2));
+    assertThat(threadPool.getMaximumPoolSize(), is(2));
+    assertThat(threadPool.getKeepAliveTime(SECONDS), is(4L));
+    assertThat(threadPool.allowsCoreThreadTimeOut(), is(true));
+    assertThat(threadPool.getThreadFactory(), sameInstance(threadFactory));
+    assertThat(threadPool.getQueue(), sameInstance(t.queue));
+  }
+
+  @Test
+  public void threadPerTaskExecutorLimitsConcurrentlyExecutedInstances() throws InterruptedException {
+    WorkflowInstanceExecutor t = new WorkflowInstanceExecutor(3, 2, 1, 3, 4, new CustomizableThreadFactory("test"), false, null,
+        true);
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger started = new AtomicInteger();
+    for (int i = 0; i < 4; ++i) {
+      t.execute(processor(i, 0, now(), () -> {
+        started.incrementAndGet();
+        return release.await(5, SECONDS);
+      }, synchronizedList(new ArrayList<>())));
+    }
+    for (int i = 0; i < 50 && started.get() < 2; ++i) {
+      Thread.sleep(10);
+    }
+
+    assertThat(started.get(), is(2));
+    assertThat(t.getQueueRemainingCapacity(), is(1));
+
+    release.countDown();
+    for (int i = 0; i < 50 && t.getCompletedTaskCount() < 4; ++i) {
+      Thread.sleep(100);
+    }
+    assertThat(t.getCompletedTaskCount(), is(4L));
+    assertThat(t.shutdown(workflows -> assertThat(workflows, empty()), false), is(true));
   }
 
   @Test
@@ -55,6 +98,138 @@ public class WorkflowInstanceExecutorTest {
     verify(runnable, timeout(1000)).run();
   }
 
+  @Test
+  public void testExecuteClaimedInstance() {
+    WorkflowInstanceExecutor t = new WorkflowInstanceExecutor(3, 2, 1, 3, 4, new CustomizableThreadFactory("test"));
+    assertThat(t.canExecuteClaimedInstance(), is(false));
+    assertThat(t.executeClaimedInstance(42, (short) 0, null), is(false));
+
+    t.setClaimedInstanceProcessorFactory((instanceId, priority, nextActivation) -> runnable);
+    assertThat(t.canExecuteClaimedInstance(), is(true));
+    assertThat(t.executeClaimedInstance(42, (short) 0, null), is(true));
+    verify(runnable, timeout(1000)).run();
+
+    t.shutdown(workflows -> assertThat(workflows, empty()), false);
+    assertThat(t.canExecuteClaimedInstance(), is(false));
+    assertThat(t.executeClaimedInstance(42, (short) 0, null), is(false));
+  }
+
+  @Test
+  public void claimReservationsUseQueueCapacity() {
+    WorkflowInstanceExecutor t = new WorkflowInstanceExecutor(2, 1, 1, 3, 4, new CustomizableThreadFactory("test"));
+    t.setClaimedInstanceProcessorFactory((instanceId, priority, nextActivation) -> runnable);
+
+    assertThat(t.reserveClaimedInstance(), is(true));
+    assertThat(t.reserveClaimedInstance(), is(true));
+    assertThat(t.reserveClaimedInstance(), is(false));
+    assertThat(t.getQueueRemainingCapacity(), is(0));
+
+    t.releaseClaimReservation();
+    assertThat(t.getQueueRemainingCapacity(), is(1));
+    assertThat(t.executeReservedInstance(42, (short) 0, null), is(true));
+    verify(runnable, timeout(1000)).run();
+    assertThat(t.reserveClaimedInstance(), is(true));
+  }
+
+  @Test
+  public void suspendedInstancesUseCapacityUpToLimit() {
+    WorkflowInstanceExecutor t = new WorkflowInstanceExecutor(3, 2, 1, 3, 4, new CustomizableThreadFactory("test"), false, null,
+        false, 2);
+    t.setClaimedInstanceProcessorFactory((instanceId, priority, nextActivation) -> runnable);
+    assertThat(t.getQueueRemainingCapacity(), is(2));
+
+    assertThat(t.reserveSuspension(), is(true));
+    assertThat(t.getQueueRemainingCapacity(), is(1));
+    assertThat(t.reserveSuspension(), is(true));
+    assertThat(t.reserveSuspension(), is(false));
+    assertThat(t.getQueueRemainingCapacity(), is(0));
+    assertThat(t.reserveClaimedInstance(), is(false));
+
+    CompletableFuture<Object> result = new CompletableFuture<>();
+    t.resumeWhenComplete(runnable, result);
+    result.complete(null);
+    verify(runnable, timeout(1000)).run();
+    assertThat(t.getSuspendedCount(), is(1));
+    assertThat(t.getQueueRemainingCapacity(), is(1));
+  }
+
+  @Test
+  public void priorityOrderedExecutorExecutesQueuedInstancesInPriorityAndActivationOrder() throws InterruptedException {
+    WorkflowInstanceExecutor t = new WorkflowInstanceExecutor(5, 1, 1, 3, 4, new CustomizableThreadFactory("test"), true);
+    CountDownLatch blocked = new CountDownLatch(1);
+    List<Long> executed = synchronizedList(new ArrayList<>());
+    DateTime now = now();
+    t.execute(processor(0, 0, now, () -> blocked.await(5, SECONDS), executed));
+    t.execute(processor(1, 0, now.minusSeconds(1), null, executed));
+    t.execute(processor(2, 0, now.minusSeconds(2), null, executed));
+    t.execute(processor(3, 5, now, null, executed));
+    t.execute(processor(4, -1, now.minusSeconds(3), null, executed));
+
+    blocked.countDown();
+    for (int i = 0; i < 50 && executed.size() < 5; ++i) {
+      Thread.sleep(100);
+    }
+
+    assertThat(executed, is(asList(0L, 3L, 2L, 1L, 4L)));
+    t.shutdown(workflows -> assertThat(workflows, empty()), false);
+  }
+
+  @Test
+  public void activationTimerExecutesScheduledInstancesWithClaimAndDropsThemOnShutdown() throws InterruptedException {
+    WorkflowInstanceExecutor t = new WorkflowInstanceExecutor(3, 2, 1, 3, 4, new CustomizableThreadFactory("test"), false,
+        new ActivationTimerWheel<>(10, 1_000, 10));
+    List<Long> executed = synchronizedList(new ArrayList<>());
+    List<WorkflowStateProcessor> processors = synchronizedList(new ArrayList<>());
+    assertThat(t.canScheduleInstance(now()), is(false));
+
+    t.setClaimedInstanceProcessorFactory((instanceId, priority, nextActivation) -> {
+      WorkflowStateProcessor processor = processor(instanceId, priority, nextActivation, null, executed);
+      processors.add(processor);
+      return processor;
+    });
+    assertThat(t.canScheduleInstance(now().plusSeconds(2)), is(false));
+    DateTime nextActivation = now().plusMillis(50);
+    assertThat(t.scheduleInstance(1, (short) 3, nextActivation), is(true));
+    assertThat(t.scheduleInstance(2, (short) 0, now().plusMillis(900)), is(true));
+    for (int i = 0; i < 50 && executed.isEmpty(); ++i) {
+      Thread.sleep(10);
+    }
+
+    assertThat(executed, is(asList(1L)));
+    assertThat(processors.get(0).claimBeforeProcessing, is(true));
+    assertThat(processors.get(0).priority, is((short) 3));
+    assertThat(processors.get(0).nextActivation, is(nextActivation));
+    AtomicReference<List<Long>> released = new AtomicReference<>();
+    t.shutdown(released::set, false);
+    assertThat(released.get(), nullValue());
+    assertThat(executed, is(asList(1L)));
+  }
+
+  private WorkflowStateProcessor processor(long id, int priority, DateTime nextActivation, Callable<?> work, List<Long> executed) {
+    MockEnvironment env = new MockEnvironment().withProperty("nflow.illegal.state.change.action", "fail")
+        .withProperty("nflow.unknown.workflow.type.retry.delay.minutes", "60")
+        .withProperty("nflow.unknown.workflow.state.retry.delay.minutes", "60")
+        .withProperty("nflow.executor.stateProcessingRetryDelay.seconds", "1")
+        .withProperty("nflow.executor.stateVariableValueTooLongRetryDelay.minutes", "60")
+        .withProperty("nflow.executor.asyncStateTimeout.seconds", "600");
+    WorkflowInstance instance = new WorkflowInstance.Builder().setId(id).setPriority((short) priority)
+        .setNextActivation(nextActivation).build();
+    return new WorkflowStateProcessor(id, instance, FALSE::booleanValue, null, null, null, null, null, null, env,
+        new ConcurrentHashMap<>(), null, null, (WorkflowExecutorListener) null) {
+      @Override
+      public void run() {
+        try {
+          if (work != null) {
+            work.call();
+          }
+        } catch (Exception e) {
+          throw new IllegalStateException(e);
+        }
+        executed.add(instanceId);
+      }
+    };
+  }
+
   @Test
   public void testWait() throws InterruptedException {
     WorkflowInstanceExecutor t = new WorkflowInstanceExecutor(3, 2, 1, 3, 4, new CustomizableThreadFactory("test"));
@@ -0,0 +1,72 @@
+package io.nflow.engine.internal.executor;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import io.nflow.engine.internal.dao.WorkflowInstanceDao;
+
+@ExtendWith(MockitoExtension.class)
+public class WorkflowInstanceRecoveryTest {
+
+  @Mock
+  WorkflowInstanceDao workflowInstances;
+  WorkflowInstanceRecovery recovery;
+
+  @BeforeEach
+  public void setup() {
+    recovery = new WorkflowInstanceRecovery(workflowInstances);
+  }
+
+  @AfterEach
+  public void teardown() {
+    recovery.shutdown();
+  }
+
+  @Test
+  public void recoveryIsReportedInMetrics() {
+    assertThat(recovery.getLastDurationMillis(), is(-1L));
+    assertThat(recovery.getLastThroughputPerSecond(), is(-1.0));
+    when(workflowInstances.recoverWorkflowInstancesFromDeadNodes()).thenReturn(3, 0);
+
+    recovery.recoverInBackground();
+    recovery.shutdown();
+
+    assertThat(recovery.getLastRecoveredInstances(), is(3));
+    assertThat(recovery.getLastDurationMillis(), greaterThanOrEqualTo(0L));
+    assertThat(recovery.getLastThroughputPerSecond(), greaterThan(0.0));
+    assertThat(recovery.getRecoveredInstances(), is(3L));
+
+    recovery.recoverInBackground();
+    recovery.shutdown();
+
+    verify(workflowInstances, times(2)).recoverWorkflowInstancesFromDeadNodes();
+    assertThat(recovery.getLastRecoveredInstances(), is(0));
+    assertThat(recovery.getRecoveredInstances(), is(3L));
+  }
+
+  @Test
+  public void failedRecoveryDoesNotPreventNextRecovery() {
+    when(workflowInstances.recoverWorkflowInstancesFromDeadNodes()).thenThrow(new IllegalStateException("expected"))
+        .thenReturn(1);
+
+    recovery.recoverInBackground();
+    recovery.shutdown();
+    recovery.recoverInBackground();
+    recovery.shutdown();
+
+    verify(workflowInstances, times(2)).recoverWorkflowInstancesFromDeadNodes();
+    assertThat(recovery.getRecoveredInstances(), is(1L));
+  }
+}
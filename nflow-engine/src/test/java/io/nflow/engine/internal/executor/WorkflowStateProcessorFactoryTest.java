@@ -12,6 +12,7 @@ import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import org.joda.time.DateTime;
 import org.joda.time.Duration;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -45,6 +46,8 @@ public class WorkflowStateProcessorFactoryTest extends BaseNflowTest {
   @Mock
   StateSaveExceptionAnalyzer stateSaveExceptionAnalyzer;
   @Mock
+  WorkflowInstanceExecutor instanceExecutor;
+  @Mock
   WorkflowExecutorListener listener1;
   @Mock
   WorkflowExecutorListener listener2;
@@ -62,9 +65,10 @@ public class WorkflowStateProcessorFactoryTest extends BaseNflowTest {
     env.setProperty("nflow.executor.stateProcessingRetryDelay.seconds", "1");
     env.setProperty("nflow.executor.stateSaveRetryDelay.seconds", "60");
     env.setProperty("nflow.executor.stateVariableValueTooLongRetryDelay.minutes", "60");
+    env.setProperty("nflow.executor.asyncStateTimeout.seconds", "600");
     env.setProperty("nflow.db.workflowInstanceType.cacheSize", "10000");
     factory = new WorkflowStateProcessorFactory(workflowDefinitions, workflowInstances, objectMapper, workflowInstanceDao,
-        maintenanceDao, workflowInstancePreProcessor, nflowLogger, stateSaveExceptionAnalyzer, env);
+        maintenanceDao, workflowInstancePreProcessor, nflowLogger, stateSaveExceptionAnalyzer, instanceExecutor, env);
   }
 
   @Test
@@ -80,6 +84,14 @@ public class WorkflowStateProcessorFactoryTest extends BaseNflowTest {
     assertNotNull(executor);
   }
 
+  @Test
+  public void factoryCreatesExecutorsWithPriorityAndNextActivation() {
+    DateTime nextActivation = now();
+    WorkflowStateProcessor executor = factory.createProcessor(12, (short) 3, nextActivation, FALSE::booleanValue);
+    assertThat(executor.priority, is((short) 3));
+    assertThat(executor.nextActivation, is(nextActivation));
+  }
+
   @Test
   public void checkIfStateProcessorsAreStuckLogsLongRunningInstance() {
     WorkflowStateProcessor executor1 = mock(WorkflowStateProcessor.class);
@@ -1,9 +1,14 @@
 package io.nflow.engine.internal.executor;
 
 import static io.nflow.engine.internal.executor.WorkflowStateProcessorTest.AlwaysCleanTestWorkflow.ALWAYS_CLEAN_TYPE;
+import static io.nflow.engine.internal.executor.WorkflowStateProcessorTest.AsyncTestWorkflow.ASYNC_TYPE;
+import static io.nflow.engine.internal.executor.WorkflowStateProcessorTest.AsyncTestWorkflow.FAIL;
+import static io.nflow.engine.internal.executor.WorkflowStateProcessorTest.AsyncTestWorkflow.NEVER_COMPLETE;
+import static io.nflow.engine.internal.executor.WorkflowStateProcessorTest.AsyncTestWorkflow.PENDING;
 import static io.nflow.engine.internal.executor.WorkflowStateProcessorTest.ExecuteTestWorkflow.EXECUTE_TEST_TYPE;
 import static io.nflow.engine.internal.executor.WorkflowStateProcessorTest.FailCleaningTestWorkflow.FAIL_CLEANING_TYPE;
 import static io.nflow.engine.internal.executor.WorkflowStateProcessorTest.FailingTestWorkflow.FAILING_TYPE;
+import static io.nflow.engine.internal.executor.WorkflowStateProcessorTest.LazyStateVariableTestWorkflow.LAZY_STATE_VARIABLE_TYPE;
 import static io.nflow.engine.internal.executor.WorkflowStateProcessorTest.LoopingTestWorkflow.LOOPING_TYPE;
 import static io.nflow.engine.internal.executor.WorkflowStateProcessorTest.NeverCleanTestWorkflow.NEVER_CLEAN_TYPE;
 import static io.nflow.engine.internal.executor.WorkflowStateProcessorTest.NonRetryableTestWorkflow.NON_RETRYABLE_TYPE;
@@ -32,12 +37,17 @@ import static java.time.Duration.ofSeconds;
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.CompletableFuture.delayedExecutor;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
 import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.hasEntry;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
@@ -53,6 +63,7 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyShort;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
@@ -75,6 +86,8 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -95,6 +108,7 @@ import org.mockito.ArgumentMatcher;
 import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.stubbing.Answer;
+import org.slf4j.MDC;
 import org.springframework.mock.env.MockEnvironment;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -177,6 +191,9 @@ public class WorkflowStateProcessorTest extends BaseNflowTest {
   @Captor
   ArgumentCaptor<List<WorkflowInstance>> workflows;
 
+  @Captor
+  ArgumentCaptor<CompletableFuture<?>> asyncResult;
+
   ObjectStringMapper objectMapper = new ObjectStringMapper(ObjectMapper::new);
 
   WorkflowStateProcessor executor;
@@ -199,10 +216,14 @@ public class WorkflowStateProcessorTest extends BaseNflowTest {
 
   NonRetryableTestWorkflow nonRetryableWf = new NonRetryableTestWorkflow();
 
+  LazyStateVariableTestWorkflow lazyStateVariableWf = new LazyStateVariableTestWorkflow();
+
   LoopingTestWorkflow loopingWf = new LoopingTestWorkflow();
 
   StuckTestWorkflow stuckWf = new StuckTestWorkflow();
 
+  AsyncTestWorkflow asyncWf = new AsyncTestWorkflow();
+
   static WorkflowInstance newChildWorkflow = mock(WorkflowInstance.class);
 
   static WorkflowInstance newWorkflow = mock(WorkflowInstance.class);
@@ -224,8 +245,9 @@ public class WorkflowStateProcessorTest extends BaseNflowTest {
     env.setProperty("nflow.executor.stateProcessingRetryDelay.seconds", "1");
     env.setProperty("nflow.executor.stateSaveRetryDelay.seconds", "1");
     env.setProperty("nflow.executor.stateVariableValueTooLongRetryDelay.minutes", "60");
+    env.setProperty("nflow.executor.asyncStateTimeout.seconds", "1");
     env.setProperty("nflow.db.workflowInstanceType.cacheSize", "10000");
-    executor = new WorkflowStateProcessor(1, shutdownRequest::get, objectMapper, workflowDefinitions, workflowInstances,
+    executor = new WorkflowStateProcessor(1, null, shutdownRequest::get, objectMapper, workflowDefinitions, workflowInstances,
         workflowInstanceDao, maintenanceDao, workflowInstancePreProcessor, env, processingInstances, nflowLogger,
         stateSaveExceptionAnalyzer, listener1, listener2);
     setCurrentMillisFixed(currentTimeMillis());
@@ -238,8 +260,10 @@ public class WorkflowStateProcessorTest extends BaseNflowTest {
     lenient().doReturn(notifyWf).when(workflowDefinitions).getWorkflowDefinition(NOTIFY_TYPE);
     lenient().doReturn(stateVariableWf).when(workflowDefinitions).getWorkflowDefinition(STATE_VARIABLE_TYPE);
     lenient().doReturn(nonRetryableWf).when(workflowDefinitions).getWorkflowDefinition(NON_RETRYABLE_TYPE);
+    lenient().doReturn(lazyStateVariableWf).when(workflowDefinitions).getWorkflowDefinition(LAZY_STATE_VARIABLE_TYPE);
     lenient().doReturn(loopingWf).when(workflowDefinitions).getWorkflowDefinition(LOOPING_TYPE);
     lenient().doReturn(stuckWf).when(workflowDefinitions).getWorkflowDefinition(STUCK_TYPE);
+    lenient().doReturn(asyncWf).when(workflowDefinitions).getWorkflowDefinition(ASYNC_TYPE);
     filterChain(listener1);
     filterChain(listener2);
     lenient().when(executionMock.getRetries()).thenReturn(testWorkflowDef.getSettings().maxRetries);
@@ -267,6 +291,205 @@ public class WorkflowStateProcessorTest extends BaseNflowTest {
     assertThat(workflows.getValue().get(0), is(newWorkflow));
   }
 
+  @Test
+  public void nearFutureActivationIsScheduledOnActivationTimerWithoutKeepingClaim() {
+    WorkflowInstanceExecutor instanceExecutor = mock(WorkflowInstanceExecutor.class);
+    executor = new WorkflowStateProcessor(1, null, shutdownRequest::get, objectMapper, workflowDefinitions, workflowInstances,
+        workflowInstanceDao, maintenanceDao, workflowInstancePreProcessor, env, processingInstances, nflowLogger,
+        stateSaveExceptionAnalyzer, instanceExecutor, listener1, listener2);
+    WorkflowInstance instance = executingInstanceBuilder().setType(EXECUTE_TEST_TYPE).setState(TestState.BEGIN).build();
+    when(workflowInstances.getWorkflowInstance(instance.id, INCLUDES, null)).thenReturn(instance);
+    when(workflowInstancePreProcessor.process(newChildWorkflow)).thenReturn(newChildWorkflow);
+    when(workflowInstancePreProcessor.process(newWorkflow)).thenReturn(newWorkflow);
+    when(instanceExecutor.canScheduleInstance(any())).thenReturn(true);
+    when(instanceExecutor.scheduleInstance(eq(instance.id), anyShort(), any())).thenReturn(true);
+
+    runExecutorWithTimeout();
+
+    verify(workflowInstanceDao).updateWorkflowInstanceAfterExecution(update.capture(), action.capture(), childWorkflows.capture(),
+        workflows.capture(), eq(true), eq(false));
+    assertThat(update.getValue(), matchesWorkflowInstance(inProgress, TestState.PROCESS, 0, is("Scheduled by previous state begin")));
+    verify(instanceExecutor).scheduleInstance(instance.id, (short) 0, update.getValue().nextActivation);
+    verify(workflowInstanceDao, never()).clearExecutorId(any());
+  }
+
+  @Test
+  public void instanceFromActivationTimerIsNotProcessedIfItCannotBeClaimed() {
+    executor.claimBeforeProcessing = true;
+    when(workflowInstanceDao.claimWorkflowInstance(executor.instanceId)).thenReturn(false);
+
+    runExecutorWithTimeout();
+
+    verify(workflowInstances, never()).getWorkflowInstance(anyLong(), any(), any());
+    assertFalse(processingInstances.containsKey(executor.instanceId));
+  }
+
+  @Test
+  public void instanceFromActivationTimerIsRescheduledIfDatabaseClockIsBehind() {
+    WorkflowInstanceExecutor instanceExecutor = mock(WorkflowInstanceExecutor.class);
+    DateTime nextActivation = now().plusMillis(10);
+    executor = new WorkflowStateProcessor(1, (short) 2, nextActivation, null, shutdownRequest::get, objectMapper,
+        workflowDefinitions, workflowInstances, workflowInstanceDao, maintenanceDao, workflowInstancePreProcessor, env,
+        processingInstances, nflowLogger, stateSaveExceptionAnalyzer, instanceExecutor, listener1, listener2);
+    executor.claimBeforeProcessing = true;
+    when(workflowInstanceDao.claimWorkflowInstance(executor.instanceId)).thenReturn(false);
+    when(workflowInstanceDao.isWorkflowInstanceActivationPending(executor.instanceId)).thenReturn(true);
+
+    runExecutorWithTimeout();
+
+    verify(instanceExecutor).rescheduleInstance(executor.instanceId, (short) 2, nextActivation);
+    verify(workflowInstances, never()).getWorkflowInstance(anyLong(), any(), any());
+  }
+
+  @Test
+  public void instanceFromActivationTimerIsProcessedAfterClaiming() {
+    executor.claimBeforeProcessing = true;
+    WorkflowInstance instance = executingInstanceBuilder().setType(SIMPLE_TYPE).setState(TestState.PROCESS).build();
+    when(workflowInstanceDao.claimWorkflowInstance(executor.instanceId)).thenReturn(true);
+    when(workflowInstances.getWorkflowInstance(instance.id, INCLUDES, null)).thenReturn(instance);
+
+    runExecutorWithTimeout();
+
+    verify(workflowInstanceDao).updateWorkflowInstanceAfterExecution(any(), any(), any(), any(), anyBoolean());
+  }
+
+  @Test
+  public void preloadedWorkflowInstanceIsNotReloaded() {
+    WorkflowInstance instance = executingInstanceBuilder().setType(SIMPLE_TYPE).setState(TestState.PROCESS).build();
+    executor = new WorkflowStateProcessor(instance.id, instance, shutdownRequest::get, objectMapper, workflowDefinitions,
+        workflowInstances, workflowInstanceDao, maintenanceDao, workflowInstancePreProcessor, env, processingInstances,
+        nflowLogger, stateSaveExceptionAnalyzer, listener1, listener2);
+
+    runExecutorWithTimeout();
+
+    verify(workflowInstances, never()).getWorkflowInstance(anyLong(), any(), any());
+    verify(workflowInstanceDao).updateWorkflowInstanceAfterExecution(update.capture(), action.capture(), childWorkflows.capture(),
+        workflows.capture(), eq(false));
+  }
+
+  @Test
+  public void runWorkflowThroughAsynchronousStates() {
+    WorkflowInstance instance = executingInstanceBuilder().setType(ASYNC_TYPE).setState(TestState.BEGIN).build();
+    when(workflowInstances.getWorkflowInstance(instance.id, INCLUDES, null)).thenReturn(instance);
+
+    runExecutorWithTimeout();
+
+    verify(workflowInstanceDao, times(2)).updateWorkflowInstanceAfterExecution(update.capture(), action.capture(),
+        childWorkflows.capture(), workflows.capture(), anyBoolean());
+    assertThat(update.getAllValues().get(0),
+        matchesWorkflowInstance(executing, TestState.PROCESS, 0, is("Scheduled by previous state begin")));
+    assertThat(action.getAllValues().get(0),
+        matchesWorkflowInstanceAction(TestState.BEGIN, is("Move to processing."), 0, stateExecution));
+    assertThat(update.getAllValues().get(1),
+        matchesWorkflowInstance(finished, TestState.DONE, 0, is("Stopped in state done"), nullValue(DateTime.class)));
+    assertThat(action.getAllValues().get(1), matchesWorkflowInstanceAction(TestState.PROCESS, is("Finished."), 0, stateExecution));
+  }
+
+  @Test
+  public void asynchronousStateFailureIsRetried() {
+    WorkflowInstance instance = executingInstanceBuilder().setType(ASYNC_TYPE).setState(FAIL).build();
+    when(workflowInstances.getWorkflowInstance(instance.id, INCLUDES, null)).thenReturn(instance);
+
+    runExecutorWithTimeout();
+
+    verify(workflowInstanceDao).updateWorkflowInstanceAfterExecution(
+        argThat(matchesWorkflowInstance(inProgress, FAIL, 1, containsString("test-fail"))),
+        argThat(matchesWorkflowInstanceAction(FAIL, containsString("test-fail"), 0, stateExecutionFailed)),
+        argThat(isEmptyWorkflowList()), argThat(isEmptyWorkflowList()), eq(true));
+  }
+
+  @Test
+  public void asynchronousStateTimeoutIsRetried() {
+    WorkflowInstance instance = executingInstanceBuilder().setType(ASYNC_TYPE).setState(NEVER_COMPLETE).build();
+    when(workflowInstances.getWorkflowInstance(instance.id, INCLUDES, null)).thenReturn(instance);
+
+    runExecutorWithTimeout();
+
+    verify(workflowInstanceDao).updateWorkflowInstanceAfterExecution(
+        argThat(matchesWorkflowInstance(inProgress, NEVER_COMPLETE, 1, containsString("TimeoutException"))),
+        argThat(matchesWorkflowInstanceAction(NEVER_COMPLETE, containsString("TimeoutException"), 0, stateExecutionFailed)),
+        argThat(isEmptyWorkflowList()), argThat(isEmptyWorkflowList()), eq(true));
+    assertTrue(asyncWf.neverCompleting.isCancelled());
+  }
+
+  @Test
+  public void pendingAsynchronousStateReleasesThreadUntilResultCompletes() {
+    WorkflowInstanceExecutor instanceExecutor = mock(WorkflowInstanceExecutor.class);
+    CountingListener listener = new CountingListener();
+    executor = new WorkflowStateProcessor(1, null, shutdownRequest::get, objectMapper, workflowDefinitions, workflowInstances,
+        workflowInstanceDao, maintenanceDao, workflowInstancePreProcessor, env, processingInstances, nflowLogger,
+        stateSaveExceptionAnalyzer, instanceExecutor, listener);
+    WorkflowInstance instance = executingInstanceBuilder().setType(ASYNC_TYPE).setState(PENDING).build();
+    when(workflowInstances.getWorkflowInstance(instance.id, INCLUDES, null)).thenReturn(instance);
+    when(instanceExecutor.reserveSuspension()).thenReturn(true);
+
+    runExecutorWithTimeout();
+
+    verify(instanceExecutor).resumeWhenComplete(eq(executor), asyncResult.capture());
+    verify(workflowInstanceDao, never()).updateWorkflowInstanceAfterExecution(any(), any(), any(), any(), anyBoolean());
+    assertFalse(processingInstances.containsKey(instance.id));
+    assertThat(listener.before, is(1));
+    assertThat(listener.after, is(0));
+
+    asyncWf.pendingResult.complete(moveToState(TestState.PROCESS, "Resumed."));
+    assertTrue(asyncResult.getValue().isDone());
+    runExecutorWithTimeout();
+
+    verify(workflowInstances, times(1)).getWorkflowInstance(instance.id, INCLUDES, null);
+    verify(workflowInstanceDao, times(2)).updateWorkflowInstanceAfterExecution(update.capture(), action.capture(),
+        childWorkflows.capture(), workflows.capture(), anyBoolean());
+    assertThat(action.getAllValues().get(0), matchesWorkflowInstanceAction(PENDING, is("Resumed."), 0, stateExecution));
+    assertThat(update.getAllValues().get(1),
+        matchesWorkflowInstance(finished, TestState.DONE, 0, is("Stopped in state done"), nullValue(DateTime.class)));
+    assertThat(listener.before, is(2));
+    assertThat(listener.after, is(2));
+    assertThat(listener.logContextAfter, is("before:pending"));
+  }
+
+  @Test
+  public void pendingAsynchronousStateIsWaitedForInThreadWhenListenerOverridesProcess() {
+    WorkflowInstanceExecutor instanceExecutor = mock(WorkflowInstanceExecutor.class);
+    executor = new WorkflowStateProcessor(1, null, shutdownRequest::get, objectMapper, workflowDefinitions, workflowInstances,
+        workflowInstanceDao, maintenanceDao, workflowInstancePreProcessor, env, processingInstances, nflowLogger,
+        stateSaveExceptionAnalyzer, instanceExecutor, new CountingListener(), listener1);
+    WorkflowInstance instance = executingInstanceBuilder().setType(ASYNC_TYPE).setState(PENDING).build();
+    when(workflowInstances.getWorkflowInstance(instance.id, INCLUDES, null)).thenReturn(instance);
+    delayedExecutor(100, MILLISECONDS).execute(() -> asyncWf.pendingResult.complete(moveToState(TestState.PROCESS, "Waited.")));
+
+    runExecutorWithTimeout();
+
+    verify(instanceExecutor, never()).resumeWhenComplete(any(), any());
+    verify(listener1, times(2)).process(any(ListenerContext.class), any(ListenerChain.class));
+    verify(workflowInstanceDao, times(2)).updateWorkflowInstanceAfterExecution(update.capture(), action.capture(),
+        childWorkflows.capture(), workflows.capture(), anyBoolean());
+    assertThat(action.getAllValues().get(0), matchesWorkflowInstanceAction(PENDING, is("Waited."), 0, stateExecution));
+  }
+
+  @Test
+  public void pendingAsynchronousStateIsWaitedForInThreadWhenMaximumNumberOfInstancesIsSuspended() {
+    WorkflowInstanceExecutor instanceExecutor = mock(WorkflowInstanceExecutor.class);
+    executor = new WorkflowStateProcessor(1, null, shutdownRequest::get, objectMapper, workflowDefinitions, workflowInstances,
+        workflowInstanceDao, maintenanceDao, workflowInstancePreProcessor, env, processingInstances, nflowLogger,
+        stateSaveExceptionAnalyzer, instanceExecutor, new CountingListener());
+    WorkflowInstance instance = executingInstanceBuilder().setType(ASYNC_TYPE).setState(PENDING).build();
+    when(workflowInstances.getWorkflowInstance(instance.id, INCLUDES, null)).thenReturn(instance);
+    when(instanceExecutor.reserveSuspension()).thenReturn(false);
+    delayedExecutor(100, MILLISECONDS).execute(() -> asyncWf.pendingResult.complete(moveToState(TestState.PROCESS, "Waited.")));
+
+    runExecutorWithTimeout();
+
+    verify(instanceExecutor, never()).resumeWhenComplete(any(), any());
+    verify(workflowInstanceDao, times(2)).updateWorkflowInstanceAfterExecution(update.capture(), action.capture(),
+        childWorkflows.capture(), workflows.capture(), anyBoolean());
+    assertThat(action.getAllValues().get(0), matchesWorkflowInstanceAction(PENDING, is("Waited."), 0, stateExecution));
+  }
+
+  @Test
+  public void onlyListenersWithDefaultProcessAllowSuspendingProcessing() {
+    assertTrue(WorkflowStateProcessor.hasDefaultProcess(new CountingListener()));
+    assertFalse(WorkflowStateProcessor.hasDefaultProcess(listener1));
+  }
+
   @Test
   public void runWorkflowThroughOneFailedState() {
     WorkflowInstance instance = executingInstanceBuilder().setType(FAILING_TYPE).setState(TestState.BEGIN).build();
@@ -368,6 +591,39 @@ public class WorkflowStateProcessorTest extends BaseNflowTest {
         is(errorMessage), greaterThanOrEqualTo(oneHourInFuture), is(nullValue()))));
   }
 
+  @Test
+  public void lazyStateVariablesAreLoadedOnDemand() {
+    WorkflowInstance instance = executingInstanceBuilder().setType(LAZY_STATE_VARIABLE_TYPE).setState(TestState.BEGIN).build();
+    when(workflowDefinitions.hasLazyStateVariables()).thenReturn(true);
+    when(workflowInstances.getWorkflowInstance(instance.id, EnumSet.noneOf(WorkflowInstanceInclude.class), null))
+        .thenReturn(instance);
+    when(workflowInstanceDao.getStateVariables(instance.id, asList("config", "input")))
+        .thenReturn(Map.of("config", "c", "input", "i"));
+    when(workflowInstanceDao.getStateVariables(instance.id, singletonList("other"))).thenReturn(Map.of("other", "o"));
+
+    runExecutorWithTimeout();
+
+    verify(workflowInstanceDao).updateWorkflowInstanceAfterExecution(update.capture(), action.capture(), childWorkflows.capture(),
+        workflows.capture(), eq(true));
+    assertThat(update.getValue().stateVariables, hasEntry("result", "c-i-o"));
+    verify(workflowInstanceDao, never()).getStateVariables(instance.id, null);
+  }
+
+  @Test
+  public void allStateVariablesAreLoadedForEagerWorkflowsWhenLazyStateVariablesAreUsed() {
+    WorkflowInstance instance = executingInstanceBuilder().setType(STATE_VARIABLE_TYPE).setState(TestState.BEGIN).build();
+    when(workflowDefinitions.hasLazyStateVariables()).thenReturn(true);
+    when(workflowInstances.getWorkflowInstance(instance.id, EnumSet.noneOf(WorkflowInstanceInclude.class), null))
+        .thenReturn(instance);
+    when(workflowInstanceDao.getStateVariables(instance.id, null)).thenReturn(Map.of("foo", "bar"));
+
+    runExecutorWithTimeout();
+
+    verify(workflowInstanceDao).updateWorkflowInstanceAfterExecution(update.capture(), action.capture(), childWorkflows.capture(),
+        workflows.capture(), eq(true));
+    assertThat(update.getValue().stateVariables, hasEntry("foo", "bar"));
+  }
+
   @Test
   public void workflowStatusIsSetToManualForManualStates() {
     WorkflowInstance instance = executingInstanceBuilder().setType(SIMPLE_TYPE).setState(SimpleTestWorkflow.BEFORE_MANUAL)
@@ -411,7 +667,7 @@ public class WorkflowStateProcessorTest extends BaseNflowTest {
         .setState(TestState.BEGIN).setStateText("myStateText").build();
     when(workflowInstances.getWorkflowInstance(instance.id, INCLUDES, null)).thenReturn(instance);
     WorkflowExecutorListener listener = mock(WorkflowExecutorListener.class);
-    executor = new WorkflowStateProcessor(1, shutdownRequest::get, objectMapper, workflowDefinitions, workflowInstances,
+    executor = new WorkflowStateProcessor(1, null, shutdownRequest::get, objectMapper, workflowDefinitions, workflowInstances,
         workflowInstanceDao, maintenanceDao, workflowInstancePreProcessor, env, processingInstances, nflowLogger,
         stateSaveExceptionAnalyzer, listener);
 
@@ -544,7 +800,7 @@ public class WorkflowStateProcessorTest extends BaseNflowTest {
   @Test
   public void goToErrorStateWhenNextStateIsInvalid() {
     env.setProperty("nflow.illegal.state.change.action", "ignore");
-    executor = new WorkflowStateProcessor(1, shutdownRequest::get, objectMapper, workflowDefinitions, workflowInstances, workflowInstanceDao,
+    executor = new WorkflowStateProcessor(1, null, shutdownRequest::get, objectMapper, workflowDefinitions, workflowInstances, workflowInstanceDao,
         maintenanceDao, workflowInstancePreProcessor, env, processingInstances, nflowLogger, stateSaveExceptionAnalyzer,
         listener1, listener2);
 
@@ -833,7 +1089,7 @@ public class WorkflowStateProcessorTest extends BaseNflowTest {
   @Test
   public void illegalStateChangeGoesToIllegalStateWhenActionIsLog() {
     env.setProperty("nflow.illegal.state.change.action", "log");
-    executor = new WorkflowStateProcessor(1, shutdownRequest::get, objectMapper, workflowDefinitions, workflowInstances,
+    executor = new WorkflowStateProcessor(1, null, shutdownRequest::get, objectMapper, workflowDefinitions, workflowInstances,
         workflowInstanceDao, maintenanceDao, workflowInstancePreProcessor, env, processingInstances, nflowLogger,
         stateSaveExceptionAnalyzer, listener1, listener2);
 
@@ -854,7 +1110,7 @@ public class WorkflowStateProcessorTest extends BaseNflowTest {
   @Test
   public void illegalStateChangeGoesToIllegalStateWhenActionIsIgnore() {
     env.setProperty("nflow.illegal.state.change.action", "ignore");
-    executor = new WorkflowStateProcessor(1, shutdownRequest::get, objectMapper, workflowDefinitions, workflowInstances,
+    executor = new WorkflowStateProcessor(1, null, shutdownRequest::get, objectMapper, workflowDefinitions, workflowInstances,
         workflowInstanceDao, maintenanceDao, workflowInstancePreProcessor, env, processingInstances, nflowLogger,
         stateSaveExceptionAnalyzer, listener1, listener2);
 
@@ -1248,6 +1504,22 @@ public class WorkflowStateProcessorTest extends BaseNflowTest {
     }
   }
 
+  public static class LazyStateVariableTestWorkflow extends io.nflow.engine.workflow.definition.WorkflowDefinition {
+
+    public static final String LAZY_STATE_VARIABLE_TYPE = "lazyStateVariableTest";
+
+    protected LazyStateVariableTestWorkflow() {
+      super(LAZY_STATE_VARIABLE_TYPE, TestState.BEGIN, TestState.DONE,
+          new WorkflowSettings.Builder().setLazyStateVariables(true).setPreloadedStateVariables("config").build());
+      permit(TestState.BEGIN, TestState.DONE);
+    }
+
+    public NextAction begin(StateExecution execution, @StateVar("input") String input) {
+      execution.setVariable("result", execution.getVariable("config") + "-" + input + "-" + execution.getVariable("other"));
+      return moveToState(TestState.DONE, "Done.");
+    }
+  }
+
   public static class NonRetryableTestWorkflow extends io.nflow.engine.workflow.definition.WorkflowDefinition {
 
     public static final String NON_RETRYABLE_TYPE = "nonRetryableTest";
@@ -1275,4 +1547,68 @@ public class WorkflowStateProcessorTest extends BaseNflowTest {
       return stopInState(TestState.DONE, "Done");
     }
   }
+
+  static class CountingListener implements WorkflowExecutorListener {
+    int before;
+    int after;
+    String logContextAfter;
+
+    @Override
+    public void beforeProcessing(ListenerContext listenerContext) {
+      before++;
+      MDC.put("listener", "before:" + listenerContext.originalState);
+    }
+
+    @Override
+    public void afterProcessing(ListenerContext listenerContext) {
+      if (after++ == 0) {
+        logContextAfter = MDC.get("listener");
+      }
+      MDC.remove("listener");
+    }
+  }
+
+  public static class AsyncTestWorkflow extends io.nflow.engine.workflow.definition.WorkflowDefinition {
+
+    public static final String ASYNC_TYPE = "asyncTest";
+    public static final WorkflowState FAIL = new State("fail");
+    public static final WorkflowState NEVER_COMPLETE = new State("neverComplete");
+    public static final WorkflowState PENDING = new State("pending");
+
+    final CompletableFuture<NextAction> neverCompleting = new CompletableFuture<>();
+    final CompletableFuture<NextAction> pendingResult = new CompletableFuture<>();
+
+    protected AsyncTestWorkflow() {
+      super(ASYNC_TYPE, TestState.BEGIN, TestState.ERROR);
+      permit(TestState.BEGIN, TestState.PROCESS);
+      permit(TestState.PROCESS, TestState.DONE);
+      permit(PENDING, TestState.PROCESS);
+    }
+
+    public CompletionStage<NextAction> begin(@SuppressWarnings("unused") StateExecution execution) {
+      return supplyAsync(() -> moveToState(TestState.PROCESS, "Move to processing."));
+    }
+
+    public CompletableFuture<NextAction> process(@SuppressWarnings("unused") StateExecution execution) {
+      return completedFuture(stopInState(TestState.DONE, "Finished."));
+    }
+
+    public CompletionStage<NextAction> fail(@SuppressWarnings("unused") StateExecution execution) {
+      return supplyAsync(() -> {
+        throw new RuntimeException("test-fail");
+      });
+    }
+
+    public CompletionStage<NextAction> neverComplete(@SuppressWarnings("unused") StateExecution execution) {
+      return neverCompleting;
+    }
+
+    public CompletionStage<NextAction> pending(@SuppressWarnings("unused") StateExecution execution) {
+      return pendingResult;
+    }
+
+    public void error(@SuppressWarnings("unused") StateExecution execution) {
+      // tests assume this state method exists
+    }
+  }
 }
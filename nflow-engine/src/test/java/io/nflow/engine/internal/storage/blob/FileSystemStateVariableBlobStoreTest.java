@@ -0,0 +1,109 @@
+package io.nflow.engine.internal.storage.blob;
+
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.joda.time.DateTime.now;
+import static org.joda.time.DateTimeUtils.setCurrentMillisFixed;
+import static org.joda.time.DateTimeUtils.setCurrentMillisSystem;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Stream;
+
+import org.joda.time.DateTime;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class FileSystemStateVariableBlobStoreTest {
+  @TempDir
+  Path directory;
+  FileSystemStateVariableBlobStore store;
+
+  @BeforeEach
+  public void setup() {
+    store = new FileSystemStateVariableBlobStore(directory.resolve("blobs"));
+  }
+
+  @AfterEach
+  public void reset() {
+    setCurrentMillisSystem();
+  }
+
+  @Test
+  public void storedValueCanBeRead() {
+    store.put("abc123", "{\"value\":\"ä\"}");
+
+    assertThat(store.get("abc123"), is("{\"value\":\"ä\"}"));
+    assertThat(Files.exists(directory.resolve("blobs").resolve("ab").resolve("abc123")), is(true));
+  }
+
+  @Test
+  public void readingMissingValueThrowsException() {
+    assertThrows(IllegalStateException.class, () -> store.get("abc123"));
+  }
+
+  @Test
+  public void invalidKeyIsRejected() {
+    assertThrows(IllegalArgumentException.class, () -> store.put("../abc", "value"));
+  }
+
+  @Test
+  public void storingExistingValueUpdatesStoredTime() throws Exception {
+    store.put("abc123", "value");
+    Path file = directory.resolve("blobs").resolve("ab").resolve("abc123");
+    Files.setLastModifiedTime(file, FileTime.fromMillis(now().minusHours(2).getMillis()));
+    DateTime hourAgo = now().minusHours(1);
+    assertThat(store.getKeysStoredBefore(hourAgo), contains("abc123"));
+
+    store.put("abc123", "value");
+
+    assertThat(store.getKeysStoredBefore(hourAgo), is(empty()));
+    assertThat(store.deleteIfStoredBefore("abc123", hourAgo), is(false));
+    assertThat(store.get("abc123"), is("value"));
+  }
+
+  @Test
+  public void valuesStoredBeforeGivenTimeCanBeDeleted() {
+    setCurrentMillisFixed(now().minusHours(2).getMillis());
+    store.put("abc123", "old");
+    setCurrentMillisSystem();
+    store.put("def456", "new");
+    DateTime hourAgo = now().minusHours(1);
+
+    assertThat(store.getKeysStoredBefore(hourAgo), contains("abc123"));
+    assertThat(store.deleteIfStoredBefore("abc123", hourAgo), is(true));
+    assertThat(store.deleteIfStoredBefore("abc123", hourAgo), is(false));
+    assertThat(store.getKeysStoredBefore(now().plusMinutes(1)), contains("def456"));
+  }
+
+  @Test
+  public void deletedValueCanBeStoredAgain() throws Exception {
+    store.put("abc123", "value");
+    Path file = directory.resolve("blobs").resolve("ab").resolve("abc123");
+    Files.setLastModifiedTime(file, FileTime.fromMillis(now().minusHours(2).getMillis()));
+    assertThat(store.deleteIfStoredBefore("abc123", now().minusHours(1)), is(true));
+
+    store.put("abc123", "value");
+
+    assertThat(store.get("abc123"), is("value"));
+    try (Stream<Path> files = Files.list(file.getParent())) {
+      assertThat(files.map(f -> f.getFileName().toString()).collect(toList()), contains("abc123"));
+    }
+  }
+
+  @Test
+  public void leftoverTombstonesAreNotListed() throws Exception {
+    Path subdirectory = Files.createDirectories(directory.resolve("blobs").resolve("ab"));
+    Path tombstone = Files.writeString(subdirectory.resolve(".abc123.0.deleted"), "value");
+    Files.setLastModifiedTime(tombstone, FileTime.fromMillis(now().minusHours(2).getMillis()));
+
+    assertThat(store.getKeysStoredBefore(now()), is(empty()));
+  }
+}
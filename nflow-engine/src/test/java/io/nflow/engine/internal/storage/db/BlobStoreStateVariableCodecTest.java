@@ -0,0 +1,122 @@
+package io.nflow.engine.internal.storage.db;
+
+import static io.nflow.engine.internal.storage.db.BlobStoreStateVariableCodec.BLOB_HEADER;
+import static io.nflow.engine.internal.storage.db.CompressingStateVariableCodec.DEFLATE_HEADER;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
+import static org.joda.time.DateTime.now;
+import static org.joda.time.DateTimeUtils.setCurrentMillisFixed;
+import static org.joda.time.DateTimeUtils.setCurrentMillisSystem;
+import static org.joda.time.Period.minutes;
+
+import java.nio.file.Path;
+import java.util.Set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import io.nflow.engine.internal.storage.blob.FileSystemStateVariableBlobStore;
+
+public class BlobStoreStateVariableCodecTest {
+  @TempDir
+  Path directory;
+  FileSystemStateVariableBlobStore blobStore;
+  BlobStoreStateVariableCodec codec;
+  String json = "{\"items\":[" + "{\"name\":\"item\",\"price\":12.5,\"tags\":[\"a\",\"b\"]},".repeat(50) + "{}]}";
+
+  @BeforeEach
+  public void setup() {
+    blobStore = new FileSystemStateVariableBlobStore(directory);
+    codec = new BlobStoreStateVariableCodec(new CompressingStateVariableCodec(Integer.MAX_VALUE), blobStore, 100, minutes(60));
+  }
+
+  @AfterEach
+  public void reset() {
+    setCurrentMillisSystem();
+  }
+
+  @Test
+  public void longValuesAreStoredToBlobStore() {
+    String encoded = codec.encode(json);
+
+    assertThat(encoded, startsWith(BLOB_HEADER));
+    assertThat(encoded.length(), is(BLOB_HEADER.length() + 64));
+    assertThat(blobStore.get(encoded.substring(BLOB_HEADER.length())), is(json));
+    assertThat(codec.decode(encoded), is(json));
+  }
+
+  @Test
+  public void equalValuesAreStoredOnlyOnce() {
+    assertThat(codec.encode(json), is(codec.encode(json)));
+    assertThat(blobStore.getKeysStoredBefore(now().plusMinutes(1)), hasSize(1));
+  }
+
+  @Test
+  public void queryValueIsEncodedWithoutStoringIt() {
+    String queryValue = codec.encodeQueryValue(json);
+
+    assertThat(blobStore.getKeysStoredBefore(now().plusMinutes(1)), hasSize(0));
+    assertThat(codec.encode(json), is(queryValue));
+  }
+
+  @Test
+  public void shortValuesAreStoredAsSuch() {
+    assertThat(codec.encode("short"), is("short"));
+    assertThat(codec.decode("short"), is("short"));
+    assertThat(codec.encode(null), is(nullValue()));
+    assertThat(codec.decode(null), is(nullValue()));
+  }
+
+  @Test
+  public void valuesLookingLikeBlobReferencesAreStoredToBlobStore() {
+    String value = BLOB_HEADER + "abc";
+
+    String encoded = codec.encode(value);
+
+    assertThat(encoded.length(), is(BLOB_HEADER.length() + 64));
+    assertThat(codec.decode(encoded), is(value));
+  }
+
+  @Test
+  public void valuesAreEncodedWithOtherCodecBeforeStoringToBlobStore() {
+    codec = new BlobStoreStateVariableCodec(new CompressingStateVariableCodec(10), blobStore, 100, minutes(60));
+    String value = json.repeat(10);
+
+    String encoded = codec.encode(value);
+
+    assertThat(blobStore.get(encoded.substring(BLOB_HEADER.length())), startsWith(DEFLATE_HEADER));
+    assertThat(codec.decode(encoded), is(value));
+  }
+
+  @Test
+  public void valuesOfAnyLengthCanBeStoredWhenThresholdFitsDatabaseColumn() {
+    assertThat(codec.getMaxValueLength(100), is(Integer.MAX_VALUE));
+    assertThat(codec.getMaxValueLength(99), is(99));
+  }
+
+  @Test
+  public void onlyUnreferencedBlobsOlderThanGracePeriodAreDeleted() {
+    setCurrentMillisFixed(now().minusHours(2).getMillis());
+    String referred = codec.encode(json);
+    String orphan = codec.encode(json + " ");
+    setCurrentMillisSystem();
+    String recent = codec.encode(json + "  ");
+
+    assertThat(codec.deleteUnreferencedBlobs(references -> {
+      assertThat(references, containsInAnyOrder(referred, orphan));
+      return Set.of(referred);
+    }), is(1));
+
+    assertThat(codec.decode(referred), is(json));
+    assertThat(codec.decode(recent), is(json + "  "));
+    assertThat(blobStore.getKeysStoredBefore(now().plusMinutes(1)),
+        containsInAnyOrder(referred.substring(BLOB_HEADER.length()), recent.substring(BLOB_HEADER.length())));
+    assertThat(orphan, startsWith(BLOB_HEADER));
+  }
+}
@@ -0,0 +1,68 @@
+package io.nflow.engine.internal.storage.db;
+
+import static io.nflow.engine.internal.storage.db.CompressingStateVariableCodec.DEFLATE_HEADER;
+import static java.util.stream.Collectors.joining;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class CompressingStateVariableCodecTest {
+  CompressingStateVariableCodec codec = new CompressingStateVariableCodec(100);
+  String json = "{\"items\":[" + "{\"name\":\"item\",\"price\":12.5,\"tags\":[\"a\",\"b\"]},".repeat(50) + "{}]}";
+
+  @Test
+  public void longValuesAreCompressed() {
+    String encoded = codec.encode(json);
+
+    assertThat(encoded, startsWith(DEFLATE_HEADER));
+    assertThat(encoded.length(), is(lessThan(json.length() / 5)));
+    assertThat(codec.decode(encoded), is(json));
+  }
+
+  @Test
+  public void compressionIsDeterministic() {
+    assertThat(codec.encode(json), is(codec.encode(json)));
+  }
+
+  @Test
+  public void shortAndIncompressibleValuesAreStoredAsSuch() {
+    assertThat(codec.encode("{\"short\":1}"), is("{\"short\":1}"));
+    Random rnd = new Random(1);
+    String random = rnd.ints(101, 0, 64).mapToObj(i -> String.valueOf((char) ('0' + i))).collect(joining());
+    assertThat(codec.encode(random), is(random));
+    assertThat(codec.encode(null), is(nullValue()));
+  }
+
+  @Test
+  public void plainStoredValuesAreDecodedAsSuch() {
+    assertThat(codec.decode(json), is(json));
+    assertThat(codec.decode(null), is(nullValue()));
+  }
+
+  @Test
+  public void valuesStartingWithHeaderAreAlwaysEncoded() {
+    String value = DEFLATE_HEADER + "x";
+
+    assertThat(codec.decode(codec.encode(value)), is(value));
+  }
+
+  @Test
+  public void decodingOnlyCodecReadsCompressedValues() {
+    CompressingStateVariableCodec decodingOnly = new CompressingStateVariableCodec(Integer.MAX_VALUE);
+
+    assertThat(decodingOnly.encode(json), is(json));
+    assertThat(decodingOnly.decode(codec.encode(json)), is(json));
+  }
+
+  @Test
+  public void invalidCompressedValueFails() {
+    assertThrows(IllegalStateException.class, () -> codec.decode(DEFLATE_HEADER + "AAAA"));
+  }
+}
@@ -0,0 +1,60 @@
+package io.nflow.engine.internal.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import org.junit.jupiter.api.Test;
+
+public class AdaptiveBatchSizeTest {
+
+  private final AdaptiveBatchSize batchSize = new AdaptiveBatchSize(100, 1000, 1000);
+
+  @Test
+  public void firstBatchHasInitialSize() {
+    assertThat(batchSize.getBatchSize(), is(100));
+  }
+
+  @Test
+  public void batchSizeGrowsAtMostTwofoldWhenBatchesAreFast() {
+    assertThat(batchSize.update(100, 100), is(0L));
+    assertThat(batchSize.getBatchSize(), is(200));
+    assertThat(batchSize.update(200, 200), is(0L));
+    assertThat(batchSize.getBatchSize(), is(400));
+  }
+
+  @Test
+  public void batchSizeIsAdjustedTowardsTargetDuration() {
+    batchSize.update(100, 800);
+    assertThat(batchSize.getBatchSize(), is(125));
+    batchSize.update(125, 1250);
+    assertThat(batchSize.getBatchSize(), is(100));
+  }
+
+  @Test
+  public void batchSizeDoesNotExceedMaximum() {
+    for (int i = 0; i < 10; i++) {
+      batchSize.update(batchSize.getBatchSize(), 1);
+    }
+    assertThat(batchSize.getBatchSize(), is(1000));
+  }
+
+  @Test
+  public void batchSizeIsHalvedWhenBatchTakesTooLong() {
+    assertThat(batchSize.update(100, 5000), is(0L));
+    assertThat(batchSize.getBatchSize(), is(50));
+  }
+
+  @Test
+  public void batchSizeIsHalvedAndPauseIsRequestedWhenProcessingSlowsDown() {
+    batchSize.update(100, 100);
+    assertThat(batchSize.update(200, 600), is(600L));
+    assertThat(batchSize.getBatchSize(), is(100));
+  }
+
+  @Test
+  public void batchSizeIsAtLeastOne() {
+    AdaptiveBatchSize small = new AdaptiveBatchSize(1, 10, 10);
+    small.update(1, 1000);
+    assertThat(small.getBatchSize(), is(1));
+  }
+}
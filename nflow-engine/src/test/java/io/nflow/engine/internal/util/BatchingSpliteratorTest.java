@@ -0,0 +1,56 @@
+package io.nflow.engine.internal.util;
+
+import static io.nflow.engine.internal.util.BatchingSpliterator.batched;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+public class BatchingSpliteratorTest {
+
+  private final List<List<Integer>> batches = new ArrayList<>();
+
+  @Test
+  public void passesElementsToActionInBatches() {
+    List<Integer> result = batched(Stream.of(1, 2, 3, 4, 5), 2, batches::add).collect(toList());
+
+    assertThat(result, contains(1, 2, 3, 4, 5));
+    assertThat(batches, contains(List.of(1, 2), List.of(3, 4), List.of(5)));
+  }
+
+  @Test
+  public void readsNextBatchOnlyWhenPreviousBatchIsConsumed() {
+    Iterator<Integer> iterator = batched(Stream.of(1, 2, 3), 2, batches::add).iterator();
+
+    assertThat(iterator.next(), is(1));
+    assertThat(batches, contains(List.of(1, 2)));
+    assertThat(iterator.next(), is(2));
+    assertThat(batches.size(), is(1));
+    assertThat(iterator.next(), is(3));
+    assertThat(batches, contains(List.of(1, 2), List.of(3)));
+  }
+
+  @Test
+  public void emptyStreamDoesNotRunAction() {
+    assertThat(batched(Stream.<Integer> empty(), 2, batches::add).count(), is(0L));
+    assertThat(batches, is(empty()));
+  }
+
+  @Test
+  public void closingStreamClosesSourceStream() {
+    AtomicBoolean closed = new AtomicBoolean();
+
+    batched(Stream.of(1).onClose(() -> closed.set(true)), 2, batches::add).close();
+
+    assertThat(closed.get(), is(true));
+  }
+}
@@ -0,0 +1,32 @@
+package io.nflow.engine.internal.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+
+import org.junit.jupiter.api.Test;
+
+public class RateLimiterTest {
+
+  @Test
+  public void firstPermitsAreAvailableImmediately() throws InterruptedException {
+    RateLimiter rateLimiter = new RateLimiter(10);
+    long start = System.nanoTime();
+
+    rateLimiter.acquire(5);
+
+    assertThat(System.nanoTime() - start, lessThan(400_000_000L));
+  }
+
+  @Test
+  public void laterPermitsWaitForPreviouslyReservedPermits() throws InterruptedException {
+    RateLimiter rateLimiter = new RateLimiter(50);
+    long start = System.nanoTime();
+
+    rateLimiter.acquire(5);
+    rateLimiter.acquire(5);
+    rateLimiter.acquire(1);
+
+    assertThat(System.nanoTime() - start, greaterThanOrEqualTo(200_000_000L));
+  }
+}
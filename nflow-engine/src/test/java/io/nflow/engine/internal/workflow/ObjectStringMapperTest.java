@@ -2,9 +2,15 @@ package io.nflow.engine.internal.workflow;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.lang.reflect.Type;
+import java.math.BigDecimal;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -76,4 +82,103 @@ class ObjectStringMapperTest {
     assertThat(vars[1], is(expectedDefautlVal));
     assertThat(vars[2], is(expectedVal));
   }
+
+  @Test
+  public void deserializedObjectIsReusedBetweenExecutions() {
+    StateVariableObjectCache cache = new StateVariableObjectCache();
+    WorkflowStateMethod method = new WorkflowStateMethod(null, new StateParameter("key", Data.class, null, false, false));
+    when(execution.getVariable("key")).thenReturn("{\"value\":\"a\"}");
+
+    Object[] args = mapper.createArguments(execution, method, cache);
+    mapper.storeArguments(execution, method, args, cache);
+    Object[] nextArgs = mapper.createArguments(execution, method, cache);
+
+    assertThat(nextArgs[1], is(sameInstance(args[1])));
+    verify(execution).setVariable("key", "{\"value\":\"a\"}");
+  }
+
+  @Test
+  public void modifiedObjectIsReusedWithSerializedValue() {
+    StateVariableObjectCache cache = new StateVariableObjectCache();
+    WorkflowStateMethod method = new WorkflowStateMethod(null, new StateParameter("key", Data.class, null, false, false));
+    when(execution.getVariable("key")).thenReturn("{\"value\":\"a\"}", "{\"value\":\"b\"}");
+
+    Object[] args = mapper.createArguments(execution, method, cache);
+    ((Data) args[1]).value = "b";
+    mapper.storeArguments(execution, method, args, cache);
+    Object[] nextArgs = mapper.createArguments(execution, method, cache);
+
+    verify(execution).setVariable("key", "{\"value\":\"b\"}");
+    assertThat(nextArgs[1], is(sameInstance(args[1])));
+  }
+
+  @Test
+  public void objectIsNotReusedWhenValueChanges() {
+    StateVariableObjectCache cache = new StateVariableObjectCache();
+    WorkflowStateMethod method = new WorkflowStateMethod(null, new StateParameter("key", Data.class, null, true, false));
+    when(execution.getVariable("key")).thenReturn("{\"value\":\"a\"}", "{\"value\":\"c\"}");
+
+    Object[] args = mapper.createArguments(execution, method, cache);
+    Object[] nextArgs = mapper.createArguments(execution, method, cache);
+
+    assertThat(((Data) nextArgs[1]).value, is("c"));
+    assertThat(nextArgs[1], is(not(sameInstance(args[1]))));
+  }
+
+  @Test
+  public void objectIsNotReusedWhenArgumentsAreNotStored() {
+    StateVariableObjectCache cache = new StateVariableObjectCache();
+    WorkflowStateMethod method = new WorkflowStateMethod(null, new StateParameter("key", Data.class, null, false, false));
+    when(execution.getVariable("key")).thenReturn("{\"value\":\"a\"}");
+
+    Object[] args = mapper.createArguments(execution, method, cache);
+    ((Data) args[1]).value = "b";
+    Object[] nextArgs = mapper.createArguments(execution, method, cache);
+
+    assertThat(((Data) nextArgs[1]).value, is("a"));
+  }
+
+  @Test
+  public void unmodifiedImmutableValueIsNotSerializedAgain() {
+    StateVariableObjectCache cache = new StateVariableObjectCache();
+    WorkflowStateMethod method = new WorkflowStateMethod(null, new StateParameter("key", Long.class, null, false, false));
+    String value = "42.0";
+    when(execution.getVariable("key")).thenReturn(value);
+
+    Object[] args = mapper.createArguments(execution, method, cache);
+    mapper.storeArguments(execution, method, args, cache);
+
+    verify(execution).setVariable("key", value);
+  }
+
+  @Test
+  public void readOnlyMutableObjectIsNotReused() {
+    StateVariableObjectCache cache = new StateVariableObjectCache();
+    WorkflowStateMethod method = new WorkflowStateMethod(null, new StateParameter("key", Data.class, null, true, false));
+    when(execution.getVariable("key")).thenReturn("{\"value\":\"a\"}");
+
+    Object[] args = mapper.createArguments(execution, method, cache);
+    ((Data) args[1]).value = "b";
+    mapper.storeArguments(execution, method, args, cache);
+    Object[] nextArgs = mapper.createArguments(execution, method, cache);
+
+    assertThat(((Data) nextArgs[1]).value, is("a"));
+    verify(execution, never()).setVariable(anyString(), anyString());
+  }
+
+  @Test
+  public void readOnlyImmutableObjectIsReused() {
+    StateVariableObjectCache cache = new StateVariableObjectCache();
+    WorkflowStateMethod method = new WorkflowStateMethod(null, new StateParameter("key", BigDecimal.class, null, true, false));
+    when(execution.getVariable("key")).thenReturn("1.5");
+
+    Object[] args = mapper.createArguments(execution, method, cache);
+    Object[] nextArgs = mapper.createArguments(execution, method, cache);
+
+    assertThat(nextArgs[1], is(sameInstance(args[1])));
+  }
+
+  public static class Data {
+    public String value;
+  }
 }
@@ -13,11 +13,15 @@ import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
 import static org.joda.time.DateTime.now;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import org.joda.time.DateTime;
@@ -232,6 +236,47 @@ public class StateExecutionImplTest {
     assertThat(execution.getVariable("foo", Data.class, defaultData), is(defaultData));
   }
 
+  @Test
+  public void getVariableLoadsLazyVariableOnlyOnce() {
+    execution = new StateExecutionImpl(instance, objectStringMapper, workflowDao, workflowInstancePreProcessor,
+        workflowInstanceService, true);
+    when(workflowDao.getStateVariables(99, singletonList("foo"))).thenReturn(Map.of("foo", "bar"));
+    when(workflowDao.getStateVariables(99, singletonList("missing"))).thenReturn(Map.of());
+
+    assertThat(execution.getVariable("foo"), is("bar"));
+    assertThat(execution.getVariable("foo", "default"), is("bar"));
+    assertThat(execution.getVariable("missing", "default"), is("default"));
+    assertThat(execution.getVariable("missing"), is(nullValue()));
+
+    verify(workflowDao).getStateVariables(99, singletonList("foo"));
+    verify(workflowDao).getStateVariables(99, singletonList("missing"));
+    assertThat(instance.originalStateVariables, is(Map.of("foo", "bar")));
+    assertThat(instance.getChangedStateVariables(), is(Map.of()));
+  }
+
+  @Test
+  public void loadVariablesSkipsLoadedAndSetVariables() {
+    execution = new StateExecutionImpl(instance, objectStringMapper, workflowDao, workflowInstancePreProcessor,
+        workflowInstanceService, true);
+    execution.setVariable("foo", "bar");
+    when(workflowDao.getStateVariables(99, asList("baz", "qux"))).thenReturn(Map.of("baz", "1"));
+
+    execution.loadVariables(asList("foo", "baz", "qux", "baz"));
+    execution.loadVariables(asList("foo", "baz", "qux"));
+
+    verify(workflowDao).getStateVariables(99, asList("baz", "qux"));
+    assertThat(execution.getVariable("baz"), is("1"));
+    assertThat(execution.getVariable("foo"), is("bar"));
+  }
+
+  @Test
+  public void getVariableDoesNotLoadVariablesWhenNotLazy() {
+    assertThat(execution.getVariable("foo"), is(nullValue()));
+    execution.loadVariables(singletonList("foo"));
+
+    verify(workflowDao, never()).getStateVariables(anyLong(), any());
+  }
+
   @Test
   public void setVariableChecksValueLength() {
     execution.setVariable("foo", "bar");
@@ -23,6 +23,8 @@ import java.lang.reflect.Type;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 import org.hamcrest.CustomMatcher;
 import org.junit.jupiter.api.BeforeEach;
@@ -68,6 +70,15 @@ public class WorkflowDefinitionScannerTest {
     assertThat(methods.get("end").params[0], stateParam("paramKey", String.class, true, false));
   }
 
+  @Test
+  public void completionStageOfNextActionIsAcceptedAsAsyncStateMethod() {
+    Map<String, WorkflowStateMethod> methods = scanner.getStateMethods(AsyncWorkflow.class);
+    assertThat(methods.keySet(), containsInAnyOrder("start", "process", "end"));
+    assertThat(methods.get("start").async, is(true));
+    assertThat(methods.get("process").async, is(true));
+    assertThat(methods.get("end").async, is(false));
+  }
+
   @Test
   public void mutableStateParamSetsMutableFlag() {
     Map<String, WorkflowStateMethod> methods = scanner.getStateMethods(MutableParamWorkflow.class);
@@ -255,6 +266,17 @@ public class WorkflowDefinitionScannerTest {
     public NextAction end(StateExecution exec, @Dummy @StateVar("paramKey") String param) { return null; }
   }
 
+  public static class AsyncWorkflow extends WorkflowDefinition {
+    public AsyncWorkflow() {
+      super("async", BEGIN, DONE);
+    }
+
+    public CompletionStage<NextAction> start(StateExecution exec) { return null; }
+    public CompletableFuture<NextAction> process(StateExecution exec) { return null; }
+    public CompletionStage<String> invalid(StateExecution exec) { return null; }
+    public NextAction end(StateExecution exec) { return null; }
+  }
+
   public static class MutableParamWorkflow extends WorkflowDefinition {
     public MutableParamWorkflow() {
       super("mutableParam", BEGIN, DONE);
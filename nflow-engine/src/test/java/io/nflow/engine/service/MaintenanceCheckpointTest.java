@@ -0,0 +1,61 @@
+package io.nflow.engine.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.joda.time.Period.days;
+import static org.joda.time.Period.minutes;
+import static org.joda.time.Period.seconds;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.nflow.engine.config.EngineConfiguration;
+
+public class MaintenanceCheckpointTest {
+
+  private final ObjectMapper mapper = new EngineConfiguration().nflowObjectMapper().get();
+
+  @Test
+  public void checkpointCanBeStoredAsStateVariable() throws JsonProcessingException {
+    MaintenanceCheckpoint checkpoint = new MaintenanceCheckpoint();
+    checkpoint.setLastProcessedId("archiveWorkflows", 42);
+    checkpoint.setLastProcessedId("deleteWorkflows.1/2", 7);
+
+    MaintenanceCheckpoint restored = mapper.readValue(mapper.writeValueAsString(checkpoint), MaintenanceCheckpoint.class);
+
+    assertThat(restored.getLastProcessedId("archiveWorkflows"), is(42L));
+    assertThat(restored.getLastProcessedId("deleteWorkflows.1/2"), is(7L));
+    assertThat(restored.getLastProcessedId("deleteArchivedWorkflows"), is(0L));
+  }
+
+  @Test
+  public void finishedOperationsAreRemoved() {
+    MaintenanceCheckpoint checkpoint = new MaintenanceCheckpoint();
+    checkpoint.setLastProcessedId("archiveWorkflows", 42);
+    checkpoint.setLastProcessedId("deleteWorkflows", 7);
+
+    checkpoint.remove("archiveWorkflows");
+    assertThat(checkpoint.getLastProcessedId("archiveWorkflows"), is(0L));
+    assertThat(checkpoint.getLastProcessedId("deleteWorkflows"), is(7L));
+
+    checkpoint.clear();
+    assertThat(checkpoint.getLastProcessedId("deleteWorkflows"), is(0L));
+  }
+
+  @Test
+  public void configurationWithCheckpointIntervalAndTargetBatchDurationCanBeStoredAsStateVariable()
+      throws JsonProcessingException {
+    MaintenanceConfiguration configuration = new MaintenanceConfiguration.Builder().withCheckpointInterval(minutes(10))
+        .withArchiveWorkflows().setOlderThanPeriod(days(45)).setBatchSize(100).setTargetBatchDuration(seconds(1)).done()
+        .build();
+
+    MaintenanceConfiguration restored = mapper.readValue(mapper.writeValueAsString(configuration),
+        MaintenanceConfiguration.class);
+
+    assertThat(restored.checkpointInterval, is(minutes(10)));
+    assertThat(restored.archiveWorkflows.targetBatchDuration, is(seconds(1)));
+    assertThat(restored.archiveWorkflows.maxBatchSize, is(1000));
+  }
+}
@@ -13,18 +13,26 @@ import static org.joda.time.DateTimeUtils.currentTimeMillis;
 import static org.joda.time.DateTimeUtils.setCurrentMillisFixed;
 import static org.joda.time.DateTimeUtils.setCurrentMillisSystem;
 import static org.joda.time.Period.days;
+import static org.joda.time.Period.millis;
+import static org.joda.time.Period.minutes;
 import static org.joda.time.Period.months;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 import java.util.List;
+import java.util.Set;
 
 import org.joda.time.DateTime;
 import org.joda.time.ReadablePeriod;
@@ -32,6 +40,7 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
@@ -39,6 +48,10 @@ import io.nflow.engine.internal.dao.ExecutorDao;
 import io.nflow.engine.internal.dao.MaintenanceDao;
 import io.nflow.engine.internal.dao.NflowTable;
 import io.nflow.engine.internal.dao.TableMetadataChecker;
+import io.nflow.engine.internal.storage.blob.StateVariableBlobStore;
+import io.nflow.engine.internal.storage.db.BlobStoreStateVariableCodec;
+import io.nflow.engine.internal.storage.db.CompressingStateVariableCodec;
+import io.nflow.engine.workflow.definition.WorkflowDefinition;
 
 @ExtendWith(MockitoExtension.class)
 public class MaintenanceServiceTest {
@@ -53,6 +66,8 @@ public class MaintenanceServiceTest {
   private WorkflowDefinitionService workflowDefinitionService;
   @Mock
   private ExecutorDao executorDao;
+  @Mock
+  private StateVariableBlobStore blobStore;
   private final List<Long> emptyList = emptyList();
   private final List<Long> oldWorkdlowIds = asList(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L);
   private MaintenanceConfiguration archiveConfig;
@@ -63,7 +78,8 @@ public class MaintenanceServiceTest {
 
   @BeforeEach
   public void setup() {
-    service = new MaintenanceService(dao, tableMetadataChecker, workflowDefinitionService, executorDao);
+    service = new MaintenanceService(dao, tableMetadataChecker, workflowDefinitionService, executorDao,
+        new CompressingStateVariableCodec(Integer.MAX_VALUE));
     setCurrentMillisFixed(currentTimeMillis());
     period = months(1);
     limit = now().minus(period);
@@ -79,13 +95,14 @@ public class MaintenanceServiceTest {
 
   @Test
   public void withZeroOldWorkflowsNothingIsArchived() {
-    when(dao.getOldWorkflowIds(MAIN, limit, BATCH_SIZE, emptySet())).thenReturn(emptyList);
+    when(dao.getOldWorkflowIds(MAIN, limit, BATCH_SIZE, emptySet(), 0, 0, 1)).thenReturn(emptyList);
 
     MaintenanceResults results = service.cleanupWorkflows(archiveConfig);
 
     assertEquals(0, results.archivedWorkflows);
     assertValidArchiveTablesAreChecked();
-    verify(dao).getOldWorkflowIds(MAIN, limit, BATCH_SIZE, emptySet());
+    verify(dao).createArchivePartitions();
+    verify(dao).getOldWorkflowIds(MAIN, limit, BATCH_SIZE, emptySet(), 0, 0, 1);
     verifyNoMoreInteractions(dao, tableMetadataChecker);
   }
 
@@ -95,68 +112,248 @@ public class MaintenanceServiceTest {
 
   @Test
   public void withZeroOldWorkflowsNothingIsDeleted() {
-    when(dao.getOldWorkflowIds(MAIN, limit, BATCH_SIZE, emptySet())).thenReturn(emptyList);
+    when(dao.getOldWorkflowIds(MAIN, limit, BATCH_SIZE, emptySet(), 0, 0, 1)).thenReturn(emptyList);
 
     MaintenanceResults results = service.cleanupWorkflows(deleteMainConfig);
 
     assertEquals(0, results.deletedWorkflows);
-    verify(dao).getOldWorkflowIds(MAIN, limit, BATCH_SIZE, emptySet());
+    verify(dao).getOldWorkflowIds(MAIN, limit, BATCH_SIZE, emptySet(), 0, 0, 1);
     verifyNoMoreInteractions(dao, tableMetadataChecker);
   }
 
   @Test
   public void withZeroOldWorkflowsNothingIsDeletedFromArchiveTables() {
-    when(dao.getOldWorkflowIds(ARCHIVE, limit, BATCH_SIZE, emptySet())).thenReturn(emptyList);
+    when(dao.getOldWorkflowIds(ARCHIVE, limit, BATCH_SIZE, emptySet(), 0, 0, 1)).thenReturn(emptyList);
 
     MaintenanceResults results = service.cleanupWorkflows(deleteArchiveConfig);
 
     assertEquals(0, results.deletedArchivedWorkflows);
     assertValidArchiveTablesAreChecked();
-    verify(dao).getOldWorkflowIds(ARCHIVE, limit, BATCH_SIZE, emptySet());
+    verify(dao).getOldWorkflowIds(ARCHIVE, limit, BATCH_SIZE, emptySet(), 0, 0, 1);
+    verify(dao).isArchivePartitioned();
     verifyNoMoreInteractions(dao, tableMetadataChecker);
   }
 
   @Test
   public void archivingContinuesAsLongAsOldWorkflowsAreFound() {
-    doReturn(oldWorkdlowIds, oldWorkdlowIds, oldWorkdlowIds, emptyList).when(dao).getOldWorkflowIds(MAIN, limit, BATCH_SIZE,
-        emptySet());
+    doReturn(oldWorkdlowIds, oldWorkdlowIds, oldWorkdlowIds, emptyList).when(dao).getOldWorkflowIds(eq(MAIN), eq(limit),
+        eq(BATCH_SIZE), eq(emptySet()), anyLong(), eq(0), eq(1));
     when(dao.archiveWorkflows(oldWorkdlowIds)).thenReturn(oldWorkdlowIds.size());
 
     MaintenanceResults results = service.cleanupWorkflows(archiveConfig);
 
     assertEquals(oldWorkdlowIds.size() * 3, results.archivedWorkflows);
     assertValidArchiveTablesAreChecked();
-    verify(dao, times(4)).getOldWorkflowIds(MAIN, limit, BATCH_SIZE, emptySet());
-    verify(dao, times(3)).archiveWorkflows(oldWorkdlowIds);
+    InOrder inOrder = inOrder(dao);
+    inOrder.verify(dao).createArchivePartitions();
+    inOrder.verify(dao, times(3)).archiveWorkflows(oldWorkdlowIds);
+    verify(dao, times(4)).getOldWorkflowIds(eq(MAIN), eq(limit), eq(BATCH_SIZE), eq(emptySet()), anyLong(), eq(0), eq(1));
     verifyNoMoreInteractions(dao, tableMetadataChecker);
   }
 
   @Test
   public void deletingFromMainTablesContinuesAsLongAsOldWorkflowsAreFound() {
-    doReturn(oldWorkdlowIds, oldWorkdlowIds, oldWorkdlowIds, emptyList).when(dao).getOldWorkflowIds(MAIN, limit, BATCH_SIZE,
-        emptySet());
+    doReturn(oldWorkdlowIds, oldWorkdlowIds, oldWorkdlowIds, emptyList).when(dao).getOldWorkflowIds(eq(MAIN), eq(limit),
+        eq(BATCH_SIZE), eq(emptySet()), anyLong(), eq(0), eq(1));
     when(dao.deleteWorkflows(MAIN, oldWorkdlowIds)).thenReturn(oldWorkdlowIds.size());
 
     MaintenanceResults results = service.cleanupWorkflows(deleteMainConfig);
 
     assertEquals(oldWorkdlowIds.size() * 3, results.deletedWorkflows);
-    verify(dao, times(4)).getOldWorkflowIds(MAIN, limit, BATCH_SIZE, emptySet());
+    verify(dao, times(4)).getOldWorkflowIds(eq(MAIN), eq(limit), eq(BATCH_SIZE), eq(emptySet()), anyLong(), eq(0), eq(1));
     verify(dao, times(3)).deleteWorkflows(MAIN, oldWorkdlowIds);
     verifyNoMoreInteractions(dao, tableMetadataChecker);
   }
 
+  @Test
+  public void nextBatchIsSelectedAfterLastProcessedWorkflow() {
+    List<Long> batch1 = asList(1L, 2L, 3L);
+    List<Long> batch2 = asList(7L, 8L);
+    when(dao.getOldWorkflowIds(MAIN, limit, BATCH_SIZE, emptySet(), 0, 0, 1)).thenReturn(batch1);
+    when(dao.getOldWorkflowIds(MAIN, limit, BATCH_SIZE, emptySet(), 3, 0, 1)).thenReturn(batch2);
+    when(dao.getOldWorkflowIds(MAIN, limit, BATCH_SIZE, emptySet(), 8, 0, 1)).thenReturn(emptyList);
+    when(dao.deleteWorkflows(MAIN, batch1)).thenReturn(batch1.size());
+    when(dao.deleteWorkflows(MAIN, batch2)).thenReturn(batch2.size());
+    MaintenanceCheckpoint checkpoint = new MaintenanceCheckpoint();
+
+    MaintenanceResults results = service.cleanupWorkflows(deleteMainConfig, checkpoint);
+
+    assertEquals(5, results.deletedWorkflows);
+    assertThat(results.finished, is(true));
+    assertThat(checkpoint.getLastProcessedId("deleteWorkflows"), is(0L));
+  }
+
+  @Test
+  public void operationsAreStoppedAtCheckpointIntervalAndResumedFromCheckpoint() {
+    MaintenanceConfiguration config = new MaintenanceConfiguration.Builder().withCheckpointInterval(millis(0))
+        .withArchiveWorkflows().setOlderThanPeriod(period).setBatchSize(BATCH_SIZE).done()
+        .withDeleteWorkflows().setOlderThanPeriod(period).setBatchSize(BATCH_SIZE).done().build();
+    when(dao.getOldWorkflowIds(MAIN, limit, BATCH_SIZE, emptySet(), 0, 0, 1)).thenReturn(oldWorkdlowIds);
+    when(dao.archiveWorkflows(oldWorkdlowIds)).thenReturn(oldWorkdlowIds.size());
+    MaintenanceCheckpoint checkpoint = new MaintenanceCheckpoint();
+
+    MaintenanceResults results = service.cleanupWorkflows(config, checkpoint);
+
+    assertEquals(oldWorkdlowIds.size(), results.archivedWorkflows);
+    assertThat(results.finished, is(false));
+    assertThat(checkpoint.getLastProcessedId("archiveWorkflows"), is(10L));
+    verify(dao, never()).deleteWorkflows(any(), any());
+
+    when(dao.getOldWorkflowIds(MAIN, limit, BATCH_SIZE, emptySet(), 10, 0, 1)).thenReturn(emptyList);
+
+    results = service.cleanupWorkflows(archiveConfig, checkpoint);
+
+    assertEquals(0, results.archivedWorkflows);
+    assertThat(results.finished, is(true));
+    assertThat(checkpoint.getLastProcessedId("archiveWorkflows"), is(0L));
+  }
+
+  @Test
+  public void batchSizeIsAdjustedWhenTargetBatchDurationIsSet() {
+    MaintenanceConfiguration config = new MaintenanceConfiguration.Builder().withDeleteWorkflows().setOlderThanPeriod(period)
+        .setBatchSize(BATCH_SIZE).setTargetBatchDuration(minutes(1)).done().build();
+    when(dao.getOldWorkflowIds(MAIN, limit, BATCH_SIZE, emptySet(), 0, 0, 1)).thenReturn(oldWorkdlowIds);
+    when(dao.getOldWorkflowIds(MAIN, limit, 2 * BATCH_SIZE, emptySet(), 10, 0, 1)).thenReturn(emptyList);
+    when(dao.deleteWorkflows(MAIN, oldWorkdlowIds)).thenReturn(oldWorkdlowIds.size());
+
+    MaintenanceResults results = service.cleanupWorkflows(config);
+
+    assertEquals(oldWorkdlowIds.size(), results.deletedWorkflows);
+  }
+
+  @Test
+  public void parallelWorkersDeleteTheirOwnShardsOfOldWorkflows() {
+    MaintenanceConfiguration config = new MaintenanceConfiguration.Builder().withDeleteWorkflows().setOlderThanPeriod(period)
+        .setBatchSize(BATCH_SIZE).setParallelism(2).done().build();
+    List<Long> evenIds = asList(2L, 4L);
+    List<Long> oddIds1 = asList(1L, 3L);
+    List<Long> oddIds2 = asList(5L);
+    when(dao.getOldWorkflowIds(MAIN, limit, BATCH_SIZE, emptySet(), 0, 0, 2)).thenReturn(evenIds);
+    when(dao.getOldWorkflowIds(MAIN, limit, BATCH_SIZE, emptySet(), 4, 0, 2)).thenReturn(emptyList);
+    when(dao.getOldWorkflowIds(MAIN, limit, BATCH_SIZE, emptySet(), 0, 1, 2)).thenReturn(oddIds1);
+    when(dao.getOldWorkflowIds(MAIN, limit, BATCH_SIZE, emptySet(), 3, 1, 2)).thenReturn(oddIds2);
+    when(dao.getOldWorkflowIds(MAIN, limit, BATCH_SIZE, emptySet(), 5, 1, 2)).thenReturn(emptyList);
+    when(dao.deleteWorkflows(MAIN, evenIds)).thenReturn(evenIds.size());
+    when(dao.deleteWorkflows(MAIN, oddIds1)).thenReturn(oddIds1.size());
+    when(dao.deleteWorkflows(MAIN, oddIds2)).thenReturn(oddIds2.size());
+
+    MaintenanceResults results = service.cleanupWorkflows(config);
+
+    assertEquals(5, results.deletedWorkflows);
+    verify(dao).getOldWorkflowIds(MAIN, limit, BATCH_SIZE, emptySet(), 0, 0, 2);
+    verify(dao).getOldWorkflowIds(MAIN, limit, BATCH_SIZE, emptySet(), 4, 0, 2);
+    verify(dao).getOldWorkflowIds(MAIN, limit, BATCH_SIZE, emptySet(), 0, 1, 2);
+    verify(dao).getOldWorkflowIds(MAIN, limit, BATCH_SIZE, emptySet(), 3, 1, 2);
+    verify(dao).getOldWorkflowIds(MAIN, limit, BATCH_SIZE, emptySet(), 5, 1, 2);
+    verify(dao).deleteWorkflows(MAIN, evenIds);
+    verify(dao).deleteWorkflows(MAIN, oddIds1);
+    verify(dao).deleteWorkflows(MAIN, oddIds2);
+    verifyNoMoreInteractions(dao, tableMetadataChecker);
+  }
+
+  @Test
+  public void failureOfParallelWorkerIsRethrown() {
+    MaintenanceConfiguration config = new MaintenanceConfiguration.Builder().withDeleteWorkflows().setOlderThanPeriod(period)
+        .setBatchSize(BATCH_SIZE).setParallelism(2).done().build();
+    when(dao.getOldWorkflowIds(MAIN, limit, BATCH_SIZE, emptySet(), 0, 0, 2)).thenReturn(emptyList);
+    when(dao.getOldWorkflowIds(MAIN, limit, BATCH_SIZE, emptySet(), 0, 1, 2)).thenThrow(new IllegalStateException("test"));
+
+    IllegalStateException thrown = assertThrows(IllegalStateException.class, () -> service.cleanupWorkflows(config));
+
+    assertThat(thrown.getMessage(), is("test"));
+  }
+
+  @Test
+  public void deletingIsRateLimited() {
+    MaintenanceConfiguration config = new MaintenanceConfiguration.Builder().withDeleteWorkflows().setOlderThanPeriod(period)
+        .setBatchSize(BATCH_SIZE).setMaxWorkflowsPerSecond(100).done().build();
+    doReturn(oldWorkdlowIds, oldWorkdlowIds, oldWorkdlowIds, emptyList).when(dao).getOldWorkflowIds(eq(MAIN), eq(limit),
+        eq(BATCH_SIZE), eq(emptySet()), anyLong(), eq(0), eq(1));
+    when(dao.deleteWorkflows(MAIN, oldWorkdlowIds)).thenReturn(oldWorkdlowIds.size());
+
+    long start = System.nanoTime();
+    MaintenanceResults results = service.cleanupWorkflows(config);
+
+    assertEquals(oldWorkdlowIds.size() * 3, results.deletedWorkflows);
+    assertThat(System.nanoTime() - start >= 200_000_000L, is(true));
+  }
+
+  @Test
+  public void archivePartitionsAreDroppedBeforeDeletingArchivedWorkflows() {
+    when(dao.isArchivePartitioned()).thenReturn(true);
+    when(dao.dropArchivePartitions(limit)).thenReturn(100);
+    doReturn(oldWorkdlowIds, emptyList).when(dao).getOldWorkflowIds(eq(ARCHIVE), eq(limit),
+        eq(BATCH_SIZE), eq(emptySet()), anyLong(), eq(0), eq(1));
+    when(dao.deleteWorkflows(ARCHIVE, oldWorkdlowIds)).thenReturn(oldWorkdlowIds.size());
+
+    MaintenanceResults results = service.cleanupWorkflows(deleteArchiveConfig);
+
+    assertEquals(100 + oldWorkdlowIds.size(), results.deletedArchivedWorkflows);
+    InOrder inOrder = inOrder(dao);
+    inOrder.verify(dao).dropArchivePartitions(limit);
+    inOrder.verify(dao).deleteWorkflows(ARCHIVE, oldWorkdlowIds);
+  }
+
+  @Test
+  public void archivePartitionsAreNotDroppedWhenDeletingArchivedWorkflowsOfGivenTypes() {
+    MaintenanceConfiguration config = new MaintenanceConfiguration.Builder().withDeleteArchivedWorkflows()
+        .setOlderThanPeriod(period).setBatchSize(BATCH_SIZE).setWorkflowTypes(Set.of("type")).done().build();
+    when(workflowDefinitionService.getWorkflowDefinition("type")).thenReturn(mock(WorkflowDefinition.class));
+    when(dao.getOldWorkflowIds(ARCHIVE, limit, BATCH_SIZE, Set.of("type"), 0, 0, 1)).thenReturn(emptyList);
+
+    service.cleanupWorkflows(config);
+
+    verify(dao, never()).isArchivePartitioned();
+    verify(dao, never()).dropArchivePartitions(any());
+  }
+
+  @Test
+  public void unreferencedStateVariableBlobsAreDeletedAfterDeletingWorkflows() {
+    BlobStoreStateVariableCodec codec = new BlobStoreStateVariableCodec(new CompressingStateVariableCodec(Integer.MAX_VALUE),
+        blobStore, 10, minutes(60));
+    service = new MaintenanceService(dao, tableMetadataChecker, workflowDefinitionService, executorDao, codec);
+    doReturn(oldWorkdlowIds, emptyList).when(dao).getOldWorkflowIds(eq(MAIN), eq(limit),
+        eq(BATCH_SIZE), eq(emptySet()), anyLong(), eq(0), eq(1));
+    when(dao.deleteWorkflows(MAIN, oldWorkdlowIds)).thenReturn(oldWorkdlowIds.size());
+    DateTime storedBefore = now().minusMinutes(60);
+    when(blobStore.getKeysStoredBefore(storedBefore)).thenReturn(asList("referred", "orphan"));
+    String prefix = codec.getBlobReferencePrefix();
+    when(dao.getReferredStateVariableBlobs(prefix, Set.of(prefix + "referred", prefix + "orphan")))
+        .thenReturn(Set.of(prefix + "referred"));
+    when(blobStore.deleteIfStoredBefore("orphan", storedBefore)).thenReturn(true);
+
+    MaintenanceResults results = service.cleanupWorkflows(deleteMainConfig);
+
+    assertEquals(1, results.deletedStateVariableBlobs);
+    verify(blobStore).deleteIfStoredBefore("orphan", storedBefore);
+    verifyNoMoreInteractions(blobStore);
+  }
+
+  @Test
+  public void stateVariableBlobsAreNotCollectedWhenNoWorkflowsAreDeleted() {
+    service = new MaintenanceService(dao, tableMetadataChecker, workflowDefinitionService, executorDao,
+        new BlobStoreStateVariableCodec(new CompressingStateVariableCodec(Integer.MAX_VALUE), blobStore, 10, minutes(60)));
+    when(dao.getOldWorkflowIds(MAIN, limit, BATCH_SIZE, emptySet(), 0, 0, 1)).thenReturn(emptyList);
+
+    MaintenanceResults results = service.cleanupWorkflows(deleteMainConfig);
+
+    assertEquals(0, results.deletedStateVariableBlobs);
+    verifyNoMoreInteractions(blobStore);
+  }
+
   @Test
   public void deletingFromArchiveTablesContinuesAsLongAsOldWorkflowsAreFound() {
-    doReturn(oldWorkdlowIds, oldWorkdlowIds, oldWorkdlowIds, emptyList).when(dao).getOldWorkflowIds(ARCHIVE, limit, BATCH_SIZE,
-        emptySet());
+    doReturn(oldWorkdlowIds, oldWorkdlowIds, oldWorkdlowIds, emptyList).when(dao).getOldWorkflowIds(eq(ARCHIVE), eq(limit),
+        eq(BATCH_SIZE), eq(emptySet()), anyLong(), eq(0), eq(1));
     when(dao.deleteWorkflows(ARCHIVE, oldWorkdlowIds)).thenReturn(oldWorkdlowIds.size());
 
     MaintenanceResults results = service.cleanupWorkflows(deleteArchiveConfig);
 
     assertEquals(oldWorkdlowIds.size() * 3, results.deletedArchivedWorkflows);
     assertValidArchiveTablesAreChecked();
-    verify(dao, times(4)).getOldWorkflowIds(ARCHIVE, limit, BATCH_SIZE, emptySet());
+    verify(dao, times(4)).getOldWorkflowIds(eq(ARCHIVE), eq(limit), eq(BATCH_SIZE), eq(emptySet()), anyLong(), eq(0), eq(1));
     verify(dao, times(3)).deleteWorkflows(ARCHIVE, oldWorkdlowIds);
+    verify(dao).isArchivePartitioned();
     verifyNoMoreInteractions(dao, tableMetadataChecker);
   }
 
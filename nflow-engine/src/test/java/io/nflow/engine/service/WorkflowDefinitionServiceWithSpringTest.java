@@ -39,6 +39,7 @@ import io.nflow.engine.internal.dao.WorkflowDefinitionDao;
 import io.nflow.engine.internal.dao.WorkflowInstanceDao;
 import io.nflow.engine.internal.executor.WorkflowInstanceExecutor;
 import io.nflow.engine.internal.storage.db.SQLVariants;
+import io.nflow.engine.internal.storage.db.StateVariableCodec;
 import io.nflow.engine.internal.workflow.WorkflowInstancePreProcessor;
 import io.nflow.engine.workflow.definition.WorkflowDefinition;
 import io.nflow.engine.workflow.instance.WorkflowInstanceFactory;
@@ -115,6 +116,12 @@ public class WorkflowDefinitionServiceWithSpringTest {
       return mock(NamedParameterJdbcTemplate.class);
     }
 
+    @Bean
+    @NFlow
+    public StateVariableCodec stateVariableCodec() {
+      return mock(StateVariableCodec.class);
+    }
+
     @Bean
     public TableMetadataChecker tableMetadataChecker() {
       return mock(TableMetadataChecker.class);
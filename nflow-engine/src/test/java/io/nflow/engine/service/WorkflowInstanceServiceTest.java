@@ -30,6 +30,7 @@ import java.util.EnumSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Stream;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -48,6 +49,7 @@ import io.nflow.engine.workflow.instance.WorkflowInstance;
 import io.nflow.engine.workflow.instance.WorkflowInstance.WorkflowInstanceStatus;
 import io.nflow.engine.workflow.instance.WorkflowInstanceAction;
 import io.nflow.engine.workflow.instance.WorkflowInstanceAction.WorkflowActionType;
+import io.nflow.engine.workflow.instance.WorkflowInstancePage;
 
 public class WorkflowInstanceServiceTest extends BaseNflowTest {
 
@@ -92,12 +94,44 @@ public class WorkflowInstanceServiceTest extends BaseNflowTest {
   public void insertWorkflowInstanceWorks() {
     WorkflowInstance i = constructWorkflowInstanceBuilder().setStatus(created).setExternalId("123").build();
     when(workflowInstancePreProcessor.process(i)).thenReturn(i);
-    when(workflowInstanceDao.insertWorkflowInstance(stored.capture())).thenReturn(42L);
+    when(workflowInstanceDao.insertWorkflowInstanceOrGetExisting(stored.capture())).thenReturn(42L);
     assertThat(service.insertWorkflowInstance(i), is(42L));
     assertThat(stored.getValue().externalId, is("123"));
     assertThat(stored.getValue().status, is(created));
   }
 
+  @Test
+  public void insertWorkflowInstancesPreprocessesAllInstances() {
+    WorkflowInstance i1 = constructWorkflowInstanceBuilder().setExternalId("1").build();
+    WorkflowInstance i2 = constructWorkflowInstanceBuilder().setExternalId("2").build();
+    WorkflowInstance processed1 = constructWorkflowInstanceBuilder().setExternalId("1").setStatus(created).build();
+    WorkflowInstance processed2 = constructWorkflowInstanceBuilder().setExternalId("2").setStatus(created).build();
+    when(workflowInstancePreProcessor.process(i1)).thenReturn(processed1);
+    when(workflowInstancePreProcessor.process(i2)).thenReturn(processed2);
+    when(workflowInstanceDao.insertWorkflowInstances(asList(processed1, processed2))).thenReturn(asList(42L, 43L));
+    assertThat(service.insertWorkflowInstances(asList(i1, i2)), is(asList(42L, 43L)));
+  }
+
+  @Test
+  public void insertWorkflowInstancesReturningExistingUsesConditionalInserts() {
+    WorkflowInstance i1 = constructWorkflowInstanceBuilder().setExternalId("1").build();
+    when(workflowInstancePreProcessor.process(i1)).thenReturn(i1);
+    when(workflowInstanceDao.insertWorkflowInstancesOrGetExisting(asList(i1))).thenReturn(asList(42L));
+    assertThat(service.insertWorkflowInstances(asList(i1), true), is(asList(42L)));
+    verify(workflowInstanceDao, never()).insertWorkflowInstances(any());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void loadWorkflowInstancesStreamsPreprocessedInstances() {
+    WorkflowInstance i1 = constructWorkflowInstanceBuilder().setExternalId("1").build();
+    WorkflowInstance processed1 = constructWorkflowInstanceBuilder().setExternalId("1").setStatus(created).build();
+    when(workflowInstancePreProcessor.process(i1)).thenReturn(processed1);
+    when(workflowInstanceDao.copyWorkflowInstances(any(Stream.class)))
+        .thenAnswer(invocation -> (int) invocation.<Stream<WorkflowInstance>> getArgument(0).filter(i -> i == processed1).count());
+    assertThat(service.loadWorkflowInstances(asList(i1)), is(1));
+  }
+
   @Test
   public void insertWorkflowInstanceWhenPreprocessorThrowsCausesException() {
     WorkflowInstance i = constructWorkflowInstanceBuilder().setType("nonexistent").build();
@@ -167,6 +201,14 @@ public class WorkflowInstanceServiceTest extends BaseNflowTest {
     assertEquals(result, service.listWorkflowInstances(query));
   }
 
+  @Test
+  public void listWorkflowInstancePage() {
+    WorkflowInstancePage page = new WorkflowInstancePage(Stream.empty(), "token");
+    QueryWorkflowInstances query = mock(QueryWorkflowInstances.class);
+    when(workflowInstanceDao.queryWorkflowInstancePage(query)).thenReturn(page);
+    assertEquals(page, service.listWorkflowInstancePage(query));
+  }
+
   @Test
   public void getSignalWorks() {
     when(workflowInstanceDao.getSignal(99)).thenReturn(Optional.of(42));
@@ -1,6 +1,8 @@
 package io.nflow.engine.workflow.definition;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.is;
@@ -49,6 +51,16 @@ public class WorkflowSettingsTest {
     assertThat(delta, lessThanOrEqualTo(0L));
     assertThat(s.historyDeletableAfter, is(Period.days(45)));
     assertThat(s.defaultPriority, is((short) 0));
+    assertThat(s.lazyStateVariables, is(false));
+    assertThat(s.preloadedStateVariables, is(empty()));
+  }
+
+  @Test
+  public void lazyStateVariablesCanBeEnabled() {
+    WorkflowSettings s = new WorkflowSettings.Builder().setLazyStateVariables(true).setPreloadedStateVariables("foo", "bar")
+        .build();
+    assertThat(s.lazyStateVariables, is(true));
+    assertThat(s.preloadedStateVariables, containsInAnyOrder("foo", "bar"));
   }
 
   @Test
@@ -7,6 +7,7 @@ import jakarta.inject.Inject;
 import jakarta.inject.Named;
 
 import com.codahale.metrics.DefaultSettableGauge;
+import com.codahale.metrics.Gauge;
 import io.nflow.engine.config.db.DatabaseConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,6 +20,8 @@ import com.codahale.metrics.health.HealthCheckRegistry;
 import com.codahale.metrics.jmx.JmxReporter;
 
 import io.nflow.engine.internal.dao.ExecutorDao;
+import io.nflow.engine.internal.executor.AdaptivePollingController;
+import io.nflow.engine.internal.executor.WorkflowInstanceRecovery;
 import io.nflow.engine.service.HealthCheckService;
 
 /**
@@ -41,6 +44,12 @@ public class NflowMetricsContext {
   @Inject
   private DatabaseConfiguration databaseConfiguration;
 
+  @Inject
+  private AdaptivePollingController pollingController;
+
+  @Inject
+  private WorkflowInstanceRecovery recovery;
+
   @Bean
   public DatabaseConnectionHealthCheck databaseConnectionHealthCheck() {
     return new DatabaseConnectionHealthCheck(healthCheckService);
@@ -56,6 +65,22 @@ public class NflowMetricsContext {
     metricRegistry.gauge("nflow.database.type", () -> new DefaultSettableGauge<>(databaseConfiguration.getDbType()));
   }
 
+  @PostConstruct
+  public void registerDispatcherPolling() {
+    metricRegistry.register("nflow.dispatcher.batch-size", (Gauge<Integer>) pollingController::getBatchSize);
+    metricRegistry.register("nflow.dispatcher.sleep-ms", (Gauge<Long>) pollingController::getSleepMillis);
+    metricRegistry.register("nflow.dispatcher.poll-latency-ms", (Gauge<Double>) pollingController::getPollLatencyMillis);
+    metricRegistry.register("nflow.dispatcher.throughput-per-second", (Gauge<Double>) pollingController::getThroughputPerSecond);
+  }
+
+  @PostConstruct
+  public void registerRecovery() {
+    metricRegistry.register("nflow.recovery.recovered-instances", (Gauge<Long>) recovery::getRecoveredInstances);
+    metricRegistry.register("nflow.recovery.last-recovered-instances", (Gauge<Integer>) recovery::getLastRecoveredInstances);
+    metricRegistry.register("nflow.recovery.last-duration-ms", (Gauge<Long>) recovery::getLastDurationMillis);
+    metricRegistry.register("nflow.recovery.last-throughput-per-second", (Gauge<Double>) recovery::getLastThroughputPerSecond);
+  }
+
   @Bean
   public MetricsWorkflowExecutorListener metricsWorkflowExecutorListener(ExecutorDao executors) {
     logger.info("Enabling MetricsWorkflowExecutorListener");
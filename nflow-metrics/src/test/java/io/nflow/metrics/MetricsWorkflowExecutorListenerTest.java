@@ -25,6 +25,8 @@ import com.codahale.metrics.health.HealthCheckRegistry;
 
 import io.nflow.engine.config.NFlow;
 import io.nflow.engine.internal.dao.ExecutorDao;
+import io.nflow.engine.internal.executor.AdaptivePollingController;
+import io.nflow.engine.internal.executor.WorkflowInstanceRecovery;
 import io.nflow.engine.internal.storage.db.SQLVariants;
 import io.nflow.engine.listener.WorkflowExecutorListener;
 import io.nflow.engine.listener.WorkflowExecutorListener.ListenerContext;
@@ -97,6 +99,22 @@ public class MetricsWorkflowExecutorListenerTest {
     assertEquals(1, metricRegistry.getMeters().get("foobarName.0.myWorkflow.my-state.error-count").getCount());
   }
 
+  @Test
+  public void dispatcherPollingGaugesAreRegistered() {
+    assertEquals(42, metricRegistry.getGauges().get("nflow.dispatcher.batch-size").getValue());
+    assertEquals(1000L, metricRegistry.getGauges().get("nflow.dispatcher.sleep-ms").getValue());
+    assertNotNull(metricRegistry.getGauges().get("nflow.dispatcher.poll-latency-ms"));
+    assertNotNull(metricRegistry.getGauges().get("nflow.dispatcher.throughput-per-second"));
+  }
+
+  @Test
+  public void recoveryGaugesAreRegistered() {
+    assertEquals(7L, metricRegistry.getGauges().get("nflow.recovery.recovered-instances").getValue());
+    assertEquals(3, metricRegistry.getGauges().get("nflow.recovery.last-recovered-instances").getValue());
+    assertEquals(15L, metricRegistry.getGauges().get("nflow.recovery.last-duration-ms").getValue());
+    assertNotNull(metricRegistry.getGauges().get("nflow.recovery.last-throughput-per-second"));
+  }
+
   @Configuration
   @Import(NflowMetricsContext.class)
   public static class Config {
@@ -127,6 +145,23 @@ public class MetricsWorkflowExecutorListenerTest {
       return dao;
     }
 
+    @Bean
+    public AdaptivePollingController adaptivePollingController() {
+      AdaptivePollingController controller = mock(AdaptivePollingController.class);
+      when(controller.getBatchSize()).thenReturn(42);
+      when(controller.getSleepMillis()).thenReturn(1000L);
+      return controller;
+    }
+
+    @Bean
+    public WorkflowInstanceRecovery workflowInstanceRecovery() {
+      WorkflowInstanceRecovery recovery = mock(WorkflowInstanceRecovery.class);
+      when(recovery.getRecoveredInstances()).thenReturn(7L);
+      when(recovery.getLastRecoveredInstances()).thenReturn(3);
+      when(recovery.getLastDurationMillis()).thenReturn(15L);
+      return recovery;
+    }
+
     @Bean
     public SQLVariants SQLVariants() {
       return mock(SQLVariants.class);
@@ -0,0 +1,62 @@
+package io.nflow.performance.benchmark;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.util.concurrent.BlockingQueue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.nflow.engine.internal.executor.ThresholdBlockingQueue;
+
+/**
+ * Measures the overhead of handing off tasks through the executor queue when many executor threads take tasks from it
+ * concurrently. Compares the current {@link ThresholdBlockingQueue} to {@link MonitorThresholdBlockingQueue}, the previous
+ * implementation that entered a monitor on every take to notify the dispatcher.
+ * <p>
+ * Run with:
+ * <code>java -cp nflow-perf-test/target/nflow-perf-test-*-SNAPSHOT.jar org.openjdk.jmh.Main ThresholdBlockingQueueBenchmark</code>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+public class ThresholdBlockingQueueBenchmark {
+
+  private static final Runnable TASK = () -> {
+    // no-op
+  };
+
+  @Param({ "monitor", "lockFree" })
+  public String implementation;
+
+  private BlockingQueue<Runnable> queue;
+
+  @Setup
+  public void setup() {
+    if ("monitor".equals(implementation)) {
+      queue = new MonitorThresholdBlockingQueue<>(1024, 512);
+    } else {
+      queue = new ThresholdBlockingQueue<>(1024, 512);
+    }
+  }
+
+  @Benchmark
+  public Runnable handoff() {
+    queue.offer(TASK);
+    return queue.poll();
+  }
+}
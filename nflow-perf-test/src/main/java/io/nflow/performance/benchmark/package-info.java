@@ -0,0 +1,4 @@
+/**
+ * JMH micro benchmarks for nFlow engine internals.
+ */
+package io.nflow.performance.benchmark;
@@ -10,6 +10,7 @@ import org.springframework.core.env.Environment;
 import org.springframework.jdbc.core.JdbcTemplate;
 
 import io.nflow.engine.internal.dao.ExecutorDao;
+import io.nflow.engine.internal.dao.WorkflowInstanceDao;
 import io.nflow.engine.internal.storage.db.SQLVariants;
 import io.nflow.engine.service.WorkflowDefinitionService;
 import io.nflow.jetty.StartNflow;
@@ -47,8 +48,10 @@ public class NflowPerfTestServer {
     }
 
     @Bean
-    public TestDataBatchInserter testDataBatchInserter(JdbcTemplate jdbcTemplate, SQLVariants sqlVariants) {
-      return new TestDataBatchInserter(jdbcTemplate, sqlVariants);
+    public TestDataBatchInserter testDataBatchInserter(JdbcTemplate jdbcTemplate, SQLVariants sqlVariants,
+        WorkflowInstanceDao workflowInstanceDao, Environment env) {
+      return new TestDataBatchInserter(jdbcTemplate, sqlVariants, workflowInstanceDao,
+          env.getProperty("testdata.copy.enabled", Boolean.class, false));
     }
 
     @Bean
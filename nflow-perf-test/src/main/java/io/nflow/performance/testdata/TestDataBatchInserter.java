@@ -1,13 +1,19 @@
 package io.nflow.performance.testdata;
 
+import static io.nflow.engine.workflow.instance.WorkflowInstance.WorkflowInstanceStatus.executing;
+import static io.nflow.engine.workflow.instance.WorkflowInstance.WorkflowInstanceStatus.inProgress;
+
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 
 import org.joda.time.base.BaseDateTime;
 import org.springframework.jdbc.core.JdbcTemplate;
 
+import io.nflow.engine.internal.dao.WorkflowInstanceDao;
 import io.nflow.engine.internal.storage.db.SQLVariants;
 import io.nflow.engine.workflow.instance.WorkflowInstance;
 import io.nflow.engine.workflow.instance.WorkflowInstanceAction;
@@ -16,13 +22,32 @@ public class TestDataBatchInserter {
 
   private final JdbcTemplate jdbcTemplate;
   private final SQLVariants sqlVariants;
+  private final WorkflowInstanceDao workflowInstanceDao;
+  private final boolean copy;
 
   public TestDataBatchInserter(JdbcTemplate jdbcTemplate, SQLVariants sqlVariants) {
+    this(jdbcTemplate, sqlVariants, null, false);
+  }
+
+  /**
+   * Create an inserter that optionally loads the instances with the PostgreSQL COPY command. The COPY loader inserts only the
+   * workflow instances: the generated ids, executor ids and actions are not stored, and executing instances are stored as in
+   * progress so that they are picked up by the dispatchers.
+   */
+  public TestDataBatchInserter(JdbcTemplate jdbcTemplate, SQLVariants sqlVariants, WorkflowInstanceDao workflowInstanceDao,
+      boolean copy) {
     this.jdbcTemplate = jdbcTemplate;
     this.sqlVariants = sqlVariants;
+    this.workflowInstanceDao = workflowInstanceDao;
+    this.copy = copy && sqlVariants.hasCopyIn();
   }
 
   public void batchInsert(final List<WorkflowInstance> instances) {
+    if (copy) {
+      workflowInstanceDao.copyWorkflowInstances(instances.stream().map(instance -> instance.status == executing
+          ? new WorkflowInstance.Builder(instance).setStatus(inProgress).setExecutorId(null).build() : instance));
+      return;
+    }
     List<Object[]> instancesBatch = new ArrayList<>(instances.size());
     List<Object[]> actionsBatch = new ArrayList<>();
     List<Object[]> statesBatch = new ArrayList<>();
@@ -30,14 +55,19 @@ public class TestDataBatchInserter {
       instancesBatch.add(new Object[] { instance.id, instance.status.name(), instance.type, instance.businessKey, instance.externalId,
           instance.state, instance.stateText, toTimestamp(instance.nextActivation), instance.executorId, instance.retries,
           toTimestamp(instance.created), toTimestamp(instance.modified), instance.executorGroup });
+      Map<String, Object[]> latestStates = new HashMap<>();
       for (WorkflowInstanceAction action : instance.actions) {
         actionsBatch.add(new Object[] { action.id, action.workflowInstanceId, action.executorId,
             action.type.name(), action.state, action.stateText, action.retryNo, toTimestamp(action.executionStart),
             toTimestamp(action.executionEnd) });
         for (Entry<String, String> entry : action.updatedStateVariables.entrySet()) {
-          statesBatch.add(new Object[] { instance.id, action.id, entry.getKey(), entry.getValue() });
+          Object[] state = new Object[] { instance.id, action.id, entry.getKey(), entry.getValue(), 0 };
+          statesBatch.add(state);
+          latestStates.merge(entry.getKey(), state,
+              (previous, current) -> (long) previous[1] > (long) current[1] ? previous : current);
         }
       }
+      latestStates.values().forEach(state -> state[4] = 1);
     }
     jdbcTemplate.batchUpdate(
         "insert into nflow_workflow(id, status, type, business_key, external_id, state, "
@@ -48,7 +78,8 @@ public class TestDataBatchInserter {
             + "execution_end) values (?, ?, ?," + sqlVariants.actionType() + ", ?, ?, ?, ?, ?)",
         actionsBatch);
     jdbcTemplate.batchUpdate(
-        "insert into nflow_workflow_state(workflow_id, action_id, state_key, state_value) values (?, ?, ?, ?)", statesBatch);
+        "insert into nflow_workflow_state(workflow_id, action_id, state_key, state_value, latest) values (?, ?, ?, ?, ?)",
+        statesBatch);
   }
 
   public int getMaxValueFromColumn(String tableName, String columnName) {
@@ -45,6 +45,7 @@ import io.nflow.engine.workflow.instance.WorkflowInstance;
 import io.nflow.engine.workflow.instance.WorkflowInstance.WorkflowInstanceStatus;
 import io.nflow.engine.workflow.instance.WorkflowInstanceAction;
 import io.nflow.engine.workflow.instance.WorkflowInstanceFactory;
+import io.nflow.engine.workflow.instance.WorkflowInstancePage;
 import io.nflow.rest.v1.converter.ListWorkflowDefinitionConverter;
 import io.nflow.rest.v1.converter.ListWorkflowInstanceConverter;
 import io.nflow.rest.v1.msg.ErrorResponse;
@@ -69,6 +70,9 @@ public abstract class ResourceBase {
       + "* childWorkflows: map of created child workflow instance IDs by action ID\n";
   protected static final String QUERY_ARCHIVED_DEFAULT_STR = "false";
   protected static final boolean QUERY_ARCHIVED_DEFAULT = parseBoolean(QUERY_ARCHIVED_DEFAULT_STR);
+  public static final String CONTINUATION_TOKEN_HEADER = "Nflow-Continuation-Token";
+  protected static final String CONTINUATION_TOKEN_PARAM_DESC = "Continue listing after the previous page of workflow instances. "
+      + "The token is returned in " + CONTINUATION_TOKEN_HEADER + " response header when more workflow instances may exist.";
 
   public List<ListWorkflowDefinitionResponse> listWorkflowDefinitions(Collection<String> types,
       WorkflowDefinitionService workflowDefinitions, ListWorkflowDefinitionConverter converter,
@@ -143,11 +147,11 @@ public abstract class ResourceBase {
     return workflowInstances.updateWorkflowInstance(instance, action);
   }
 
-  public Stream<ListWorkflowInstanceResponse> listWorkflowInstances(Set<Long> ids, Set<String> types, Long parentWorkflowId,
+  public ListWorkflowInstancePage listWorkflowInstances(Set<Long> ids, Set<String> types, Long parentWorkflowId,
       Long parentActionId, Set<String> states, Set<WorkflowInstanceStatus> statuses, String businessKey, String externalId,
       String stateVariableKey, String stateVariableValue, Set<ApiWorkflowInstanceInclude> includes, String include,
-      Long maxResults, Long maxActions, boolean queryArchive, WorkflowInstanceService workflowInstances,
-      ListWorkflowInstanceConverter listWorkflowConverter) {
+      Long maxResults, Long maxActions, boolean queryArchive, String continuationToken,
+      WorkflowInstanceService workflowInstances, ListWorkflowInstanceConverter listWorkflowConverter) {
     Set<ApiWorkflowInstanceInclude> propertyIncludes = resolveIncludes(includes, include);
     QueryWorkflowInstances q = new QueryWorkflowInstances.Builder()
         .addIds(ids.toArray(new Long[ids.size()]))
@@ -166,9 +170,31 @@ public abstract class ResourceBase {
         .setQueryArchive(queryArchive)
         .setIncludeChildWorkflows(propertyIncludes.contains(childWorkflows))
         .setStateVariable(stateVariableKey, stateVariableValue)
+        .setContinuationToken(trimToNull(continuationToken))
         .build();
-    Stream<WorkflowInstance> instances = workflowInstances.listWorkflowInstancesAsStream(q);
-    return instances.map(instance -> listWorkflowConverter.convert(instance, propertyIncludes, queryArchive));
+    WorkflowInstancePage page = workflowInstances.listWorkflowInstancePage(q);
+    return new ListWorkflowInstancePage(
+        page.instances.map(instance -> listWorkflowConverter.convert(instance, propertyIncludes, queryArchive)),
+        page.continuationToken);
+  }
+
+  /**
+   * One page of listed workflow instances.
+   */
+  public static class ListWorkflowInstancePage {
+    /**
+     * The workflow instances.
+     */
+    public final Stream<ListWorkflowInstanceResponse> instances;
+    /**
+     * The token for listing the next page, or null if there are no more workflow instances.
+     */
+    public final String continuationToken;
+
+    ListWorkflowInstancePage(Stream<ListWorkflowInstanceResponse> instances, String continuationToken) {
+      this.instances = instances;
+      this.continuationToken = continuationToken;
+    }
   }
 
   private Set<ApiWorkflowInstanceInclude> resolveIncludes(Set<ApiWorkflowInstanceInclude> includes, String include) {
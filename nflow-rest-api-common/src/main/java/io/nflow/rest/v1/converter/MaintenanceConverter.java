@@ -26,10 +26,16 @@ public class MaintenanceConverter {
   }
 
   private void apply(MaintenanceRequestItem requestItem, Supplier<ConfigurationItem.Builder> builderSupplier) {
-    ofNullable(requestItem).ifPresent(item -> builderSupplier.get()
-        .setOlderThanPeriod(item.olderThanPeriod)
-        .setBatchSize(item.batchSize)
-        .setWorkflowTypes(ofNullable(item.workflowTypes).orElseGet(Collections::emptySet)));
+    ofNullable(requestItem).ifPresent(item -> {
+      ConfigurationItem.Builder builder = builderSupplier.get()
+          .setOlderThanPeriod(item.olderThanPeriod)
+          .setBatchSize(item.batchSize)
+          .setParallelism(item.parallelism)
+          .setMaxWorkflowsPerSecond(item.maxWorkflowsPerSecond)
+          .setTargetBatchDuration(item.targetBatchDuration)
+          .setWorkflowTypes(ofNullable(item.workflowTypes).orElseGet(Collections::emptySet));
+      ofNullable(item.maxBatchSize).ifPresent(builder::setMaxBatchSize);
+    });
   }
 
   public MaintenanceResponse convert(MaintenanceResults results) {
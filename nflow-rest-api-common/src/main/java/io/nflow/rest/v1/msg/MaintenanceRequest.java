@@ -37,6 +37,22 @@ public class MaintenanceRequest extends ModelObject {
 
     @Schema(description = "Workflow types to process. If no types are defined, process all types.")
     public Set<String> workflowTypes = emptySet();
+
+    @Schema(description = "Number of parallel workers. Each worker processes its own share of the workflow instances.",
+        example = "1", defaultValue = "1", minimum = "1")
+    public int parallelism = 1;
+
+    @Schema(description = "Maximum number of workflows to process per second by all workers. Zero means no limit.",
+        example = "0", defaultValue = "0", minimum = "0")
+    public int maxWorkflowsPerSecond;
+
+    @Schema(description = "Target duration of a batch. If set, the batch size is adjusted after each batch. Supports ISO-8601 format.",
+        type = "string", format = "duration", example = "PT1S")
+    public ReadablePeriod targetBatchDuration;
+
+    @Schema(description = "Maximum batch size when the batch size is adjusted to the target batch duration. Default is ten times the batch size.",
+        example = "10000", minimum = "1")
+    public Integer maxBatchSize;
   }
 
 }
@@ -1,5 +1,7 @@
 package io.nflow.rest.config.jaxrs;
 
+import static io.nflow.rest.v1.ResourceBase.CONTINUATION_TOKEN_HEADER;
+
 import jakarta.inject.Inject;
 import jakarta.ws.rs.container.ContainerRequestContext;
 import jakarta.ws.rs.container.ContainerResponseContext;
@@ -38,6 +40,7 @@ public class CorsHeaderContainerResponseFilter implements ContainerResponseFilte
       responseHeaders.add("Access-Control-Allow-Origin", origin);
       responseHeaders.add("Access-Control-Allow-Headers", headers);
       responseHeaders.add("Access-Control-Allow-Methods", "OPTIONS, GET, POST, PUT, DELETE");
+      responseHeaders.add("Access-Control-Expose-Headers", CONTINUATION_TOKEN_HEADER);
       // for cookies?
       responseHeaders.add("Access-Control-Allow-Credentials", "true");
     }
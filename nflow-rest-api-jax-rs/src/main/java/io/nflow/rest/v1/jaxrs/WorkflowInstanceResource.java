@@ -28,6 +28,7 @@ import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.Response.ResponseBuilder;
 
 import org.springframework.stereotype.Component;
 
@@ -96,7 +97,8 @@ public class WorkflowInstanceResource extends JaxRsResource {
   @PUT
   @Operation(summary = "Submit new workflow instance")
   @ApiResponses({
-      @ApiResponse(responseCode = "201", description = "Workflow was created",
+      @ApiResponse(responseCode = "201",
+          description = "Workflow was created, or a workflow with the same type and external id already existed",
           content = @Content(schema = @Schema(implementation = CreateWorkflowInstanceResponse.class))),
       @ApiResponse(responseCode = "400",
           description = "If instance could not be created, for example when state variable value was too long") })
@@ -172,10 +174,18 @@ public class WorkflowInstanceResource extends JaxRsResource {
           description = "Maximum number of actions returned for each workflow instance") Long maxActions,
       @QueryParam("queryArchive") @Parameter(
           description = "Query also the archive if not enough results found from main tables",
-          schema = @Schema(defaultValue = QUERY_ARCHIVED_DEFAULT_STR)) Boolean queryArchive) {
-    return handleExceptions(() -> ok(super.listWorkflowInstances(ids, types, parentWorkflowId, parentActionId, states, statuses,
-        businessKey, externalId, stateVariableKey, stateVariableValue, includes, include, maxResults, maxActions,
-        ofNullable(queryArchive).orElse(QUERY_ARCHIVED_DEFAULT), workflowInstances, listWorkflowConverter).iterator()));
+          schema = @Schema(defaultValue = QUERY_ARCHIVED_DEFAULT_STR)) Boolean queryArchive,
+      @QueryParam("continuationToken") @Parameter(description = CONTINUATION_TOKEN_PARAM_DESC) String continuationToken) {
+    return handleExceptions(() -> {
+      ListWorkflowInstancePage page = super.listWorkflowInstances(ids, types, parentWorkflowId, parentActionId, states, statuses,
+          businessKey, externalId, stateVariableKey, stateVariableValue, includes, include, maxResults, maxActions,
+          ofNullable(queryArchive).orElse(QUERY_ARCHIVED_DEFAULT), continuationToken, workflowInstances, listWorkflowConverter);
+      ResponseBuilder response = ok(page.instances.iterator());
+      if (page.continuationToken != null) {
+        response.header(CONTINUATION_TOKEN_HEADER, page.continuationToken);
+      }
+      return response;
+    });
   }
 
   @PUT
@@ -47,6 +47,7 @@ public class CorsHeaderContainerResponseFilterTest {
     assertEquals(asList(HEADERS), headerMap.get("Access-Control-Allow-Headers"));
     assertEquals(asList("OPTIONS, GET, POST, PUT, DELETE"), headerMap.get("Access-Control-Allow-Methods"));
     assertEquals(asList("true"), headerMap.get("Access-Control-Allow-Credentials"));
+    assertEquals(asList("Nflow-Continuation-Token"), headerMap.get("Access-Control-Expose-Headers"));
     verifyNoInteractions(requestContext);
   }
 
@@ -1,10 +1,12 @@
 package io.nflow.rest.v1.jaxrs;
 
 import static io.nflow.engine.workflow.instance.WorkflowInstanceAction.WorkflowActionType.externalChange;
+import static io.nflow.rest.v1.ResourceBase.CONTINUATION_TOKEN_HEADER;
 import static java.util.Collections.emptySet;
 import static java.util.EnumSet.allOf;
 import static jakarta.ws.rs.core.Response.Status.CREATED;
 import static jakarta.ws.rs.core.Response.Status.NOT_FOUND;
+import static jakarta.ws.rs.core.Response.Status.OK;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
@@ -25,6 +27,7 @@ import java.util.EnumSet;
 import java.util.Optional;
 import java.util.Set;
 import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 import jakarta.ws.rs.core.Response;
 
@@ -51,6 +54,7 @@ import io.nflow.engine.workflow.instance.WorkflowInstance.WorkflowInstanceStatus
 import io.nflow.engine.workflow.instance.WorkflowInstanceAction;
 import io.nflow.engine.workflow.instance.WorkflowInstanceAction.WorkflowActionType;
 import io.nflow.engine.workflow.instance.WorkflowInstanceFactory;
+import io.nflow.engine.workflow.instance.WorkflowInstancePage;
 import io.nflow.rest.v1.ApiWorkflowInstanceInclude;
 import io.nflow.rest.v1.converter.CreateWorkflowConverter;
 import io.nflow.rest.v1.converter.ListWorkflowInstanceConverter;
@@ -250,9 +254,9 @@ public class WorkflowInstanceResourceTest {
   @Test
   public void listWorkflowInstancesWorks() {
     makeRequest(() -> resource.listWorkflowInstances(Set.of(42L), Set.of("type"), 99L, 88L, Set.of("state"),
-        EnumSet.of(WorkflowInstanceStatus.created), "businessKey", "externalId", null, null, null, null, null, null, true));
+        EnumSet.of(WorkflowInstanceStatus.created), "businessKey", "externalId", null, null, null, null, null, null, true, null));
 
-    verify(workflowInstances).listWorkflowInstancesAsStream(queryCaptor.capture());
+    verify(workflowInstances).listWorkflowInstancePage(queryCaptor.capture());
     QueryWorkflowInstances query = queryCaptor.getValue();
     assertThat(query.ids, contains(42L));
     assertThat(query.types, contains("type"));
@@ -271,15 +275,16 @@ public class WorkflowInstanceResourceTest {
     assertThat(query.maxResults, is(nullValue()));
     assertThat(query.maxActions, is(nullValue()));
     assertThat(query.queryArchive, is(true));
+    assertThat(query.continuationToken, is(nullValue()));
   }
 
   @Test
   public void listWorkflowInstancesWorksWithAllIncludes() {
     makeRequest(() -> resource.listWorkflowInstances(Set.of(42L), Set.of("type"), 99L, 88L, Set.of("state"),
         EnumSet.of(WorkflowInstanceStatus.created, WorkflowInstanceStatus.executing), "businessKey", "externalId", "stateVarKey",
-        "stateVarValue", EnumSet.allOf(ApiWorkflowInstanceInclude.class), null, 1L, 2L, false));
+        "stateVarValue", EnumSet.allOf(ApiWorkflowInstanceInclude.class), null, 1L, 2L, false, "token"));
 
-    verify(workflowInstances).listWorkflowInstancesAsStream(queryCaptor.capture());
+    verify(workflowInstances).listWorkflowInstancePage(queryCaptor.capture());
     QueryWorkflowInstances query = queryCaptor.getValue();
     assertThat(query.ids, contains(42L));
     assertThat(query.types, contains("type"));
@@ -298,6 +303,29 @@ public class WorkflowInstanceResourceTest {
     assertThat(query.maxResults, is(1L));
     assertThat(query.maxActions, is(2L));
     assertThat(query.queryArchive, is(false));
+    assertThat(query.continuationToken, is("token"));
+  }
+
+  @Test
+  public void listWorkflowInstancesReturnsContinuationTokenHeader() {
+    when(workflowInstances.listWorkflowInstancePage(any(QueryWorkflowInstances.class)))
+        .thenReturn(new WorkflowInstancePage(Stream.empty(), "next"));
+    try (Response r = resource.listWorkflowInstances(emptySet(), emptySet(), null, null, emptySet(), emptySet(), null,
+        null, null, null, emptySet(), null, null, null, false, null)) {
+      assertThat(r.getStatus(), is(OK.getStatusCode()));
+      assertThat(r.getHeaderString(CONTINUATION_TOKEN_HEADER), is("next"));
+    }
+  }
+
+  @Test
+  public void listWorkflowInstancesOmitsContinuationTokenHeaderOnLastPage() {
+    when(workflowInstances.listWorkflowInstancePage(any(QueryWorkflowInstances.class)))
+        .thenReturn(new WorkflowInstancePage(Stream.empty(), null));
+    try (Response r = resource.listWorkflowInstances(emptySet(), emptySet(), null, null, emptySet(), emptySet(), null,
+        null, null, null, emptySet(), null, null, null, false, null)) {
+      assertThat(r.getStatus(), is(OK.getStatusCode()));
+      assertThat(r.getHeaderString(CONTINUATION_TOKEN_HEADER), is(nullValue()));
+    }
   }
 
   @Test
@@ -21,6 +21,7 @@ import jakarta.inject.Inject;
 import jakarta.validation.Valid;
 
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.ResponseEntity.BodyBuilder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -86,7 +87,8 @@ public class WorkflowInstanceResource extends SpringWebResource {
   @PutMapping(consumes = APPLICATION_JSON_VALUE)
   @Operation(summary = "Submit new workflow instance")
   @ApiResponses({
-      @ApiResponse(responseCode = "201", description = "Workflow was created",
+      @ApiResponse(responseCode = "201",
+          description = "Workflow was created, or a workflow with the same type and external id already existed",
           content = @Content(schema = @Schema(implementation = CreateWorkflowInstanceResponse.class))),
       @ApiResponse(responseCode = "400",
           description = "If instance could not be created, for example when state variable value was too long") })
@@ -175,10 +177,19 @@ public class WorkflowInstanceResource extends SpringWebResource {
       @RequestParam(value = "stateVariableValue", required = false) @Parameter(
           description = "Current value of state variable defined by stateVariableKey") String stateVariableValue,
       @RequestParam(value = "queryArchive", required = false, defaultValue = QUERY_ARCHIVED_DEFAULT_STR) @Parameter(
-          description = "Query also the archive if not enough results found from main tables") boolean queryArchive) {
-    return handleExceptions(() -> wrapBlocking(() -> ok(super.listWorkflowInstances(ids, types, parentWorkflowId, parentActionId,
-        states, statuses, businessKey, externalId, stateVariableKey, stateVariableValue, includes, include, maxResults,
-        maxActions, queryArchive, this.workflowInstances, this.listWorkflowConverter).iterator())));
+          description = "Query also the archive if not enough results found from main tables") boolean queryArchive,
+      @RequestParam(value = "continuationToken", required = false) @Parameter(
+          description = CONTINUATION_TOKEN_PARAM_DESC) String continuationToken) {
+    return handleExceptions(() -> wrapBlocking(() -> {
+      ListWorkflowInstancePage page = super.listWorkflowInstances(ids, types, parentWorkflowId, parentActionId, states,
+          statuses, businessKey, externalId, stateVariableKey, stateVariableValue, includes, include, maxResults, maxActions,
+          queryArchive, continuationToken, this.workflowInstances, this.listWorkflowConverter);
+      BodyBuilder response = ok();
+      if (page.continuationToken != null) {
+        response.header(CONTINUATION_TOKEN_HEADER, page.continuationToken);
+      }
+      return response.body(page.instances.iterator());
+    }));
   }
 
   @PutMapping(path = "/{id}/signal", consumes = APPLICATION_JSON_VALUE)
@@ -0,0 +1,151 @@
+package io.nflow.tests;
+
+import static io.nflow.engine.config.Profiles.POSTGRESQL;
+import static io.nflow.engine.workflow.instance.WorkflowInstance.WorkflowInstanceStatus.created;
+import static io.nflow.engine.workflow.instance.WorkflowInstance.WorkflowInstanceStatus.inProgress;
+import static io.nflow.tests.demo.workflow.DemoWorkflow.DEMO_WORKFLOW_TYPE;
+import static io.nflow.tests.demo.workflow.TestState.BEGIN;
+import static java.util.Arrays.asList;
+import static java.util.UUID.randomUUID;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.util.List;
+import java.util.Optional;
+
+import jakarta.inject.Inject;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import io.nflow.engine.config.NFlow;
+import io.nflow.engine.service.WorkflowInstanceService;
+import io.nflow.engine.workflow.instance.QueryWorkflowInstances;
+import io.nflow.engine.workflow.instance.WorkflowInstance;
+import io.nflow.engine.workflow.instance.WorkflowInstanceFactory;
+import io.nflow.tests.demo.workflow.DemoWorkflow;
+import io.nflow.tests.extension.NflowServerConfig;
+
+/**
+ * Loads workflow instances with the PostgreSQL COPY command. The test methods are skipped on other databases.
+ */
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class LoadWorkflowInstancesTest extends AbstractNflowTest {
+  static final DateTime FUTURE = new DateTime(2038, 1, 1, 1, 2, 3, 321, DateTimeZone.forOffsetHoursMinutes(5, 30));
+  static final String LONG_VALUE = "{\"text\":\"" + "compressed, \"quoted\" and\nmultiline ".repeat(20) + "\"}";
+
+  public static NflowServerConfig server = new NflowServerConfig.Builder().springContextClass(Configuration.class)
+      .prop("nflow.db.stateVariable.compression.enabled", true).prop("nflow.db.stateVariable.compression.threshold", 64)
+      .build();
+
+  static boolean postgresql;
+  static WorkflowInstanceService workflowInstanceService;
+  static WorkflowInstanceFactory workflowInstanceFactory;
+  static JdbcTemplate jdbc;
+
+  private static final String existingId = randomUUID().toString();
+  private static final String duplicateId = randomUUID().toString();
+  private static final String nullsId = randomUUID().toString();
+
+  public LoadWorkflowInstancesTest() {
+    super(server);
+  }
+
+  @ComponentScan(basePackageClasses = DemoWorkflow.class)
+  static class Configuration {
+    @Inject
+    public Configuration(Environment env, WorkflowInstanceService service, WorkflowInstanceFactory factory,
+        @NFlow JdbcTemplate nflowJdbcTemplate) {
+      postgresql = asList(env.getActiveProfiles()).contains(POSTGRESQL);
+      workflowInstanceService = service;
+      workflowInstanceFactory = factory;
+      jdbc = nflowJdbcTemplate;
+    }
+  }
+
+  @Test
+  @Order(1)
+  public void insertExistingWorkflowInstance() {
+    assumeTrue(postgresql, "COPY is supported only on PostgreSQL");
+    workflowInstanceService.insertWorkflowInstance(instance(existingId).setBusinessKey("existing").build());
+  }
+
+  @Test
+  @Order(2)
+  public void loadWorkflowInstances() {
+    assumeTrue(postgresql, "COPY is supported only on PostgreSQL");
+    List<WorkflowInstance> instances = asList( //
+        instance(existingId).setBusinessKey("skipped").build(), //
+        instance(duplicateId).setBusinessKey("first").setStatus(inProgress).setStateText("text, with \"quotes\"\nand lines")
+            .setSignal(Optional.of(42)).putStateVariable("json", "{\"a\":\"b\\\\c\"}").putStateVariable("empty", "")
+            .putStateVariable("long", LONG_VALUE).build(), //
+        instance(duplicateId).setBusinessKey("second").build(), //
+        instance(nullsId).build());
+
+    assertThat(workflowInstanceService.loadWorkflowInstances(instances), is(2));
+  }
+
+  @Test
+  @Order(3)
+  public void existingWorkflowInstanceIsNotOverwritten() {
+    assumeTrue(postgresql, "COPY is supported only on PostgreSQL");
+    assertThat(getInstance(existingId).businessKey, is("existing"));
+  }
+
+  @Test
+  @Order(4)
+  public void firstDuplicateIsLoadedWithVariables() {
+    assumeTrue(postgresql, "COPY is supported only on PostgreSQL");
+    WorkflowInstance instance = getInstance(duplicateId);
+    assertThat(instance.businessKey, is("first"));
+    assertThat(instance.status, is(inProgress));
+    assertThat(instance.state, is(BEGIN.name()));
+    assertThat(instance.stateText, is("text, with \"quotes\"\nand lines"));
+    assertThat(instance.nextActivation.getMillis(), is(FUTURE.getMillis()));
+    assertThat(instance.signal, is(Optional.of(42)));
+    assertThat(instance.stateVariables.size(), is(3));
+    assertThat(instance.stateVariables.get("json"), is("{\"a\":\"b\\\\c\"}"));
+    assertThat(instance.stateVariables.get("empty"), is(""));
+    assertThat(instance.stateVariables.get("long"), is(LONG_VALUE));
+    assertThat(jdbc.queryForObject("select state_value from nflow_workflow_state where workflow_id = ? and state_key = 'long'",
+        String.class, instance.id), startsWith("\u0001deflate:"));
+  }
+
+  @Test
+  @Order(5)
+  public void nullValuesAreLoadedAsNulls() {
+    assumeTrue(postgresql, "COPY is supported only on PostgreSQL");
+    WorkflowInstance instance = getInstance(nullsId);
+    assertThat(instance.status, is(created));
+    assertThat(instance.businessKey, nullValue());
+    assertThat(instance.stateText, nullValue());
+    assertThat(instance.parentWorkflowId, nullValue());
+    assertThat(instance.parentActionId, nullValue());
+    assertThat(instance.signal, is(Optional.empty()));
+    assertThat(instance.stateVariables.isEmpty(), is(true));
+  }
+
+  private WorkflowInstance.Builder instance(String externalId) {
+    return workflowInstanceFactory.newWorkflowInstanceBuilder().setType(DEMO_WORKFLOW_TYPE).setExternalId(externalId)
+        .setNextActivation(FUTURE);
+  }
+
+  private WorkflowInstance getInstance(String externalId) {
+    QueryWorkflowInstances query = new QueryWorkflowInstances.Builder().addTypes(DEMO_WORKFLOW_TYPE).setExternalId(externalId)
+        .setIncludeCurrentStateVariables(true).build();
+    List<WorkflowInstance> instances = List.copyOf(workflowInstanceService.listWorkflowInstances(query));
+    assertThat(instances, hasSize(1));
+    return instances.get(0);
+  }
+}